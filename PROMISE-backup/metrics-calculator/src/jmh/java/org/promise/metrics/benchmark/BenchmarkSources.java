@@ -0,0 +1,89 @@
+package org.promise.metrics.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Real source files for the benchmarks.
+ *
+ * Files come from the directory in the {@code benchmark.sources} system property (default: the Ant 1.7.0
+ * sources next to this project). A file is picked by size class, so the results of different source trees
+ * stay comparable: {@code small} is the 10th percentile of the file sizes, {@code median} the 50th and
+ * {@code huge} the largest file (Project.java for Ant 1.7.0).
+ */
+public final class BenchmarkSources {
+
+    /**
+     * System property naming the source directory.
+     */
+    public static final String SOURCES_PROPERTY = "benchmark.sources";
+
+    private static final String DEFAULT_SOURCES = "../source code/ant/apache-ant-1.7.0/src/main";
+
+    private BenchmarkSources() {
+    }
+
+    /**
+     * The benchmark source directory.
+     */
+    public static Path sourceDirectory() {
+        Path directory = Paths.get(System.getProperty(SOURCES_PROPERTY, DEFAULT_SOURCES));
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalStateException("Benchmark sources not found: " + directory.toAbsolutePath()
+                    + " (set -D" + SOURCES_PROPERTY + "=DIR, or -jvmArgs -D" + SOURCES_PROPERTY + "=DIR)");
+        }
+        return directory;
+    }
+
+    /**
+     * All .java files of the source directory, ordered by path.
+     */
+    public static List<Path> allFiles() {
+        try (Stream<Path> files = Files.walk(sourceDirectory())) {
+            return files.filter(file -> file.toString().endsWith(".java") && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The file of a size class.
+     *
+     * @param sizeClass {@code small}, {@code median} or {@code huge}
+     */
+    public static Path file(String sizeClass) {
+        List<Path> bySize = allFiles().stream()
+                .sorted(Comparator.comparingLong(BenchmarkSources::size).thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+        if (bySize.isEmpty()) {
+            throw new IllegalStateException("No .java files in " + sourceDirectory());
+        }
+        switch (sizeClass) {
+            case "small":
+                return bySize.get(bySize.size() / 10);
+            case "median":
+                return bySize.get(bySize.size() / 2);
+            case "huge":
+                return bySize.get(bySize.size() - 1);
+            default:
+                throw new IllegalArgumentException("Unknown size class: " + sizeClass);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.promise.metrics.benchmark;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.promise.metrics.calculator.ComplexityCalculator;
+import org.promise.metrics.calculator.FusedMetricsVisitor;
+import org.promise.metrics.calculator.LOCCalculator;
+import org.promise.metrics.calculator.LineIndex;
+import org.promise.metrics.calculator.NPMCalculator;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.parser.ParserSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metric calculation on an already parsed compilation unit.
+ *
+ * {@link #traversal} visits the AST without calculators; the single-calculator benchmarks minus that
+ * baseline give the cost of each calculator inside the fused visitor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CalculatorBenchmark {
+
+    @Param({"small", "median", "huge"})
+    public String size;
+
+    private char[] chars;
+    private CompilationUnit compilationUnit;
+    private LineIndex lineIndex;
+
+    @Setup(Level.Trial)
+    public void parse() throws IOException {
+        chars = new String(Files.readAllBytes(BenchmarkSources.file(size)), StandardCharsets.ISO_8859_1)
+                .toCharArray();
+        compilationUnit = new ParserSession().parse(chars);
+        lineIndex = new LineIndex(chars, chars.length);
+    }
+
+    @Benchmark
+    public List<ClassMetrics> traversal() {
+        FusedMetricsVisitor visitor = new FusedMetricsVisitor(compilationUnit);
+        compilationUnit.accept(visitor);
+        return visitor.getMetrics();
+    }
+
+    @Benchmark
+    public List<ClassMetrics> npm() {
+        FusedMetricsVisitor visitor = new FusedMetricsVisitor(compilationUnit)
+                .register(new NPMCalculator());
+        compilationUnit.accept(visitor);
+        return visitor.getMetrics();
+    }
+
+    @Benchmark
+    public List<ClassMetrics> complexity() {
+        FusedMetricsVisitor visitor = new FusedMetricsVisitor(compilationUnit)
+                .register(new ComplexityCalculator());
+        compilationUnit.accept(visitor);
+        return visitor.getMetrics();
+    }
+
+    @Benchmark
+    public List<ClassMetrics> loc() {
+        FusedMetricsVisitor visitor = new FusedMetricsVisitor(compilationUnit)
+                .register(new LOCCalculator(lineIndex));
+        compilationUnit.accept(visitor);
+        return visitor.getMetrics();
+    }
+
+    @Benchmark
+    public List<ClassMetrics> allCalculators() {
+        FusedMetricsVisitor visitor = new FusedMetricsVisitor(compilationUnit)
+                .register(new NPMCalculator())
+                .register(new ComplexityCalculator())
+                .register(new LOCCalculator(lineIndex));
+        compilationUnit.accept(visitor);
+        return visitor.getMetrics();
+    }
+
+    /**
+     * Line classification that the LOC calculator queries; built once per file.
+     */
+    @Benchmark
+    public LineIndex lineIndex() {
+        return new LineIndex(chars, chars.length);
+    }
+}
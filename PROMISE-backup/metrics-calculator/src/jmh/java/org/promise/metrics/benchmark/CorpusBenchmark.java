@@ -0,0 +1,392 @@
+package org.promise.metrics.benchmark;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.promise.metrics.analysis.AnalysisOptions;
+import org.promise.metrics.analysis.BatchDriver;
+import org.promise.metrics.export.ExportOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * End-to-end throughput of the whole pipeline (listing, parsing, metrics and CSV export) over a set of
+ * manifest versions, by default the five shipped Ant trees.
+ *
+ * Every thread count of the sweep runs in a fresh JVM, so that peak RSS and GC time belong to that thread
+ * count alone. A child runs the versions through {@link BatchDriver} for a number of warmup and measured
+ * iterations and reports the median measured wall-clock time. The sweep is written to a results CSV and
+ * optionally compared with a baseline results file; the run fails (exit code 1) if the files/sec of any
+ * thread count dropped by more than the regression threshold.
+ *
+ * Run from the {@code metrics-calculator} directory after {@code mvn -P benchmarks package}:
+ * {@code java -cp target/benchmarks.jar org.promise.metrics.benchmark.CorpusBenchmark [options]}
+ */
+public final class CorpusBenchmark {
+
+    /**
+     * Columns of the results file.
+     */
+    private static final String[] COLUMNS = {"threads", "files", "classes", "mb", "wall_ms", "files_per_sec",
+            "classes_per_sec", "mb_per_sec", "peak_rss_mb", "gc_ms", "gc_count"};
+
+    private static final String DEFAULT_MANIFEST = "promise-corpus.csv";
+    private static final String DEFAULT_PROJECT = "ant";
+    private static final String DEFAULT_RESULTS = "target/corpus-benchmark.csv";
+    private static final String DEFAULT_WORK_DIR = "target/corpus-benchmark";
+    private static final double DEFAULT_MAX_REGRESSION_PERCENT = 10.0;
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private CorpusBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path manifest = Paths.get(DEFAULT_MANIFEST);
+        String project = DEFAULT_PROJECT;
+        List<Integer> threadCounts = defaultThreadCounts();
+        int warmup = 1;
+        int iterations = 3;
+        Path results = Paths.get(DEFAULT_RESULTS);
+        Path workDir = Paths.get(DEFAULT_WORK_DIR);
+        Path baseline = null;
+        double maxRegression = DEFAULT_MAX_REGRESSION_PERCENT;
+        List<String> jvmArgs = new ArrayList<>();
+        int childThreads = 0;
+        Path childResult = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                printUsage();
+                System.exit(1);
+            }
+            switch (args[i]) {
+                case "--manifest":
+                    manifest = Paths.get(args[++i]);
+                    break;
+                case "--project":
+                    project = args[++i];
+                    break;
+                case "--threads":
+                    threadCounts = new ArrayList<>();
+                    for (String count : args[++i].split(",")) {
+                        threadCounts.add(Integer.parseInt(count.trim()));
+                    }
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--results":
+                    results = Paths.get(args[++i]);
+                    break;
+                case "--work-dir":
+                    workDir = Paths.get(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--max-regression":
+                    maxRegression = Double.parseDouble(args[++i]);
+                    break;
+                case "--jvm-arg":
+                    jvmArgs.add(args[++i]);
+                    break;
+                case "--child-threads":
+                    childThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--child-result":
+                    childResult = Paths.get(args[++i]);
+                    break;
+                default:
+                    printUsage();
+                    System.exit(1);
+            }
+        }
+
+        if (childResult != null) {
+            runChild(manifest, project, childThreads, warmup, iterations, workDir, childResult);
+            return;
+        }
+
+        Files.createDirectories(workDir);
+        List<String[]> rows = new ArrayList<>();
+        for (int threads : threadCounts) {
+            System.out.println("Running " + project + " with " + threads + " thread(s)...");
+            rows.add(fork(manifest, project, threads, warmup, iterations, workDir, jvmArgs));
+        }
+
+        writeResults(results, rows);
+        printTable(rows);
+        System.out.println("Results: " + results);
+
+        if (baseline != null && regressed(readResults(baseline), rows, maxRegression)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 1, 2, 4, ... up to and including the number of available processors.
+     */
+    private static List<Integer> defaultThreadCounts() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(processors);
+        return counts;
+    }
+
+    /**
+     * Run one thread count in a child JVM with the same class path and return its result row.
+     * The child's console output goes to {@code threads-N.log} in the work directory.
+     */
+    private static String[] fork(Path manifest, String project, int threads, int warmup, int iterations,
+                                 Path workDir, List<String> jvmArgs) throws IOException, InterruptedException {
+        Path resultFile = workDir.resolve("threads-" + threads + ".result");
+        Path logFile = workDir.resolve("threads-" + threads + ".log");
+        Files.deleteIfExists(resultFile);
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CorpusBenchmark.class.getName());
+        command.addAll(Arrays.asList("--manifest", manifest.toString(), "--project", project,
+                "--warmup", String.valueOf(warmup), "--iterations", String.valueOf(iterations),
+                "--work-dir", workDir.resolve("threads-" + threads).toString(),
+                "--child-threads", String.valueOf(threads), "--child-result", resultFile.toString()));
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(logFile.toFile()))
+                .start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || !Files.exists(resultFile)) {
+            throw new IOException("Benchmark run with " + threads + " thread(s) failed (exit code " + exitCode
+                    + "), see " + logFile);
+        }
+        return new String(Files.readAllBytes(resultFile), StandardCharsets.UTF_8).trim().split(",");
+    }
+
+    /**
+     * Child side: run the versions of one project with a fixed thread count and write one result row.
+     */
+    private static void runChild(Path manifest, String project, int threads, int warmup, int iterations,
+                                 Path outputDir, Path resultFile) throws IOException {
+        AnalysisOptions options = new AnalysisOptions();
+        options.setThreads(threads);
+        ExportOptions export = new ExportOptions();
+        export.setFullFormat(true);
+
+        long[] wallMillis = new long[iterations];
+        long gcMillis = 0;
+        long gcCount = 0;
+        List<BatchDriver.Job> jobs = null;
+        for (int i = -warmup; i < iterations; i++) {
+            jobs = jobs(manifest, project, outputDir);
+            System.gc();
+
+            long gcMillisBefore = gcMillis();
+            long gcCountBefore = gcCount();
+            long start = System.nanoTime();
+            new BatchDriver(options, null, export).run(jobs);
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+            for (BatchDriver.Job job : jobs) {
+                if (job.getError() != null) {
+                    throw new IOException(job.getProject() + " " + job.getVersion() + " failed: " + job.getError());
+                }
+            }
+            if (i >= 0) {
+                wallMillis[i] = elapsed;
+                gcMillis += gcMillis() - gcMillisBefore;
+                gcCount += gcCount() - gcCountBefore;
+            }
+        }
+
+        long files = 0;
+        long classes = 0;
+        long bytes = 0;
+        for (BatchDriver.Job job : jobs) {
+            files += job.getFiles();
+            classes += job.getClasses();
+            bytes += job.getBytes();
+        }
+
+        Arrays.sort(wallMillis);
+        long median = Math.max(1, wallMillis[iterations / 2]);
+        double seconds = median / 1000.0;
+        long peakRss = peakRssBytes();
+        String row = String.format(Locale.ROOT, "%d,%d,%d,%.2f,%d,%.1f,%.1f,%.2f,%.1f,%d,%d",
+                options.getThreads(), files, classes, bytes / MB, median, files / seconds, classes / seconds,
+                bytes / MB / seconds, peakRss < 0 ? -1.0 : peakRss / MB, gcMillis / iterations, gcCount / iterations);
+        Files.write(resultFile, row.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The manifest's jobs of one project, writing their CSVs into {@code outputDir}.
+     */
+    private static List<BatchDriver.Job> jobs(Path manifest, String project, Path outputDir) throws IOException {
+        List<BatchDriver.Job> jobs = new ArrayList<>();
+        for (BatchDriver.Job job : BatchDriver.readManifest(manifest)) {
+            if (job.getProject().equals(project)) {
+                jobs.add(new BatchDriver.Job(job.getProject(), job.getVersion(), job.getSource(),
+                        outputDir.resolve(job.getProject() + "-" + job.getVersion() + ".csv"), job.getFilter()));
+            }
+        }
+        if (jobs.isEmpty()) {
+            throw new IOException("Manifest " + manifest + " lists no versions of " + project);
+        }
+        return jobs;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Peak resident set size of this process (VmHWM from /proc), or -1 where it is not available.
+     */
+    private static long peakRssBytes() {
+        File status = new File("/proc/self/status");
+        if (!status.isFile()) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status.toPath(), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Fall through: not available
+        }
+        return -1;
+    }
+
+    private static void writeResults(Path results, List<String[]> rows) throws IOException {
+        if (results.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(results.toAbsolutePath().getParent());
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(String.join(",", COLUMNS));
+        for (String[] row : rows) {
+            lines.add(String.join(",", row));
+        }
+        Files.write(results, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a results file, keyed by thread count.
+     */
+    private static Map<Integer, Map<String, String>> readResults(Path results) throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+                .setHeader()
+                .setSkipHeaderRecord(true)
+                .setIgnoreEmptyLines(true)
+                .build();
+
+        Map<Integer, Map<String, String>> rows = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(results, StandardCharsets.UTF_8);
+             CSVParser parser = new CSVParser(reader, format)) {
+            for (CSVRecord record : parser) {
+                rows.put(Integer.parseInt(record.get("threads")), record.toMap());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Compare the files/sec of each thread count with the baseline and print the change.
+     *
+     * @return Whether any thread count regressed by more than {@code maxRegression} percent
+     */
+    private static boolean regressed(Map<Integer, Map<String, String>> baseline, List<String[]> rows,
+                                     double maxRegression) {
+        System.out.println("\n=== Baseline Comparison (files/sec, threshold -"
+                + String.format(Locale.ROOT, "%.1f", maxRegression) + "%) ===");
+        int throughput = Arrays.asList(COLUMNS).indexOf("files_per_sec");
+        int classesColumn = Arrays.asList(COLUMNS).indexOf("classes");
+
+        boolean regressed = false;
+        for (String[] row : rows) {
+            int threads = Integer.parseInt(row[0]);
+            Map<String, String> reference = baseline.get(threads);
+            if (reference == null) {
+                System.out.printf(Locale.ROOT, "%7d  no baseline%n", threads);
+                continue;
+            }
+
+            double before = Double.parseDouble(reference.get("files_per_sec"));
+            double after = Double.parseDouble(row[throughput]);
+            double change = before > 0 ? 100.0 * (after - before) / before : 0.0;
+            boolean failed = change < -maxRegression;
+            regressed |= failed;
+            System.out.printf(Locale.ROOT, "%7d  %10.1f -> %10.1f  %+6.1f%%%s%n", threads, before, after, change,
+                    failed ? "  REGRESSION" : "");
+            if (!reference.get("classes").equals(row[classesColumn])) {
+                System.out.println("         warning: " + reference.get("classes") + " classes in the baseline, "
+                        + row[classesColumn] + " now");
+            }
+        }
+        return regressed;
+    }
+
+    private static void printTable(List<String[]> rows) {
+        String rowFormat = "%7s %7s %8s %8s %9s %11s %13s %8s %12s %7s%n";
+        System.out.println("\n=== Corpus Throughput ===");
+        System.out.printf(Locale.ROOT, rowFormat, "threads", "files", "classes", "MB", "wall ms", "files/sec",
+                "classes/sec", "MB/sec", "peak RSS MB", "GC ms");
+        for (String[] row : rows) {
+            System.out.printf(Locale.ROOT, rowFormat, row[0], row[1], row[2], row[3], row[4], row[5], row[6],
+                    row[7], row[8], row[9]);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java -cp target/benchmarks.jar " + CorpusBenchmark.class.getName() + " [options]");
+        System.out.println();
+        System.out.println("  --manifest FILE       Batch manifest (default: " + DEFAULT_MANIFEST + ")");
+        System.out.println("  --project NAME        Project of the manifest to run (default: " + DEFAULT_PROJECT + ")");
+        System.out.println("  --threads LIST        Comma-separated thread counts (default: 1, 2, 4, ... processors)");
+        System.out.println("  --warmup N            Unmeasured iterations per thread count (default: 1)");
+        System.out.println("  --iterations N        Measured iterations per thread count; the median is reported (default: 3)");
+        System.out.println("  --results FILE        Results CSV (default: " + DEFAULT_RESULTS + ")");
+        System.out.println("  --work-dir DIR        Output CSVs and child logs (default: " + DEFAULT_WORK_DIR + ")");
+        System.out.println("  --baseline FILE       Results CSV of an earlier run to compare with");
+        System.out.println("  --max-regression PCT Fail if files/sec drops by more than PCT percent (default: "
+                + DEFAULT_MAX_REGRESSION_PERCENT + ")");
+        System.out.println("  --jvm-arg ARG         (Repeatable) Option for the child JVMs, e.g. -Xmx2g");
+    }
+}
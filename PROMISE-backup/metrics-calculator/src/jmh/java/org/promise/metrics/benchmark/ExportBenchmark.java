@@ -0,0 +1,88 @@
+package org.promise.metrics.benchmark;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.promise.metrics.export.CSVExporter;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.MetricsTable;
+import org.promise.metrics.parser.JavaSourceParser;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceFilter;
+import org.promise.metrics.source.SourceLoader;
+import org.promise.metrics.source.SourceProvider;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting and CSV rendering of the rows of a whole source tree. The rows are those of the benchmark
+ * source directory, repeated {@code copies} times (as further files) to reach corpus-sized tables.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+
+    @Param({"1", "100"})
+    public int copies;
+
+    @Param({"default", "full"})
+    public String format;
+
+    private MetricsTable table;
+    private int[] sortedRows;
+    private Metric[] layout;
+
+    @Setup(Level.Trial)
+    public void analyzeSources() throws IOException {
+        List<SourceFile> sources = SourceProvider.forPath(BenchmarkSources.sourceDirectory(), new SourceFilter())
+                .listSources();
+        List<List<ClassMetrics>> files = JavaSourceParser.parseSources(sources, SourceLoader.DEFAULT_CHARSET);
+
+        table = new MetricsTable();
+        for (int copy = 0; copy < copies; copy++) {
+            for (int file = 0; file < files.size(); file++) {
+                List<ClassMetrics> metrics = files.get(file);
+                for (int i = 0; i < metrics.size(); i++) {
+                    table.add(metrics.get(i), copy * files.size() + file, i);
+                }
+            }
+        }
+        sortedRows = table.sortedRows();
+        layout = CSVExporter.layout("full".equals(format), null);
+    }
+
+    @Benchmark
+    public int[] sortRows() {
+        return table.sortedRows();
+    }
+
+    @Benchmark
+    public CSVPrinter writeCsv() throws IOException {
+        CSVPrinter csvPrinter = new CSVPrinter(NullWriter.INSTANCE, CSVFormat.DEFAULT);
+        csvPrinter.printRecord(CSVExporter.header("full".equals(format), null));
+        for (int row : sortedRows) {
+            CSVExporter.printRow(csvPrinter, table, row, layout);
+        }
+        csvPrinter.flush();
+        return csvPrinter;
+    }
+}
@@ -0,0 +1,95 @@
+package org.promise.metrics.benchmark;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.parser.JavaSourceParser;
+import org.promise.metrics.parser.LexicalSourceParser;
+import org.promise.metrics.parser.ParserSession;
+import org.promise.metrics.source.SourceLoader;
+import org.promise.metrics.source.SourceText;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-file stages from bytes to metrics: loading, decoding, JDT parsing, the full AST path and the
+ * scanner-only lexical path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    @Param({"small", "median", "huge"})
+    public String size;
+
+    private Path file;
+    private byte[] bytes;
+    private String sourceCode;
+    private char[] chars;
+    private ParserSession session;
+    private SourceText sourceText;
+
+    @Setup(Level.Trial)
+    public void readFile() throws IOException {
+        file = BenchmarkSources.file(size);
+        bytes = Files.readAllBytes(file);
+        sourceCode = SourceLoader.forCurrentThread()
+                .decode(ByteBuffer.wrap(bytes), SourceLoader.DEFAULT_CHARSET).toString();
+        chars = sourceCode.toCharArray();
+        session = new ParserSession();
+    }
+
+    /**
+     * The pooled buffer belongs to this thread's loader, which {@link #loadFile} reuses,
+     * so it is decoded again before every iteration.
+     */
+    @Setup(Level.Iteration)
+    public void decodeBuffer() {
+        sourceText = SourceLoader.forCurrentThread().decode(ByteBuffer.wrap(bytes), SourceLoader.DEFAULT_CHARSET);
+    }
+
+    @Benchmark
+    public SourceText loadFile() throws IOException {
+        return SourceLoader.forCurrentThread().load(file, SourceLoader.DEFAULT_CHARSET);
+    }
+
+    @Benchmark
+    public SourceText decode() {
+        return SourceLoader.forCurrentThread().decode(ByteBuffer.wrap(bytes), SourceLoader.DEFAULT_CHARSET);
+    }
+
+    @Benchmark
+    public CompilationUnit parseAst() {
+        return session.parse(chars);
+    }
+
+    @Benchmark
+    public List<ClassMetrics> parseAndCalculate() {
+        return JavaSourceParser.parseSource(sourceText, file.toString());
+    }
+
+    @Benchmark
+    public List<ClassMetrics> scanLexical() {
+        return LexicalSourceParser.parseSource(sourceCode, file.toString());
+    }
+}
@@ -1,65 +1,426 @@
 package org.promise.metrics;
 
+import org.promise.metrics.analysis.AnalysisOptions;
+import org.promise.metrics.analysis.BatchDriver;
+import org.promise.metrics.analysis.FileResultSink;
+import org.promise.metrics.analysis.MultiVersionAnalyzer;
+import org.promise.metrics.analysis.ParallelAnalyzer;
+import org.promise.metrics.bytecode.BytecodeAnalyzer;
+import org.promise.metrics.cache.MetricsCache;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.diagnostics.Verbosity;
+import org.promise.metrics.encoding.AstEncoder;
+import org.promise.metrics.encoding.EncodingWriter;
+import org.promise.metrics.encoding.Vocabulary;
 import org.promise.metrics.export.CSVExporter;
-import org.promise.metrics.model.ClassMetrics;
-import org.promise.metrics.parser.JavaSourceParser;
+import org.promise.metrics.export.ExportOptions;
+import org.promise.metrics.export.SortedCSVWriter;
+import org.promise.metrics.graph.HierarchyIndex;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceFilter;
+import org.promise.metrics.source.SourceProvider;
+import org.promise.metrics.validation.LabelJoin;
+import org.promise.metrics.validation.ValidationReport;
+import org.promise.metrics.validation.Validator;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Main entry point for the Metrics Calculator.
- * Scans Java source files and calculates code metrics.
+ * Scans Java source files (in a directory or an archive) and calculates code metrics.
  */
 public class MetricsCalculatorMain {
 
+    /**
+     * Metrics that can be computed from tokens and lines alone.
+     */
+    private static final List<String> LEXICAL_METRICS = Arrays.asList("loc", "eloc", "cloc");
+
+    /**
+     * Default size limit of the metrics cache in megabytes.
+     */
+    private static final long DEFAULT_CACHE_SIZE_MB = 256;
+
+    /**
+     * Default largest accepted drop of an exact-match rate against the validation baseline, in points.
+     */
+    private static final double DEFAULT_MAX_REGRESSION = 1.0;
+
     public static void main(String[] args) {
         if (args.length < 1) {
             printUsage();
             System.exit(1);
         }
 
-        String sourceDir = args[0];
-        String outputFile = args.length > 1 ? args[1] : "output/metrics.csv";
-        boolean fullFormat = args.length > 2 && args[2].equals("--full-format");
+        List<String> positional = new ArrayList<>();
+        AnalysisOptions options = new AnalysisOptions();
+        ExportOptions export = new ExportOptions();
+        SourceFilter filter = new SourceFilter();
+        Path cacheDir = null;
+        long cacheSizeMb = DEFAULT_CACHE_SIZE_MB;
+        boolean versionsMode = false;
+        boolean bytecode = false;
+        boolean astEncoding = false;
+        Path vocabularyFile = null;
+        boolean astCsv = false;
+        Path manifest = null;
+        Path labelManifest = null;
+        Path bugDataDir = null;
+        Path validateManifest = null;
+        Path validationReport = null;
+        Path validationBaseline = null;
+        double maxRegression = DEFAULT_MAX_REGRESSION;
+        int worstCount = Validator.DEFAULT_WORST;
+        String outputDir = "output";
+        Path profileReport = null;
+        Verbosity verbosity = Verbosity.PROGRESS;
+        Path problemsFile = null;
+        int slowFiles = Profiler.DEFAULT_SLOW_FILES;
 
-        System.out.println("Java Metrics Calculator");
-        System.out.println("======================");
-        System.out.println("Source directory: " + sourceDir);
-        System.out.println("Output file: " + outputFile);
-        System.out.println();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--full-format":
+                    export.setFullFormat(true);
+                    break;
+                case "--gzip":
+                    export.setGzip(true);
+                    break;
+                case "--sort-buffer":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    export.setMaxRowsInMemory(Integer.parseInt(args[++i]));
+                    break;
+                case "--threads":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    options.setThreads(Integer.parseInt(args[++i]));
+                    break;
+                case "--encoding":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    try {
+                        options.setCharset(Charset.forName(args[++i]));
+                    } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                        System.err.println("Unknown encoding: " + args[i]);
+                        System.exit(1);
+                    }
+                    break;
+                case "--bytecode":
+                    bytecode = true;
+                    break;
+                case "--ast-encoding":
+                    astEncoding = true;
+                    break;
+                case "--vocabulary":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    vocabularyFile = Paths.get(args[++i]);
+                    break;
+                case "--ast-csv":
+                    astCsv = true;
+                    break;
+                case "--versions":
+                    versionsMode = true;
+                    break;
+                case "--batch":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    manifest = Paths.get(args[++i]);
+                    break;
+                case "--label":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    labelManifest = Paths.get(args[++i]);
+                    break;
+                case "--validate":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    validateManifest = Paths.get(args[++i]);
+                    break;
+                case "--report":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    validationReport = Paths.get(args[++i]);
+                    break;
+                case "--worst":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    worstCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--baseline":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    validationBaseline = Paths.get(args[++i]);
+                    break;
+                case "--max-regression":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    maxRegression = Double.parseDouble(args[++i]);
+                    break;
+                case "--bug-data":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    bugDataDir = Paths.get(args[++i]);
+                    break;
+                case "--output-dir":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    outputDir = args[++i];
+                    break;
+                case "--cache":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    cacheDir = Paths.get(args[++i]);
+                    break;
+                case "--cache-size":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    cacheSizeMb = Long.parseLong(args[++i]);
+                    break;
+                case "--quiet":
+                    verbosity = Verbosity.QUIET;
+                    break;
+                case "--verbose":
+                    verbosity = Verbosity.VERBOSE;
+                    break;
+                case "--problems":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    problemsFile = Paths.get(args[++i]);
+                    break;
+                case "--profile":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    profileReport = Paths.get(args[++i]);
+                    break;
+                case "--slow-files":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    slowFiles = Integer.parseInt(args[++i]);
+                    break;
+                case "--include":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    filter.addInclude(args[++i]);
+                    break;
+                case "--exclude":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    filter.addExclude(args[++i]);
+                    break;
+                case "--type-index":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    try {
+                        HierarchyIndex.addLibrary(HierarchyIndex.open(Paths.get(args[++i])));
+                    } catch (IOException | IllegalArgumentException e) {
+                        System.err.println("Error: Could not open type index " + args[i] + ": " + e.getMessage());
+                        System.exit(1);
+                    }
+                    break;
+                case "--metrics":
+                    if (i + 1 >= args.length) {
+                        printUsage();
+                        System.exit(1);
+                    }
+                    List<String> columns = Arrays.asList(args[++i].toLowerCase().split(","));
+                    for (String column : columns) {
+                        if (!CSVExporter.isKnownColumn(column)) {
+                            System.err.println("Unknown metric: " + column);
+                            System.exit(1);
+                        }
+                    }
+                    export.setColumns(columns);
+                    break;
+                default:
+                    positional.add(args[i]);
+            }
+        }
 
-        try {
-            // Calculate metrics
-            List<ClassMetrics> allMetrics = calculateMetricsForDirectory(sourceDir);
+        if (positional.isEmpty() && manifest == null && labelManifest == null && validateManifest == null) {
+            printUsage();
+            System.exit(1);
+        }
+        if (bytecode && (versionsMode || manifest != null)) {
+            System.err.println("Error: --bytecode analyzes a single input and cannot be combined with --versions or --batch");
+            System.exit(1);
+        }
+        if (astEncoding && (bytecode || versionsMode || manifest != null)) {
+            System.err.println("Error: --ast-encoding encodes a single source input and cannot be combined with --bytecode, --versions or --batch");
+            System.exit(1);
+        }
+        if ((labelManifest != null || validateManifest != null)
+                && (bytecode || versionsMode || manifest != null || !positional.isEmpty())) {
+            System.err.println("Error: --label and --validate read the outputs of a finished batch run and take no sources");
+            System.exit(1);
+        }
 
-            if (allMetrics.isEmpty()) {
-                System.err.println("No Java files found or no metrics calculated.");
+        // Calculators run only for the metrics of the output layout; lexical metrics need no AST, so they
+        // are computed by the token scanner alone
+        options.setMetrics(export.getMetrics());
+        options.setLexicalOnly(!export.isFullFormat() && export.getColumns() != null
+                && LEXICAL_METRICS.containsAll(export.getColumns()));
+
+        if (verbosity != Verbosity.QUIET) {
+            System.out.println("Java Metrics Calculator");
+            System.out.println("======================");
+        }
+
+        if (labelManifest != null) {
+            try {
+                runLabelJoin(labelManifest, bugDataDir, Paths.get(outputDir).resolve("labeled"), options);
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
                 System.exit(1);
             }
+            return;
+        }
+        if (validateManifest != null) {
+            Path report = validationReport != null ? validationReport : Paths.get(outputDir, "validation.txt");
+            try {
+                if (!runValidation(validateManifest, bugDataDir, report, worstCount, validationBaseline,
+                        maxRegression, options)) {
+                    System.exit(1);
+                }
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
 
-            // Create an output directory if it doesn't exist
-            Path outputPath = Paths.get(outputFile);
-            Files.createDirectories(outputPath.getParent());
+        if (profileReport != null) {
+            Profiler.start(slowFiles);
+        }
+
+        try {
+            Diagnostics.start(verbosity, problemsFile);
+        } catch (IOException e) {
+            System.err.println("Error: Could not create " + problemsFile + ": " + e.getMessage());
+            System.exit(1);
+        }
 
-            // Export to CSV
-            if (fullFormat) {
-                CSVExporter.exportToCSVWithFullFormat(allMetrics, outputPath, true);
+        try (MetricsCache cache = cacheDir != null
+                ? MetricsCache.open(cacheDir, options, cacheSizeMb * 1024 * 1024)
+                : null) {
+            if (manifest != null) {
+                runBatch(manifest, options, cache, export);
+            } else if (versionsMode) {
+                calculateVersions(positional, Paths.get(outputDir), filter, options, cache, export);
+            } else if (astEncoding) {
+                Path output = Paths.get(positional.size() > 1 ? positional.get(1) : "output/ast-encoding.ast");
+                encodeAsts(positional.get(0), output, vocabularyFile, astCsv, filter, options);
             } else {
-                CSVExporter.exportToCSV(allMetrics, outputPath);
+                String sourceDir = positional.get(0);
+                String outputFile = positional.size() > 1 ? positional.get(1) : "output/metrics.csv";
+                Diagnostics.info("Source: " + sourceDir);
+                Diagnostics.info("Output file: " + outputFile);
+                Diagnostics.info("");
+
+                // Calculate metrics, streaming the rows into the sorted CSV writer
+                SortedCSVWriter writer = export.newWriter(Paths.get(outputFile));
+                try {
+                    if (bytecode) {
+                        calculateBytecodeMetrics(sourceDir, filter, writer);
+                    } else {
+                        calculateMetrics(sourceDir, filter, options, cache, writer);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    writer.abort();
+                    throw e;
+                }
+
+                if (writer.getRowCount() == 0) {
+                    writer.abort();
+                    System.err.println("No Java files found or no metrics calculated.");
+                    System.exit(1);
+                }
+
+                long exportStart = Profiler.now();
+                writer.close();
+                Profiler.lap(Phase.EXPORT, exportStart);
+                Diagnostics.info("Exported " + writer.getRowCount() + " class metrics to: " + writer.getOutputPath());
+
+                // Print summary
+                writer.getSummary().print();
             }
 
-            // Print summary
-            CSVExporter.printSummary(allMetrics);
+            if (cache != null) {
+                Diagnostics.info("Cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses"
+                        + (cache.getInvalid() > 0 ? ", " + cache.getInvalid() + " invalid entries discarded" : ""));
+            }
 
-            System.out.println("\nMetrics calculation completed successfully!");
+            Diagnostics.close();
+
+            Profiler profiler = Profiler.stop();
+            if (profiler != null) {
+                System.out.println();
+                profiler.print(new PrintWriter(System.out));
+                profiler.write(profileReport);
+                System.out.println("Profile report: " + profileReport);
+            }
+
+            Diagnostics.info("\nMetrics calculation completed successfully!");
 
         } catch (IOException e) {
+            Diagnostics.flush();
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
             System.exit(1);
@@ -67,57 +428,356 @@ public class MetricsCalculatorMain {
     }
 
     /**
-     * Calculate metrics for all Java files in a directory (recursively).
+     * Calculate metrics from the class files of a directory, jar or zip file, or from a single class file.
      */
-    private static List<ClassMetrics> calculateMetricsForDirectory(String dirPath) throws IOException {
-        List<ClassMetrics> allMetrics = new ArrayList<>();
-        Path sourcePath = Paths.get(dirPath);
+    private static void calculateBytecodeMetrics(String inputPath, SourceFilter filter,
+                                                 SortedCSVWriter writer) throws IOException {
+        Diagnostics.info("Reading class files...");
+        try {
+            int classFiles = new BytecodeAnalyzer(filter).analyze(Paths.get(inputPath), writer::add);
+            Diagnostics.info("\nClass files read: " + classFiles);
+        } finally {
+            Diagnostics.flush();
+        }
+        Diagnostics.info("Total classes found: " + writer.getRowCount());
+    }
 
-        if (!Files.exists(sourcePath)) {
-            throw new IOException("Source directory does not exist: " + dirPath);
+    /**
+     * Encode the classes of a source directory or archive as AST token sequences.
+     *
+     * @param vocabularyFile Shared vocabulary, or null for {@code vocabulary.csv} next to the output; read
+     *                       first if it exists and written back with the new tokens
+     * @param csv            Whether to write the CSV layout next to the binary output as well
+     */
+    private static void encodeAsts(String sourcePath, Path output, Path vocabularyFile, boolean csv,
+                                   SourceFilter filter, AnalysisOptions options) throws IOException {
+        Path vocabularyPath = vocabularyFile != null ? vocabularyFile : output.resolveSibling("vocabulary.csv");
+        Vocabulary vocabulary = Files.exists(vocabularyPath) ? Vocabulary.load(vocabularyPath) : new Vocabulary();
+        Path csvPath = null;
+        if (csv) {
+            String fileName = output.getFileName().toString();
+            csvPath = output.resolveSibling((fileName.endsWith(".ast")
+                    ? fileName.substring(0, fileName.length() - ".ast".length()) : fileName) + ".csv");
         }
+        Diagnostics.info("Source: " + sourcePath);
+        Diagnostics.info("Output file: " + output + (csvPath != null ? " and " + csvPath : ""));
+        Diagnostics.info("Vocabulary: " + vocabularyPath + " (" + vocabulary.size() + " tokens)");
+        Diagnostics.info("");
 
-        if (!Files.isDirectory(sourcePath)) {
-            throw new IOException("Source path is not a directory: " + dirPath);
+        Diagnostics.info("Scanning for Java files...");
+        long start = Profiler.now();
+        List<SourceFile> javaFiles = SourceProvider.forPath(Paths.get(sourcePath), filter).listSources();
+        Profiler.lap(Phase.LIST, start);
+
+        AstEncoder encoder = new AstEncoder(vocabulary, options.getCharset(), options.getThreads());
+        if (encoder.getThreads() > 1) {
+            Diagnostics.info("Encoding " + javaFiles.size() + " files with " + encoder.getThreads() + " threads...");
+        }
+        EncodingWriter writer = new EncodingWriter(output);
+        try {
+            encoder.encode(javaFiles, writer);
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        } finally {
+            Diagnostics.flush();
+        }
+        if (writer.getRowCount() == 0) {
+            writer.abort();
+            System.err.println("No Java files found or no classes encoded.");
+            System.exit(1);
         }
 
-        System.out.println("Scanning for Java files...");
+        long exportStart = Profiler.now();
+        writer.finish(vocabulary, csvPath);
+        vocabulary.save(vocabularyPath);
+        Profiler.lap(Phase.EXPORT, exportStart);
+        Diagnostics.info("\nEncoded " + writer.getRowCount() + " classes (" + writer.getTokenCount() + " tokens) to: "
+                + output);
+        Diagnostics.info("Vocabulary: " + vocabulary.size() + " tokens, " + (vocabulary.size() - vocabulary.getLoadedSize())
+                + " new, written to " + vocabularyPath);
+    }
 
-        // Find all .java files recursively
-        try (Stream<Path> paths = Files.walk(sourcePath)) {
-            paths.filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".java"))
-                    .forEach(javaFile -> {
-                        try {
-                            System.out.println("Processing: " + javaFile);
-                            List<ClassMetrics> metrics = JavaSourceParser.parseFile(javaFile);
-                            allMetrics.addAll(metrics);
+    /**
+     * Run all project versions of a manifest in this JVM on a shared worker pool and print a timing table.
+     *
+     * @throws IOException If the manifest cannot be read or a version failed
+     */
+    private static void runBatch(Path manifest, AnalysisOptions options, MetricsCache cache,
+                                 ExportOptions export) throws IOException {
+        List<BatchDriver.Job> jobs = BatchDriver.readManifest(manifest);
+        BatchDriver driver = new BatchDriver(options, cache, export);
+        Diagnostics.info("Manifest: " + manifest + " (" + jobs.size() + " versions)");
+        Diagnostics.info("");
 
-                            // Print each class found
-                            for (ClassMetrics m : metrics) {
-                                System.out.println("  - " + m.getFullyQualifiedName());
-                            }
+        long start = System.nanoTime();
+        int failed = driver.run(jobs);
+        Diagnostics.flush();
+        BatchDriver.printTimingTable(jobs, (System.nanoTime() - start) / 1_000_000);
+        if (failed > 0) {
+            throw new IOException(failed + " of " + jobs.size() + " versions failed");
+        }
+    }
 
-                        } catch (Exception e) {
-                            System.err.println("Error processing " + javaFile + ": " + e.getMessage());
-                        }
-                    });
+    /**
+     * Label the computed CSVs of a manifest's versions with the PROMISE defect counts and report the
+     * classes found on only one side.
+     *
+     * @param bugDataDir Defect data directory, or null for {@code ../bug-data} next to the manifest
+     * @param labeledDir Directory receiving the labeled CSVs and {@code unmatched.csv}
+     */
+    private static void runLabelJoin(Path manifest, Path bugDataDir, Path labeledDir,
+                                     AnalysisOptions options) throws IOException {
+        List<BatchDriver.Job> jobs = BatchDriver.readManifest(manifest);
+        bugDataDir = bugDataDir(manifest, bugDataDir);
+        System.out.println("Manifest: " + manifest + " (" + jobs.size() + " versions)");
+        System.out.println("Defect data: " + bugDataDir);
+
+        long start = System.nanoTime();
+        List<LabelJoin.Result> results = new LabelJoin(bugDataDir, labeledDir, options.getThreads()).run(jobs);
+        LabelJoin.printTable(results, (System.nanoTime() - start) / 1_000_000);
+
+        Path unmatched = labeledDir.resolve("unmatched.csv");
+        LabelJoin.writeUnmatched(results, unmatched);
+        System.out.println("Labeled files: " + labeledDir);
+        System.out.println("Unmatched classes: " + unmatched);
+        if (results.stream().allMatch(result -> result.getError() != null)) {
+            throw new IOException("No version could be labeled");
+        }
+    }
+
+    /**
+     * Compare the computed CSVs of a manifest's versions with the PROMISE reference values, print the
+     * report and write it as text and as CSV (the report path with extension {@code .csv}).
+     *
+     * @param bugDataDir    Defect data directory, or null for {@code ../bug-data} next to the manifest
+     * @param baseline      CSV of an earlier report to compare the exact-match rates with, or null
+     * @param maxRegression Largest accepted drop of a metric's exact-match rate, in percentage points
+     * @return false if no version could be compared or a metric regressed against the baseline
+     */
+    private static boolean runValidation(Path manifest, Path bugDataDir, Path report, int worstCount,
+                                         Path baseline, double maxRegression,
+                                         AnalysisOptions options) throws IOException {
+        List<BatchDriver.Job> jobs = BatchDriver.readManifest(manifest);
+        bugDataDir = bugDataDir(manifest, bugDataDir);
+        System.out.println("Manifest: " + manifest + " (" + jobs.size() + " versions)");
+        System.out.println("Defect data: " + bugDataDir);
+        System.out.println();
+
+        ValidationReport validation = new Validator(bugDataDir, options.getThreads(), worstCount).run(jobs);
+        validation.print(new PrintWriter(System.out));
+        validation.write(report);
+        String fileName = report.getFileName().toString();
+        Path csv = report.resolveSibling((fileName.contains(".")
+                ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName) + ".csv");
+        validation.writeCsv(csv);
+        System.out.println();
+        System.out.println("Validation report: " + report + " (CSV: " + csv + ")");
+
+        if (validation.getFailedCount() == jobs.size()) {
+            System.err.println("Error: No version could be compared");
+            return false;
+        }
+        if (baseline != null) {
+            List<String> regressions = validation.regressions(baseline, maxRegression);
+            for (String regression : regressions) {
+                System.err.println("Regression: " + regression);
+            }
+            if (!regressions.isEmpty()) {
+                return false;
+            }
+            System.out.println("No metric regressed against " + baseline);
         }
+        return true;
+    }
 
-        System.out.println("\nTotal classes found: " + allMetrics.size());
-        return allMetrics;
+    /**
+     * The given defect data directory, or {@code ../bug-data} next to the manifest.
+     */
+    private static Path bugDataDir(Path manifest, Path bugDataDir) {
+        return bugDataDir != null ? bugDataDir
+                : manifest.toAbsolutePath().getParent().resolve("../bug-data").normalize();
+    }
+
+    /**
+     * Calculate metrics for several versions at once, analyzing each distinct file content only once,
+     * and write one CSV per version.
+     *
+     * @param specs     Version sources as {@code PATH} or {@code NAME=PATH}; without a name, the directory
+     *                  or archive name (without extension) is used
+     * @param outputDir Directory receiving {@code NAME.csv} per version
+     */
+    private static void calculateVersions(List<String> specs, Path outputDir, SourceFilter filter,
+                                          AnalysisOptions options, MetricsCache cache,
+                                          ExportOptions export) throws IOException {
+        Map<String, List<SourceFile>> versions = new LinkedHashMap<>();
+        for (String spec : specs) {
+            int separator = spec.indexOf('=');
+            String sourcePath = separator > 0 ? spec.substring(separator + 1) : spec;
+            String name = separator > 0 ? spec.substring(0, separator) : versionName(Paths.get(sourcePath));
+            if (versions.containsKey(name)) {
+                throw new IOException("Duplicate version name " + name + "; name the versions as NAME=PATH");
+            }
+
+            Diagnostics.info("Scanning " + name + ": " + sourcePath);
+            long start = Profiler.now();
+            versions.put(name, SourceProvider.forPath(Paths.get(sourcePath), filter).listSources());
+            Profiler.lap(Phase.LIST, start);
+        }
+        Diagnostics.info("");
+
+        // All versions are written at the same time, so they share the sort buffer
+        int rowsPerVersion = export.rowsPerOutput(versions.size());
+        Map<String, SortedCSVWriter> writers = new LinkedHashMap<>();
+        Map<String, FileResultSink> sinks = new LinkedHashMap<>();
+        for (String name : versions.keySet()) {
+            SortedCSVWriter writer = export.newWriter(outputDir.resolve(name + ".csv"), rowsPerVersion);
+            writers.put(name, writer);
+            sinks.put(name, writer::add);
+        }
+
+        MultiVersionAnalyzer analyzer = new MultiVersionAnalyzer(options, cache);
+        try {
+            analyzer.analyze(versions, sinks);
+        } catch (IOException | RuntimeException e) {
+            for (SortedCSVWriter writer : writers.values()) {
+                writer.abort();
+            }
+            throw e;
+        } finally {
+            Diagnostics.flush();
+        }
+
+        Diagnostics.info("");
+        for (Map.Entry<String, SortedCSVWriter> version : writers.entrySet()) {
+            SortedCSVWriter writer = version.getValue();
+            Diagnostics.info(version.getKey() + ": " + versions.get(version.getKey()).size() + " files, "
+                    + writer.getRowCount() + " classes");
+            if (writer.getRowCount() > 0) {
+                long start = Profiler.now();
+                writer.close();
+                Profiler.lap(Phase.EXPORT, start);
+                Diagnostics.info("  exported to: " + writer.getOutputPath());
+            } else {
+                writer.abort();
+            }
+        }
+
+        int total = analyzer.getTotalFiles();
+        int unique = analyzer.getUniqueFiles();
+        Diagnostics.info("\nAnalyzed " + unique + " unique files out of " + total + " ("
+                + String.format(Locale.ROOT, "%.1f", total == 0 ? 0.0 : 100.0 * (total - unique) / total)
+                + "% shared between versions)");
+    }
+
+    /**
+     * Default version name: the directory or archive name without archive extension.
+     */
+    private static String versionName(Path sourcePath) {
+        String name = sourcePath.toAbsolutePath().normalize().getFileName().toString();
+        return name.replaceFirst("(?i)(\\.tar\\.gz|\\.tar\\.bz2|\\.tgz|\\.tbz2|\\.tar|\\.zip|\\.jar)$", "");
+    }
+
+    /**
+     * Calculate metrics for all Java files in a directory (recursively) or an archive.
+     *
+     * @param sourcePath Source directory or archive (.zip, .jar, .tar, .tar.gz, .tgz, .tar.bz2, .tbz2)
+     * @param filter     Include/exclude globs on paths relative to the directory or archive root
+     * @param options    Analysis settings (threads, lexical-only mode, source charset)
+     * @param cache      Cache of per-file results, or null
+     * @param writer     Receives the metrics of each file as soon as it has been analyzed
+     */
+    private static void calculateMetrics(String sourcePath, SourceFilter filter, AnalysisOptions options,
+                                         MetricsCache cache, SortedCSVWriter writer) throws IOException {
+        SourceProvider provider = SourceProvider.forPath(Paths.get(sourcePath), filter);
+
+        Diagnostics.info("Scanning for Java files...");
+
+        // Find all selected .java files
+        long start = Profiler.now();
+        List<SourceFile> javaFiles = provider.listSources();
+        Profiler.lap(Phase.LIST, start);
+
+        ParallelAnalyzer analyzer = new ParallelAnalyzer(options, cache);
+        if (analyzer.getThreads() > 1) {
+            Diagnostics.info("Analyzing " + javaFiles.size() + " files with " + analyzer.getThreads() + " threads...");
+        }
+        try {
+            analyzer.analyze(javaFiles, writer::add);
+        } finally {
+            Diagnostics.flush();
+        }
+
+        Diagnostics.info("\nTotal classes found: " + writer.getRowCount());
     }
 
     /**
      * Print usage information.
      */
     private static void printUsage() {
-        System.out.println("Usage: java -jar metrics-calculator.jar <source-directory> [output-file] [--full-format]");
+        System.out.println("Usage: java -jar metrics-calculator.jar <source-directory> [output-file] [--full-format] [--threads N] [--metrics LIST] [--encoding NAME]");
+        System.out.println("       [--include GLOB]... [--exclude GLOB]... [--cache DIR [--cache-size MB]] [--sort-buffer ROWS] [--gzip]");
+        System.out.println("       [--quiet | --verbose] [--problems FILE] [--profile FILE [--slow-files N]] [--type-index FILE]...");
+        System.out.println("   or: java -jar metrics-calculator.jar --bytecode <class-directory|jar|class-file> [output-file] [options]");
+        System.out.println("   or: java -jar metrics-calculator.jar --ast-encoding <source> [output-file] [--vocabulary FILE] [--ast-csv] [options]");
+        System.out.println("   or: java -jar metrics-calculator.jar --versions [NAME=]<source>... [--output-dir DIR] [options]");
+        System.out.println("   or: java -jar metrics-calculator.jar --batch MANIFEST [options]");
+        System.out.println("   or: java -jar metrics-calculator.jar --label MANIFEST [--bug-data DIR] [--output-dir DIR] [--threads N]");
+        System.out.println("   or: java -jar metrics-calculator.jar --validate MANIFEST [--bug-data DIR] [--report FILE] [--worst N]");
+        System.out.println("       [--baseline CSV [--max-regression POINTS]] [--threads N]");
         System.out.println();
         System.out.println("Arguments:");
-        System.out.println("  source-directory  Path to the Java source code directory");
+        System.out.println("  source-directory  Path to the Java source code directory, or an archive of it");
+        System.out.println("                    (.zip, .jar, .tar, .tar.gz, .tgz, .tar.bz2, .tbz2; read without extracting)");
         System.out.println("  output-file       (Optional) Path to output CSV file (default: output/metrics.csv)");
-        System.out.println("  --full-format     (Optional) Export with all 22 columns (unimplemented metrics as 0)");
+        System.out.println("  --full-format     (Optional) Export with all 22 columns (dam and moa are not calculated and");
+        System.out.println("                    written as 0; bug is 0 until --label fills it)");
+        System.out.println("  --threads N       (Optional) Parse files on N worker threads (0 = all processors, default: 1)");
+        System.out.println("  --metrics LIST    (Optional) Comma-separated columns to export:");
+        System.out.println("                    wmc, npm, loc, eloc, cloc, amc, max_cc, avg_cc,");
+        System.out.println("                    lcom, lcom3, cam, rfc, cbm, dit, noc, cbo, ca, ce, mfa, ic");
+        System.out.println("                    (loc/eloc/cloc only are computed by the token scanner without building an AST)");
+        System.out.println("  --encoding NAME   (Optional) Charset of files without a byte order mark (default: ISO-8859-1)");
+        System.out.println("  --type-index FILE (Optional, repeatable) Library type index written by HierarchyIndexBuilder from jars;");
+        System.out.println("                    DIT, MFA and IC follow superclasses through it as through the built-in JDK index");
+        System.out.println("  --include GLOB    (Optional, repeatable) Only analyze .java files whose relative path matches GLOB");
+        System.out.println("  --exclude GLOB    (Optional, repeatable) Skip .java files whose relative path matches GLOB");
+        System.out.println("                    (* matches within a directory, ** across directories, ? one character)");
+        System.out.println("  --bytecode        (Optional) Analyze compiled classes instead of sources: a class directory, a jar or zip");
+        System.out.println("                    (read through its memory-mapped central directory) or a class file; LOC and cohesion columns are 0");
+        System.out.println("  --ast-encoding    (Optional) Encode every class as the preorder sequence of its AST node types instead of");
+        System.out.println("                    calculating metrics, written as a compact varint file (default: output/ast-encoding.ast)");
+        System.out.println("  --vocabulary FILE (Optional) Token IDs shared between --ast-encoding runs; read if it exists and written");
+        System.out.println("                    back with the new tokens (default: vocabulary.csv next to the output file)");
+        System.out.println("  --ast-csv         (Optional) Also write the encodings as CSV (name,encoding) next to the output file");
+        System.out.println("  --versions        (Optional) Analyze several versions; every argument is a source directory or archive,");
+        System.out.println("                    optionally named as NAME=PATH. Files shared between versions are analyzed once");
+        System.out.println("  --batch MANIFEST  (Optional) Run every version listed in a manifest CSV (project,version,source,output");
+        System.out.println("                    [,include,exclude]) in one JVM on a shared pool, then print a timing table");
+        System.out.println("  --label MANIFEST  (Optional) Join the CSVs written by --batch MANIFEST with the PROMISE defect data and");
+        System.out.println("                    write them with the bug column filled to DIR/labeled, where DIR is --output-dir;");
+        System.out.println("                    classes found on one side only are listed in DIR/labeled/unmatched.csv");
+        System.out.println("  --validate MANIFEST (Optional) Compare every metric column of the CSVs written by --batch MANIFEST with");
+        System.out.println("                    the PROMISE reference values: MAE, exact and within-5% matches, worst offenders");
+        System.out.println("  --report FILE     (Optional) Text report of --validate, also written as CSV with extension .csv");
+        System.out.println("                    (default: DIR/validation.txt, where DIR is --output-dir)");
+        System.out.println("  --worst N         (Optional) Worst offenders listed per metric (default: " + Validator.DEFAULT_WORST + ")");
+        System.out.println("  --baseline CSV    (Optional) Validation CSV of an earlier run; exit with code 1 if the exact-match rate");
+        System.out.println("                    of a metric dropped by more than --max-regression points (default: " + DEFAULT_MAX_REGRESSION + ")");
+        System.out.println("  --bug-data DIR    (Optional) Defect data directory, one subdirectory per project (default: ../bug-data");
+        System.out.println("                    next to the manifest)");
+        System.out.println("  --output-dir DIR  (Optional) Directory for the per-version NAME.csv files (default: output)");
+        System.out.println("  --cache DIR       (Optional) Reuse per-file results of unchanged files from DIR across runs");
+        System.out.println("  --cache-size MB   (Optional) Size limit of the cache; least recently used entries are evicted (default: " + DEFAULT_CACHE_SIZE_MB + ")");
+        System.out.println("  --sort-buffer ROWS (Optional) Rows kept in memory while sorting; more are spilled to sorted runs on disk");
+        System.out.println("                    next to the output and merged at the end (default: " + SortedCSVWriter.DEFAULT_MAX_ROWS_IN_MEMORY + ")");
+        System.out.println("  --gzip            (Optional) Write gzip-compressed CSV files (.csv.gz); also used for output files ending in .gz");
+        System.out.println("  --quiet           (Optional) Only print errors and warnings while analyzing (no progress bar)");
+        System.out.println("  --verbose         (Optional) List every file with its classes and every parse problem");
+        System.out.println("  --problems FILE   (Optional) Write all parse problems to FILE (CSV: file,line,column,severity,id,message)");
+        System.out.println("  --profile FILE    (Optional) Time the phases (list, cache, read, parse, visit, loc, export) and every file,");
+        System.out.println("                    then print the profile and write it to FILE. Also emits flight recorder events");
+        System.out.println("  --slow-files N    (Optional) Number of slowest files listed in the profile (default: " + Profiler.DEFAULT_SLOW_FILES + ")");
         System.out.println();
         System.out.println("Examples:");
         System.out.println("  # Basic usage");
@@ -126,11 +786,39 @@ public class MetricsCalculatorMain {
         System.out.println("  # Specify output file");
         System.out.println("  java -jar metrics-calculator.jar ../source\\ code/ant/jakarta-ant-1.3/src/main output/ant-1.3.csv");
         System.out.println();
+        System.out.println("  # Use all processors");
+        System.out.println("  java -jar metrics-calculator.jar ../source\\ code/ant/apache-ant-1.7.0/src/main output/ant-1.7.csv --threads 0");
+        System.out.println();
+        System.out.println("  # Analyze an archive without extracting it");
+        System.out.println("  java -jar metrics-calculator.jar ../source\\ code/log4j/log4j-1_2final.zip output/log4j-1.2.csv --include \"*/src/java/**\"");
+        System.out.println();
+        System.out.println("  # Five Ant releases in one run, one CSV per release");
+        System.out.println("  java -jar metrics-calculator.jar --versions ../source\\ code/ant/*-src.zip ../source\\ code/ant/apache-ant-1.*/ --include \"**/src/main/**\"");
+        System.out.println();
+        System.out.println("  # The whole PROMISE corpus on all processors");
+        System.out.println("  java -jar metrics-calculator.jar --batch promise-corpus.csv --threads 0");
+        System.out.println();
+        System.out.println("  # AST encodings of two Ant releases with one vocabulary");
+        System.out.println("  java -jar metrics-calculator.jar --ast-encoding ../source\\ code/ant/jakarta-ant-1.3/src/main output/ant-1.3.ast --ast-csv --threads 0");
+        System.out.println("  java -jar metrics-calculator.jar --ast-encoding ../source\\ code/ant/apache-ant-1.7.0/src/main output/ant-1.7.ast --ast-csv --threads 0");
+        System.out.println();
+        System.out.println("  # Fill the bug column of the corpus outputs");
+        System.out.println("  java -jar metrics-calculator.jar --label promise-corpus.csv");
+        System.out.println();
+        System.out.println("  # Check the corpus outputs against the PROMISE values and an earlier report");
+        System.out.println("  java -jar metrics-calculator.jar --validate promise-corpus.csv --baseline validation-baseline.csv");
+        System.out.println();
         System.out.println("  # Using Maven exec plugin");
         System.out.println("  mvn exec:java -Dexec.args=\"../source\\ code/ant/jakarta-ant-1.3/src/main\"");
         System.out.println();
         System.out.println("Calculated Metrics:");
+        System.out.println("  - WMC     : Weighted Methods per Class (sum of cyclomatic complexity)");
         System.out.println("  - NPM     : Number of Public Methods");
         System.out.println("  - LOC     : Lines of Code (excluding blanks and comments)");
+        System.out.println("  - ELOC    : Lines of Code without nested classes");
+        System.out.println("  - CLOC    : Comment-only lines");
+        System.out.println("  - AMC     : Average Method Complexity");
+        System.out.println("  - MAX_CC  : Maximum Cyclomatic Complexity");
+        System.out.println("  - AVG_CC  : Average Cyclomatic Complexity");
     }
 }
@@ -0,0 +1,74 @@
+package org.promise.metrics.analysis;
+
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.source.SourceLoader;
+
+import java.nio.charset.Charset;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Settings of an analysis run.
+ */
+public class AnalysisOptions {
+    private int threads = 1;                               // 1 = sequential, below 1 = all processors
+    private boolean lexicalOnly;                           // scan tokens instead of building ASTs
+    private Charset charset = SourceLoader.DEFAULT_CHARSET; // for files without a byte order mark
+    private Set<Metric> metrics = EnumSet.allOf(Metric.class); // needed by the output; others may be skipped
+    private NameTable names = NameTable.shared();          // receives the class and type names
+
+    public AnalysisOptions() {
+    }
+
+    /**
+     * Copy of other settings, e.g. to give one job of a batch its own name table.
+     */
+    public AnalysisOptions(AnalysisOptions other) {
+        this.threads = other.threads;
+        this.lexicalOnly = other.lexicalOnly;
+        this.charset = other.charset;
+        this.metrics = other.metrics;
+        this.names = other.names;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isLexicalOnly() {
+        return lexicalOnly;
+    }
+
+    public void setLexicalOnly(boolean lexicalOnly) {
+        this.lexicalOnly = lexicalOnly;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public Set<Metric> getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Set<Metric> metrics) {
+        this.metrics = metrics;
+    }
+
+    public NameTable getNames() {
+        return names;
+    }
+
+    public void setNames(NameTable names) {
+        this.names = names;
+    }
+}
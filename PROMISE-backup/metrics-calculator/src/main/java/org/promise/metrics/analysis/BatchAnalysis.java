@@ -0,0 +1,22 @@
+package org.promise.metrics.analysis;
+
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.source.SourceFile;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Work done on one batch of files by a {@link ParallelAnalyzer}, on the worker thread that runs the batch.
+ * Called concurrently for different batches.
+ */
+public interface BatchAnalysis {
+
+    /**
+     * @param files   Files of the batch
+     * @param indices Position of each file in the analyzed list
+     * @return One list of classes per file, in the order of {@code files}
+     * @throws IOException If the results cannot be stored; the remaining batches are still analyzed
+     */
+    List<List<ClassMetrics>> analyze(List<SourceFile> files, int[] indices) throws IOException;
+}
@@ -0,0 +1,302 @@
+package org.promise.metrics.analysis;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.promise.metrics.cache.MetricsCache;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.export.ExportOptions;
+import org.promise.metrics.export.SortedCSVWriter;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceFilter;
+import org.promise.metrics.source.SourceProvider;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs every project version of a manifest in one JVM on a shared work-stealing pool.
+ *
+ * Each version is a task that lists its sources and forks its parse batches into the same pool, so the
+ * batches of big and small versions interleave and no core idles while another version is still running.
+ * Rows stream into a {@link SortedCSVWriter} per version, whose CSV is written when the version completes.
+ * Every version names its classes in a {@link NameTable} of its own, which is dropped with its writer, so
+ * the names of a long manifest do not accumulate over the run.
+ *
+ * The manifest is a CSV file with the header {@code project,version,source,output} and optional
+ * {@code include} and {@code exclude} columns holding {@code ;}-separated globs. Relative paths are
+ * resolved against the manifest's directory; lines starting with {@code #} are comments.
+ */
+public class BatchDriver {
+
+    /**
+     * One project version of the manifest, with its timings once run.
+     */
+    public static class Job {
+        private final String project;
+        private final String version;
+        private final Path source;
+        private final Path output;
+        private final SourceFilter filter;
+
+        private int files;
+        private long bytes;
+        private int classes;
+        private long listMillis;
+        private long analyzeMillis;
+        private long exportMillis;
+        private String error;
+
+        public Job(String project, String version, Path source, Path output, SourceFilter filter) {
+            this.project = project;
+            this.version = version;
+            this.source = source;
+            this.output = output;
+            this.filter = filter;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public SourceFilter getFilter() {
+            return filter;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Total size of the listed sources in bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getClasses() {
+            return classes;
+        }
+
+        public long getListMillis() {
+            return listMillis;
+        }
+
+        public long getAnalyzeMillis() {
+            return analyzeMillis;
+        }
+
+        public long getExportMillis() {
+            return exportMillis;
+        }
+
+        public long getTotalMillis() {
+            return listMillis + analyzeMillis + exportMillis;
+        }
+
+        /**
+         * Error message if the job failed, otherwise null.
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final AnalysisOptions options;
+    private final MetricsCache cache;
+    private final ExportOptions exportOptions;
+    private final int threads;
+
+    /**
+     * @param options       Analysis settings; the thread count sizes the shared pool
+     * @param cache         Cache of per-file results, or null
+     * @param exportOptions CSV settings; the sort buffer is shared by all versions
+     */
+    public BatchDriver(AnalysisOptions options, MetricsCache cache, ExportOptions exportOptions) {
+        this.options = options;
+        this.cache = cache;
+        this.exportOptions = exportOptions;
+        this.threads = new ParallelAnalyzer(options).getThreads();
+    }
+
+    /**
+     * Read the jobs of a manifest.
+     *
+     * @param manifest Path to the manifest CSV
+     * @throws IOException If the manifest cannot be read or lacks a required column
+     */
+    public static List<Job> readManifest(Path manifest) throws IOException {
+        Path baseDir = manifest.toAbsolutePath().getParent();
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+                .setHeader()
+                .setSkipHeaderRecord(true)
+                .setCommentMarker('#')
+                .setIgnoreEmptyLines(true)
+                .setIgnoreSurroundingSpaces(true)
+                .build();
+
+        List<Job> jobs = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8);
+             CSVParser parser = new CSVParser(reader, format)) {
+            for (String column : new String[]{"project", "version", "source", "output"}) {
+                if (!parser.getHeaderMap().containsKey(column)) {
+                    throw new IOException("Manifest " + manifest + " has no '" + column + "' column");
+                }
+            }
+
+            for (CSVRecord record : parser) {
+                SourceFilter filter = new SourceFilter();
+                for (String glob : globs(record, "include")) {
+                    filter.addInclude(glob);
+                }
+                for (String glob : globs(record, "exclude")) {
+                    filter.addExclude(glob);
+                }
+                jobs.add(new Job(record.get("project"), record.get("version"),
+                        baseDir.resolve(record.get("source")), baseDir.resolve(record.get("output")), filter));
+            }
+        }
+        return jobs;
+    }
+
+    private static List<String> globs(CSVRecord record, String column) {
+        List<String> globs = new ArrayList<>();
+        if (record.isMapped(column) && record.isSet(column)) {
+            for (String glob : record.get(column).split(";")) {
+                if (!glob.trim().isEmpty()) {
+                    globs.add(glob.trim());
+                }
+            }
+        }
+        return globs;
+    }
+
+    /**
+     * Run all jobs on one pool. A failing job is recorded and does not stop the others.
+     *
+     * @return Number of failed jobs
+     */
+    public int run(List<Job> jobs) {
+        // Versions may be in flight at the same time, so they share the sort buffer
+        int rowsPerVersion = exportOptions.rowsPerOutput(jobs.size());
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Job job : jobs) {
+                tasks.add(pool.submit(() -> runJob(job, pool, rowsPerVersion)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        int failed = 0;
+        for (Job job : jobs) {
+            if (job.error != null) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private void runJob(Job job, ForkJoinPool pool, int rowsInMemory) {
+        AnalysisOptions jobOptions = new AnalysisOptions(options);
+        jobOptions.setNames(new NameTable());
+        SortedCSVWriter writer = exportOptions.newWriter(job.output, rowsInMemory, jobOptions.getNames());
+        try {
+            long start = System.nanoTime();
+            List<SourceFile> javaFiles = SourceProvider.forPath(job.source, job.filter).listSources();
+            job.files = javaFiles.size();
+            for (SourceFile javaFile : javaFiles) {
+                job.bytes += javaFile.getSize();
+            }
+            long listed = System.nanoTime();
+            job.listMillis = (listed - start) / 1_000_000;
+            Profiler.lap(Phase.LIST, start);
+
+            new ParallelAnalyzer(jobOptions, cache).analyze(javaFiles, pool, writer::add);
+            job.classes = writer.getRowCount();
+            long analyzed = System.nanoTime();
+            job.analyzeMillis = (analyzed - listed) / 1_000_000;
+
+            // The merge writes the CSV; export time is what remains after the last file was analyzed
+            if (job.classes > 0) {
+                writer.close();
+                Diagnostics.info("Exported " + job.classes + " class metrics to: " + writer.getOutputPath());
+            } else {
+                writer.abort();
+            }
+            job.exportMillis = (System.nanoTime() - analyzed) / 1_000_000;
+            Profiler.lap(Phase.EXPORT, analyzed);
+        } catch (Exception e) {
+            writer.abort();
+            job.error = e.getMessage() != null ? e.getMessage() : e.toString();
+            Diagnostics.error("Error in " + job.project + " " + job.version + ": " + job.error);
+        }
+    }
+
+    /**
+     * Print the per-version timing table.
+     *
+     * @param jobs       Jobs after {@link #run}
+     * @param wallMillis Wall-clock time of the whole run
+     */
+    public static void printTimingTable(List<Job> jobs, long wallMillis) {
+        String rowFormat = "%-10s %-16s %7s %8s %9s %11s %10s %10s%n";
+        System.out.println("\n=== Batch Timing ===");
+        System.out.printf(Locale.ROOT, rowFormat,
+                "project", "version", "files", "classes", "list ms", "analyze ms", "export ms", "total ms");
+
+        long sumMillis = 0;
+        int files = 0;
+        int classes = 0;
+        int failed = 0;
+        for (Job job : jobs) {
+            if (job.error != null) {
+                failed++;
+                System.out.printf(Locale.ROOT, "%-10s %-16s FAILED: %s%n", job.project, job.version, job.error);
+                continue;
+            }
+            System.out.printf(Locale.ROOT, rowFormat, job.project, job.version, job.files, job.classes,
+                    job.listMillis, job.analyzeMillis, job.exportMillis, job.getTotalMillis());
+            sumMillis += job.getTotalMillis();
+            files += job.files;
+            classes += job.classes;
+        }
+
+        System.out.printf(Locale.ROOT, rowFormat, "all", jobs.size() - failed + " versions", files, classes,
+                "", "", "", sumMillis);
+        System.out.println("Wall-clock time: " + wallMillis + " ms"
+                + (wallMillis > 0 ? String.format(Locale.ROOT, " (%.1fx overlap of version times)",
+                (double) sumMillis / wallMillis) : ""));
+        if (failed > 0) {
+            System.out.println("Failed versions: " + failed);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.promise.metrics.analysis;
+
+import org.promise.metrics.model.ClassMetrics;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives the results of each file as soon as it has been analyzed.
+ * Called concurrently from worker threads, in no particular file order.
+ */
+public interface FileResultSink {
+
+    /**
+     * @param fileIndex Position of the file in the analyzed list
+     * @param metrics   Metrics of the file's classes, in source order
+     * @throws IOException If the results cannot be stored
+     */
+    void accept(int fileIndex, List<ClassMetrics> metrics) throws IOException;
+}
@@ -0,0 +1,135 @@
+package org.promise.metrics.analysis;
+
+import org.promise.metrics.cache.MetricsCache;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Analyzes several versions of a project in one run.
+ * Every file is fingerprinted by its content; each distinct content is analyzed once and its results
+ * are copied to every version containing it, so the parse work scales with the number of unique files
+ * rather than the total over all versions.
+ */
+public class MultiVersionAnalyzer {
+
+    private final ParallelAnalyzer analyzer;
+
+    private int totalFiles;
+    private int uniqueFiles;
+
+    /**
+     * @param options Analysis settings
+     * @param cache   Cache of per-file results, or null
+     */
+    public MultiVersionAnalyzer(AnalysisOptions options, MetricsCache cache) {
+        this.analyzer = new ParallelAnalyzer(options, cache);
+    }
+
+    /**
+     * Analyze all versions, handing the results of every file to the sink of its version as soon as
+     * its content has been analyzed.
+     *
+     * @param versions Source files per version name
+     * @param sinks    Result sink per version name; file indices refer to the version's own file list
+     * @throws IOException If a sink fails
+     */
+    public void analyze(Map<String, List<SourceFile>> versions, Map<String, FileResultSink> sinks)
+            throws IOException {
+        List<SourceFile> allFiles = new ArrayList<>();
+        List<FileResultSink> sinkOf = new ArrayList<>();
+        List<Integer> localIndex = new ArrayList<>();
+        for (Map.Entry<String, List<SourceFile>> version : versions.entrySet()) {
+            FileResultSink sink = sinks.get(version.getKey());
+            for (int i = 0; i < version.getValue().size(); i++) {
+                allFiles.add(version.getValue().get(i));
+                sinkOf.add(sink);
+                localIndex.add(i);
+            }
+        }
+        totalFiles = allFiles.size();
+
+        long start = Profiler.now();
+        Object[] keys = fingerprintAll(allFiles);
+        Profiler.lap(Phase.CACHE, start);
+
+        // Group the files of all versions by content; the first file of each group is analyzed
+        Map<Object, List<Integer>> filesByKey = new LinkedHashMap<>();
+        for (int i = 0; i < allFiles.size(); i++) {
+            filesByKey.computeIfAbsent(keys[i], k -> new ArrayList<>()).add(i);
+        }
+        List<SourceFile> unique = new ArrayList<>(filesByKey.size());
+        List<List<Integer>> occurrences = new ArrayList<>(filesByKey.size());
+        for (List<Integer> files : filesByKey.values()) {
+            unique.add(allFiles.get(files.get(0)));
+            occurrences.add(files);
+            for (int i = 1; i < files.size(); i++) {
+                allFiles.get(files.get(i)).release();
+            }
+        }
+        uniqueFiles = unique.size();
+
+        if (analyzer.getThreads() > 1) {
+            Diagnostics.info("Analyzing " + uniqueFiles + " unique files with " + analyzer.getThreads() + " threads...");
+        }
+
+        // Each occurrence gets its own copies, as later stages may set version-specific values
+        analyzer.analyze(unique, (uniqueIndex, metrics) -> {
+            for (int file : occurrences.get(uniqueIndex)) {
+                List<ClassMetrics> copies = new ArrayList<>(metrics.size());
+                for (ClassMetrics classMetrics : metrics) {
+                    copies.add(new ClassMetrics(classMetrics));
+                }
+                sinkOf.get(file).accept(localIndex.get(file), copies);
+            }
+        });
+    }
+
+    /**
+     * Content keys of all files, computed in parallel. Files that cannot be read get a key of their own,
+     * so the parser reports them individually.
+     */
+    private Object[] fingerprintAll(List<SourceFile> files) {
+        Object[] keys = new Object[files.size()];
+        ForkJoinPool pool = new ForkJoinPool(analyzer.getThreads());
+        try {
+            pool.submit(() -> IntStream.range(0, files.size()).parallel().forEach(i -> {
+                SourceFile file = files.get(i);
+                try {
+                    keys[i] = ByteBuffer.wrap(file.fingerprint(SourceLoader.forCurrentThread()));
+                } catch (Exception e) {
+                    keys[i] = file;
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        return keys;
+    }
+
+    /**
+     * Number of files over all versions in the last run.
+     */
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    /**
+     * Number of distinct file contents analyzed in the last run.
+     */
+    public int getUniqueFiles() {
+        return uniqueFiles;
+    }
+}
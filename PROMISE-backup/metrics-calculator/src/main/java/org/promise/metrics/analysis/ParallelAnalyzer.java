@@ -0,0 +1,294 @@
+package org.promise.metrics.analysis;
+
+import org.promise.metrics.cache.MetricsCache;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.parser.JavaSourceParser;
+import org.promise.metrics.parser.LexicalSourceParser;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parses Java source files on a work-stealing fork-join pool.
+ * Files are scheduled largest first so that big files do not end up in the tail of the run
+ * (tar entries in archive order, so the workers follow the archive reader). Each file's results are
+ * handed to a {@link FileResultSink} with the file's input index, so the output does not depend on how
+ * many threads are used. With a single thread the files are processed in input order on the calling thread.
+ *
+ * With a {@link MetricsCache}, files whose content was analyzed before are served from the cache
+ * and only the remaining files of each batch are parsed. Other work on source files (such as AST encoding)
+ * reuses the scheduling with a {@link BatchAnalysis} of its own.
+ */
+public class ParallelAnalyzer {
+
+    /**
+     * Maximum number of files parsed in one batch.
+     */
+    public static final int MAX_BATCH_FILES = 32;
+
+    /**
+     * Batches are closed once they reach this many bytes of source, so large files are parsed on their own.
+     */
+    public static final long MAX_BATCH_BYTES = 256 * 1024;
+
+    private final int threads;
+    private final AnalysisOptions options;
+    private final MetricsCache cache;
+    private final BatchAnalysis analysis;
+
+    /**
+     * @param options Analysis settings (thread count below 1 means "all available processors")
+     */
+    public ParallelAnalyzer(AnalysisOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * @param options Analysis settings (thread count below 1 means "all available processors")
+     * @param cache   Cache of per-file results, or null to parse every file
+     */
+    public ParallelAnalyzer(AnalysisOptions options, MetricsCache cache) {
+        this.threads = options.getThreads() < 1 ? Runtime.getRuntime().availableProcessors() : options.getThreads();
+        this.options = options;
+        this.cache = cache;
+        this.analysis = (files, indices) -> cache != null ? analyzeCached(files) : analyzeFiles(files);
+    }
+
+    /**
+     * @param threads  Worker threads (below 1 means all available processors)
+     * @param analysis Work done on each batch of files instead of calculating metrics
+     */
+    public ParallelAnalyzer(int threads, BatchAnalysis analysis) {
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.options = null;
+        this.cache = null;
+        this.analysis = analysis;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Analyze the given files in parallel and hand each file's results to a sink as soon as they are ready.
+     * With a single thread, files are processed in input order on the calling thread.
+     *
+     * @param javaFiles Files to analyze
+     * @param sink      Receives the results of each file
+     * @throws IOException If the sink fails; the remaining files are still analyzed
+     */
+    public void analyze(List<SourceFile> javaFiles, FileResultSink sink) throws IOException {
+        if (threads == 1) {
+            Diagnostics.expectFiles(javaFiles.size());
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            for (int start = 0; start < javaFiles.size(); start += MAX_BATCH_FILES) {
+                int[] batch = new int[Math.min(MAX_BATCH_FILES, javaFiles.size() - start)];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = start + i;
+                }
+                analyzeBatch(javaFiles, batch, sink, failure);
+            }
+            rethrow(failure);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            analyze(javaFiles, pool, sink);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Analyze the given files on a shared pool, largest first, handing each file's results to a sink.
+     * One task per pool thread takes the batches from a shared queue in order, so the order holds whatever
+     * order the pool runs the tasks in. When called from a task of {@code pool}, the tasks are forked into
+     * the calling worker's queue and the worker keeps executing tasks (of this or other analyses) while it waits.
+     *
+     * @param javaFiles Files to analyze
+     * @param pool      Pool to run the batches on
+     * @param sink      Receives the results of each file
+     * @throws IOException If the sink fails; the remaining files are still analyzed
+     */
+    public void analyze(List<SourceFile> javaFiles, ForkJoinPool pool, FileResultSink sink) throws IOException {
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Diagnostics.expectFiles(javaFiles.size());
+
+        List<int[]> batches = largestFirstBatches(javaFiles);
+        AtomicInteger next = new AtomicInteger();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = Math.min(pool.getParallelism(), batches.size()); i > 0; i--) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (int batch = next.getAndIncrement(); batch < batches.size(); batch = next.getAndIncrement()) {
+                    analyzeBatch(javaFiles, batches.get(batch), sink, failure);
+                }
+            }));
+        }
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            for (ForkJoinTask<?> task : tasks) {
+                pool.execute(task);
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+
+        rethrow(failure);
+    }
+
+    private static void rethrow(AtomicReference<IOException> failure) throws IOException {
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Analyze one batch and hand each file's results to the sink. Finished files are reported to
+     * {@link Diagnostics}, whose own thread does the console output.
+     */
+    private void analyzeBatch(List<SourceFile> javaFiles, int[] batch, FileResultSink sink,
+                              AtomicReference<IOException> failure) {
+        List<SourceFile> batchFiles = new ArrayList<>(batch.length);
+        for (int index : batch) {
+            batchFiles.add(javaFiles.get(index));
+        }
+
+        List<List<ClassMetrics>> batchMetrics;
+        try {
+            batchMetrics = analysis.analyze(batchFiles, batch);
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+            batchMetrics = Collections.nCopies(batch.length, Collections.emptyList());
+        }
+        for (int i = 0; i < batch.length; i++) {
+            List<ClassMetrics> metrics = batchMetrics.get(i);
+            Diagnostics.fileDone(batchFiles.get(i).getName(), metrics);
+
+            long start = Profiler.now();
+            try {
+                sink.accept(batch[i], metrics);
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            }
+            Profiler.lap(Phase.EXPORT, start);
+        }
+    }
+
+    private List<List<ClassMetrics>> analyzeFiles(List<SourceFile> batchFiles) {
+        return options.isLexicalOnly()
+                ? scanFiles(batchFiles)
+                : JavaSourceParser.parseSources(batchFiles, options.getCharset(), options.getMetrics(),
+                        options.getNames());
+    }
+
+    /**
+     * Serve the files of a batch from the cache where possible, analyze the rest and cache their results.
+     * Files without classes (or that failed) are not cached, so read errors are retried on the next run.
+     */
+    private List<List<ClassMetrics>> analyzeCached(List<SourceFile> batchFiles) {
+        SourceLoader loader = SourceLoader.forCurrentThread();
+        List<List<ClassMetrics>> batchMetrics = new ArrayList<>(Collections.nCopies(batchFiles.size(), null));
+        byte[][] fingerprints = new byte[batchFiles.size()][];
+
+        List<SourceFile> missed = new ArrayList<>();
+        List<Integer> missedIndices = new ArrayList<>();
+        long start = Profiler.now();
+        for (int i = 0; i < batchFiles.size(); i++) {
+            try {
+                fingerprints[i] = batchFiles.get(i).fingerprint(loader);
+                batchMetrics.set(i, cache.get(fingerprints[i], options.getNames()));
+                if (batchMetrics.get(i) != null) {
+                    batchFiles.get(i).release();
+                }
+            } catch (Exception e) {
+                // Unreadable: leave it to the parser, which reports the error
+            }
+            if (batchMetrics.get(i) == null) {
+                missed.add(batchFiles.get(i));
+                missedIndices.add(i);
+            }
+        }
+
+        Profiler.lap(Phase.CACHE, start);
+
+        if (!missed.isEmpty()) {
+            List<List<ClassMetrics>> parsed = analyzeFiles(missed);
+            start = Profiler.now();
+            for (int i = 0; i < parsed.size(); i++) {
+                int index = missedIndices.get(i);
+                List<ClassMetrics> metrics = parsed.get(i);
+                batchMetrics.set(index, metrics);
+                if (fingerprints[index] != null && !metrics.isEmpty()) {
+                    cache.put(fingerprints[index], metrics);
+                }
+            }
+            Profiler.lap(Phase.CACHE, start);
+        }
+        return batchMetrics;
+    }
+
+    private List<List<ClassMetrics>> scanFiles(List<SourceFile> batchFiles) {
+        List<List<ClassMetrics>> batchMetrics = new ArrayList<>(batchFiles.size());
+        for (SourceFile javaFile : batchFiles) {
+            try {
+                batchMetrics.add(LexicalSourceParser.parseFile(javaFile, options.getCharset(), options.getNames()));
+            } catch (Exception e) {
+                Diagnostics.error("Error processing " + javaFile.getName() + ": " + e.getMessage());
+                batchMetrics.add(Collections.emptyList());
+            }
+        }
+        return batchMetrics;
+    }
+
+    /**
+     * Group file indices into parse batches, ordered by descending file size. Sources that are read
+     * sequentially (tar entries) keep their list order, so the workers follow the archive reader.
+     */
+    private static List<int[]> largestFirstBatches(List<SourceFile> javaFiles) {
+        long[] sizes = new long[javaFiles.size()];
+        Integer[] order = new Integer[javaFiles.size()];
+        boolean sequential = false;
+        for (int i = 0; i < sizes.length; i++) {
+            order[i] = i;
+            sizes[i] = javaFiles.get(i).getSize();
+            sequential |= javaFiles.get(i).isSequential();
+        }
+        if (!sequential) {
+            Arrays.sort(order, Comparator.comparingLong((Integer i) -> sizes[i]).reversed());
+        }
+
+        List<int[]> batches = new ArrayList<>();
+        int start = 0;
+        while (start < order.length) {
+            int end = start;
+            long bytes = 0;
+            while (end < order.length && end - start < MAX_BATCH_FILES && bytes < MAX_BATCH_BYTES) {
+                bytes += sizes[order[end]];
+                end++;
+            }
+            int[] batch = new int[end - start];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = order[start + i];
+            }
+            batches.add(batch);
+            start = end;
+        }
+        return batches;
+    }
+}
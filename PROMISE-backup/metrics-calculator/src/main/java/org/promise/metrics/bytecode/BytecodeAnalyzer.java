@@ -0,0 +1,400 @@
+package org.promise.metrics.bytecode;
+
+import org.promise.metrics.analysis.FileResultSink;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.model.TypeReferences;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFilter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Inflater;
+
+/**
+ * Analysis backend for compiled classes: class directories, jars and single class files.
+ *
+ * Each class file is parsed in place by {@link ClassFile} and turned into the same {@link ClassMetrics}
+ * as the source backend, from the method table, the bytecode and the constant pool:
+ * <ul>
+ *   <li>NPM: public methods, constructors included</li>
+ *   <li>WMC, MAX_CC, AVG_CC, AMC: cyclomatic complexity of each method, 1 + conditional branches + switch
+ *       targets other than the default + catch handlers</li>
+ *   <li>RFC: distinct own methods and invoked methods; CBM: methods invoking an inherited method</li>
+ *   <li>Type references for the project-wide type graph (DIT, NOC, CBO, CA, CE, MFA, IC): superclass,
+ *       interfaces, all classes of the constant pool and the types in field and method descriptors</li>
+ * </ul>
+ * Names are fully qualified, so the type graph needs no imports. Line counts and cohesion metrics need the
+ * source and are 0. As in the source backend, anonymous, local and synthetic classes are not reported;
+ * bridge, synthetic and static initializer methods are not counted.
+ */
+public class BytecodeAnalyzer {
+
+    private static final int[] NONE = new int[0];
+
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int WIDE = 0xc4;
+    private static final int IINC = 0x84;
+
+    /**
+     * Length of each instruction by opcode, 0 for variable-length and invalid opcodes.
+     */
+    private static final byte[] INSTRUCTION_LENGTHS = new byte[256];
+
+    static {
+        for (int op = 0x00; op <= 0xc9; op++) {
+            INSTRUCTION_LENGTHS[op] = 1;
+        }
+        set(2, 0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a, 0xa9, 0xbc);
+        set(3, 0x11, 0x13, 0x14, 0x84, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7);
+        for (int op = 0x99; op <= 0xa8; op++) {
+            INSTRUCTION_LENGTHS[op] = 3;    // if<cond>, if_<cmp>, goto, jsr
+        }
+        set(4, 0xc5);
+        set(5, 0xb9, 0xba, 0xc8, 0xc9);
+        set(0, TABLESWITCH, LOOKUPSWITCH, WIDE);
+    }
+
+    private static void set(int length, int... opcodes) {
+        for (int op : opcodes) {
+            INSTRUCTION_LENGTHS[op] = (byte) length;
+        }
+    }
+
+    private final SourceFilter filter;
+
+    /**
+     * @param filter Selects class files by their path relative to the directory or archive root
+     */
+    public BytecodeAnalyzer(SourceFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Analyze all class files of a directory tree, jar, zip file or single class file, in entry order.
+     *
+     * @return Number of class files read
+     * @throws IOException if the input cannot be read
+     */
+    public int analyze(Path input, FileResultSink sink) throws IOException {
+        if (Files.isDirectory(input)) {
+            return analyzeDirectory(input, sink);
+        }
+        String name = input.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".class")) {
+            Diagnostics.expectFiles(1);
+            analyzeClass(input.toString(), ByteBuffer.wrap(Files.readAllBytes(input)), 0, Profiler.now(), sink);
+            return 1;
+        }
+        return analyzeJar(input, sink);
+    }
+
+    private int analyzeDirectory(Path root, FileResultSink sink) throws IOException {
+        long start = Profiler.now();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(file -> isClassFile(root.relativize(file).toString().replace('\\', '/'))
+                    && Files.isRegularFile(file)).collect(Collectors.toList());
+        }
+        Profiler.lap(Phase.LIST, start);
+        Diagnostics.expectFiles(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            start = Profiler.now();
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            analyzeClass(root.relativize(file).toString(), bytes, i, Profiler.lap(Phase.READ, start), sink);
+        }
+        return files.size();
+    }
+
+    private int analyzeJar(Path jarPath, FileResultSink sink) throws IOException {
+        long start = Profiler.now();
+        Inflater inflater = new Inflater(true);
+        try (MappedJar jar = MappedJar.open(jarPath)) {
+            List<Integer> entries = new ArrayList<>();
+            for (int i = 0; i < jar.size(); i++) {
+                if (isClassFile(jar.getName(i)) && !jar.getName(i).startsWith("META-INF/")) {
+                    entries.add(i);
+                }
+            }
+            Profiler.lap(Phase.LIST, start);
+            Diagnostics.expectFiles(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                int entry = entries.get(i);
+                start = Profiler.now();
+                ByteBuffer bytes = jar.read(entry, inflater);
+                analyzeClass(jar.getName(entry), bytes, i, Profiler.lap(Phase.READ, start), sink);
+            }
+            return entries.size();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private boolean isClassFile(String relativePath) {
+        return relativePath.endsWith(".class") && !relativePath.endsWith("module-info.class")
+                && !relativePath.endsWith("package-info.class") && filter.matches(relativePath);
+    }
+
+    private static void analyzeClass(String name, ByteBuffer bytes, int index, long start,
+                                     FileResultSink sink) throws IOException {
+        List<ClassMetrics> metrics;
+        int size = bytes.remaining();
+        try {
+            ClassFile classFile = new ClassFile(bytes);
+            long visitStart = Profiler.lap(Phase.PARSE, start);
+            ClassMetrics classMetrics = analyze(classFile);
+            metrics = classMetrics != null ? Collections.singletonList(classMetrics) : Collections.emptyList();
+            Profiler.lap(Phase.VISIT, visitStart);
+        } catch (RuntimeException e) {
+            // ClassFormatException, or an index out of range in malformed bytecode
+            Diagnostics.warning("Skipping " + name + ": " + e.getMessage());
+            metrics = Collections.emptyList();
+        }
+        Profiler.file(name, size, metrics.size(), start);
+        Diagnostics.fileDone(name, metrics);
+        sink.accept(index, metrics);
+    }
+
+    /**
+     * Metrics of a class, or null for anonymous, local and synthetic classes.
+     */
+    public static ClassMetrics analyze(ClassFile classFile) {
+        String className = classFile.getName();
+        if ((classFile.getAccessFlags() & ClassFile.ACC_SYNTHETIC) != 0 || isAnonymousOrLocal(className)) {
+            return null;
+        }
+        NameTable names = NameTable.shared();
+        String superclass = classFile.getSuperclassName();
+
+        // Own methods first, so that calls can be told apart from calls of inherited methods
+        Set<String> ownMethods = new HashSet<>();
+        for (int m = 0; m < classFile.getMethodCount(); m++) {
+            ownMethods.add(classFile.getMethodName(m) + classFile.getMethodDescriptor(m));
+        }
+
+        Set<String> responseSet = new HashSet<>();
+        int[] methodKeys = new int[classFile.getMethodCount()];
+        int methodKeyCount = 0;
+        int declaredMethods = 0;
+        int methods = 0;
+        int publicMethods = 0;
+        int wmc = 0;
+        int maxCc = 0;
+        int cbm = 0;
+        for (int m = 0; m < classFile.getMethodCount(); m++) {
+            int access = classFile.getMethodAccessFlags(m);
+            String name = classFile.getMethodName(m);
+            String descriptor = classFile.getMethodDescriptor(m);
+            if ((access & (ClassFile.ACC_SYNTHETIC | ClassFile.ACC_BRIDGE)) != 0 || name.equals("<clinit>")) {
+                continue;
+            }
+            methods++;
+            if ((access & ClassFile.ACC_PUBLIC) != 0) {
+                publicMethods++;
+            }
+            if (!name.equals("<init>")) {
+                declaredMethods++;
+                if ((access & ClassFile.ACC_PRIVATE) == 0) {
+                    methodKeys[methodKeyCount++] = names.child(NameTable.ROOT,
+                            TypeReferences.methodKey(name, ClassFile.parameterCount(descriptor)), '.');
+                }
+            }
+            responseSet.add(className + "." + name + descriptor);
+
+            ByteBuffer code = classFile.getCode(m);
+            int cc = 1 + classFile.getCatchCount(m);
+            boolean callsInherited = false;
+            if (code != null) {
+                for (int pc = 0; pc < code.limit(); ) {
+                    int op = code.get(pc) & 0xFF;
+                    if ((op >= 0x99 && op <= 0xa6) || op == 0xc6 || op == 0xc7) {
+                        cc++;    // conditional branch
+                    } else if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                        cc += switchTargets(code, pc);
+                    } else if (op >= INVOKEVIRTUAL && op <= INVOKEINTERFACE) {
+                        int index = code.getShort(pc + 1) & 0xFFFF;
+                        if (classFile.isMethodConstant(index)) {
+                            String owner = classFile.getMemberClass(index);
+                            String callee = classFile.getMemberName(index);
+                            String calleeDescriptor = classFile.getMemberDescriptor(index);
+                            responseSet.add(owner + "." + callee + calleeDescriptor);
+                            callsInherited |= owner.equals(className) && !ownMethods.contains(callee + calleeDescriptor)
+                                    || owner.equals(superclass) && op == INVOKESPECIAL && !callee.equals("<init>");
+                        }
+                    }
+                    pc += instructionLength(code, pc);
+                }
+            }
+            wmc += cc;
+            maxCc = Math.max(maxCc, cc);
+            if (callsInherited) {
+                cbm++;
+            }
+        }
+
+        ClassMetrics metrics = new ClassMetrics(className);
+        double average = methods > 0 ? Math.round((double) wmc / methods * 10000) / 10000.0 : 0;
+        metrics.setNpm(publicMethods);
+        metrics.setWmc(wmc);
+        metrics.setMaxCc(maxCc);
+        metrics.setAvgCc(average);
+        metrics.setAmc(average);
+        metrics.setRfc(responseSet.size());
+        metrics.setCbm(cbm);
+
+        int dot = className.lastIndexOf('.');
+        int[] interfaces = new int[classFile.getInterfaceCount()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = names.intern(classFile.getInterfaceName(i));
+        }
+        metrics.setTypeReferences(new TypeReferences(
+                dot < 0 ? NameTable.ROOT : names.intern(className.substring(0, dot)), NONE, NONE,
+                classFile.isInterface(),
+                superclass == null || superclass.equals("java.lang.Object") ? TypeReferences.NO_SUPERCLASS
+                        : names.intern(superclass),
+                interfaces, referencedTypes(classFile, names.intern(className)),
+                distinct(methodKeys, methodKeyCount), declaredMethods));
+        return metrics;
+    }
+
+    /**
+     * Whether a binary class name has a member name starting with a digit ({@code Outer$1}, {@code Outer$1Local}).
+     */
+    static boolean isAnonymousOrLocal(String binaryName) {
+        for (int i = binaryName.indexOf('$'); i >= 0 && i + 1 < binaryName.length(); i = binaryName.indexOf('$', i + 1)) {
+            if (Character.isDigit(binaryName.charAt(i + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of switch targets other than the default.
+     */
+    private static int switchTargets(ByteBuffer code, int pc) {
+        int base = (pc + 4) & ~3;    // operands are 4-byte aligned
+        int defaultOffset = code.getInt(base);
+        int targets = 0;
+        if ((code.get(pc) & 0xFF) == TABLESWITCH) {
+            int low = code.getInt(base + 4);
+            int high = code.getInt(base + 8);
+            for (int i = 0; i <= high - low; i++) {
+                if (code.getInt(base + 12 + i * 4) != defaultOffset) {
+                    targets++;
+                }
+            }
+        } else {
+            int pairs = code.getInt(base + 4);
+            for (int i = 0; i < pairs; i++) {
+                if (code.getInt(base + 8 + i * 8 + 4) != defaultOffset) {
+                    targets++;
+                }
+            }
+        }
+        return targets;
+    }
+
+    private static int instructionLength(ByteBuffer code, int pc) {
+        int op = code.get(pc) & 0xFF;
+        int length = INSTRUCTION_LENGTHS[op];
+        if (length > 0) {
+            return length;
+        }
+        int base = (pc + 4) & ~3;
+        switch (op) {
+            case TABLESWITCH:
+                return base - pc + 12 + 4 * (code.getInt(base + 8) - code.getInt(base + 4) + 1);
+            case LOOKUPSWITCH:
+                return base - pc + 8 + 8 * code.getInt(base + 4);
+            case WIDE:
+                return (code.get(pc + 1) & 0xFF) == IINC ? 6 : 4;
+            default:
+                throw new ClassFormatException("Bad opcode " + op + " at " + pc);
+        }
+    }
+
+    /**
+     * Name IDs of the classes a class refers to: class constants, and the class types of its field and
+     * method descriptors and of the descriptors of the members it uses.
+     */
+    private static int[] referencedTypes(ClassFile classFile, int self) {
+        NameTable names = NameTable.shared();
+        Set<String> types = new HashSet<>();
+        for (int i = 1; i < classFile.getConstantCount(); i++) {
+            if (classFile.isClassConstant(i)) {
+                String type = classFile.getClassConstant(i);
+                if (type.startsWith("[")) {
+                    addDescriptorTypes(type, types);
+                } else {
+                    types.add(type);
+                }
+            } else if (classFile.isMemberConstant(i)) {
+                addDescriptorTypes(classFile.getMemberDescriptor(i), types);
+            }
+        }
+        for (int f = 0; f < classFile.getFieldCount(); f++) {
+            addDescriptorTypes(classFile.getFieldDescriptor(f), types);
+        }
+        for (int m = 0; m < classFile.getMethodCount(); m++) {
+            addDescriptorTypes(classFile.getMethodDescriptor(m), types);
+        }
+
+        int[] ids = new int[types.size()];
+        int count = 0;
+        for (String type : types) {
+            int id = names.intern(type);
+            if (id != self) {
+                ids[count++] = id;
+            }
+        }
+        return distinct(ids, count);
+    }
+
+    /**
+     * Add the class names of a field, method or array descriptor ({@code L...;}, with {@code /} or {@code .}).
+     */
+    private static void addDescriptorTypes(String descriptor, Set<String> types) {
+        for (int i = 0; i < descriptor.length(); i++) {
+            if (descriptor.charAt(i) == 'L') {
+                int end = descriptor.indexOf(';', i);
+                if (end < 0) {
+                    return;
+                }
+                types.add(descriptor.substring(i + 1, end).replace('/', '.'));
+                i = end;
+            }
+        }
+    }
+
+    private static int[] distinct(int[] ids, int count) {
+        int[] sorted = Arrays.copyOf(ids, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+}
@@ -0,0 +1,372 @@
+package org.promise.metrics.bytecode;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class file structure (JVMS chapter 4) read in place from a byte buffer.
+ *
+ * Parsing records the offset of every constant pool entry, field and method; strings are only
+ * decoded when asked for, so a class whose header is all that is needed costs one pass over its bytes.
+ * The buffer may be a slice of a memory-mapped file. Names are returned with {@code .} instead of
+ * {@code /} as package separator, and with {@code $} before member class names as in the binary name.
+ */
+public class ClassFile {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_BRIDGE = 0x0040;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+    public static final int ACC_SYNTHETIC = 0x1000;
+    public static final int ACC_ANNOTATION = 0x2000;
+    public static final int ACC_ENUM = 0x4000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final ByteBuffer buffer;
+    private final int[] constants;       // offset of each pool entry's tag, 0 for unusable slots
+    private final int accessFlags;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final int[] fields;          // offset of each field_info
+    private final int[] methods;         // offset of each method_info
+
+    /**
+     * Parse a class file.
+     *
+     * @param buffer The class file bytes from position to limit; the position is not changed
+     * @throws ClassFormatException if the bytes are not a class file
+     */
+    public ClassFile(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        try {
+            ByteBuffer in = this.buffer.duplicate();
+            if (in.getInt() != MAGIC) {
+                throw new ClassFormatException("Bad magic number");
+            }
+            in.getInt();    // minor and major version
+
+            constants = new int[in.getShort() & 0xFFFF];
+            for (int i = 1; i < constants.length; i++) {
+                constants[i] = in.position();
+                int tag = in.get();
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        skip(in, in.getShort() & 0xFFFF);
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        skip(in, 2);
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        skip(in, 3);
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        skip(in, 4);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        skip(in, 8);
+                        i++;    // takes two slots
+                        break;
+                    default:
+                        throw new ClassFormatException("Bad constant pool tag " + tag + " at entry " + i);
+                }
+            }
+
+            accessFlags = in.getShort() & 0xFFFF;
+            thisClass = in.getShort() & 0xFFFF;
+            superClass = in.getShort() & 0xFFFF;
+            interfaces = new int[in.getShort() & 0xFFFF];
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaces[i] = in.getShort() & 0xFFFF;
+            }
+
+            fields = new int[in.getShort() & 0xFFFF];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = in.position();
+                skipMember(in);
+            }
+            methods = new int[in.getShort() & 0xFFFF];
+            for (int i = 0; i < methods.length; i++) {
+                methods[i] = in.position();
+                skipMember(in);
+            }
+        } catch (ClassFormatException e) {
+            throw e;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new ClassFormatException("Truncated class file");
+        }
+    }
+
+    private static void skip(ByteBuffer in, int bytes) {
+        in.position(in.position() + bytes);
+    }
+
+    /**
+     * Skip a field_info or method_info with its attributes.
+     */
+    private static void skipMember(ByteBuffer in) {
+        skip(in, 6);
+        int attributes = in.getShort() & 0xFFFF;
+        for (int i = 0; i < attributes; i++) {
+            skip(in, 2);
+            skip(in, in.getInt());
+        }
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public boolean isPublic() {
+        return (accessFlags & ACC_PUBLIC) != 0;
+    }
+
+    public boolean isInterface() {
+        return (accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * Binary name of the class, e.g. {@code java.util.Map$Entry}.
+     */
+    public String getName() {
+        return className(thisClass);
+    }
+
+    /**
+     * Binary name of the superclass, or null for {@code java.lang.Object} and modules.
+     */
+    public String getSuperclassName() {
+        return superClass == 0 ? null : className(superClass);
+    }
+
+    public int getInterfaceCount() {
+        return interfaces.length;
+    }
+
+    public String getInterfaceName(int i) {
+        return className(interfaces[i]);
+    }
+
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    public int getFieldAccessFlags(int field) {
+        return buffer.getShort(fields[field]) & 0xFFFF;
+    }
+
+    public String getFieldName(int field) {
+        return utf8(buffer.getShort(fields[field] + 2) & 0xFFFF);
+    }
+
+    public String getFieldDescriptor(int field) {
+        return utf8(buffer.getShort(fields[field] + 4) & 0xFFFF);
+    }
+
+    public int getMethodCount() {
+        return methods.length;
+    }
+
+    public int getMethodAccessFlags(int method) {
+        return buffer.getShort(methods[method]) & 0xFFFF;
+    }
+
+    public String getMethodName(int method) {
+        return utf8(buffer.getShort(methods[method] + 2) & 0xFFFF);
+    }
+
+    public String getMethodDescriptor(int method) {
+        return utf8(buffer.getShort(methods[method] + 4) & 0xFFFF);
+    }
+
+    /**
+     * Bytecode of a method, from position 0 to the code length, or null for abstract and native methods.
+     */
+    public ByteBuffer getCode(int method) {
+        int code = codeAttribute(method);
+        if (code < 0) {
+            return null;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(code + 8);
+        slice.limit(code + 8 + buffer.getInt(code + 4));
+        return slice.slice();
+    }
+
+    /**
+     * Number of exception handlers of a method that catch a type, i.e. without {@code finally} handlers.
+     */
+    public int getCatchCount(int method) {
+        int code = codeAttribute(method);
+        if (code < 0) {
+            return 0;
+        }
+        int table = code + 8 + buffer.getInt(code + 4);
+        int handlers = buffer.getShort(table) & 0xFFFF;
+        int count = 0;
+        for (int i = 0; i < handlers; i++) {
+            if (buffer.getShort(table + 2 + i * 8 + 6) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Offset of the body of a method's Code attribute (at max_stack), or -1.
+     */
+    private int codeAttribute(int method) {
+        int offset = methods[method] + 6;
+        int attributes = buffer.getShort(offset) & 0xFFFF;
+        offset += 2;
+        for (int i = 0; i < attributes; i++) {
+            if (utf8(buffer.getShort(offset) & 0xFFFF).equals("Code")) {
+                return offset + 6;
+            }
+            offset += 6 + buffer.getInt(offset + 2);
+        }
+        return -1;
+    }
+
+    // ---- Constant pool ----
+
+    /**
+     * Number of constant pool slots; valid indices start at 1.
+     */
+    public int getConstantCount() {
+        return constants.length;
+    }
+
+    /**
+     * Tag of a constant pool entry, or 0 for the unusable slot after a long or double.
+     */
+    public int getConstantTag(int index) {
+        return index <= 0 || index >= constants.length || constants[index] == 0 ? 0 : buffer.get(constants[index]);
+    }
+
+    public boolean isClassConstant(int index) {
+        return getConstantTag(index) == CONSTANT_CLASS;
+    }
+
+    /**
+     * Whether an entry is a field, method or interface method reference.
+     */
+    public boolean isMemberConstant(int index) {
+        int tag = getConstantTag(index);
+        return tag == CONSTANT_FIELDREF || tag == CONSTANT_METHODREF || tag == CONSTANT_INTERFACE_METHODREF;
+    }
+
+    public boolean isMethodConstant(int index) {
+        int tag = getConstantTag(index);
+        return tag == CONSTANT_METHODREF || tag == CONSTANT_INTERFACE_METHODREF;
+    }
+
+    /**
+     * Class name of a CONSTANT_Class entry: a binary name, or an array descriptor such as {@code [Ljava.lang.String;}.
+     */
+    public String getClassConstant(int index) {
+        return className(index);
+    }
+
+    /**
+     * Class name of a field, method or interface method reference.
+     */
+    public String getMemberClass(int index) {
+        return className(buffer.getShort(memberEntry(index) + 1) & 0xFFFF);
+    }
+
+    public String getMemberName(int index) {
+        int nameAndType = entry(buffer.getShort(memberEntry(index) + 3) & 0xFFFF, CONSTANT_NAME_AND_TYPE);
+        return utf8(buffer.getShort(nameAndType + 1) & 0xFFFF);
+    }
+
+    public String getMemberDescriptor(int index) {
+        int nameAndType = entry(buffer.getShort(memberEntry(index) + 3) & 0xFFFF, CONSTANT_NAME_AND_TYPE);
+        return utf8(buffer.getShort(nameAndType + 3) & 0xFFFF);
+    }
+
+    private int memberEntry(int index) {
+        if (!isMemberConstant(index)) {
+            throw new ClassFormatException("Bad member reference " + index);
+        }
+        return constants[index];
+    }
+
+    /**
+     * Number of parameters in a method descriptor such as {@code (I[JLjava/lang/String;)V}.
+     */
+    public static int parameterCount(String descriptor) {
+        int count = 0;
+        for (int i = 1; i < descriptor.length() && descriptor.charAt(i) != ')'; i++) {
+            char c = descriptor.charAt(i);
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            if (c != '[') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String className(int index) {
+        int offset = entry(index, CONSTANT_CLASS);
+        return utf8(buffer.getShort(offset + 1) & 0xFFFF).replace('/', '.');
+    }
+
+    private int entry(int index, int tag) {
+        if (index <= 0 || index >= constants.length || constants[index] == 0 || buffer.get(constants[index]) != tag) {
+            throw new ClassFormatException("Bad constant pool reference " + index);
+        }
+        return constants[index];
+    }
+
+    /**
+     * Decode a CONSTANT_Utf8 entry. Modified UTF-8 differs from UTF-8 only for NUL and supplementary
+     * characters, which do not occur in the names and descriptors read here.
+     */
+    private String utf8(int index) {
+        int offset = entry(index, CONSTANT_UTF8);
+        int length = buffer.getShort(offset + 1) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset + 3);
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
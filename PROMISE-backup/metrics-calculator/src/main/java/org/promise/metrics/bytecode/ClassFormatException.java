@@ -0,0 +1,13 @@
+package org.promise.metrics.bytecode;
+
+/**
+ * Thrown when bytes that should be a class file are malformed or truncated.
+ */
+public class ClassFormatException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ClassFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,188 @@
+package org.promise.metrics.bytecode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Entries of a jar or zip file, listed from its memory-mapped central directory.
+ *
+ * The whole file is mapped once; listing reads only the end record and the central directory, and an
+ * entry's data is located through its local header when it is read. Stored entries are returned as
+ * slices of the mapping without copying, deflated ones are inflated into a heap buffer. ZIP64 archives
+ * (over 65535 entries or 4 GB) are not supported.
+ */
+public class MappedJar implements Closeable {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int END_BYTES = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer map;
+    private final String[] names;
+    private final int[] methods;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+    private final int[] localOffsets;
+
+    private MappedJar(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Archive too large to map: " + path);
+        }
+        this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+        int end = findEnd();
+        int count = map.getShort(end + 10) & 0xFFFF;
+        long directory = map.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || directory == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 archives are not supported: " + path);
+        }
+
+        names = new String[count];
+        methods = new int[count];
+        compressedSizes = new int[count];
+        sizes = new int[count];
+        localOffsets = new int[count];
+        int offset = (int) directory;
+        for (int i = 0; i < count; i++) {
+            if (offset + 46 > map.limit() || map.getInt(offset) != CENTRAL_SIGNATURE) {
+                throw new IOException("Corrupt central directory: " + path);
+            }
+            int nameLength = map.getShort(offset + 28) & 0xFFFF;
+            int extraLength = map.getShort(offset + 30) & 0xFFFF;
+            int commentLength = map.getShort(offset + 32) & 0xFFFF;
+            methods[i] = map.getShort(offset + 10) & 0xFFFF;
+            compressedSizes[i] = map.getInt(offset + 20);
+            sizes[i] = map.getInt(offset + 24);
+            localOffsets[i] = map.getInt(offset + 42);
+            if (compressedSizes[i] < 0 || sizes[i] < 0 || localOffsets[i] < 0) {
+                throw new IOException("ZIP64 archives are not supported: " + path);
+            }
+            byte[] name = new byte[nameLength];
+            ByteBuffer in = map.duplicate();
+            in.position(offset + 46);
+            in.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Map an archive and read its central directory.
+     *
+     * @throws IOException if the file cannot be read or is not a zip archive
+     */
+    public static MappedJar open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedJar(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Offset of the end of central directory record, searched backwards over a trailing comment.
+     */
+    private int findEnd() throws IOException {
+        int last = map.limit() - END_BYTES;
+        for (int offset = last; offset >= 0 && offset >= last - MAX_COMMENT; offset--) {
+            if (map.getInt(offset) == END_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new IOException("Not a zip archive: " + path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Number of entries, directories included.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int entry) {
+        return names[entry];
+    }
+
+    /**
+     * Uncompressed size of an entry.
+     */
+    public int getSize(int entry) {
+        return sizes[entry];
+    }
+
+    /**
+     * Data of an entry.
+     *
+     * @param inflater Inflater for deflated entries (created with {@code nowrap}), reset before use
+     * @throws IOException if the entry is corrupt or uses another compression method
+     */
+    public ByteBuffer read(int entry, Inflater inflater) throws IOException {
+        int local = localOffsets[entry];
+        if (local + 30 > map.limit() || map.getInt(local) != LOCAL_SIGNATURE) {
+            throw new IOException("Corrupt local header of " + names[entry] + " in " + path);
+        }
+        int start = local + 30 + (map.getShort(local + 26) & 0xFFFF) + (map.getShort(local + 28) & 0xFFFF);
+        if (start + compressedSizes[entry] > map.limit()) {
+            throw new IOException("Truncated entry " + names[entry] + " in " + path);
+        }
+        ByteBuffer data = map.duplicate();
+        data.position(start);
+        data.limit(start + compressedSizes[entry]);
+
+        if (methods[entry] == STORED) {
+            return data.slice();
+        }
+        if (methods[entry] != DEFLATED) {
+            throw new IOException("Unsupported compression method " + methods[entry] + " of " + names[entry]);
+        }
+        byte[] input = new byte[compressedSizes[entry]];
+        data.get(input);
+        byte[] output = new byte[sizes[entry]];
+        inflater.reset();
+        inflater.setInput(input);
+        try {
+            int n = 0;
+            while (n < output.length && !inflater.finished()) {
+                int inflated = inflater.inflate(output, n, output.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != output.length) {
+                throw new IOException("Truncated entry " + names[entry] + " in " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + names[entry] + " in " + path + ": " + e.getMessage());
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
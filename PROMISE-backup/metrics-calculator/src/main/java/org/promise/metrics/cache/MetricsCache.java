@@ -0,0 +1,453 @@
+package org.promise.metrics.cache;
+
+import org.promise.metrics.analysis.AnalysisOptions;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.model.TypeReferences;
+import org.promise.metrics.parser.JavaSourceParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of per-file analysis results, keyed by the SHA-256 of the file content.
+ *
+ * Entries live in a namespace directory derived from the cache format, the analyzer build (a hash of the
+ * calculator's own class files or jar, so any change to a metric definition starts a fresh namespace) and
+ * the options that affect results, including which optional calculators run. Each entry is a small file holding the content hash, the class metrics
+ * and a CRC32; entries are written to a temporary file and moved into place, so concurrent workers and
+ * interrupted runs never leave a partial entry behind. Entries that fail any check are deleted and
+ * recomputed.
+ *
+ * When the cache outgrows its size limit, {@link #close()} evicts the least recently used entries.
+ * Hits refresh an entry's modification time, so namespaces of older builds are evicted first.
+ *
+ * Instances are thread-safe.
+ */
+public class MetricsCache implements AutoCloseable {
+
+    /**
+     * Bump when the entry layout changes.
+     */
+    private static final int FORMAT_VERSION = 5;
+
+    private static final int MAGIC = 0x504D4331; // "PMC1"
+
+    private static final String ENTRY_SUFFIX = ".metrics";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Temporary files older than this are left over from interrupted runs.
+     */
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private static volatile String buildFingerprint;
+
+    private final Path root;
+    private final Path namespace;
+    private final long maxBytes;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger invalid = new AtomicInteger();
+
+    /**
+     * Open (and create if needed) a cache directory.
+     *
+     * @param root     Cache directory, shared by all builds and option sets
+     * @param options  Analysis settings; those affecting results select the namespace
+     * @param maxBytes Size limit of the whole cache directory
+     * @throws IOException If the directory cannot be created
+     */
+    public static MetricsCache open(Path root, AnalysisOptions options, long maxBytes) throws IOException {
+        String key = "format=" + FORMAT_VERSION
+                + ";build=" + buildFingerprint()
+                + ";lexical=" + options.isLexicalOnly()
+                + ";calculators=" + JavaSourceParser.calculators(options.getMetrics())
+                + ";charset=" + options.getCharset().name();
+        String namespace = toHex(sha256(key.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        return new MetricsCache(root, root.resolve(namespace), maxBytes);
+    }
+
+    private MetricsCache(Path root, Path namespace, long maxBytes) throws IOException {
+        this.root = root;
+        this.namespace = namespace;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(namespace);
+    }
+
+    /**
+     * Look up the results of a file.
+     *
+     * @param fingerprint SHA-256 of the file content
+     * @return The cached metrics, or null on a miss
+     */
+    public List<ClassMetrics> get(byte[] fingerprint) {
+        return get(fingerprint, NameTable.shared());
+    }
+
+    /**
+     * Look up the results of a file, naming the classes in the given table.
+     *
+     * @param fingerprint SHA-256 of the file content
+     * @param names       Table receiving the class and type names
+     * @return The cached metrics, or null on a miss
+     */
+    public List<ClassMetrics> get(byte[] fingerprint, NameTable names) {
+        String hash = toHex(fingerprint);
+        Path entry = entryPath(hash);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(entry);
+        } catch (IOException e) {
+            // Usually NoSuchFileException: not cached yet
+            misses.incrementAndGet();
+            return null;
+        }
+
+        List<ClassMetrics> metrics = decode(data, hash, names);
+        if (metrics == null) {
+            invalid.incrementAndGet();
+            misses.incrementAndGet();
+            deleteQuietly(entry);
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects eviction order
+        }
+        hits.incrementAndGet();
+        return metrics;
+    }
+
+    /**
+     * Store the results of a file. Failures are reported but do not affect the analysis.
+     *
+     * @param fingerprint SHA-256 of the file content
+     * @param metrics     Metrics of all classes of the file
+     */
+    public void put(byte[] fingerprint, List<ClassMetrics> metrics) {
+        String hash = toHex(fingerprint);
+        Path entry = entryPath(hash);
+        Path temp = entry.resolveSibling(entry.getFileName() + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(entry.getParent());
+            Files.write(temp, encode(metrics, hash));
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Diagnostics.warning("Could not write cache entry " + entry + ": " + e.getMessage());
+            deleteQuietly(temp);
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of entries that were found but failed a check and were discarded.
+     */
+    public int getInvalid() {
+        return invalid.get();
+    }
+
+    /**
+     * Evict least recently used entries (of any namespace) until the cache fits its size limit,
+     * and remove temporary files left over from interrupted runs.
+     */
+    @Override
+    public void close() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(root)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        long now = System.currentTimeMillis();
+        List<StoredEntry> entries = new ArrayList<>();
+        long totalBytes = 0;
+        for (Path file : files) {
+            try {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    if (now - modified > STALE_TEMP_MILLIS) {
+                        deleteQuietly(file);
+                    }
+                    continue;
+                }
+                if (!file.getFileName().toString().endsWith(ENTRY_SUFFIX)) {
+                    continue;
+                }
+                long size = Files.size(file);
+                entries.add(new StoredEntry(file, size, modified));
+                totalBytes += size;
+            } catch (IOException e) {
+                // Removed concurrently
+            }
+        }
+
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        // Evict down to 90% of the limit, so that the next run does not have to evict again right away
+        long target = maxBytes - maxBytes / 10;
+        entries.sort(Comparator.comparingLong(e -> e.lastModified));
+        int evicted = 0;
+        for (StoredEntry entry : entries) {
+            if (totalBytes <= target) {
+                break;
+            }
+            if (deleteQuietly(entry.path)) {
+                totalBytes -= entry.size;
+                evicted++;
+            }
+        }
+        Diagnostics.info("Cache: evicted " + evicted + " entries");
+    }
+
+    private static class StoredEntry {
+        final Path path;
+        final long size;
+        final long lastModified;
+
+        StoredEntry(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private Path entryPath(String hash) {
+        return namespace.resolve(hash.substring(0, 2)).resolve(hash + ENTRY_SUFFIX);
+    }
+
+    private static byte[] encode(List<ClassMetrics> metricsList, String hash) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + metricsList.size() * 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(hash);
+        NameTable names = metricsList.isEmpty() ? NameTable.shared() : metricsList.get(0).getNames();
+
+        // Package and imports are shared by all classes of the file, so they are written once
+        TypeReferences scope = null;
+        for (ClassMetrics metrics : metricsList) {
+            if (metrics.getTypeReferences() != null) {
+                scope = metrics.getTypeReferences();
+                break;
+            }
+        }
+        out.writeBoolean(scope != null);
+        if (scope != null) {
+            out.writeUTF(names.toString(scope.getPackageId()));
+            writeNames(out, names, scope.getImports());
+            writeNames(out, names, scope.getOnDemandImports());
+        }
+
+        out.writeInt(metricsList.size());
+        for (ClassMetrics metrics : metricsList) {
+            out.writeUTF(metrics.getFullyQualifiedName());
+            out.writeInt(metrics.getNpm());
+            out.writeInt(metrics.getLoc());
+            out.writeInt(metrics.getExclusiveLoc());
+            out.writeInt(metrics.getCommentLines());
+            out.writeInt(metrics.getWmc());
+            out.writeInt(metrics.getMaxCc());
+            out.writeDouble(metrics.getAvgCc());
+            out.writeDouble(metrics.getAmc());
+            out.writeInt(metrics.getLcom());
+            out.writeDouble(metrics.getLcom3());
+            out.writeDouble(metrics.getCam());
+            out.writeInt(metrics.getRfc());
+            out.writeInt(metrics.getCbm());
+
+            TypeReferences references = metrics.getTypeReferences();
+            out.writeBoolean(references != null);
+            if (references != null) {
+                out.writeBoolean(references.isInterface());
+                out.writeUTF(references.getSuperclassId() == TypeReferences.NO_SUPERCLASS
+                        ? "" : names.toString(references.getSuperclassId()));
+                writeNames(out, names, references.getInterfaceIds());
+                writeNames(out, names, references.getReferenceIds());
+                writeNames(out, names, references.getMethodIds());
+                out.writeInt(references.getMethodCount());
+            }
+        }
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode an entry, or return null if it is truncated, corrupt, of another format or for another hash.
+     */
+    private static List<ClassMetrics> decode(byte[] data, String hash, NameTable names) {
+        if (data.length < 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        long storedCrc = 0;
+        for (int i = data.length - 8; i < data.length; i++) {
+            storedCrc = (storedCrc << 8) | (data[i] & 0xFF);
+        }
+        if (crc.getValue() != storedCrc) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(hash)) {
+                return null;
+            }
+            boolean hasScope = in.readBoolean();
+            int packageId = hasScope ? names.intern(in.readUTF()) : NameTable.ROOT;
+            int[] imports = hasScope ? readNames(in, names) : null;
+            int[] onDemandImports = hasScope ? readNames(in, names) : null;
+
+            int count = in.readInt();
+            List<ClassMetrics> metricsList = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ClassMetrics metrics = new ClassMetrics(names, in.readUTF());
+                metrics.setNpm(in.readInt());
+                metrics.setLoc(in.readInt());
+                metrics.setExclusiveLoc(in.readInt());
+                metrics.setCommentLines(in.readInt());
+                metrics.setWmc(in.readInt());
+                metrics.setMaxCc(in.readInt());
+                metrics.setAvgCc(in.readDouble());
+                metrics.setAmc(in.readDouble());
+                metrics.setLcom(in.readInt());
+                metrics.setLcom3(in.readDouble());
+                metrics.setCam(in.readDouble());
+                metrics.setRfc(in.readInt());
+                metrics.setCbm(in.readInt());
+                if (in.readBoolean()) {
+                    if (!hasScope) {
+                        return null;
+                    }
+                    boolean isInterface = in.readBoolean();
+                    String superclass = in.readUTF();
+                    metrics.setTypeReferences(new TypeReferences(packageId, imports, onDemandImports, isInterface,
+                            superclass.isEmpty() ? TypeReferences.NO_SUPERCLASS : names.intern(superclass),
+                            readNames(in, names), readNames(in, names), readNames(in, names), in.readInt()));
+                }
+                metricsList.add(metrics);
+            }
+            return in.available() == 0 ? metricsList : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, NameTable names, int[] ids) throws IOException {
+        out.writeInt(ids.length);
+        for (int id : ids) {
+            out.writeUTF(names.toString(id));
+        }
+    }
+
+    private static int[] readNames(DataInputStream in, NameTable names) throws IOException {
+        int[] ids = new int[in.readInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = names.intern(in.readUTF());
+        }
+        return ids;
+    }
+
+    /**
+     * Hash of the analyzer's class files (or jar), computed once per process.
+     */
+    private static String buildFingerprint() {
+        String fingerprint = buildFingerprint;
+        if (fingerprint == null) {
+            fingerprint = computeBuildFingerprint();
+            buildFingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    private static String computeBuildFingerprint() {
+        try {
+            CodeSource codeSource = MetricsCache.class.getProtectionDomain().getCodeSource();
+            Path location = Paths.get(codeSource.getLocation().toURI());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (Files.isDirectory(location)) {
+                List<Path> classFiles;
+                try (Stream<Path> paths = Files.walk(location)) {
+                    classFiles = paths.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+                }
+                for (Path classFile : classFiles) {
+                    digest.update(location.relativize(classFile).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(classFile));
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            return toHex(digest.digest());
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException | RuntimeException e) {
+            // Without a build hash, every run uses a fresh namespace
+            return "unknown-" + System.nanoTime();
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static boolean deleteQuietly(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
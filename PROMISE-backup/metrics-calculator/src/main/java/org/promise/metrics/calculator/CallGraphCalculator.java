@@ -0,0 +1,349 @@
+package org.promise.metrics.calculator;
+
+import org.eclipse.jdt.core.dom.*;
+import org.promise.metrics.graph.IntSet;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculator for RFC (Response For a Class) and CBM (Coupling Between Methods) from the calls of each type.
+ *
+ * Every method call, constructor call and instance creation is recorded as a signature ID: receiver type,
+ * method name and number of arguments, interned as a path in the {@link NameTable}. Each type keeps its own
+ * methods and its callees in open-addressing int sets, so a call site costs three node lookups and no
+ * allocation once its signature is known.
+ * <ul>
+ *   <li>RFC: distinct own methods and callees, as in ckjm. Constructors count as methods, including the
+ *       default constructor and the implicit {@code super()} calls of classes.</li>
+ *   <li>CBM: methods of the type that call an inherited method ({@code super.m()}, or a method the type
+ *       does not declare although it extends a class).</li>
+ * </ul>
+ * Without bindings, the receiver type of a call is known for {@code this}, {@code super}, type names,
+ * instance creations, casts and variables declared with a class type; other receivers are unknown, and
+ * their calls are distinguished by name and number of arguments only.
+ */
+public class CallGraphCalculator implements MetricAccumulator {
+
+    private static final String CONSTRUCTOR = "<init>";
+
+    // Receiver kinds of a signature
+    private static final int OWN = 0;
+    private static final int SUPER = 1;
+    private static final int TYPE = 2;
+    private static final int UNKNOWN = 3;
+
+    // Receiver kinds other than TYPE as root segments, which cannot clash with type names
+    private static final String[] KINDS = {"<own>", "<super>", null, "<unknown>"};
+
+    private static final String[] ARGUMENTS = new String[16];
+
+    static {
+        for (int i = 0; i < ARGUMENTS.length; i++) {
+            ARGUMENTS[i] = Integer.toString(i);
+        }
+    }
+
+    private final NameTable names;
+    private final int[] kindIds = new int[KINDS.length];
+    private final Deque<TypeFrame> types = new ArrayDeque<>();
+
+    private static class TypeFrame {
+        final boolean isClass;
+        final boolean extendsClass;
+        final IntSet ownMethods = new IntSet();
+        final IntSet callees = new IntSet(32);
+        final Map<String, String> fieldTypes = new HashMap<>();
+        boolean hasConstructor;
+
+        // Calls on simple names that are not local variables: fields or types, known when the type ends
+        final List<String> deferredReceivers = new ArrayList<>();
+        final List<String> deferredNames = new ArrayList<>();
+        int[] deferredArguments = new int[8];
+
+        // Calls without receiver, per method, for CBM: own methods are only known when the type ends
+        int[] ownCallMethods = new int[16];
+        int[] ownCallSignatures = new int[16];
+        int ownCallCount;
+        final IntSet superCallers = new IntSet();
+
+        // Method being visited
+        int method = -1;
+        int methodCount;
+        boolean isConstructor;
+        boolean callsConstructor;
+        final Map<String, String> localTypes = new HashMap<>();
+
+        TypeFrame(boolean isClass, boolean extendsClass) {
+            this.isClass = isClass;
+            this.extendsClass = extendsClass;
+        }
+
+        void addOwnCall(int signature) {
+            if (ownCallCount == ownCallMethods.length) {
+                ownCallMethods = Arrays.copyOf(ownCallMethods, ownCallCount * 2);
+                ownCallSignatures = Arrays.copyOf(ownCallSignatures, ownCallCount * 2);
+            }
+            ownCallMethods[ownCallCount] = method;
+            ownCallSignatures[ownCallCount++] = signature;
+        }
+
+        void addDeferred(String receiver, String name, int arguments) {
+            int index = deferredNames.size();
+            if (index == deferredArguments.length) {
+                deferredArguments = Arrays.copyOf(deferredArguments, index * 2);
+            }
+            deferredReceivers.add(receiver);
+            deferredNames.add(name);
+            deferredArguments[index] = arguments;
+        }
+    }
+
+    public CallGraphCalculator() {
+        this(NameTable.shared());
+    }
+
+    /**
+     * @param names Table receiving the call signatures
+     */
+    public CallGraphCalculator(NameTable names) {
+        this.names = names;
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            kindIds[kind] = KINDS[kind] != null ? names.child(NameTable.ROOT, KINDS[kind], '.') : NameTable.ROOT;
+        }
+    }
+
+    @Override
+    public void enterType(ASTNode type) {
+        boolean isClass;
+        boolean extendsClass = false;
+        if (type instanceof TypeDeclaration) {
+            TypeDeclaration declaration = (TypeDeclaration) type;
+            isClass = !declaration.isInterface();
+            extendsClass = declaration.getSuperclassType() != null;
+        } else {
+            // Enums and anonymous classes have constructors; annotation types do not
+            isClass = !(type instanceof AnnotationTypeDeclaration);
+            extendsClass = type instanceof AnonymousClassDeclaration;
+        }
+        types.push(new TypeFrame(isClass, extendsClass));
+    }
+
+    @Override
+    public void exitType(ASTNode type, ClassMetrics metrics) {
+        TypeFrame frame = types.pop();
+        if (metrics == null) {
+            return;
+        }
+        if (frame.isClass && !frame.hasConstructor) {
+            // Default constructor, calling super()
+            frame.ownMethods.add(signature(OWN, null, CONSTRUCTOR, 0));
+            frame.callees.add(signature(SUPER, null, CONSTRUCTOR, 0));
+        }
+        for (int i = 0; i < frame.deferredNames.size(); i++) {
+            String receiver = frame.deferredReceivers.get(i);
+            String fieldType = frame.fieldTypes.get(receiver);
+            int signature;
+            if (fieldType != null) {
+                signature = signature(TYPE, fieldType, frame.deferredNames.get(i), frame.deferredArguments[i]);
+            } else if (Character.isUpperCase(receiver.charAt(0))) {
+                signature = signature(TYPE, receiver, frame.deferredNames.get(i), frame.deferredArguments[i]);
+            } else {
+                signature = signature(UNKNOWN, null, frame.deferredNames.get(i), frame.deferredArguments[i]);
+            }
+            frame.callees.add(signature);
+        }
+
+        metrics.setRfc(frame.ownMethods.size() + frame.callees.countNotIn(frame.ownMethods));
+
+        IntSet coupled = frame.superCallers;
+        if (frame.extendsClass) {
+            for (int i = 0; i < frame.ownCallCount; i++) {
+                if (frame.ownCallMethods[i] >= 0 && !frame.ownMethods.contains(frame.ownCallSignatures[i])) {
+                    coupled.add(frame.ownCallMethods[i]);
+                }
+            }
+        }
+        metrics.setCbm(coupled.size());
+    }
+
+    @Override
+    public void enterMethod(MethodDeclaration method) {
+        if (types.isEmpty()) {
+            return;
+        }
+        TypeFrame frame = types.peek();
+        frame.method = frame.methodCount++;
+        frame.isConstructor = method.isConstructor();
+        frame.callsConstructor = false;
+        frame.localTypes.clear();
+        if (method.isConstructor()) {
+            frame.hasConstructor = true;
+        }
+        frame.ownMethods.add(signature(OWN, null,
+                method.isConstructor() ? CONSTRUCTOR : method.getName().getIdentifier(), method.parameters().size()));
+    }
+
+    @Override
+    public void exitMethod(MethodDeclaration method) {
+        if (types.isEmpty()) {
+            return;
+        }
+        TypeFrame frame = types.peek();
+        if (frame.isConstructor && !frame.callsConstructor) {
+            frame.callees.add(signature(SUPER, null, CONSTRUCTOR, 0));
+        }
+        frame.method = -1;
+        frame.isConstructor = false;
+        frame.localTypes.clear();
+    }
+
+    @Override
+    public void simpleName(SimpleName name) {
+        if (types.isEmpty() || !name.isDeclaration()) {
+            return;
+        }
+        TypeFrame frame = types.peek();
+        ASTNode parent = name.getParent();
+        Type type = null;
+        boolean isField = false;
+        if (parent instanceof SingleVariableDeclaration) {
+            type = ((SingleVariableDeclaration) parent).getType();
+        } else if (parent instanceof VariableDeclarationFragment) {
+            ASTNode declaration = parent.getParent();
+            if (declaration instanceof VariableDeclarationStatement) {
+                type = ((VariableDeclarationStatement) declaration).getType();
+            } else if (declaration instanceof VariableDeclarationExpression) {
+                type = ((VariableDeclarationExpression) declaration).getType();
+            } else if (declaration instanceof FieldDeclaration) {
+                type = ((FieldDeclaration) declaration).getType();
+                isField = frame.method < 0;
+            }
+        }
+        String typeName = type != null ? typeIdentifier(type) : null;
+        if (typeName == null) {
+            return;
+        }
+        if (isField) {
+            frame.fieldTypes.put(name.getIdentifier(), typeName);
+        } else if (frame.method >= 0) {
+            frame.localTypes.put(name.getIdentifier(), typeName);
+        }
+    }
+
+    @Override
+    public void methodCall(ASTNode call) {
+        if (types.isEmpty()) {
+            return;
+        }
+        TypeFrame frame = types.peek();
+        switch (call.getNodeType()) {
+            case ASTNode.METHOD_INVOCATION: {
+                MethodInvocation invocation = (MethodInvocation) call;
+                methodInvocation(frame, invocation.getExpression(), invocation.getName().getIdentifier(),
+                        invocation.arguments().size());
+                break;
+            }
+            case ASTNode.SUPER_METHOD_INVOCATION: {
+                SuperMethodInvocation invocation = (SuperMethodInvocation) call;
+                frame.callees.add(signature(SUPER, null, invocation.getName().getIdentifier(),
+                        invocation.arguments().size()));
+                if (frame.method >= 0) {
+                    frame.superCallers.add(frame.method);
+                }
+                break;
+            }
+            case ASTNode.CLASS_INSTANCE_CREATION: {
+                ClassInstanceCreation creation = (ClassInstanceCreation) call;
+                String typeName = typeIdentifier(creation.getType());
+                frame.callees.add(signature(typeName != null ? TYPE : UNKNOWN, typeName, CONSTRUCTOR,
+                        creation.arguments().size()));
+                break;
+            }
+            case ASTNode.CONSTRUCTOR_INVOCATION:
+                frame.callsConstructor = true;
+                frame.callees.add(signature(OWN, null, CONSTRUCTOR,
+                        ((ConstructorInvocation) call).arguments().size()));
+                break;
+            case ASTNode.SUPER_CONSTRUCTOR_INVOCATION:
+                frame.callsConstructor = true;
+                frame.callees.add(signature(SUPER, null, CONSTRUCTOR,
+                        ((SuperConstructorInvocation) call).arguments().size()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void methodInvocation(TypeFrame frame, Expression receiver, String name, int arguments) {
+        while (receiver instanceof ParenthesizedExpression) {
+            receiver = ((ParenthesizedExpression) receiver).getExpression();
+        }
+        if (receiver == null || (receiver instanceof ThisExpression
+                && ((ThisExpression) receiver).getQualifier() == null)) {
+            int signature = signature(OWN, null, name, arguments);
+            frame.callees.add(signature);
+            frame.addOwnCall(signature);
+            return;
+        }
+
+        String typeName = null;
+        if (receiver instanceof SimpleName) {
+            String variable = ((SimpleName) receiver).getIdentifier();
+            typeName = frame.localTypes.get(variable);
+            if (typeName == null) {
+                frame.addDeferred(variable, name, arguments);
+                return;
+            }
+        } else if (receiver instanceof FieldAccess && ((FieldAccess) receiver).getExpression() instanceof ThisExpression) {
+            frame.addDeferred(((FieldAccess) receiver).getName().getIdentifier(), name, arguments);
+            return;
+        } else if (receiver instanceof QualifiedName) {
+            String last = ((QualifiedName) receiver).getName().getIdentifier();
+            typeName = Character.isUpperCase(last.charAt(0)) ? last : null;
+        } else if (receiver instanceof ClassInstanceCreation) {
+            typeName = typeIdentifier(((ClassInstanceCreation) receiver).getType());
+        } else if (receiver instanceof CastExpression) {
+            typeName = typeIdentifier(((CastExpression) receiver).getType());
+        } else if (receiver instanceof StringLiteral) {
+            typeName = "String";
+        }
+        frame.callees.add(signature(typeName != null ? TYPE : UNKNOWN, typeName, name, arguments));
+    }
+
+    /**
+     * Simple name of a class or interface type, without type arguments, or null for other types.
+     */
+    private static String typeIdentifier(Type type) {
+        if (type.isParameterizedType()) {
+            return typeIdentifier(((ParameterizedType) type).getType());
+        }
+        if (type.isSimpleType()) {
+            Name name = ((SimpleType) type).getName();
+            return name.isSimpleName()
+                    ? ((SimpleName) name).getIdentifier()
+                    : ((QualifiedName) name).getName().getIdentifier();
+        }
+        if (type.isQualifiedType()) {
+            return ((QualifiedType) type).getName().getIdentifier();
+        }
+        return null;
+    }
+
+    /**
+     * ID of a signature: the path receiver (or receiver kind), {@code #}name, {@code /}number of arguments
+     * in the name table. Every segment is looked up in place, so only new signatures add nodes.
+     */
+    private int signature(int kind, String receiver, String name, int arguments) {
+        int base = kind == TYPE ? names.child(NameTable.ROOT, receiver, '.') : kindIds[kind];
+        int method = names.child(base, name, '#');
+        return names.child(method, arguments < ARGUMENTS.length ? ARGUMENTS[arguments] : Integer.toString(arguments), '/');
+    }
+}
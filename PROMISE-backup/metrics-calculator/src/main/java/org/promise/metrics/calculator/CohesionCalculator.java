@@ -0,0 +1,330 @@
+package org.promise.metrics.calculator;
+
+import org.eclipse.jdt.core.dom.*;
+import org.promise.metrics.graph.IntIntMap;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculator for the cohesion metrics LCOM, LCOM3 and CAM.
+ *
+ * For every type it records which of its fields each method and constructor uses and which parameter
+ * types it declares. On exit both are packed into bit matrices with one {@code long[]} row per method,
+ * and the metrics are counted with word-wise AND and popcount:
+ * <ul>
+ *   <li>LCOM (Chidamber and Kemerer): method pairs sharing no field minus pairs sharing one, at least 0</li>
+ *   <li>LCOM3 (Henderson-Sellers): (m - sum(mA) / a) / (m - 1) for m methods, a fields and mA methods
+ *       using each field; 2 (no cohesion) if the type has no fields or at most one method</li>
+ *   <li>CAM (Bansiya): sum of distinct parameter types per method / (m * distinct parameter types of the
+ *       type); 0 if no method has parameters</li>
+ * </ul>
+ * Without bindings, a field use is a simple name matching a field of the type that is not a parameter or
+ * local variable of the method, {@code this.field}, or {@code Type.field}. Uses in local and anonymous
+ * classes count for those classes. The fields are indexed from the type's body declarations when the type
+ * is entered, so uses are recorded as field indices while the methods are visited.
+ */
+public class CohesionCalculator implements MetricAccumulator {
+
+    private final NameTable names;
+    private final Deque<TypeFrame> types = new ArrayDeque<>();
+
+    private static class TypeFrame {
+        final String simpleName;
+        final Map<String, Integer> fieldIndex = new HashMap<>();
+        final long[] shadowed;       // fields hidden by a parameter or local of the current method
+
+        // Field indices used by finished methods, as ranges of one array
+        int[] uses = new int[16];
+        int useCount;
+        int[] useEnds = new int[16];
+        int[] parameterTypes = new int[16];
+        int[] parameterEnds = new int[16];
+        int parameterCount;
+        int methodCount;
+
+        // Method being visited: fields used by plain names, which a local of the same name hides
+        boolean inMethod;
+        boolean anyShadowed;
+        int[] names = new int[16];
+        int nameCount;
+
+        TypeFrame(ASTNode node, String simpleName) {
+            this.simpleName = simpleName;
+            List<?> bodyDeclarations = node instanceof AbstractTypeDeclaration
+                    ? ((AbstractTypeDeclaration) node).bodyDeclarations()
+                    : node instanceof AnonymousClassDeclaration
+                    ? ((AnonymousClassDeclaration) node).bodyDeclarations()
+                    : Collections.emptyList();
+            for (Object declaration : bodyDeclarations) {
+                if (declaration instanceof FieldDeclaration) {
+                    for (Object fragment : ((FieldDeclaration) declaration).fragments()) {
+                        String field = ((VariableDeclarationFragment) fragment).getName().getIdentifier();
+                        fieldIndex.putIfAbsent(field, fieldIndex.size());
+                    }
+                }
+            }
+            this.shadowed = new long[(fieldIndex.size() + 63) >>> 6];
+        }
+
+        /**
+         * Index of a field of the type, or -1.
+         */
+        int field(SimpleName name) {
+            Integer field = fieldIndex.isEmpty() ? null : fieldIndex.get(name.getIdentifier());
+            return field != null ? field : -1;
+        }
+
+        void addUse(int field) {
+            if (useCount == uses.length) {
+                uses = Arrays.copyOf(uses, useCount * 2);
+            }
+            uses[useCount++] = field;
+        }
+
+        void addName(int field) {
+            if (nameCount == names.length) {
+                names = Arrays.copyOf(names, nameCount * 2);
+            }
+            names[nameCount++] = field;
+        }
+
+        void shadow(int field) {
+            shadowed[field >>> 6] |= 1L << field;
+            anyShadowed = true;
+        }
+
+        void endMethod() {
+            for (int i = 0; i < nameCount; i++) {
+                int field = names[i];
+                if (!anyShadowed || (shadowed[field >>> 6] & (1L << field)) == 0) {
+                    addUse(field);
+                }
+            }
+            nameCount = 0;
+            if (anyShadowed) {
+                Arrays.fill(shadowed, 0);
+                anyShadowed = false;
+            }
+            inMethod = false;
+            if (methodCount == useEnds.length) {
+                useEnds = Arrays.copyOf(useEnds, methodCount * 2);
+                parameterEnds = Arrays.copyOf(parameterEnds, methodCount * 2);
+            }
+            useEnds[methodCount] = useCount;
+            parameterEnds[methodCount] = parameterCount;
+            methodCount++;
+        }
+
+        void addParameterType(int type) {
+            if (parameterCount == parameterTypes.length) {
+                parameterTypes = Arrays.copyOf(parameterTypes, parameterCount * 2);
+            }
+            parameterTypes[parameterCount++] = type;
+        }
+    }
+
+    public CohesionCalculator() {
+        this(NameTable.shared());
+    }
+
+    /**
+     * @param names Table receiving the parameter type names
+     */
+    public CohesionCalculator(NameTable names) {
+        this.names = names;
+    }
+
+    @Override
+    public void enterType(ASTNode type) {
+        String simpleName = type instanceof AbstractTypeDeclaration
+                ? ((AbstractTypeDeclaration) type).getName().getIdentifier()
+                : null;
+        types.push(new TypeFrame(type, simpleName));
+    }
+
+    @Override
+    public void exitType(ASTNode type, ClassMetrics metrics) {
+        TypeFrame frame = types.pop();
+        if (metrics != null) {
+            calculate(frame, metrics);
+        }
+    }
+
+    @Override
+    public void enterMethod(MethodDeclaration method) {
+        if (types.isEmpty()) {
+            return;
+        }
+        TypeFrame frame = types.peek();
+        frame.inMethod = true;
+        for (Object o : method.parameters()) {
+            SingleVariableDeclaration parameter = (SingleVariableDeclaration) o;
+            int dimensions = parameter.getExtraDimensions() + (parameter.isVarargs() ? 1 : 0);
+            frame.addParameterType(typeId(names, parameter.getType(), dimensions));
+        }
+    }
+
+    @Override
+    public void exitMethod(MethodDeclaration method) {
+        if (!types.isEmpty() && types.peek().inMethod) {
+            types.peek().endMethod();
+        }
+    }
+
+    @Override
+    public void simpleName(SimpleName name) {
+        if (types.isEmpty() || !types.peek().inMethod) {
+            return;
+        }
+        TypeFrame frame = types.peek();
+        int field = frame.field(name);
+        if (field < 0) {
+            return;
+        }
+        StructuralPropertyDescriptor location = name.getLocationInParent();
+        ASTNode parent = name.getParent();
+
+        if (location == VariableDeclarationFragment.NAME_PROPERTY
+                || location == SingleVariableDeclaration.NAME_PROPERTY) {
+            frame.shadow(field);
+        } else if (location == FieldAccess.NAME_PROPERTY) {
+            Expression target = ((FieldAccess) parent).getExpression();
+            if (target instanceof ThisExpression && ((ThisExpression) target).getQualifier() == null) {
+                frame.addUse(field);
+            }
+        } else if (location == QualifiedName.NAME_PROPERTY) {
+            Name qualifier = ((QualifiedName) parent).getQualifier();
+            if (qualifier.isSimpleName() && ((SimpleName) qualifier).getIdentifier().equals(frame.simpleName)) {
+                frame.addUse(field);
+            }
+        } else if (!name.isDeclaration() && isVariableUse(location)) {
+            frame.addName(field);
+        }
+    }
+
+    /**
+     * Whether a simple name in this position can denote a variable, rather than a method or a label.
+     */
+    private static boolean isVariableUse(StructuralPropertyDescriptor location) {
+        return location != MethodInvocation.NAME_PROPERTY
+                && location != SuperMethodInvocation.NAME_PROPERTY
+                && location != SuperFieldAccess.NAME_PROPERTY
+                && location != BreakStatement.LABEL_PROPERTY
+                && location != ContinueStatement.LABEL_PROPERTY
+                && location != LabeledStatement.LABEL_PROPERTY
+                && location != MemberValuePair.NAME_PROPERTY
+                && location != ThisExpression.QUALIFIER_PROPERTY;
+    }
+
+    /**
+     * Name ID of a parameter type as written, with one {@code []} segment per array dimension.
+     */
+    private static int typeId(NameTable names, Type type, int extraDimensions) {
+        int dimensions = extraDimensions;
+        if (type.isArrayType()) {
+            dimensions += ((ArrayType) type).getDimensions();
+            type = ((ArrayType) type).getElementType();
+        }
+        int id;
+        if (type.isPrimitiveType()) {
+            id = names.child(NameTable.ROOT, ((PrimitiveType) type).getPrimitiveTypeCode().toString(), '.');
+        } else {
+            id = TypeDependencyCalculator.typeNameId(names, type);
+            if (id < 0) {
+                id = names.child(NameTable.ROOT, type.toString(), '.');
+            }
+        }
+        for (int i = 0; i < dimensions; i++) {
+            id = names.child(id, "[]", '.');
+        }
+        return id;
+    }
+
+    private static void calculate(TypeFrame frame, ClassMetrics metrics) {
+        int methods = frame.methodCount;
+
+        // Method x field matrix
+        int fields = frame.fieldIndex.size();
+        int fieldWords = (fields + 63) >>> 6;
+        long[] fieldMatrix = new long[methods * fieldWords];
+        for (int m = 0, use = 0; m < methods; m++) {
+            for (; use < frame.useEnds[m]; use++) {
+                int field = frame.uses[use];
+                fieldMatrix[m * fieldWords + (field >>> 6)] |= 1L << field;
+            }
+        }
+
+        int disjointPairs = 0;
+        int sharingPairs = 0;
+        for (int a = 0; a < methods; a++) {
+            for (int b = a + 1; b < methods; b++) {
+                if (intersects(fieldMatrix, a * fieldWords, b * fieldWords, fieldWords)) {
+                    sharingPairs++;
+                } else {
+                    disjointPairs++;
+                }
+            }
+        }
+        metrics.setLcom(Math.max(0, disjointPairs - sharingPairs));
+
+        if (methods > 1 && fields > 0) {
+            long uses = popCount(fieldMatrix);
+            metrics.setLcom3(round((methods - (double) uses / fields) / (methods - 1)));
+        } else {
+            metrics.setLcom3(2);
+        }
+
+        // Method x parameter type matrix
+        IntIntMap typeIndex = new IntIntMap(frame.parameterCount);
+        int[] columns = new int[frame.parameterCount];
+        for (int i = 0; i < frame.parameterCount; i++) {
+            columns[i] = typeIndex.putIfAbsent(frame.parameterTypes[i], typeIndex.size());
+        }
+        int typeCount = typeIndex.size();
+        if (typeCount == 0 || methods == 0) {
+            metrics.setCam(0);
+            return;
+        }
+        int typeWords = (typeCount + 63) >>> 6;
+        long[] typeMatrix = new long[methods * typeWords];
+        for (int m = 0, parameter = 0; m < methods; m++) {
+            for (; parameter < frame.parameterEnds[m]; parameter++) {
+                int column = columns[parameter];
+                typeMatrix[m * typeWords + (column >>> 6)] |= 1L << column;
+            }
+        }
+        metrics.setCam(round((double) popCount(typeMatrix) / ((long) methods * typeCount)));
+    }
+
+    private static boolean intersects(long[] matrix, int rowA, int rowB, int words) {
+        for (int i = 0; i < words; i++) {
+            if ((matrix[rowA + i] & matrix[rowB + i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long popCount(long[] matrix) {
+        long count = 0;
+        for (long word : matrix) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Round to four decimal places, as in the PROMISE data set.
+     */
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+}
@@ -0,0 +1,87 @@
+package org.promise.metrics.calculator;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.promise.metrics.model.ClassMetrics;
+
+import java.util.Arrays;
+
+/**
+ * Calculator for cyclomatic complexity based metrics (WMC, MAX_CC, AVG_CC, AMC).
+ * CC(method) = 1 + (# if + for + while + do-while + case + catch + && + || + ?:).
+ * A method's CC counts towards the type that declares it; methods of local and
+ * anonymous classes count towards those classes only.
+ */
+public class ComplexityCalculator implements MetricAccumulator {
+
+    // Per-type state: sum of CC, max CC and number of methods
+    private int[] wmc = new int[8];
+    private int[] maxCc = new int[8];
+    private int[] methodCount = new int[8];
+    private int typeDepth = 0;
+
+    // CC of the methods currently being visited (methods nest through local and anonymous classes)
+    private int[] cc = new int[8];
+    private int methodDepth = 0;
+
+    @Override
+    public void enterType(ASTNode type) {
+        if (typeDepth == wmc.length) {
+            wmc = Arrays.copyOf(wmc, typeDepth * 2);
+            maxCc = Arrays.copyOf(maxCc, typeDepth * 2);
+            methodCount = Arrays.copyOf(methodCount, typeDepth * 2);
+        }
+        wmc[typeDepth] = 0;
+        maxCc[typeDepth] = 0;
+        methodCount[typeDepth] = 0;
+        typeDepth++;
+    }
+
+    @Override
+    public void exitType(ASTNode type, ClassMetrics metrics) {
+        typeDepth--;
+        if (metrics != null) {
+            int methods = methodCount[typeDepth];
+            double average = methods > 0 ? round((double) wmc[typeDepth] / methods) : 0;
+
+            metrics.setWmc(wmc[typeDepth]);
+            metrics.setMaxCc(maxCc[typeDepth]);
+            metrics.setAvgCc(average);
+            metrics.setAmc(average);
+        }
+    }
+
+    @Override
+    public void enterMethod(MethodDeclaration method) {
+        if (methodDepth == cc.length) {
+            cc = Arrays.copyOf(cc, methodDepth * 2);
+        }
+        cc[methodDepth++] = 1;
+    }
+
+    @Override
+    public void exitMethod(MethodDeclaration method) {
+        int methodCc = cc[--methodDepth];
+        if (typeDepth > 0) {
+            int type = typeDepth - 1;
+            wmc[type] += methodCc;
+            maxCc[type] = Math.max(maxCc[type], methodCc);
+            methodCount[type]++;
+        }
+    }
+
+    @Override
+    public void decisionPoint(ASTNode node, int weight) {
+        // Decisions outside of methods (field initializers, initializer blocks) are not attributed
+        if (methodDepth > 0) {
+            cc[methodDepth - 1] += weight;
+        }
+    }
+
+    /**
+     * Round averages to four decimal places, as in the PROMISE data set.
+     */
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+}
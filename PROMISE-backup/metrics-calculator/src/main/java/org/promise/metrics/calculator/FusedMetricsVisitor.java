@@ -0,0 +1,351 @@
+package org.promise.metrics.calculator;
+
+import org.eclipse.jdt.core.dom.*;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Single-pass AST visitor that drives all registered {@link MetricAccumulator}s.
+ * Every node of the compilation unit is visited once, however many metrics are calculated.
+ *
+ * Reported types follow the PROMISE naming: every top-level type as {@code package.Type}, and member
+ * classes/interfaces of reported classes/interfaces as {@code package.OuterClass$InnerClass}.
+ * Local and anonymous classes are traversed but not reported.
+ */
+public class FusedMetricsVisitor extends ASTVisitor {
+
+    private final NameTable names;
+    private final int packageId;
+    private final List<MetricAccumulator> accumulators = new ArrayList<>();
+    private final List<ClassMetrics> metricsList = new ArrayList<>();
+    private final Deque<TypeFrame> types = new ArrayDeque<>();
+
+    private static class TypeFrame {
+        final ClassMetrics metrics;
+        final String simpleName;
+        final boolean reportsMemberTypes;
+
+        TypeFrame(ClassMetrics metrics, String simpleName, boolean reportsMemberTypes) {
+            this.metrics = metrics;
+            this.simpleName = simpleName;
+            this.reportsMemberTypes = reportsMemberTypes;
+        }
+    }
+
+    /**
+     * @param compilationUnit The compilation unit that will be visited
+     */
+    public FusedMetricsVisitor(CompilationUnit compilationUnit) {
+        this(compilationUnit, NameTable.shared());
+    }
+
+    /**
+     * @param compilationUnit The compilation unit that will be visited
+     * @param names           Table receiving the class names
+     */
+    public FusedMetricsVisitor(CompilationUnit compilationUnit, NameTable names) {
+        this.names = names;
+        this.packageId = compilationUnit.getPackage() != null
+                ? nameId(compilationUnit.getPackage().getName())
+                : NameTable.ROOT;
+    }
+
+    /**
+     * Name ID of a package name, built from its identifiers.
+     */
+    private int nameId(Name name) {
+        if (name.isQualifiedName()) {
+            QualifiedName qualifiedName = (QualifiedName) name;
+            return names.child(nameId(qualifiedName.getQualifier()), qualifiedName.getName().getIdentifier(), '.');
+        }
+        return names.child(NameTable.ROOT, ((SimpleName) name).getIdentifier(), '.');
+    }
+
+    /**
+     * Register an accumulator. Events are delivered in registration order.
+     */
+    public FusedMetricsVisitor register(MetricAccumulator accumulator) {
+        accumulators.add(accumulator);
+        return this;
+    }
+
+    /**
+     * Metrics of all reported types, in declaration order (each type followed by its member types).
+     */
+    public List<ClassMetrics> getMetrics() {
+        return metricsList;
+    }
+
+    // ---- Types ----
+
+    @Override
+    public boolean visit(TypeDeclaration node) {
+        enterType(node, node.getName().getIdentifier(), true);
+        return true;
+    }
+
+    @Override
+    public void endVisit(TypeDeclaration node) {
+        exitType(node);
+    }
+
+    @Override
+    public boolean visit(EnumDeclaration node) {
+        enterType(node, node.getName().getIdentifier(), false);
+        return true;
+    }
+
+    @Override
+    public void endVisit(EnumDeclaration node) {
+        exitType(node);
+    }
+
+    @Override
+    public boolean visit(AnnotationTypeDeclaration node) {
+        enterType(node, node.getName().getIdentifier(), false);
+        return true;
+    }
+
+    @Override
+    public void endVisit(AnnotationTypeDeclaration node) {
+        exitType(node);
+    }
+
+    @Override
+    public boolean visit(AnonymousClassDeclaration node) {
+        types.push(new TypeFrame(null, null, false));
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.enterType(node);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(AnonymousClassDeclaration node) {
+        exitType(node);
+    }
+
+    private void enterType(AbstractTypeDeclaration node, String simpleName, boolean isClassOrInterface) {
+        ClassMetrics metrics = null;
+        boolean reportsMemberTypes = false;
+
+        if (node.isPackageMemberTypeDeclaration()) {
+            metrics = new ClassMetrics(names, names.child(packageId, simpleName, '.'));
+            reportsMemberTypes = isClassOrInterface;
+        } else if (isClassOrInterface && node.isMemberTypeDeclaration()
+                && !types.isEmpty() && types.peek().reportsMemberTypes) {
+            int outerClassId = names.child(packageId, types.peek().simpleName, '.');
+            metrics = new ClassMetrics(names, names.child(outerClassId, simpleName, '$'));
+            reportsMemberTypes = true;
+        }
+
+        if (metrics != null) {
+            metricsList.add(metrics);
+        }
+        types.push(new TypeFrame(metrics, simpleName, reportsMemberTypes));
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.enterType(node);
+        }
+    }
+
+    private void exitType(ASTNode node) {
+        TypeFrame frame = types.pop();
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.exitType(node, frame.metrics);
+        }
+    }
+
+    // ---- Methods ----
+
+    @Override
+    public boolean visit(MethodDeclaration node) {
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.enterMethod(node);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(MethodDeclaration node) {
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.exitMethod(node);
+        }
+    }
+
+    // ---- Type references ----
+
+    @Override
+    public boolean visit(PackageDeclaration node) {
+        return false;
+    }
+
+    @Override
+    public boolean visit(ImportDeclaration node) {
+        return false;
+    }
+
+    @Override
+    public boolean visit(SimpleType node) {
+        typeReference(node.getName());
+        return false;
+    }
+
+    @Override
+    public boolean visit(MethodInvocation node) {
+        if (node.getExpression() instanceof Name) {
+            possibleTypeReference((Name) node.getExpression());
+        }
+        methodCall(node);
+        return true;
+    }
+
+    @Override
+    public boolean visit(QualifiedName node) {
+        // Field access such as Constants.NAME; the qualifier may also be a variable. The qualifiers of
+        // longer names and of method calls are reported with the whole name.
+        StructuralPropertyDescriptor location = node.getLocationInParent();
+        if (location != QualifiedName.QUALIFIER_PROPERTY && location != MethodInvocation.EXPRESSION_PROPERTY) {
+            possibleTypeReference(node.getQualifier());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(SimpleName node) {
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.simpleName(node);
+        }
+        return false;
+    }
+
+    /**
+     * Report a name used as an expression if one of its identifiers starts with an upper-case letter,
+     * as type names (and no variable names) conventionally do.
+     */
+    private void possibleTypeReference(Name name) {
+        for (Name n = name; ; n = ((QualifiedName) n).getQualifier()) {
+            String identifier = n.isQualifiedName()
+                    ? ((QualifiedName) n).getName().getIdentifier()
+                    : ((SimpleName) n).getIdentifier();
+            if (Character.isUpperCase(identifier.charAt(0))) {
+                typeReference(name);
+                return;
+            }
+            if (n.isSimpleName()) {
+                return;
+            }
+        }
+    }
+
+    private void typeReference(Name name) {
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.typeReference(name);
+        }
+    }
+
+    // ---- Calls ----
+
+    @Override
+    public boolean visit(SuperMethodInvocation node) {
+        methodCall(node);
+        return true;
+    }
+
+    @Override
+    public boolean visit(ClassInstanceCreation node) {
+        methodCall(node);
+        return true;
+    }
+
+    @Override
+    public boolean visit(ConstructorInvocation node) {
+        methodCall(node);
+        return true;
+    }
+
+    @Override
+    public boolean visit(SuperConstructorInvocation node) {
+        methodCall(node);
+        return true;
+    }
+
+    private void methodCall(ASTNode node) {
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.methodCall(node);
+        }
+    }
+
+    // ---- Decision points ----
+
+    @Override
+    public boolean visit(IfStatement node) {
+        decisionPoint(node, 1);
+        return true;
+    }
+
+    @Override
+    public boolean visit(ForStatement node) {
+        decisionPoint(node, 1);
+        return true;
+    }
+
+    @Override
+    public boolean visit(EnhancedForStatement node) {
+        decisionPoint(node, 1);
+        return true;
+    }
+
+    @Override
+    public boolean visit(WhileStatement node) {
+        decisionPoint(node, 1);
+        return true;
+    }
+
+    @Override
+    public boolean visit(DoStatement node) {
+        decisionPoint(node, 1);
+        return true;
+    }
+
+    @Override
+    public boolean visit(SwitchCase node) {
+        if (!node.isDefault()) {
+            decisionPoint(node, 1);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(CatchClause node) {
+        decisionPoint(node, 1);
+        return true;
+    }
+
+    @Override
+    public boolean visit(ConditionalExpression node) {
+        decisionPoint(node, 1);
+        return true;
+    }
+
+    @Override
+    public boolean visit(InfixExpression node) {
+        InfixExpression.Operator operator = node.getOperator();
+        if (operator == InfixExpression.Operator.CONDITIONAL_AND
+                || operator == InfixExpression.Operator.CONDITIONAL_OR) {
+            // a && b && c is one node with an extended operand, but two decisions
+            decisionPoint(node, 1 + node.extendedOperands().size());
+        }
+        return true;
+    }
+
+    private void decisionPoint(ASTNode node, int weight) {
+        for (MetricAccumulator accumulator : accumulators) {
+            accumulator.decisionPoint(node, weight);
+        }
+    }
+}
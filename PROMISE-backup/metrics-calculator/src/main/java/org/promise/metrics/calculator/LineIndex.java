@@ -0,0 +1,240 @@
+package org.promise.metrics.calculator;
+
+/**
+ * Per-file line classification with prefix sums, built in a single pass over the source characters.
+ * Each line is classified as code, comment or blank using the PROMISE LOC rules of {@link LOCCalculator};
+ * afterwards the number of code or comment lines of any line range is an O(1) query.
+ *
+ * Lines are separated by {@code \n}, {@code \r\n} or a lone {@code \r}, the same separators JDT uses for
+ * its line numbers.
+ */
+public class LineIndex {
+
+    private static final byte BLANK = 0;
+    private static final byte COMMENT = 1;
+    private static final byte CODE = 2;
+
+    // Flag added to a classification when the line leaves a block comment open
+    private static final int OPEN = 4;
+
+    private final char[] source;
+    private final int length;
+    private final int lineCount;
+
+    // lineStarts[i] = offset of line i + 1 (0-based array, 1-based lines)
+    private final int[] lineStarts;
+
+    // codePrefix[i] / commentPrefix[i] = code / comment lines among lines 1..i
+    private final int[] codePrefix;
+    private final int[] commentPrefix;
+
+    // inBlockComment[i] = whether line i + 1 starts inside a block comment opened on an earlier line
+    private final boolean[] inBlockComment;
+
+    /**
+     * Build the index for a source buffer.
+     *
+     * @param source Source characters
+     * @param length Number of valid characters in {@code source}
+     */
+    public LineIndex(char[] source, int length) {
+        this.source = source;
+        this.length = length;
+
+        int lines = 1;
+        for (int i = 0; i < length; i++) {
+            char c = source[i];
+            if (c == '\n' || (c == '\r' && (i + 1 >= length || source[i + 1] != '\n'))) {
+                lines++;
+            }
+        }
+        this.lineCount = lines;
+        this.lineStarts = new int[lines];
+        this.codePrefix = new int[lines + 1];
+        this.commentPrefix = new int[lines + 1];
+        this.inBlockComment = new boolean[lines];
+
+        int line = 0;
+        int start = 0;
+        boolean blockComment = false;
+        for (int i = 0; i <= length; i++) {
+            boolean endOfLine = i == length;
+            int next = i + 1;
+            if (!endOfLine) {
+                char c = source[i];
+                if (c == '\n') {
+                    endOfLine = true;
+                } else if (c == '\r') {
+                    endOfLine = true;
+                    if (next < length && source[next] == '\n') {
+                        next++;
+                    }
+                }
+            }
+            if (!endOfLine) {
+                continue;
+            }
+
+            lineStarts[line] = start;
+            inBlockComment[line] = blockComment;
+            int classification = classify(start, i, blockComment);
+            blockComment = (classification & OPEN) != 0;
+            int kind = classification & ~OPEN;
+
+            codePrefix[line + 1] = codePrefix[line] + (kind == CODE ? 1 : 0);
+            commentPrefix[line + 1] = commentPrefix[line] + (kind == COMMENT ? 1 : 0);
+
+            line++;
+            start = next;
+            i = next - 1;
+        }
+    }
+
+    /**
+     * Line number (1-indexed) of a character offset.
+     */
+    public int lineOf(int position) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * Number of code lines (LOC) in a line range.
+     * Like the PROMISE rules, the range is evaluated as if it did not start inside a block comment.
+     *
+     * @param startLine Start line number (1-indexed)
+     * @param endLine   End line number (1-indexed, inclusive)
+     */
+    public int codeLines(int startLine, int endLine) {
+        int from = Math.max(startLine, 1);
+        int to = Math.min(endLine, lineCount);
+        if (from > to) {
+            return 0;
+        }
+        if (inBlockComment[from - 1]) {
+            return countFresh(from, to, CODE);
+        }
+        return codePrefix[to] - codePrefix[from - 1];
+    }
+
+    /**
+     * Number of comment-only lines in a line range (non-blank lines that are not code).
+     *
+     * @param startLine Start line number (1-indexed)
+     * @param endLine   End line number (1-indexed, inclusive)
+     */
+    public int commentLines(int startLine, int endLine) {
+        int from = Math.max(startLine, 1);
+        int to = Math.min(endLine, lineCount);
+        if (from > to) {
+            return 0;
+        }
+        if (inBlockComment[from - 1]) {
+            return countFresh(from, to, COMMENT);
+        }
+        return commentPrefix[to] - commentPrefix[from - 1];
+    }
+
+    /**
+     * Rare case of a range starting inside a block comment of the file: re-classify the range on its own.
+     */
+    private int countFresh(int from, int to, byte wanted) {
+        int count = 0;
+        boolean blockComment = false;
+        for (int line = from; line <= to; line++) {
+            int start = lineStarts[line - 1];
+            int end = line < lineCount ? lineEnd(lineStarts[line]) : length;
+            int classification = classify(start, end, blockComment);
+            blockComment = (classification & OPEN) != 0;
+            if ((classification & ~OPEN) == wanted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Offset of the line separator preceding the given line start.
+     */
+    private int lineEnd(int nextLineStart) {
+        int end = nextLineStart - 1;
+        if (end > 0 && source[end] == '\n' && source[end - 1] == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Classify the line {@code source[start, end)}.
+     *
+     * @return {@link #BLANK}, {@link #COMMENT} or {@link #CODE}, plus {@link #OPEN} if the line
+     *         leaves a block comment open
+     */
+    private int classify(int start, int end, boolean blockComment) {
+        // Same bounds as String.trim()
+        while (start < end && source[start] <= ' ') {
+            start++;
+        }
+        while (end > start && source[end - 1] <= ' ') {
+            end--;
+        }
+
+        if (start == end) {
+            return blockComment ? BLANK | OPEN : BLANK;
+        }
+
+        if (blockComment) {
+            int close = indexOf(start, end, '*', '/');
+            if (close < 0) {
+                return COMMENT | OPEN;
+            }
+            return hasCodeAfter(close + 2, end) ? CODE : COMMENT;
+        }
+
+        if (startsWith(start, end, '/', '*')) {
+            int close = indexOf(start, end, '*', '/');
+            if (close < 0) {
+                return COMMENT | OPEN;
+            }
+            return hasCodeAfter(close + 2, end) ? CODE : COMMENT;
+        }
+
+        if (startsWith(start, end, '/', '/') || source[start] == '*') {
+            return COMMENT;
+        }
+
+        return CODE;
+    }
+
+    /**
+     * Whether code follows a closed block comment: anything but whitespace or the start of another comment.
+     */
+    private boolean hasCodeAfter(int start, int end) {
+        while (start < end && source[start] <= ' ') {
+            start++;
+        }
+        return start < end && !startsWith(start, end, '/', '/') && !startsWith(start, end, '/', '*');
+    }
+
+    private boolean startsWith(int start, int end, char first, char second) {
+        return end - start >= 2 && source[start] == first && source[start + 1] == second;
+    }
+
+    private int indexOf(int start, int end, char first, char second) {
+        for (int i = start; i + 1 < end; i++) {
+            if (source[i] == first && source[i + 1] == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+package org.promise.metrics.calculator;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.promise.metrics.model.ClassMetrics;
+
+/**
+ * Receives traversal events from {@link FusedMetricsVisitor}.
+ * Types are entered and exited in strict nesting order, so implementations keep
+ * their per-type state on a stack that is pushed in {@link #enterType} and popped in {@link #exitType}.
+ */
+public interface MetricAccumulator {
+
+    /**
+     * A type declaration starts: a class, interface, enum, annotation type or anonymous class.
+     *
+     * @param type The type declaration or anonymous class declaration node
+     */
+    void enterType(ASTNode type);
+
+    /**
+     * The innermost type ends.
+     *
+     * @param type    The type declaration or anonymous class declaration node
+     * @param metrics Metrics of the type, or null if the type is not reported
+     */
+    void exitType(ASTNode type, ClassMetrics metrics);
+
+    /**
+     * A method or constructor declaration starts.
+     */
+    default void enterMethod(MethodDeclaration method) {
+    }
+
+    /**
+     * The innermost method or constructor declaration ends.
+     */
+    default void exitMethod(MethodDeclaration method) {
+    }
+
+    /**
+     * A branch of control flow (if, loop, case, catch, conditional operator, short-circuit operator).
+     *
+     * @param node   The node that introduces the decision
+     * @param weight Number of decisions the node stands for
+     */
+    default void decisionPoint(ASTNode node, int weight) {
+    }
+
+    /**
+     * A name that may denote a type: the name of a type reference (declaration, cast, instantiation,
+     * supertype, ...) or the qualifier of a method call or field access that looks like a type name.
+     * Names are syntactic; whether they denote a type is decided when the whole project is known.
+     */
+    default void typeReference(Name name) {
+    }
+
+    /**
+     * An identifier that is not part of a type reference: a variable, field, method, type or label name,
+     * declared or used. The identifiers of a qualified name such as {@code a.b.c} are delivered one by one.
+     */
+    default void simpleName(SimpleName name) {
+    }
+
+    /**
+     * A method call, constructor call ({@code this(...)}, {@code super(...)}) or instance creation:
+     * a {@code MethodInvocation}, {@code SuperMethodInvocation}, {@code ConstructorInvocation},
+     * {@code SuperConstructorInvocation} or {@code ClassInstanceCreation} node.
+     */
+    default void methodCall(ASTNode call) {
+    }
+}
@@ -0,0 +1,205 @@
+package org.promise.metrics.calculator;
+
+import org.eclipse.jdt.core.dom.*;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.model.TypeReferences;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Collects the supertypes, referenced type names and method keys of each reported type as
+ * {@link TypeReferences}, the input of the project-wide type graph that calculates DIT, NOC, CBO, CA, CE,
+ * MFA and IC.
+ *
+ * Names are recorded as written; nothing is resolved here, so no JDT bindings are needed. References of
+ * local, anonymous and unreported member types count for the reported type that contains them.
+ */
+public class TypeDependencyCalculator implements MetricAccumulator {
+
+    private final NameTable names;
+    private final int packageId;
+    private final int[] imports;
+    private final int[] onDemandImports;
+    private final Deque<TypeFrame> types = new ArrayDeque<>();
+
+    private static class TypeFrame {
+        boolean isInterface;
+        int superclassId = TypeReferences.NO_SUPERCLASS;
+        int[] interfaceIds;
+        int[] references = new int[16];
+        int referenceCount;
+        int[] methods = new int[8];
+        int methodKeyCount;
+        int methodCount;
+
+        void addReference(int id) {
+            if (referenceCount == references.length) {
+                references = Arrays.copyOf(references, referenceCount * 2);
+            }
+            references[referenceCount++] = id;
+        }
+
+        void addMethod(int key) {
+            if (methodKeyCount == methods.length) {
+                methods = Arrays.copyOf(methods, methodKeyCount * 2);
+            }
+            methods[methodKeyCount++] = key;
+        }
+    }
+
+    /**
+     * @param compilationUnit The compilation unit that will be visited
+     */
+    public TypeDependencyCalculator(CompilationUnit compilationUnit) {
+        this(compilationUnit, NameTable.shared());
+    }
+
+    /**
+     * @param compilationUnit The compilation unit that will be visited
+     * @param names           Table of the class names, receiving the names as written and the method keys
+     */
+    public TypeDependencyCalculator(CompilationUnit compilationUnit, NameTable names) {
+        this.names = names;
+        this.packageId = compilationUnit.getPackage() != null
+                ? nameId(names, compilationUnit.getPackage().getName())
+                : NameTable.ROOT;
+
+        List<Integer> single = new ArrayList<>();
+        List<Integer> onDemand = new ArrayList<>();
+        for (Object o : compilationUnit.imports()) {
+            ImportDeclaration importDeclaration = (ImportDeclaration) o;
+            if (importDeclaration.isStatic()) {
+                continue;
+            }
+            int id = nameId(names, importDeclaration.getName());
+            if (importDeclaration.isOnDemand()) {
+                onDemand.add(id);
+            } else {
+                single.add(id);
+            }
+        }
+        this.imports = toArray(single);
+        this.onDemandImports = toArray(onDemand);
+    }
+
+    @Override
+    public void enterType(ASTNode type) {
+        TypeFrame frame = new TypeFrame();
+        if (type instanceof TypeDeclaration) {
+            TypeDeclaration declaration = (TypeDeclaration) type;
+            frame.isInterface = declaration.isInterface();
+            if (declaration.getSuperclassType() != null) {
+                frame.superclassId = typeNameId(names, declaration.getSuperclassType());
+            }
+            frame.interfaceIds = typeNameIds(declaration.superInterfaceTypes());
+        } else if (type instanceof EnumDeclaration) {
+            frame.superclassId = names.intern("java.lang.Enum");
+            frame.interfaceIds = typeNameIds(((EnumDeclaration) type).superInterfaceTypes());
+        } else if (type instanceof AnnotationTypeDeclaration) {
+            frame.isInterface = true;
+        }
+        types.push(frame);
+    }
+
+    @Override
+    public void exitType(ASTNode type, ClassMetrics metrics) {
+        TypeFrame frame = types.pop();
+        if (metrics != null) {
+            metrics.setTypeReferences(new TypeReferences(packageId, imports, onDemandImports, frame.isInterface,
+                    frame.superclassId, frame.interfaceIds, distinct(frame.references, frame.referenceCount),
+                    distinct(frame.methods, frame.methodKeyCount), frame.methodCount));
+        } else if (!types.isEmpty()) {
+            TypeFrame outer = types.peek();
+            for (int i = 0; i < frame.referenceCount; i++) {
+                outer.addReference(frame.references[i]);
+            }
+        }
+    }
+
+    @Override
+    public void enterMethod(MethodDeclaration method) {
+        if (types.isEmpty() || method.isConstructor()) {
+            return;
+        }
+        TypeFrame frame = types.peek();
+        frame.methodCount++;
+        if (!Modifier.isPrivate(method.getModifiers())) {
+            frame.addMethod(names.child(NameTable.ROOT,
+                    TypeReferences.methodKey(method.getName().getIdentifier(), method.parameters().size()), '.'));
+        }
+    }
+
+    @Override
+    public void typeReference(Name name) {
+        if (!types.isEmpty()) {
+            types.peek().addReference(nameId(names, name));
+        }
+    }
+
+    /**
+     * Name ID of a name as written, built from its identifiers.
+     */
+    static int nameId(NameTable names, Name name) {
+        if (name.isQualifiedName()) {
+            QualifiedName qualifiedName = (QualifiedName) name;
+            return names.child(nameId(names, qualifiedName.getQualifier()),
+                    qualifiedName.getName().getIdentifier(), '.');
+        }
+        return names.child(NameTable.ROOT, ((SimpleName) name).getIdentifier(), '.');
+    }
+
+    /**
+     * Name ID of a class or interface type as written, without type arguments, or -1 for other types.
+     */
+    static int typeNameId(NameTable names, Type type) {
+        if (type.isParameterizedType()) {
+            return typeNameId(names, ((ParameterizedType) type).getType());
+        }
+        if (type.isSimpleType()) {
+            return nameId(names, ((SimpleType) type).getName());
+        }
+        if (type.isQualifiedType()) {
+            QualifiedType qualifiedType = (QualifiedType) type;
+            int qualifier = typeNameId(names, qualifiedType.getQualifier());
+            return qualifier < 0 ? -1 : names.child(qualifier, qualifiedType.getName().getIdentifier(), '.');
+        }
+        return -1;
+    }
+
+    private int[] typeNameIds(List<?> types) {
+        int[] ids = new int[types.size()];
+        int count = 0;
+        for (Object type : types) {
+            int id = typeNameId(names, (Type) type);
+            if (id >= 0) {
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    private static int[] distinct(int[] ids, int count) {
+        int[] sorted = Arrays.copyOf(ids, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,379 @@
+package org.promise.metrics.diagnostics;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.promise.metrics.model.ClassMetrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Console and problem-file output of an analysis run, written by a single background thread.
+ *
+ * Worker threads never touch the console: they count finished files and enqueue events, and the writer
+ * thread formats and prints them in order. Depending on the {@link Verbosity}, finished files are listed
+ * with their classes, shown as a progress bar (redrawn in place on a terminal, every 10% otherwise) or not
+ * at all. Parse problems go to a CSV file ({@code file,line,column,severity,id,message}) if one was given,
+ * and are listed on the console in verbose mode; otherwise only their number is reported at the end.
+ *
+ * Until {@link #start} is called (for example when the parser is used as a library), errors and warnings
+ * are printed directly to {@code System.err} and file events are ignored. After {@link #close}, messages are
+ * printed directly as well, still honoring the verbosity of the run.
+ */
+public final class Diagnostics {
+
+    /**
+     * Events waiting for the writer; workers block only if the console falls this far behind.
+     */
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+
+    private static final long REDRAW_MILLIS = 200;
+    private static final int BAR_WIDTH = 30;
+
+    private static volatile Diagnostics active;
+    private static volatile Verbosity lastVerbosity = Verbosity.PROGRESS;    // of the last started run
+
+    private final Verbosity verbosity;
+    private final Path problemsPath;
+    private final CSVPrinter problemsPrinter;
+    private final boolean interactive = System.console() != null;
+    private final PrintStream out = System.out;
+    private final PrintStream err = System.err;
+
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final AtomicInteger expectedFiles = new AtomicInteger();
+    private final AtomicInteger finishedFiles = new AtomicInteger();
+    private final AtomicInteger finishedClasses = new AtomicInteger();
+    private final AtomicInteger problemFiles = new AtomicInteger();
+    private final AtomicInteger problemErrors = new AtomicInteger();
+
+    // Writer thread state
+    private final long startMillis = System.currentTimeMillis();
+    private long lastDrawMillis;
+    private int drawnFiles = -1;
+    private int drawnStep = -1;
+    private int barLength;
+
+    private Diagnostics(Verbosity verbosity, Path problemsPath) throws IOException {
+        this.verbosity = verbosity;
+        this.problemsPath = problemsPath;
+        if (problemsPath != null) {
+            if (problemsPath.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(problemsPath.toAbsolutePath().getParent());
+            }
+            BufferedWriter file = Files.newBufferedWriter(problemsPath, StandardCharsets.UTF_8);
+            problemsPrinter = new CSVPrinter(file, CSVFormat.DEFAULT.builder()
+                    .setHeader("file", "line", "column", "severity", "id", "message")
+                    .build());
+        } else {
+            problemsPrinter = null;
+        }
+
+        writer = new Thread(this::drain, "metrics-diagnostics");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Start the writer thread for this run.
+     *
+     * @param verbosity    Console verbosity
+     * @param problemsPath CSV file receiving every parse problem, or null
+     * @throws IOException If the problems file cannot be created
+     */
+    public static void start(Verbosity verbosity, Path problemsPath) throws IOException {
+        lastVerbosity = verbosity;
+        active = new Diagnostics(verbosity, problemsPath);
+    }
+
+    /**
+     * Announce files about to be analyzed, extending the progress bar.
+     */
+    public static void expectFiles(int count) {
+        Diagnostics diagnostics = active;
+        if (diagnostics != null) {
+            diagnostics.expectedFiles.addAndGet(count);
+        }
+    }
+
+    /**
+     * Report an analyzed file.
+     *
+     * @param name    File name for the console
+     * @param metrics Its classes; the list must not change afterwards
+     */
+    public static void fileDone(String name, List<ClassMetrics> metrics) {
+        Diagnostics diagnostics = active;
+        if (diagnostics == null) {
+            return;
+        }
+        diagnostics.finishedFiles.incrementAndGet();
+        diagnostics.finishedClasses.addAndGet(metrics.size());
+        if (diagnostics.verbosity == Verbosity.VERBOSE) {
+            diagnostics.enqueue(() -> diagnostics.printFile(name, metrics));
+        }
+    }
+
+    /**
+     * Report the parse problems of a file.
+     */
+    public static void parseProblems(String fileName, List<ParseProblem> problems) {
+        Diagnostics diagnostics = active;
+        if (diagnostics == null || problems.isEmpty()) {
+            return;
+        }
+        diagnostics.problemFiles.incrementAndGet();
+        for (ParseProblem problem : problems) {
+            if (problem.isError()) {
+                diagnostics.problemErrors.incrementAndGet();
+            }
+        }
+        if (diagnostics.problemsPrinter != null || diagnostics.verbosity == Verbosity.VERBOSE) {
+            diagnostics.enqueue(() -> diagnostics.writeProblems(fileName, problems));
+        }
+    }
+
+    /**
+     * Status message, shown unless quiet.
+     */
+    public static void info(String message) {
+        Diagnostics diagnostics = active;
+        if (diagnostics == null) {
+            if (lastVerbosity != Verbosity.QUIET) {
+                System.out.println(message);
+            }
+        } else if (diagnostics.verbosity != Verbosity.QUIET) {
+            diagnostics.enqueue(() -> diagnostics.printMessage(diagnostics.out, message));
+        }
+    }
+
+    /**
+     * Warning, always shown.
+     */
+    public static void warning(String message) {
+        error("Warning: " + message);
+    }
+
+    /**
+     * Error message, always shown.
+     */
+    public static void error(String message) {
+        Diagnostics diagnostics = active;
+        if (diagnostics == null) {
+            System.err.println(message);
+        } else {
+            diagnostics.enqueue(() -> diagnostics.printMessage(diagnostics.err, message));
+        }
+    }
+
+    /**
+     * Wait until every event so far has been written and finish the progress bar, so the caller can
+     * print to the console itself.
+     */
+    public static void flush() {
+        Diagnostics diagnostics = active;
+        if (diagnostics != null) {
+            diagnostics.awaitWriter();
+        }
+    }
+
+    /**
+     * Flush, stop the writer thread, close the problems file and report the number of parse problems.
+     */
+    public static void close() throws IOException {
+        Diagnostics diagnostics = active;
+        if (diagnostics == null) {
+            return;
+        }
+        active = null;
+        diagnostics.awaitWriter();
+        diagnostics.closed = true;
+        diagnostics.writer.interrupt();
+        try {
+            diagnostics.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (diagnostics.problemsPrinter != null) {
+            diagnostics.problemsPrinter.close();
+        }
+        int files = diagnostics.problemFiles.get();
+        if (files > 0 && diagnostics.verbosity != Verbosity.VERBOSE) {
+            System.out.println("Parse problems in " + files + " files (" + diagnostics.problemErrors.get()
+                    + " errors)" + (diagnostics.problemsPath != null
+                    ? ", listed in " + diagnostics.problemsPath
+                    : "; use --problems FILE or --verbose to list them"));
+        }
+    }
+
+    private void enqueue(Runnable event) {
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitWriter() {
+        CountDownLatch written = new CountDownLatch(1);
+        enqueue(() -> {
+            finishProgress();
+            written.countDown();
+        });
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writer thread: run events in order and redraw the progress bar between them.
+     */
+    private void drain() {
+        List<Runnable> events = new ArrayList<>();
+        while (!closed) {
+            try {
+                Runnable event = queue.poll(REDRAW_MILLIS, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    events.add(event);
+                    queue.drainTo(events);
+                }
+            } catch (InterruptedException e) {
+                continue;
+            }
+            for (Runnable event : events) {
+                event.run();
+            }
+            events.clear();
+            drawProgress();
+            out.flush();
+            err.flush();
+        }
+    }
+
+    private void printFile(String name, List<ClassMetrics> metrics) {
+        clearProgress();
+        out.println("Processing: " + name);
+        for (ClassMetrics m : metrics) {
+            out.print("  - ");
+            out.println(m.getFullyQualifiedName());
+        }
+    }
+
+    private void writeProblems(String fileName, List<ParseProblem> problems) {
+        if (verbosity == Verbosity.VERBOSE) {
+            clearProgress();
+            out.flush();
+            err.println("Warning: Parse problems in " + fileName);
+            for (ParseProblem problem : problems) {
+                if (problem.isError()) {
+                    err.println("  " + problem.getMessage());
+                }
+            }
+        }
+        if (problemsPrinter != null) {
+            try {
+                for (ParseProblem problem : problems) {
+                    problemsPrinter.printRecord(fileName, problem.getLine(), problem.getColumn(),
+                            problem.isError() ? "error" : "warning", problem.getId(), problem.getMessage());
+                }
+            } catch (IOException e) {
+                err.println("Warning: Could not write to " + problemsPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void printMessage(PrintStream stream, String message) {
+        clearProgress();
+        out.flush();
+        stream.println(message);
+    }
+
+    private void drawProgress() {
+        int expected = expectedFiles.get();
+        int files = finishedFiles.get();
+        if (verbosity != Verbosity.PROGRESS || expected == 0 || files == drawnFiles) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (interactive) {
+            if (now - lastDrawMillis < REDRAW_MILLIS && files < expected) {
+                return;
+            }
+            String line = progressLine(files, expected, now);
+            out.print("\r" + line + pad(barLength - line.length()));
+            barLength = line.length();
+        } else {
+            // Log files: one line per 10% instead of redrawing
+            int step = (int) (10L * files / expected);
+            if (files == 0 || step == drawnStep) {
+                return;
+            }
+            drawnStep = step;
+            out.println(progressLine(files, expected, now));
+        }
+        lastDrawMillis = now;
+        drawnFiles = files;
+    }
+
+    private String progressLine(int files, int expected, long now) {
+        int filled = (int) ((long) BAR_WIDTH * Math.min(files, expected) / expected);
+        double seconds = Math.max(0.001, (now - startMillis) / 1000.0);
+        return String.format(Locale.ROOT, "[%s%s] %3d%% %d/%d files, %d classes, %.0f files/s",
+                repeat('#', filled), repeat(' ', BAR_WIDTH - filled), 100L * files / expected, files, expected,
+                finishedClasses.get(), files / seconds);
+    }
+
+    /**
+     * Erase the progress bar before printing a message; it is drawn again after the next batch of events.
+     */
+    private void clearProgress() {
+        if (barLength > 0) {
+            out.print("\r" + pad(barLength) + "\r");
+            barLength = 0;
+            drawnFiles = -1;
+        }
+    }
+
+    /**
+     * Draw the final state and end the progress bar's line.
+     */
+    private void finishProgress() {
+        drawProgress();
+        if (barLength > 0) {
+            out.println();
+            barLength = 0;
+        }
+        out.flush();
+        err.flush();
+    }
+
+    private static String pad(int length) {
+        return repeat(' ', length);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(Math.max(0, count));
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package org.promise.metrics.diagnostics;
+
+/**
+ * A problem reported by the parser for a source file.
+ */
+public class ParseProblem {
+    private final int line;          // 1-based, or 0 if unknown
+    private final int column;        // 1-based, or 0 if unknown
+    private final boolean error;     // false for warnings
+    private final int id;            // JDT problem ID
+    private final String message;
+
+    public ParseProblem(int line, int column, boolean error, int id, String message) {
+        this.line = line;
+        this.column = column;
+        this.error = error;
+        this.id = id;
+        this.message = message;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,10 @@
+package org.promise.metrics.diagnostics;
+
+/**
+ * How much the {@link Diagnostics} write to the console while files are analyzed.
+ */
+public enum Verbosity {
+    QUIET,      // errors and warnings only
+    PROGRESS,   // a progress bar, plus errors, warnings and status messages
+    VERBOSE     // every file with its classes and every parse problem
+}
@@ -0,0 +1,102 @@
+package org.promise.metrics.encoding;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.promise.metrics.analysis.ParallelAnalyzer;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.parser.ParserSession;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceLoader;
+import org.promise.metrics.source.SourceText;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes the classes of Java source files as AST node-type token sequences (see {@link AstTokenizer}).
+ *
+ * Files are scheduled by a {@link ParallelAnalyzer} (largest first, tar entries in archive order), each
+ * worker with its own parser session and tokenizer; the tokenizers share the {@link Vocabulary} and hand
+ * every class to the {@link EncodingWriter} as soon as it is encoded. The writer sorts the classes and the
+ * vocabulary numbers its tokens at the end, so the output does not depend on the thread count. With a
+ * single thread the files are encoded in input order on the calling thread.
+ */
+public class AstEncoder {
+
+    private final Vocabulary vocabulary;
+    private final Charset charset;
+    private final int threads;
+
+    /**
+     * @param vocabulary Vocabulary receiving the tokens
+     * @param charset    Charset of the sources that do not start with a byte order mark
+     * @param threads    Worker threads (below 1 means all available processors)
+     */
+    public AstEncoder(Vocabulary vocabulary, Charset charset, int threads) {
+        this.vocabulary = vocabulary;
+        this.charset = charset;
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Encode all classes of the given files. Files that cannot be read are reported and skipped.
+     *
+     * @param sources Source files
+     * @param writer  Receives the token sequence of every class
+     * @throws IOException If the writer fails
+     */
+    public void encode(List<SourceFile> sources, EncodingWriter writer) throws IOException {
+        ThreadLocal<AstTokenizer> tokenizers = ThreadLocal.withInitial(() -> new AstTokenizer(vocabulary, writer));
+        ParallelAnalyzer analyzer = new ParallelAnalyzer(threads, (files, indices) -> {
+            AstTokenizer tokenizer = tokenizers.get();
+            List<List<ClassMetrics>> classes = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                classes.add(encode(files.get(i), indices[i], tokenizer));
+            }
+            return classes;
+        });
+        // The classes were handed to the writer while encoding
+        analyzer.analyze(sources, (index, classes) -> { });
+    }
+
+    /**
+     * Encode the classes of one file.
+     *
+     * @return The encoded classes, or an empty list if the file cannot be read or encoded
+     * @throws IOException If the writer fails
+     */
+    private List<ClassMetrics> encode(SourceFile source, int index, AstTokenizer tokenizer) throws IOException {
+        long start = Profiler.now();
+        long time;
+        CompilationUnit compilationUnit;
+        try {
+            SourceText text = source.load(SourceLoader.forCurrentThread(), charset);
+            time = Profiler.lap(Phase.READ, start);
+            compilationUnit = ParserSession.forCurrentThread().parse(text.getChars());
+            time = Profiler.lap(Phase.PARSE, time);
+        } catch (Exception e) {
+            Diagnostics.error("Error processing " + source.getName() + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+
+        List<ClassMetrics> classes;
+        try {
+            classes = tokenizer.encode(compilationUnit, index);
+        } catch (RuntimeException e) {
+            Diagnostics.error("Error processing " + source.getName() + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+        Profiler.lap(Phase.VISIT, time);
+        Profiler.file(source.getName(), source.getSize(), classes.size(), start);
+        return classes;
+    }
+}
@@ -0,0 +1,208 @@
+package org.promise.metrics.encoding;
+
+import org.eclipse.jdt.core.dom.*;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns a compilation unit into one token sequence per reported class: the node types of the class's
+ * subtree in preorder, e.g. {@code TypeDeclaration SimpleName MethodDeclaration Modifier ...}.
+ *
+ * Classes are named as by {@link org.promise.metrics.calculator.FusedMetricsVisitor}, so encodings and
+ * metrics join on the class name. A reported member class has a sequence of its own; in the enclosing
+ * class's sequence it only leaves its declaration token. Local and anonymous classes stay part of the
+ * enclosing sequence. Nodes outside types (package and imports) and Javadoc tags are not encoded.
+ *
+ * A tokenizer keeps its buffers and a node type to vocabulary ID table across compilation units and is
+ * not thread-safe; use one per worker thread.
+ */
+final class AstTokenizer extends ASTVisitor {
+
+    private final NameTable names = NameTable.shared();
+    private final Vocabulary vocabulary;
+    private final EncodingWriter writer;
+    private int[] typeIds = new int[128];            // vocabulary ID by node type, 0 if not looked up yet
+    private final List<TypeFrame> frames = new ArrayList<>();
+    private int depth;
+
+    private int packageId;
+    private int file;
+    private int ordinal;
+    private List<ClassMetrics> classes;
+    private IOException failure;
+
+    private static final class TypeFrame {
+        int nameId;                   // ClassMetrics.NO_NAME if the type is not reported
+        String simpleName;
+        boolean reportsMemberTypes;
+        TypeFrame target;             // innermost reported type, which receives the tokens
+        int[] tokens = new int[256];
+        int length;
+
+        void add(int token) {
+            if (length == tokens.length) {
+                tokens = Arrays.copyOf(tokens, length * 2);
+            }
+            tokens[length++] = token;
+        }
+    }
+
+    AstTokenizer(Vocabulary vocabulary, EncodingWriter writer) {
+        this.vocabulary = vocabulary;
+        this.writer = writer;
+    }
+
+    /**
+     * Encode the classes of a compilation unit and add them to the writer.
+     *
+     * @param file Index of the source file
+     * @return The reported classes, named but without metrics
+     * @throws IOException If the writer fails
+     */
+    List<ClassMetrics> encode(CompilationUnit compilationUnit, int file) throws IOException {
+        this.packageId = compilationUnit.getPackage() != null
+                ? nameId(compilationUnit.getPackage().getName())
+                : NameTable.ROOT;
+        this.file = file;
+        this.ordinal = 0;
+        this.classes = new ArrayList<>();
+        this.failure = null;
+        this.depth = 0;
+        compilationUnit.accept(this);
+        if (failure != null) {
+            throw failure;
+        }
+        return classes;
+    }
+
+    private int nameId(Name name) {
+        if (name.isQualifiedName()) {
+            QualifiedName qualifiedName = (QualifiedName) name;
+            return names.child(nameId(qualifiedName.getQualifier()), qualifiedName.getName().getIdentifier(), '.');
+        }
+        return names.child(NameTable.ROOT, ((SimpleName) name).getIdentifier(), '.');
+    }
+
+    private int tokenId(ASTNode node) {
+        int type = node.getNodeType();
+        if (type >= typeIds.length) {
+            typeIds = Arrays.copyOf(typeIds, type + 1);
+        }
+        int id = typeIds[type];
+        if (id == 0) {
+            id = vocabulary.id(ASTNode.nodeClassForType(type).getSimpleName());
+            typeIds[type] = id;
+        }
+        return id;
+    }
+
+    @Override
+    public boolean preVisit2(ASTNode node) {
+        if (depth > 0 && frames.get(depth - 1).target != null) {
+            frames.get(depth - 1).target.add(tokenId(node));
+        }
+        return true;
+    }
+
+    // ---- Types, named as by FusedMetricsVisitor ----
+
+    @Override
+    public boolean visit(TypeDeclaration node) {
+        enterType(node, node.getName().getIdentifier(), true);
+        return true;
+    }
+
+    @Override
+    public void endVisit(TypeDeclaration node) {
+        exitType();
+    }
+
+    @Override
+    public boolean visit(EnumDeclaration node) {
+        enterType(node, node.getName().getIdentifier(), false);
+        return true;
+    }
+
+    @Override
+    public void endVisit(EnumDeclaration node) {
+        exitType();
+    }
+
+    @Override
+    public boolean visit(AnnotationTypeDeclaration node) {
+        enterType(node, node.getName().getIdentifier(), false);
+        return true;
+    }
+
+    @Override
+    public void endVisit(AnnotationTypeDeclaration node) {
+        exitType();
+    }
+
+    @Override
+    public boolean visit(AnonymousClassDeclaration node) {
+        push(ClassMetrics.NO_NAME, null, false);
+        return true;
+    }
+
+    @Override
+    public void endVisit(AnonymousClassDeclaration node) {
+        exitType();
+    }
+
+    private void enterType(AbstractTypeDeclaration node, String simpleName, boolean isClassOrInterface) {
+        int nameId = ClassMetrics.NO_NAME;
+        boolean reportsMemberTypes = false;
+        TypeFrame outer = depth > 0 ? frames.get(depth - 1) : null;
+
+        if (node.isPackageMemberTypeDeclaration()) {
+            nameId = names.child(packageId, simpleName, '.');
+            reportsMemberTypes = isClassOrInterface;
+        } else if (isClassOrInterface && node.isMemberTypeDeclaration()
+                && outer != null && outer.reportsMemberTypes) {
+            int outerClassId = names.child(packageId, outer.simpleName, '.');
+            nameId = names.child(outerClassId, simpleName, '$');
+            reportsMemberTypes = true;
+        }
+
+        TypeFrame frame = push(nameId, simpleName, reportsMemberTypes);
+        if (nameId != ClassMetrics.NO_NAME) {
+            // The declaration token was added to the enclosing sequence before this visit
+            frame.add(tokenId(node));
+        }
+    }
+
+    private TypeFrame push(int nameId, String simpleName, boolean reportsMemberTypes) {
+        if (depth == frames.size()) {
+            frames.add(new TypeFrame());
+        }
+        TypeFrame outer = depth > 0 ? frames.get(depth - 1) : null;
+        TypeFrame frame = frames.get(depth++);
+        frame.nameId = nameId;
+        frame.simpleName = simpleName;
+        frame.reportsMemberTypes = reportsMemberTypes;
+        frame.length = 0;
+        frame.target = nameId != ClassMetrics.NO_NAME ? frame : outer != null ? outer.target : null;
+        return frame;
+    }
+
+    private void exitType() {
+        TypeFrame frame = frames.get(--depth);
+        if (frame.nameId == ClassMetrics.NO_NAME) {
+            return;
+        }
+        classes.add(new ClassMetrics(frame.nameId));
+        if (failure == null) {
+            try {
+                writer.add(frame.nameId, file, ordinal++, frame.tokens, frame.length);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
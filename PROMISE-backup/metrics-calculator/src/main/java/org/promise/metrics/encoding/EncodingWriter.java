@@ -0,0 +1,251 @@
+package org.promise.metrics.encoding;
+
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.NameTable;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams per-class token sequences to disk and writes them sorted by class name.
+ *
+ * Sequences are appended to a spill file next to the output as they arrive, so memory holds only the
+ * row keys. {@link #finish} sorts the keys (by class name, then file and position in the file), reads the
+ * sequences back through a memory mapping and writes them with their final vocabulary IDs:
+ * <pre>
+ *   int magic ("ASTE"), int version, int vocabulary size, int class count
+ *   per class: UTF name, varint token count, varint token IDs
+ * </pre>
+ * (big-endian ints, {@link DataOutputStream#writeUTF} names, 7-bit varints as in the type hierarchy index),
+ * and optionally as CSV with the columns {@code name,encoding}, the encoding being the space-separated IDs.
+ * All methods are thread-safe.
+ */
+public class EncodingWriter {
+
+    public static final int MAGIC = 0x41535445;    // "ASTE"
+    public static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final NameTable names = NameTable.shared();
+    private final Path output;
+    private final Path spill;
+    private final OutputStream spillOut;
+    private final byte[] varint = new byte[5];
+    private long spillSize;
+    private int[] nameIds = new int[1024];
+    private int[] files = new int[1024];
+    private int[] ordinals = new int[1024];
+    private long[] offsets = new long[1024];
+    private int rows;
+    private long tokenCount;
+    private boolean closed;
+
+    /**
+     * @param output The binary encoding file; its directory also holds the spill file while writing
+     * @throws IOException If the spill file cannot be created
+     */
+    public EncodingWriter(Path output) throws IOException {
+        this.output = output;
+        Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        this.spill = Files.createTempFile(parent, ".ast-spill", null);
+        this.spillOut = new BufferedOutputStream(Files.newOutputStream(spill), BUFFER_SIZE);
+    }
+
+    /**
+     * Add the token sequence of a class.
+     *
+     * @param nameId  Class name in the shared {@link NameTable}
+     * @param file    Index of the source file, to order classes of the same name
+     * @param ordinal Position of the class among those of its file
+     * @param tokens  Provisional vocabulary IDs; only the first {@code length} are used
+     * @throws IOException If the spill file cannot be written
+     */
+    public synchronized void add(int nameId, int file, int ordinal, int[] tokens, int length) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        if (rows == nameIds.length) {
+            int capacity = rows * 2;
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            files = Arrays.copyOf(files, capacity);
+            ordinals = Arrays.copyOf(ordinals, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        nameIds[rows] = nameId;
+        files[rows] = file;
+        ordinals[rows] = ordinal;
+        offsets[rows] = spillSize;
+        rows++;
+        tokenCount += length;
+
+        spillSize += writeVarInt(spillOut, length);
+        for (int i = 0; i < length; i++) {
+            spillSize += writeVarInt(spillOut, tokens[i]);
+        }
+    }
+
+    private int writeVarInt(OutputStream out, int value) throws IOException {
+        int n = 0;
+        while ((value & ~0x7F) != 0) {
+            varint[n++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        varint[n++] = (byte) value;
+        out.write(varint, 0, n);
+        return n;
+    }
+
+    private static int readVarInt(MappedByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    public Path getOutputPath() {
+        return output;
+    }
+
+    public synchronized int getRowCount() {
+        return rows;
+    }
+
+    public synchronized long getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Freeze the vocabulary and write the sorted encodings, then remove the spill file.
+     *
+     * @param vocabulary Vocabulary that assigned the provisional IDs
+     * @param csv        CSV file to write as well, or null
+     * @throws IOException If an output cannot be written
+     */
+    public synchronized void finish(Vocabulary vocabulary, Path csv) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        closed = true;
+        try {
+            spillOut.close();
+            int[] remap = vocabulary.freeze();
+            Integer[] order = sortedRows();
+            try (FileChannel channel = FileChannel.open(spill, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Too many tokens for one encoding file: " + tokenCount);
+                }
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                writeBinary(in, order, remap, vocabulary.size());
+                if (csv != null) {
+                    writeCsv(in, order, remap, csv);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated spill file " + spill);
+            }
+        } finally {
+            deleteSpill();
+        }
+    }
+
+    private Integer[] sortedRows() {
+        Integer[] order = new Integer[rows];
+        for (int i = 0; i < rows; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = names.compare(nameIds[a], nameIds[b]);
+            if (c != 0) {
+                return c;
+            }
+            return files[a] != files[b] ? Integer.compare(files[a], files[b]) : Integer.compare(ordinals[a], ordinals[b]);
+        });
+        return order;
+    }
+
+    private void writeBinary(MappedByteBuffer in, Integer[] order, int[] remap, int vocabularySize)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(vocabularySize);
+            out.writeInt(rows);
+            for (int row : order) {
+                out.writeUTF(names.toString(nameIds[row]));
+                in.position((int) offsets[row]);
+                int length = readVarInt(in);
+                writeVarInt(out, length);
+                for (int i = 0; i < length; i++) {
+                    writeVarInt(out, remap[readVarInt(in)]);
+                }
+            }
+        }
+    }
+
+    private void writeCsv(MappedByteBuffer in, Integer[] order, int[] remap, Path csv) throws IOException {
+        Path parent = csv.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(csv),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            out.write("name,encoding\r\n");
+            for (int row : order) {
+                out.write(names.toString(nameIds[row]));
+                out.write(',');
+                in.position((int) offsets[row]);
+                int length = readVarInt(in);
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        out.write(' ');
+                    }
+                    out.write(Integer.toString(remap[readVarInt(in)]));
+                }
+                out.write("\r\n");
+            }
+        }
+    }
+
+    /**
+     * Discard the encodings and remove the spill file.
+     */
+    public synchronized void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            spillOut.close();
+        } catch (IOException e) {
+            // The spill file is deleted anyway
+        }
+        deleteSpill();
+    }
+
+    private void deleteSpill() {
+        try {
+            Files.deleteIfExists(spill);
+        } catch (IOException e) {
+            Diagnostics.warning("Could not delete spill file " + spill + ": " + e.getMessage());
+        }
+    }
+}
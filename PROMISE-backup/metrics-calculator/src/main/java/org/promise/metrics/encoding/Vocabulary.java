@@ -0,0 +1,180 @@
+package org.promise.metrics.encoding;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Integer IDs of AST tokens, shared by all classes of an encoding and, through its file, by the encodings
+ * of different versions. ID 0 is never assigned, so it can pad sequences.
+ *
+ * Worker threads add tokens concurrently and get provisional IDs in the order they first meet them.
+ * {@link #freeze()} then numbers the new tokens by name after the tokens read from the vocabulary file,
+ * so the final IDs do not depend on the thread count or scheduling.
+ */
+public final class Vocabulary {
+
+    /**
+     * ID that no token has.
+     */
+    public static final int PADDING = 0;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger next;
+    private final int loaded;            // tokens read from a vocabulary file, IDs 1..loaded
+    private volatile String[] tokens;    // by final ID, null until frozen
+
+    /**
+     * An empty vocabulary.
+     */
+    public Vocabulary() {
+        this(Collections.emptyList());
+    }
+
+    private Vocabulary(List<String> loadedTokens) {
+        for (int i = 0; i < loadedTokens.size(); i++) {
+            ids.put(loadedTokens.get(i), i + 1);
+        }
+        this.loaded = loadedTokens.size();
+        this.next = new AtomicInteger(loaded + 1);
+    }
+
+    /**
+     * Read a vocabulary written by {@link #save}. Its tokens keep their IDs.
+     *
+     * @throws IOException If the file cannot be read or its IDs are not 1, 2, 3, ...
+     */
+    public static Vocabulary load(Path file) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        CSVFormat format = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             CSVParser parser = new CSVParser(reader, format)) {
+            for (CSVRecord record : parser) {
+                if (Integer.parseInt(record.get("id")) != tokens.size() + 1) {
+                    throw new IOException("Vocabulary " + file + " line " + parser.getCurrentLineNumber()
+                            + ": expected ID " + (tokens.size() + 1));
+                }
+                tokens.add(record.get("token"));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not a vocabulary file: " + file + " (" + e.getMessage() + ")");
+        }
+        return new Vocabulary(tokens);
+    }
+
+    /**
+     * ID of a token, adding it if it is new. Thread-safe.
+     *
+     * @return The final ID for tokens of the vocabulary file, otherwise a provisional ID until {@link #freeze()}
+     * @throws IllegalStateException If the token is new and the vocabulary is frozen
+     */
+    public int id(String token) {
+        Integer id = ids.get(token);
+        if (id != null) {
+            return id;
+        }
+        if (tokens != null) {
+            throw new IllegalStateException("Vocabulary is frozen; new token " + token);
+        }
+        return ids.computeIfAbsent(token, t -> next.getAndIncrement());
+    }
+
+    /**
+     * Assign the final IDs: the tokens of the vocabulary file keep theirs, new tokens follow in name order.
+     * Call once, after all tokens have been added.
+     *
+     * @return Final ID by provisional ID
+     */
+    public synchronized int[] freeze() {
+        if (tokens != null) {
+            throw new IllegalStateException("Vocabulary is already frozen");
+        }
+        int size = next.get() - 1;
+        String[] byProvisional = new String[size + 1];
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            byProvisional[entry.getValue()] = entry.getKey();
+        }
+        List<String> added = new ArrayList<>();
+        for (int id = loaded + 1; id <= size; id++) {
+            added.add(byProvisional[id]);
+        }
+        Collections.sort(added);
+
+        int[] remap = new int[size + 1];
+        String[] frozen = new String[size + 1];
+        for (int id = 1; id <= loaded; id++) {
+            remap[id] = id;
+            frozen[id] = byProvisional[id];
+        }
+        for (int i = 0; i < added.size(); i++) {
+            int id = loaded + 1 + i;
+            remap[ids.get(added.get(i))] = id;
+            frozen[id] = added.get(i);
+        }
+        for (int id = loaded + 1; id <= size; id++) {
+            ids.put(frozen[id], id);
+        }
+        tokens = frozen;
+        return remap;
+    }
+
+    /**
+     * Number of tokens; the largest ID.
+     */
+    public int size() {
+        return next.get() - 1;
+    }
+
+    /**
+     * Number of tokens read from the vocabulary file.
+     */
+    public int getLoadedSize() {
+        return loaded;
+    }
+
+    /**
+     * Token of a final ID.
+     *
+     * @throws IllegalStateException If the vocabulary is not frozen
+     */
+    public String getToken(int id) {
+        if (tokens == null) {
+            throw new IllegalStateException("Vocabulary is not frozen");
+        }
+        return tokens[id];
+    }
+
+    /**
+     * Write the frozen vocabulary as CSV ({@code id,token}) in ID order.
+     */
+    public void save(Path file) throws IOException {
+        if (tokens == null) {
+            throw new IllegalStateException("Vocabulary is not frozen");
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             CSVPrinter csv = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            csv.printRecord("id", "token");
+            for (int id = 1; id < tokens.length; id++) {
+                csv.printRecord(id, tokens[id]);
+            }
+        }
+    }
+}
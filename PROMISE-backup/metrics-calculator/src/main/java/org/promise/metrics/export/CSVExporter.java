@@ -1,138 +1,106 @@
 package org.promise.metrics.export;
 
-import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
-import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.MetricsTable;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * Export metrics to CSV format.
+ * CSV layout of the exported metrics: header, column metrics and rows.
  */
 public class CSVExporter {
 
     /**
-     * Export metrics to a CSV file.
-     *
-     * @param metricsList List of class metrics to export
-     * @param outputPath  Path to the output CSV file
-     * @throws IOException If a file cannot be written
+     * Header of the full format, matching the original PROMISE CSV files (22 columns).
      */
-    public static void exportToCSV(List<ClassMetrics> metricsList, Path outputPath) throws IOException {
-        // Sort by fully qualified name
-        metricsList.sort((m1, m2) -> m1.getFullyQualifiedName().compareTo(m2.getFullyQualifiedName()));
-
-        try (FileWriter writer = new FileWriter(outputPath.toFile());
-             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+    private static final String[] FULL_FORMAT_HEADER = {
+            "name", "wmc", "dit", "noc", "cbo", "rfc", "lcom", "ca", "ce", "npm",
+            "lcom3", "loc", "dam", "moa", "mfa", "cam", "ic", "cbm", "amc", "max_cc", "avg_cc", "bug"
+    };
 
-            // Write header
-            csvPrinter.printRecord("name", "npm", "loc");
-
-            // Write data rows
-            for (ClassMetrics metrics : metricsList) {
-                csvPrinter.printRecord(
-                        metrics.getFullyQualifiedName(),
-                        metrics.getNpm(),
-                        metrics.getLoc()
-                );
-            }
-        }
+    /**
+     * Value written for the columns of the full format that are not calculated.
+     */
+    private static final String PLACEHOLDER = "0";
 
-        System.out.println("Exported " + metricsList.size() + " class metrics to: " + outputPath);
+    /**
+     * Whether a metric column can be selected for the output layout (see {@link #layout}).
+     */
+    public static boolean isKnownColumn(String column) {
+        return Metric.forColumn(column) != null;
     }
 
     /**
-     * Export metrics to CSV with custom column selection.
+     * Header of the CSV layout selected on the command line.
      *
-     * @param metricsList List of class metrics
-     * @param outputPath  Output file path
-     * @param includeAllColumns Whether to include placeholder columns for the full 22-column format
-     * @throws IOException If a file cannot be written
+     * @param fullFormat Whether to write all 22 PROMISE columns
+     * @param columns    Selected metric columns, or null for the default name,npm,loc layout
      */
-    public static void exportToCSVWithFullFormat(List<ClassMetrics> metricsList, Path outputPath,
-                                                  boolean includeAllColumns) throws IOException {
-        // Sort by fully qualified name
-        metricsList.sort((m1, m2) -> m1.getFullyQualifiedName().compareTo(m2.getFullyQualifiedName()));
-
-        try (FileWriter writer = new FileWriter(outputPath.toFile());
-             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
-
-            if (includeAllColumns) {
-                // Write full header matching original format (22 columns)
-                csvPrinter.printRecord(
-                        "name", "wmc", "dit", "noc", "cbo", "rfc", "lcom", "ca", "ce", "npm",
-                        "lcom3", "loc", "dam", "moa", "mfa", "cam", "ic", "cbm", "amc", "max_cc", "avg_cc", "bug"
-                );
-
-                // Write data with placeholders for unimplemented metrics
-                for (ClassMetrics metrics : metricsList) {
-                    csvPrinter.printRecord(
-                            metrics.getFullyQualifiedName(),
-                            0,  // wmc - not implemented
-                            0,  // dit - not implemented
-                            0,  // noc - not implemented
-                            0,  // cbo - not implemented
-                            0,  // rfc - not implemented
-                            0,  // lcom - not implemented
-                            0,  // ca - not implemented
-                            0,  // ce - not implemented
-                            metrics.getNpm(),
-                            0,  // lcom3 - not implemented
-                            metrics.getLoc(),
-                            0,  // dam - not implemented
-                            0,  // moa - not implemented
-                            0,  // mfa - not implemented
-                            0,  // cam - not implemented
-                            0,  // ic - not implemented
-                            0,  // cbm - not implemented
-                            0,  // amc - not implemented
-                            0,  // max_cc - not calculable from source
-                            0,  // avg_cc - not calculable from source
-                            0   // bug - not calculable from source
-                    );
-                }
-            } else {
-                // Write only implemented columns
-                csvPrinter.printRecord("name", "npm", "loc");
+    public static List<String> header(boolean fullFormat, List<String> columns) {
+        if (fullFormat) {
+            return Arrays.asList(FULL_FORMAT_HEADER);
+        }
+        List<String> header = new ArrayList<>();
+        header.add("name");
+        if (columns != null) {
+            header.addAll(columns);
+        } else {
+            header.add(Metric.NPM.getColumnName());
+            header.add(Metric.LOC.getColumnName());
+        }
+        return header;
+    }
 
-                for (ClassMetrics metrics : metricsList) {
-                    csvPrinter.printRecord(
-                            metrics.getFullyQualifiedName(),
-                            metrics.getNpm(),
-                            metrics.getLoc()
-                    );
-                }
+    /**
+     * Metrics of the columns after the name column, in the order of {@link #header}.
+     * Columns of the full format that are not calculated are null and written as 0.
+     */
+    public static Metric[] layout(boolean fullFormat, List<String> columns) {
+        if (fullFormat) {
+            Metric[] layout = new Metric[FULL_FORMAT_HEADER.length - 1];
+            for (int i = 0; i < layout.length; i++) {
+                layout[i] = Metric.forColumn(FULL_FORMAT_HEADER[i + 1]);
             }
+            return layout;
         }
-
-        System.out.println("Exported " + metricsList.size() + " class metrics to: " + outputPath);
+        if (columns == null) {
+            return new Metric[]{Metric.NPM, Metric.LOC};
+        }
+        Metric[] layout = new Metric[columns.size()];
+        for (int i = 0; i < layout.length; i++) {
+            layout[i] = Metric.forColumn(columns.get(i));
+            if (layout[i] == null) {
+                throw new IllegalArgumentException("Unknown metric column: " + columns.get(i));
+            }
+        }
+        return layout;
     }
 
     /**
-     * Print metrics summary to the console.
+     * Print one row of a table, reading the values straight from its columns.
+     *
+     * @param csvPrinter Printer of the output file
+     * @param table      Table holding the row
+     * @param row        Row index
+     * @param layout     Columns to write after the name (see {@link #layout})
+     * @throws IOException If the row cannot be written
      */
-    public static void printSummary(List<ClassMetrics> metricsList) {
-        System.out.println("\n=== Metrics Summary ===");
-        System.out.println("Total classes analyzed: " + metricsList.size());
-
-        if (!metricsList.isEmpty()) {
-            int totalNPM = 0;
-            int totalLOC = 0;
-
-            for (ClassMetrics metrics : metricsList) {
-                totalNPM += metrics.getNpm();
-                totalLOC += metrics.getLoc();
+    public static void printRow(CSVPrinter csvPrinter, MetricsTable table, int row, Metric[] layout)
+            throws IOException {
+        csvPrinter.print(table.getName(row));
+        for (Metric metric : layout) {
+            if (metric == null) {
+                csvPrinter.print(PLACEHOLDER);
+            } else if (metric.isDecimal()) {
+                csvPrinter.print(Double.toString(table.getDouble(metric, row)));
+            } else {
+                csvPrinter.print(Integer.toString(table.getInt(metric, row)));
             }
-
-            double avgNPM = (double) totalNPM / metricsList.size();
-            double avgLOC = (double) totalLOC / metricsList.size();
-
-            System.out.println("Average NPM: " + String.format("%.2f", avgNPM));
-            System.out.println("Average LOC: " + String.format("%.2f", avgLOC));
-            System.out.println("Total LOC: " + totalLOC);
         }
+        csvPrinter.println();
     }
 }
@@ -0,0 +1,104 @@
+package org.promise.metrics.export;
+
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.NameTable;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Settings of the CSV output.
+ */
+public class ExportOptions {
+
+    /**
+     * Lower bound of the sort buffer share of one output file.
+     */
+    private static final int MIN_ROWS_PER_OUTPUT = 1024;
+
+    private boolean fullFormat;    // all 22 PROMISE columns
+    private List<String> columns;  // selected metric columns, null for name,npm,loc
+    private int maxRowsInMemory = SortedCSVWriter.DEFAULT_MAX_ROWS_IN_MEMORY;
+    private boolean gzip;          // compress the CSV files
+
+    public boolean isFullFormat() {
+        return fullFormat;
+    }
+
+    public void setFullFormat(boolean fullFormat) {
+        this.fullFormat = fullFormat;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    public int getMaxRowsInMemory() {
+        return maxRowsInMemory;
+    }
+
+    public void setMaxRowsInMemory(int maxRowsInMemory) {
+        this.maxRowsInMemory = maxRowsInMemory;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Share of the sort buffer of each of the given number of output files written at the same time.
+     */
+    public int rowsPerOutput(int outputs) {
+        return Math.max(MIN_ROWS_PER_OUTPUT, maxRowsInMemory / Math.max(1, outputs));
+    }
+
+    /**
+     * Metrics written by the selected layout.
+     */
+    public Set<Metric> getMetrics() {
+        Set<Metric> metrics = EnumSet.noneOf(Metric.class);
+        for (Metric metric : CSVExporter.layout(fullFormat, columns)) {
+            if (metric != null) {
+                metrics.add(metric);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Create a writer for one output file, with the given share of the sort buffer.
+     * With gzip enabled, {@code .gz} is appended to the file name unless already present.
+     */
+    public SortedCSVWriter newWriter(Path outputPath, int maxRowsInMemory) {
+        return newWriter(outputPath, maxRowsInMemory, NameTable.shared());
+    }
+
+    /**
+     * Create a writer for one output file, with the given share of the sort buffer, for classes named in
+     * the given table.
+     */
+    public SortedCSVWriter newWriter(Path outputPath, int maxRowsInMemory, NameTable names) {
+        Path path = outputPath;
+        if (gzip && !path.getFileName().toString().endsWith(".gz")) {
+            path = path.resolveSibling(path.getFileName() + ".gz");
+        }
+        return new SortedCSVWriter(path, fullFormat, columns, maxRowsInMemory, names);
+    }
+
+    /**
+     * Create a writer for one output file using the whole sort buffer.
+     */
+    public SortedCSVWriter newWriter(Path outputPath) {
+        return newWriter(outputPath, maxRowsInMemory);
+    }
+}
@@ -0,0 +1,52 @@
+package org.promise.metrics.export;
+
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.MetricsTable;
+
+/**
+ * Running totals for the console summary, so the summary does not need all rows in memory.
+ */
+public class MetricsSummary {
+
+    private int classes;
+    private long totalWMC;
+    private long totalNPM;
+    private long totalLOC;
+    private int maxCC;
+
+    /**
+     * Add one row of a table to the totals.
+     */
+    public void add(MetricsTable table, int row) {
+        classes++;
+        totalWMC += table.getInt(Metric.WMC, row);
+        totalNPM += table.getInt(Metric.NPM, row);
+        totalLOC += table.getInt(Metric.LOC, row);
+        maxCC = Math.max(maxCC, table.getInt(Metric.MAX_CC, row));
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    /**
+     * Print metrics summary to the console, unless quiet.
+     */
+    public void print() {
+        Diagnostics.info("\n=== Metrics Summary ===");
+        Diagnostics.info("Total classes analyzed: " + classes);
+
+        if (classes > 0) {
+            double avgWMC = (double) totalWMC / classes;
+            double avgNPM = (double) totalNPM / classes;
+            double avgLOC = (double) totalLOC / classes;
+
+            Diagnostics.info("Average WMC: " + String.format("%.2f", avgWMC));
+            Diagnostics.info("Average NPM: " + String.format("%.2f", avgNPM));
+            Diagnostics.info("Average LOC: " + String.format("%.2f", avgLOC));
+            Diagnostics.info("Maximum CC found: " + maxCC);
+            Diagnostics.info("Total LOC: " + totalLOC);
+        }
+    }
+}
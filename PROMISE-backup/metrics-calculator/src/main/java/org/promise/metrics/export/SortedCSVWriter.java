@@ -0,0 +1,399 @@
+package org.promise.metrics.export;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.graph.TypeGraph;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.MetricsTable;
+import org.promise.metrics.model.NameTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming CSV export with a bounded-memory external sort.
+ *
+ * Rows are added as soon as a file has been analyzed, in any order. They are buffered in a {@link MetricsTable}
+ * up to a fixed number of rows; a full buffer is sorted and written to a spill run on disk. The buffer is split
+ * into two tables: a full table is swapped for the empty one and spilled outside the lock, so other threads keep
+ * adding rows while the run is written, and only wait if the second table fills first. {@link #close()} k-way merges the runs
+ * (and the remaining buffer) into the final CSV, sorted by class name. Ties are broken by file ordinal and
+ * position within the file, so the output is exactly that of sorting the complete list in file order.
+ *
+ * If the layout contains project-wide metrics (DIT, NOC, CBO, CA, CE), the classes' type references are
+ * also added to a {@link TypeGraph}, which is resolved at {@link #close()} and fills those columns during
+ * the merge.
+ *
+ * Output paths ending in {@code .gz} are written gzip-compressed. Spill runs are kept next to the output
+ * file and removed when the writer is closed or aborted. All methods are thread-safe.
+ */
+public class SortedCSVWriter implements Closeable {
+
+    /**
+     * Default number of rows kept in memory.
+     */
+    public static final int DEFAULT_MAX_ROWS_IN_MEMORY = 100_000;
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Rows read from a spill run at a time during the merge.
+     */
+    private static final int MERGE_BLOCK_ROWS = 1024;
+
+    private static final Metric[] METRICS = Metric.values();
+
+    private final Path outputPath;
+    private final boolean fullFormat;
+    private final List<String> columns;
+    private final NameTable names;
+    private final TypeGraph typeGraph;   // null unless the layout needs it
+
+    private final int spillRows;         // rows of each of the two tables
+    private MetricsTable buffer;         // receives the added rows
+    private MetricsTable spare;          // empty table, null while it is being spilled
+    private final List<Path> runs = new ArrayList<>();
+    private int runCount;                // runs started, including those being written
+    private final MetricsSummary summary = new MetricsSummary();
+    private Path spillDir;
+    private boolean closed;
+
+    /**
+     * @param outputPath      Path to the output CSV file ({@code .gz} for compressed output)
+     * @param fullFormat      Whether to write all 22 PROMISE columns
+     * @param columns         Selected metric columns, or null for the default name,npm,loc layout
+     * @param maxRowsInMemory Number of rows kept in memory; a sorted run is spilled whenever half of them are buffered
+     */
+    public SortedCSVWriter(Path outputPath, boolean fullFormat, List<String> columns, int maxRowsInMemory) {
+        this(outputPath, fullFormat, columns, maxRowsInMemory, NameTable.shared());
+    }
+
+    /**
+     * @param outputPath      Path to the output CSV file ({@code .gz} for compressed output)
+     * @param fullFormat      Whether to write all 22 PROMISE columns
+     * @param columns         Selected metric columns, or null for the default name,npm,loc layout
+     * @param maxRowsInMemory Number of rows kept in memory; a sorted run is spilled whenever half of them are buffered
+     * @param names           Table of the class names of the added metrics
+     */
+    public SortedCSVWriter(Path outputPath, boolean fullFormat, List<String> columns, int maxRowsInMemory,
+                           NameTable names) {
+        this.outputPath = outputPath;
+        this.fullFormat = fullFormat;
+        this.columns = columns;
+        this.names = names;
+        this.spillRows = Math.max(1, maxRowsInMemory / 2);
+        this.buffer = new MetricsTable(names, Math.min(spillRows, 4096));
+        this.spare = new MetricsTable(names, Math.min(spillRows, 4096));
+        this.typeGraph = TypeGraph.isNeeded(CSVExporter.layout(fullFormat, columns)) ? new TypeGraph(names) : null;
+    }
+
+    /**
+     * Add the classes of one analyzed file.
+     *
+     * @param fileOrdinal Position of the file in the input order
+     * @param metrics     Metrics of the file's classes, in source order
+     * @throws IOException If a spill run cannot be written
+     */
+    public void add(int fileOrdinal, List<ClassMetrics> metrics) throws IOException {
+        int i = 0;
+        while (i < metrics.size()) {
+            MetricsTable full = null;
+            synchronized (this) {
+                for (; i < metrics.size() && full == null; i++) {
+                    int row = buffer.add(metrics.get(i), fileOrdinal, i);
+                    summary.add(buffer, row);
+                    if (typeGraph != null) {
+                        typeGraph.add(metrics.get(i));
+                    }
+
+                    if (buffer.size() >= spillRows) {
+                        full = handOff();
+                    }
+                }
+            }
+            if (full != null) {
+                spill(full);
+            }
+        }
+    }
+
+    /**
+     * Running totals of all rows added so far.
+     */
+    public synchronized MetricsSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Number of rows added so far.
+     */
+    public synchronized int getRowCount() {
+        return summary.getClasses();
+    }
+
+    public Path getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * Swap the full buffer for the spare table, waiting until the previous spill has returned it.
+     *
+     * @return The full table, or null if another thread has already handed it off
+     */
+    private MetricsTable handOff() throws IOException {
+        awaitSpill();
+        if (buffer.size() < spillRows) {
+            return null;
+        }
+        MetricsTable full = buffer;
+        buffer = spare;
+        spare = null;
+        return full;
+    }
+
+    private void awaitSpill() throws IOException {
+        while (spare == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while a spill run was written");
+            }
+        }
+    }
+
+    /**
+     * Sort a full table and write it to a new run, then return it as the spare table.
+     * Runs without holding the lock.
+     */
+    private void spill(MetricsTable full) throws IOException {
+        Path run = null;
+        try {
+            synchronized (this) {
+                if (spillDir == null) {
+                    Path parent = outputPath.toAbsolutePath().getParent();
+                    Files.createDirectories(parent);
+                    spillDir = Files.createTempDirectory(parent, ".metrics-spill");
+                }
+                run = spillDir.resolve("run-" + runCount++);
+            }
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE))) {
+                for (int row : full.sortedRows()) {
+                    out.writeInt(full.getNameId(row));
+                    out.writeInt(full.getFile(row));
+                    out.writeInt(full.getPosition(row));
+                    for (Metric metric : METRICS) {
+                        if (metric.isDecimal()) {
+                            out.writeDouble(full.getDouble(metric, row));
+                        } else {
+                            out.writeInt(full.getInt(metric, row));
+                        }
+                    }
+                }
+            }
+
+            synchronized (this) {
+                runs.add(run);
+            }
+            run = null;
+        } finally {
+            if (run != null) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException e) {
+                    Diagnostics.warning("Could not delete spill run " + run + ": " + e.getMessage());
+                }
+            }
+            synchronized (this) {
+                full.clear();
+                spare = full;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Merge all rows into the output file and remove the spill runs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        awaitSpill();
+        closed = true;
+
+        if (typeGraph != null) {
+            typeGraph.resolve();
+        }
+
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                    (a, b) -> MetricsTable.compareRows(a.table, a.currentRow(), b.table, b.currentRow()));
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, names);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            RunReader memory = new RunReader(buffer);
+            if (memory.advance()) {
+                queue.add(memory);
+            }
+
+            Path parent = outputPath.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Metric[] layout = CSVExporter.layout(fullFormat, columns);
+            try (CSVPrinter csvPrinter = new CSVPrinter(openOutput(), CSVFormat.DEFAULT)) {
+                csvPrinter.printRecord(CSVExporter.header(fullFormat, columns));
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    if (typeGraph != null) {
+                        typeGraph.apply(reader.table, reader.currentRow());
+                    }
+                    CSVExporter.printRow(csvPrinter, reader.table, reader.currentRow(), layout);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            deleteRuns();
+        }
+    }
+
+    /**
+     * Discard all rows without writing the output file.
+     */
+    public synchronized void abort() {
+        try {
+            awaitSpill();
+        } catch (IOException e) {
+            // Interrupted: a run still being written is left behind
+        }
+        closed = true;
+        buffer.clear();
+        deleteRuns();
+    }
+
+    private Writer openOutput() throws IOException {
+        OutputStream out = Files.newOutputStream(outputPath);
+        if (outputPath.getFileName().toString().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, IO_BUFFER_SIZE);
+        }
+        return new OutputStreamWriter(new BufferedOutputStream(out, IO_BUFFER_SIZE), StandardCharsets.UTF_8);
+    }
+
+    private void deleteRuns() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                Diagnostics.warning("Could not delete spill run " + run + ": " + e.getMessage());
+            }
+        }
+        runs.clear();
+        if (spillDir != null) {
+            try {
+                Files.deleteIfExists(spillDir);
+            } catch (IOException e) {
+                Diagnostics.warning("Could not delete spill directory " + spillDir + ": " + e.getMessage());
+            }
+            spillDir = null;
+        }
+    }
+
+    /**
+     * Sequential reader over a spilled run, read block by block into a small table,
+     * or over the in-memory buffer in sorted order.
+     */
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        final MetricsTable table;
+        private int[] order;
+        private int position = -1;
+
+        RunReader(Path run, NameTable names) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE));
+            this.table = new MetricsTable(names, MERGE_BLOCK_ROWS);
+            this.order = null;
+        }
+
+        RunReader(MetricsTable buffer) {
+            this.in = null;
+            this.table = buffer;
+            this.order = buffer.sortedRows();
+        }
+
+        int currentRow() {
+            return order != null ? order[position] : position;
+        }
+
+        boolean advance() throws IOException {
+            position++;
+            if (order != null) {
+                return position < order.length;
+            }
+            if (position < table.size()) {
+                return true;
+            }
+            readBlock();
+            position = 0;
+            return table.size() > 0;
+        }
+
+        private void readBlock() throws IOException {
+            table.clear();
+            while (table.size() < MERGE_BLOCK_ROWS) {
+                int nameId;
+                try {
+                    nameId = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                int row = table.addRow(nameId, in.readInt(), in.readInt());
+                for (Metric metric : METRICS) {
+                    if (metric.isDecimal()) {
+                        table.setDouble(metric, row, in.readDouble());
+                    } else {
+                        table.setInt(metric, row, in.readInt());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.promise.metrics.graph;
+
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.model.TypeReferences;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Read-only index of library types outside the analyzed project: for each type its superclass and the
+ * keys ({@link TypeReferences#methodKey}) of its public and protected methods. The type graph follows
+ * superclass chains through it to calculate DIT, MFA and IC of classes extending library classes.
+ *
+ * The index of the JDK's public packages ships as a resource and is loaded on first use; more indexes,
+ * written by {@link HierarchyIndexBuilder} from jars, can be added with {@link #addLibrary}. Lookups
+ * binary-search the buffer in place, so an index file is memory-mapped rather than read into objects.
+ *
+ * Layout (big-endian): a header ({@code magic, version, typeCount, stringCount, methodBytes}), the start
+ * offset of each string plus the end offset, one 16-byte record per type sorted by name
+ * ({@code name, superclass, flags, methodOffset}), the method lists (count and ascending string indices
+ * as gaps, all unsigned LEB128) and the UTF-8 string data. Type names are canonical ({@code Map.Entry}).
+ */
+public final class HierarchyIndex {
+
+    public static final String JDK_RESOURCE = "jdk-hierarchy.idx";
+
+    static final int MAGIC = 0x50484958;    // "PHIX"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+    static final int RECORD_BYTES = 16;
+    static final int FLAG_INTERFACE = 1;
+
+    private static final HierarchyIndex EMPTY = new HierarchyIndex(emptyBuffer(), "empty");
+
+    private static final List<HierarchyIndex> added = new CopyOnWriteArrayList<>();
+
+    private final ByteBuffer buffer;
+    private final String source;
+    private final int typeCount;
+    private final int stringCount;
+    private final int recordStart;
+    private final int methodStart;
+    private final int stringStart;
+
+    /**
+     * The JDK index is loaded when first used.
+     */
+    private static final class Jdk {
+        static final HierarchyIndex INDEX = loadJdk();
+    }
+
+    private HierarchyIndex(ByteBuffer buffer, String source) {
+        this.buffer = buffer;
+        this.source = source;
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Not a type hierarchy index (version " + VERSION + "): " + source);
+            }
+            typeCount = buffer.getInt(8);
+            stringCount = buffer.getInt(12);
+            int methodBytes = buffer.getInt(16);
+            recordStart = HEADER_BYTES + (stringCount + 1) * 4;
+            methodStart = recordStart + typeCount * RECORD_BYTES;
+            stringStart = methodStart + methodBytes;
+            if (typeCount < 0 || stringCount < 0 || methodBytes < 0
+                    || stringStart + buffer.getInt(HEADER_BYTES + stringCount * 4) != buffer.limit()) {
+                throw new IllegalArgumentException("Corrupt type hierarchy index: " + source);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated type hierarchy index: " + source);
+        }
+    }
+
+    private static ByteBuffer emptyBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0).putInt(0).putInt(0);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The index of the JDK, or an empty index if the resource is missing or unreadable.
+     */
+    public static HierarchyIndex jdk() {
+        return Jdk.INDEX;
+    }
+
+    /**
+     * The JDK index followed by the added library indexes, in lookup order.
+     */
+    public static List<HierarchyIndex> libraries() {
+        List<HierarchyIndex> libraries = new ArrayList<>(added.size() + 1);
+        libraries.add(jdk());
+        libraries.addAll(added);
+        return Collections.unmodifiableList(libraries);
+    }
+
+    /**
+     * Add a library index for all type graphs resolved from now on.
+     */
+    public static void addLibrary(HierarchyIndex index) {
+        added.add(index);
+    }
+
+    /**
+     * Memory-map an index file.
+     *
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if it is not an index
+     */
+    public static HierarchyIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new HierarchyIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+        }
+    }
+
+    private static HierarchyIndex loadJdk() {
+        URL url = HierarchyIndex.class.getResource(JDK_RESOURCE);
+        if (url == null) {
+            Diagnostics.warning("JDK type hierarchy index not found, library superclasses count as one level");
+            return EMPTY;
+        }
+        try {
+            // Map the resource in place when running from a class directory, otherwise read it from the jar
+            if ("file".equals(url.getProtocol())) {
+                return open(Paths.get(url.toURI()));
+            }
+            try (InputStream in = url.openStream()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+                byte[] chunk = new byte[1 << 16];
+                for (int n; (n = in.read(chunk)) > 0; ) {
+                    bytes.write(chunk, 0, n);
+                }
+                return new HierarchyIndex(ByteBuffer.wrap(bytes.toByteArray()), url.toString());
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            Diagnostics.warning("Could not load the JDK type hierarchy index: " + e.getMessage());
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Number of types.
+     */
+    public int size() {
+        return typeCount;
+    }
+
+    /**
+     * Type of a canonical name such as {@code java.util.Map.Entry}, or -1 if the index does not contain it.
+     */
+    public int find(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = typeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(buffer.getInt(recordStart + mid * RECORD_BYTES), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare a string of the index with UTF-8 bytes, as unsigned bytes.
+     */
+    private int compare(int string, byte[] key) {
+        int start = stringStart + buffer.getInt(HEADER_BYTES + string * 4);
+        int length = stringStart + buffer.getInt(HEADER_BYTES + string * 4 + 4) - start;
+        for (int i = 0, n = Math.min(length, key.length); i < n; i++) {
+            int cmp = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    public String getName(int type) {
+        return getString(buffer.getInt(recordStart + type * RECORD_BYTES));
+    }
+
+    /**
+     * Canonical superclass name, or null for {@code java.lang.Object} and interfaces.
+     */
+    public String getSuperclassName(int type) {
+        int superclass = buffer.getInt(recordStart + type * RECORD_BYTES + 4);
+        return superclass < 0 ? null : getString(superclass);
+    }
+
+    public boolean isInterface(int type) {
+        return (buffer.getInt(recordStart + type * RECORD_BYTES + 8) & FLAG_INTERFACE) != 0;
+    }
+
+    /**
+     * String indices of the method keys of a type, ascending.
+     */
+    public int[] getMethods(int type) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(methodStart + buffer.getInt(recordStart + type * RECORD_BYTES + 12));
+        try {
+            int[] methods = new int[readVarInt(in)];
+            for (int i = 0, string = 0; i < methods.length; i++) {
+                string += readVarInt(in);
+                methods[i] = string;
+            }
+            return methods;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("Corrupt type hierarchy index: " + source);
+        }
+    }
+
+    public String getString(int string) {
+        int start = stringStart + buffer.getInt(HEADER_BYTES + string * 4);
+        int end = stringStart + buffer.getInt(HEADER_BYTES + string * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer in = buffer.duplicate();
+        in.position(start);
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source + " (" + typeCount + " types)";
+    }
+
+    static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int compareBytes(byte[] a, byte[] b) {
+        for (int i = 0, n = Math.min(a.length, b.length); i < n; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,318 @@
+package org.promise.metrics.graph;
+
+import org.promise.metrics.bytecode.ClassFile;
+import org.promise.metrics.bytecode.ClassFormatException;
+import org.promise.metrics.model.TypeReferences;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes a {@link HierarchyIndex} from class files: the public packages of the running JDK, jars and
+ * class directories. Only public types are indexed, with their public and protected methods other than
+ * constructors, bridges and synthetic methods; anonymous and local classes are skipped.
+ *
+ * <pre>
+ * java -cp metrics-calculator-1.0.0.jar org.promise.metrics.graph.HierarchyIndexBuilder [--jdk] output.idx [jar|dir ...]
+ * </pre>
+ *
+ * The shipped JDK index is {@code src/main/resources/org/promise/metrics/graph/jdk-hierarchy.idx}, written
+ * with {@code --jdk} and no other input.
+ */
+public class HierarchyIndexBuilder {
+
+    /**
+     * Packages indexed from the JDK: the public API, not its implementation packages.
+     */
+    private static final String[] JDK_PACKAGES = {
+            "java.", "javax.", "org.ietf.", "org.omg.", "org.w3c.", "org.xml."
+    };
+
+    private final Map<String, Type> types = new HashMap<>();
+
+    private static class Type {
+        final String superclass;
+        final boolean isInterface;
+        final List<String> methods = new ArrayList<>();
+
+        Type(String superclass, boolean isInterface) {
+            this.superclass = superclass;
+            this.isInterface = isInterface;
+        }
+    }
+
+    /**
+     * Number of types added.
+     */
+    public int size() {
+        return types.size();
+    }
+
+    /**
+     * Add a class if it is public and not anonymous or local. Later classes of the same name are ignored.
+     *
+     * @return Whether the class was added
+     */
+    public boolean add(ClassFile classFile) {
+        String name = canonicalName(classFile.getName());
+        if (!classFile.isPublic() || name == null || types.containsKey(name)) {
+            return false;
+        }
+        String superclass = classFile.getSuperclassName();
+        Type type = new Type(classFile.isInterface() || superclass == null ? null : canonicalName(superclass),
+                classFile.isInterface());
+        for (int i = 0; i < classFile.getMethodCount(); i++) {
+            int access = classFile.getMethodAccessFlags(i);
+            String methodName = classFile.getMethodName(i);
+            if ((access & (ClassFile.ACC_PUBLIC | ClassFile.ACC_PROTECTED)) == 0
+                    || (access & (ClassFile.ACC_BRIDGE | ClassFile.ACC_SYNTHETIC)) != 0
+                    || methodName.startsWith("<")) {
+                continue;
+            }
+            type.methods.add(TypeReferences.methodKey(methodName,
+                    ClassFile.parameterCount(classFile.getMethodDescriptor(i))));
+        }
+        types.put(name, type);
+        return true;
+    }
+
+    /**
+     * Canonical name of a binary class name, or null for anonymous and local classes.
+     */
+    static String canonicalName(String binaryName) {
+        int dollar = binaryName.indexOf('$');
+        if (dollar < 0) {
+            return binaryName;
+        }
+        for (int i = dollar; i >= 0 && i + 1 < binaryName.length(); i = binaryName.indexOf('$', i + 1)) {
+            if (Character.isDigit(binaryName.charAt(i + 1))) {
+                return null;
+            }
+        }
+        return binaryName.replace('$', '.');
+    }
+
+    /**
+     * Add the classes of the public JDK packages, from the jrt file system (Java 9 and later) or rt.jar.
+     */
+    public void addJdk() throws IOException {
+        FileSystem jrt;
+        try {
+            jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (FileSystemNotFoundException | ProviderNotFoundException e) {
+            addJar(Paths.get(System.getProperty("java.home"), "lib", "rt.jar"), true);
+            return;
+        }
+        try (Stream<Path> files = Files.walk(jrt.getPath("/modules"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                // /modules/<module>/<package path>/<Class>.class
+                if (file.getNameCount() > 2 && isJdkClass(file.subpath(2, file.getNameCount()).toString())) {
+                    add(new ClassFile(ByteBuffer.wrap(Files.readAllBytes(file))));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add all classes of a jar.
+     */
+    public void addJar(Path jar) throws IOException {
+        addJar(jar, false);
+    }
+
+    private void addJar(Path jar, boolean jdkOnly) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String path = entry.getName();
+                if (path.startsWith("META-INF/") || !isClass(path) || (jdkOnly && !isJdkClass(path))) {
+                    continue;
+                }
+                try (InputStream in = zip.getInputStream(entry)) {
+                    add(new ClassFile(ByteBuffer.wrap(readAll(in))));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add all classes below a directory.
+     */
+    public void addDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (isClass(file.getFileName().toString())) {
+                    add(new ClassFile(ByteBuffer.wrap(Files.readAllBytes(file))));
+                }
+            }
+        }
+    }
+
+    private static boolean isClass(String path) {
+        return path.endsWith(".class") && !path.endsWith("module-info.class") && !path.endsWith("package-info.class");
+    }
+
+    private static boolean isJdkClass(String path) {
+        if (!isClass(path)) {
+            return false;
+        }
+        String name = path.replace('/', '.');
+        for (String jdkPackage : JDK_PACKAGES) {
+            if (name.startsWith(jdkPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        byte[] chunk = new byte[8192];
+        for (int n; (n = in.read(chunk)) > 0; ) {
+            bytes.write(chunk, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write the index in the layout described in {@link HierarchyIndex}.
+     */
+    public void write(Path output) throws IOException {
+        List<byte[]> sortedNames = new ArrayList<>(types.size());
+        for (String name : types.keySet()) {
+            sortedNames.add(HierarchyIndex.utf8(name));
+        }
+        sortedNames.sort(HierarchyIndex::compareBytes);
+
+        // Strings: type names in record order first, then superclasses and method keys as they come
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>(sortedNames.size());
+        for (byte[] name : sortedNames) {
+            String s = new String(name, StandardCharsets.UTF_8);
+            names.add(s);
+            strings.put(s, strings.size());
+        }
+
+        int[] records = new int[names.size() * 4];
+        ByteArrayOutputStream methodData = new ByteArrayOutputStream();
+        for (int t = 0; t < names.size(); t++) {
+            Type type = types.get(names.get(t));
+            records[t * 4] = t;
+            records[t * 4 + 1] = type.superclass == null ? -1 : string(strings, type.superclass);
+            records[t * 4 + 2] = type.isInterface ? HierarchyIndex.FLAG_INTERFACE : 0;
+            records[t * 4 + 3] = methodData.size();
+            TreeSet<Integer> methods = new TreeSet<>();
+            for (String method : type.methods) {
+                methods.add(string(strings, method));
+            }
+            writeVarInt(methodData, methods.size());
+            int previous = 0;
+            for (int method : methods) {
+                writeVarInt(methodData, method - previous);
+                previous = method;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            out.writeInt(HierarchyIndex.MAGIC);
+            out.writeInt(HierarchyIndex.VERSION);
+            out.writeInt(names.size());
+            out.writeInt(strings.size());
+            out.writeInt(methodData.size());
+            List<byte[]> stringBytes = new ArrayList<>(strings.size());
+            int offset = 0;
+            for (String s : strings.keySet()) {
+                byte[] bytes = HierarchyIndex.utf8(s);
+                stringBytes.add(bytes);
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (int value : records) {
+                out.writeInt(value);
+            }
+            methodData.writeTo(out);
+            for (byte[] bytes : stringBytes) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static int string(Map<String, Integer> strings, String s) {
+        Integer index = strings.get(s);
+        if (index == null) {
+            index = strings.size();
+            strings.put(s, index);
+        }
+        return index;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static void main(String[] args) {
+        boolean jdk = false;
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--jdk")) {
+                jdk = true;
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: HierarchyIndexBuilder [--jdk] <output.idx> [jar|class directory ...]");
+            System.exit(1);
+        }
+
+        HierarchyIndexBuilder builder = new HierarchyIndexBuilder();
+        try {
+            if (jdk) {
+                builder.addJdk();
+            }
+            for (String input : paths.subList(1, paths.size())) {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    builder.addDirectory(path);
+                } else {
+                    builder.addJar(path);
+                }
+            }
+            Path output = Paths.get(paths.get(0));
+            builder.write(output);
+            System.out.println("Indexed " + builder.size() + " types to " + output + " (" + Files.size(output) + " bytes)");
+        } catch (IOException | ClassFormatException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
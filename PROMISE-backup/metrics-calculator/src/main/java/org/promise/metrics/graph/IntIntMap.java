@@ -0,0 +1,106 @@
+package org.promise.metrics.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative int keys to int values, without boxing.
+ * Linear probing over a power-of-two table kept at most half full. Not thread-safe.
+ */
+public final class IntIntMap {
+
+    /**
+     * Value returned by {@link #get} for absent keys.
+     */
+    public static final int MISSING = -1;
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize Number of keys the map should hold without growing
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The value of a key, or {@link #MISSING}.
+     */
+    public int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == EMPTY) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * Map a key to a value unless it is already mapped.
+     *
+     * @return The value the key is mapped to afterwards
+     */
+    public int putIfAbsent(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size * 2 > keys.length) {
+                    rehash();
+                }
+                return value;
+            }
+        }
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        // Name IDs are dense, so spread them before masking
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,101 @@
+package org.promise.metrics.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of non-negative ints, without boxing.
+ * Linear probing over a power-of-two table kept at most half full. Not thread-safe.
+ */
+public final class IntSet {
+
+    private static final int EMPTY = -1;
+
+    private int[] slots;
+    private int size;
+
+    public IntSet() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize Number of values the set should hold without growing
+     */
+    public IntSet(int expectedSize) {
+        slots = new int[Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int value) {
+        int mask = slots.length - 1;
+        for (int slot = hash(value) & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) {
+                return true;
+            }
+            if (slots[slot] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Add a value.
+     *
+     * @return Whether the value was not in the set yet
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash(value) & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) {
+                return false;
+            }
+            if (slots[slot] == EMPTY) {
+                slots[slot] = value;
+                if (++size * 2 > slots.length) {
+                    rehash();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Number of values of this set that are not in another one.
+     */
+    public int countNotIn(IntSet other) {
+        int count = 0;
+        for (int value : slots) {
+            if (value != EMPTY && !other.contains(value)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void rehash() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int value : old) {
+            if (value != EMPTY) {
+                int slot = hash(value) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,764 @@
+package org.promise.metrics.graph;
+
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.MetricsTable;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.model.TypeReferences;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Type graph of a whole project, calculating the inheritance and coupling metrics DIT, NOC, CBO, CA, CE,
+ * MFA and IC.
+ *
+ * Phase one ({@link #add}) records the {@link TypeReferences} of every class in flat int arrays: one entry
+ * per class with its name, scope (package and imports) and superclass, and ranges into shared arrays of
+ * interface and reference names. Phase two ({@link #resolve}) maps the names as written to project types,
+ * as the compiler would without bindings: member types of the class, its enclosing classes and their
+ * superclasses, then single-type imports, the class's own package and on-demand imports. The resolved
+ * references form adjacency arrays indexed by type, from which all five metrics are calculated in time
+ * linear in the number of classes and references.
+ *
+ * As in ckjm, couplings to JDK classes are not counted. Classes outside the project count as efferent
+ * couplings when their full name is known (imported explicitly or written out). DIT counts
+ * {@code java.lang.Object} as depth 1. Superclass chains leaving the project are followed through the
+ * {@link HierarchyIndex library indexes} (the JDK and any added ones); a superclass found in none of them
+ * counts as one more level.
+ *
+ * MFA is the share of inherited methods among the inherited and declared methods of a class: the distinct
+ * non-private methods of its superclasses other than {@code java.lang.Object} that it does not override,
+ * by name and number of parameters. IC counts the superclasses, other than {@code java.lang.Object}, with
+ * a method the class overrides. Both are 0 for interfaces.
+ *
+ * Classes of the same name (from duplicate source roots) are merged. Classes added without type
+ * references (lexical analysis) get 0 for all seven metrics.
+ */
+public class TypeGraph {
+
+    private static final String[] JDK_PACKAGES = {
+            "java", "javax", "sun", "com.sun", "org.omg", "org.w3c", "org.xml", "org.ietf"
+    };
+
+    /**
+     * Longest superclass chain searched for inherited member types (guards against cyclic sources).
+     */
+    private static final int MAX_INHERITED_LOOKUP = 64;
+
+    /**
+     * Longest superclass chain followed through the library indexes.
+     */
+    private static final int MAX_LIBRARY_DEPTH = 64;
+
+    private final NameTable names;
+    private final List<HierarchyIndex> libraries;
+    private final int[] libraryBases;    // library types are numbered consecutively across the indexes
+    private final IntIntMap[] libraryNameIds;    // per library, name ID of each string looked up so far
+
+    // Phase one: one entry per added class
+    private final IntList nameIds = new IntList();
+    private final IntList scopes = new IntList();
+    private final IntList interfaceFlags = new IntList();
+    private final IntList superclasses = new IntList();
+    private final IntList interfaceEnds = new IntList();
+    private final IntList interfaceNames = new IntList();
+    private final IntList referenceEnds = new IntList();
+    private final IntList referenceNames = new IntList();
+    private final IntList methodEnds = new IntList();
+    private final IntList methodNames = new IntList();
+    private final IntList methodCounts = new IntList();
+
+    // Scopes: package and ranges of the single-type and on-demand imports of a compilation unit
+    private final IntList scopePackages = new IntList();
+    private final IntList importEnds = new IntList();
+    private final IntList importNames = new IntList();
+    private final IntList onDemandEnds = new IntList();
+    private final IntList onDemandNames = new IntList();
+    private TypeReferences lastScope;
+
+    // Phase two, indexed by entry; values are only set for the first entry of each name
+    private IntIntMap index;
+    private int[] superIndex;
+    private boolean[] externalSuperclass;
+    private int[] librarySuperclass;    // library type of a superclass outside the project, or -1
+    private IntIntMap libraryDepths;
+    private int[] dit;
+    private int[] noc;
+    private int[] cbo;
+    private int[] ca;
+    private int[] ce;
+    private double[] mfa;
+    private int[] ic;
+    private int[] jdkPackages;
+    private int[] path = new int[16];          // segments of a qualified name being resolved
+    private int[] importPath = new int[16];    // segments of an import, resolved while path is in use
+
+    /**
+     * Graph following superclasses outside the project through the JDK and the added library indexes.
+     */
+    public TypeGraph() {
+        this(NameTable.shared());
+    }
+
+    /**
+     * Graph of classes named in the given table, following superclasses outside the project through the
+     * JDK and the added library indexes.
+     */
+    public TypeGraph(NameTable names) {
+        this(names, HierarchyIndex.libraries());
+    }
+
+    /**
+     * @param libraries Indexes of library types, in lookup order
+     */
+    public TypeGraph(List<HierarchyIndex> libraries) {
+        this(NameTable.shared(), libraries);
+    }
+
+    /**
+     * @param names     Table of the class and reference names of the added classes
+     * @param libraries Indexes of library types, in lookup order
+     */
+    public TypeGraph(NameTable names, List<HierarchyIndex> libraries) {
+        this.names = names;
+        this.libraries = libraries;
+        this.libraryNameIds = new IntIntMap[libraries.size()];
+        this.libraryBases = new int[libraries.size() + 1];
+        for (int i = 0; i < libraries.size(); i++) {
+            libraryBases[i + 1] = libraryBases[i] + libraries.get(i).size();
+        }
+    }
+
+    /**
+     * Graph of the given classes, resolved.
+     */
+    public static TypeGraph of(List<ClassMetrics> metricsList) {
+        TypeGraph graph = new TypeGraph(
+                metricsList.isEmpty() ? NameTable.shared() : metricsList.get(0).getNames());
+        for (ClassMetrics metrics : metricsList) {
+            graph.add(metrics);
+        }
+        graph.resolve();
+        return graph;
+    }
+
+    /**
+     * Whether an export layout contains a metric that needs the type graph.
+     */
+    public static boolean isNeeded(Metric[] layout) {
+        for (Metric metric : layout) {
+            if (metric != null && metric.isProjectWide()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of classes added.
+     */
+    public synchronized int size() {
+        return nameIds.size;
+    }
+
+    /**
+     * Add a class. Classes without type references are ignored.
+     */
+    public synchronized void add(ClassMetrics metrics) {
+        TypeReferences references = metrics.getTypeReferences();
+        if (references == null) {
+            return;
+        }
+        if (index != null) {
+            throw new IllegalStateException("Type graph is already resolved");
+        }
+        nameIds.add(metrics.getNameId());
+        scopes.add(scopeOf(references));
+        interfaceFlags.add(references.isInterface() ? 1 : 0);
+        superclasses.add(references.getSuperclassId());
+        interfaceNames.addAll(references.getInterfaceIds());
+        interfaceEnds.add(interfaceNames.size);
+        referenceNames.addAll(references.getReferenceIds());
+        referenceEnds.add(referenceNames.size);
+        methodNames.addAll(references.getMethodIds());
+        methodEnds.add(methodNames.size);
+        methodCounts.add(references.getMethodCount());
+    }
+
+    /**
+     * Scope index of a class; classes of one compilation unit share their import arrays and are added in a row.
+     */
+    private int scopeOf(TypeReferences references) {
+        if (lastScope != null && lastScope.getPackageId() == references.getPackageId()
+                && lastScope.getImports() == references.getImports()
+                && lastScope.getOnDemandImports() == references.getOnDemandImports()) {
+            return scopePackages.size - 1;
+        }
+        lastScope = references;
+        scopePackages.add(references.getPackageId());
+        importNames.addAll(references.getImports());
+        importEnds.add(importNames.size);
+        onDemandNames.addAll(references.getOnDemandImports());
+        onDemandEnds.add(onDemandNames.size);
+        return scopePackages.size - 1;
+    }
+
+    /**
+     * Resolve all references and calculate the metrics. Later calls do nothing.
+     */
+    public synchronized void resolve() {
+        if (index != null) {
+            return;
+        }
+        int n = nameIds.size;
+        jdkPackages = new int[JDK_PACKAGES.length];
+        for (int i = 0; i < JDK_PACKAGES.length; i++) {
+            jdkPackages[i] = find(JDK_PACKAGES[i]);
+        }
+
+        // Symbol table: the first entry of each name stands for all entries of that name
+        index = new IntIntMap(n);
+        int[] nextDuplicate = new int[n];
+        int[] lastDuplicate = new int[n];
+        Arrays.fill(nextDuplicate, -1);
+        for (int i = 0; i < n; i++) {
+            int first = index.putIfAbsent(nameIds.data[i], i);
+            if (first != i) {
+                nextDuplicate[lastDuplicate[first]] = i;
+            }
+            lastDuplicate[first] = i;
+        }
+
+        resolveSuperclasses(n, nextDuplicate);
+
+        // Efferent adjacency arrays: distinct project types referenced by each type
+        int[] stamp = new int[n];
+        Arrays.fill(stamp, -1);
+        int[] efferentEnds = new int[n];
+        IntList targets = new IntList();
+        IntList external = new IntList();
+        ce = new int[n];
+        for (int c = 0; c < n; c++) {
+            if (!isFirst(c)) {
+                efferentEnds[c] = targets.size;
+                continue;
+            }
+            external.size = 0;
+            for (int e = c; e >= 0; e = nextDuplicate[e]) {
+                int superclass = superclasses.data[e];
+                if (superclass != TypeReferences.NO_SUPERCLASS) {
+                    couple(c, e, superclass, stamp, targets, external);
+                }
+                for (int i = e == 0 ? 0 : interfaceEnds.data[e - 1]; i < interfaceEnds.data[e]; i++) {
+                    couple(c, e, interfaceNames.data[i], stamp, targets, external);
+                }
+                for (int i = e == 0 ? 0 : referenceEnds.data[e - 1]; i < referenceEnds.data[e]; i++) {
+                    couple(c, e, referenceNames.data[i], stamp, targets, external);
+                }
+            }
+            efferentEnds[c] = targets.size;
+            ce[c] = efferentEnds[c] - (c == 0 ? 0 : efferentEnds[c - 1]) + distinctCount(external);
+        }
+
+        // Afferent couplings, mutual couplings (counted once in CBO) and children
+        ca = new int[n];
+        noc = new int[n];
+        for (int i = 0; i < targets.size; i++) {
+            ca[targets.data[i]]++;
+        }
+        int[] afferentEnds = new int[n];
+        int sum = 0;
+        for (int c = 0; c < n; c++) {
+            sum += ca[c];
+            afferentEnds[c] = sum;
+        }
+        int[] afferent = new int[targets.size];
+        int[] fill = new int[n];
+        for (int c = 0; c < n; c++) {
+            for (int i = c == 0 ? 0 : efferentEnds[c - 1]; i < efferentEnds[c]; i++) {
+                int t = targets.data[i];
+                afferent[(t == 0 ? 0 : afferentEnds[t - 1]) + fill[t]++] = c;
+            }
+        }
+        cbo = new int[n];
+        Arrays.fill(stamp, -1);
+        for (int c = 0; c < n; c++) {
+            if (!isFirst(c)) {
+                continue;
+            }
+            for (int i = c == 0 ? 0 : efferentEnds[c - 1]; i < efferentEnds[c]; i++) {
+                stamp[targets.data[i]] = c;
+            }
+            int mutual = 0;
+            for (int i = c == 0 ? 0 : afferentEnds[c - 1]; i < afferentEnds[c]; i++) {
+                if (stamp[afferent[i]] == c) {
+                    mutual++;
+                }
+            }
+            cbo[c] = ce[c] + ca[c] - mutual;
+            if (superIndex[c] >= 0) {
+                noc[superIndex[c]]++;
+            }
+        }
+
+        calculateDit(n);
+        calculateMethodInheritance(n);
+    }
+
+    private boolean isFirst(int entry) {
+        return index.get(nameIds.data[entry]) == entry;
+    }
+
+    private void resolveSuperclasses(int n, int[] nextDuplicate) {
+        int object = find("Object");
+        int javaLangObject = find("java.lang.Object");
+        superIndex = new int[n];
+        externalSuperclass = new boolean[n];
+        librarySuperclass = new int[n];
+        libraryDepths = new IntIntMap(16);
+        Arrays.fill(superIndex, -1);
+        Arrays.fill(librarySuperclass, -1);
+        for (int c = 0; c < n; c++) {
+            if (!isFirst(c)) {
+                continue;
+            }
+            for (int e = c; e >= 0; e = nextDuplicate[e]) {
+                int superclass = superclasses.data[e];
+                if (superclass == TypeReferences.NO_SUPERCLASS) {
+                    continue;
+                }
+                int target = resolveName(e, superclass, false);
+                if (target >= 0 && target != c) {
+                    superIndex[c] = target;
+                } else if (target < 0) {
+                    externalSuperclass[c] = superclass != object && superclass != javaLangObject
+                            && (javaLangObject < 0 || target != -2 - javaLangObject);
+                    if (externalSuperclass[c]) {
+                        librarySuperclass[c] = findLibraryType(e, superclass, target);
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    private void couple(int c, int entry, int name, int[] stamp, IntList targets, IntList external) {
+        int target = resolveName(entry, name, true);
+        if (target >= 0) {
+            if (target != c && stamp[target] != c) {
+                stamp[target] = c;
+                targets.add(target);
+            }
+        } else if (target < -1 && !isJdk(-2 - target)) {
+            external.add(-2 - target);
+        }
+    }
+
+    private static int distinctCount(IntList list) {
+        Arrays.sort(list.data, 0, list.size);
+        int distinct = 0;
+        for (int i = 0; i < list.size; i++) {
+            if (i == 0 || list.data[i] != list.data[i - 1]) {
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * DIT of every type along its superclass chain, each type visited once.
+     */
+    private void calculateDit(int n) {
+        dit = new int[n];
+        int[] stack = new int[n];
+        for (int c = 0; c < n; c++) {
+            if (!isFirst(c) || dit[c] > 0) {
+                continue;
+            }
+            int top = 0;
+            for (int t = c; t >= 0 && dit[t] == 0; t = superIndex[t]) {
+                dit[t] = -1;    // on the stack
+                stack[top++] = t;
+            }
+            while (top > 0) {
+                int t = stack[--top];
+                int parent = superIndex[t];
+                if (interfaceFlags.data[t] != 0) {
+                    dit[t] = 1;
+                } else if (parent < 0 && librarySuperclass[t] >= 0) {
+                    dit[t] = libraryDepth(librarySuperclass[t]) + 1;
+                } else if (parent < 0) {
+                    dit[t] = externalSuperclass[t] ? 2 : 1;
+                } else if (dit[parent] > 0) {
+                    dit[t] = dit[parent] + 1;
+                } else {
+                    dit[t] = 1;    // cyclic inheritance in broken sources
+                }
+            }
+        }
+    }
+
+    /**
+     * MFA and IC of every class, walking its superclass chain through the project and the libraries.
+     */
+    private void calculateMethodInheritance(int n) {
+        mfa = new double[n];
+        ic = new int[n];
+        int libraryObject = findLibraryType("java.lang.Object");
+        for (int c = 0; c < n; c++) {
+            if (!isFirst(c) || interfaceFlags.data[c] != 0) {
+                continue;
+            }
+            IntSet own = new IntSet(methodCounts.data[c]);
+            for (int i = c == 0 ? 0 : methodEnds.data[c - 1]; i < methodEnds.data[c]; i++) {
+                own.add(methodNames.data[i]);
+            }
+            IntSet inherited = new IntSet();
+            int coupled = 0;
+
+            int t = c;
+            for (int step = 0; superIndex[t] >= 0 && step < MAX_INHERITED_LOOKUP; step++) {
+                t = superIndex[t];
+                int from = t == 0 ? 0 : methodEnds.data[t - 1];
+                if (inherit(methodNames.data, from, methodEnds.data[t], own, inherited)) {
+                    coupled++;
+                }
+            }
+            int library = librarySuperclass[t];
+            for (int step = 0; library >= 0 && library != libraryObject && step < MAX_LIBRARY_DEPTH; step++) {
+                HierarchyIndex index = libraries.get(libraryOf(library));
+                int type = library - libraryBases[libraryOf(library)];
+                int[] strings = index.getMethods(type);
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = libraryNameId(libraryOf(library), strings[i]);
+                }
+                if (inherit(strings, 0, strings.length, own, inherited)) {
+                    coupled++;
+                }
+                String superclass = index.getSuperclassName(type);
+                library = superclass == null ? -1 : findLibraryType(superclass);
+            }
+
+            int total = inherited.size() + methodCounts.data[c];
+            mfa[c] = total == 0 ? 0 : Math.round(inherited.size() * 10000.0 / total) / 10000.0;
+            ic[c] = coupled;
+        }
+    }
+
+    /**
+     * ID of a string of a library index in the graph's name table, interned on first use.
+     */
+    private int libraryNameId(int library, int string) {
+        IntIntMap ids = libraryNameIds[library];
+        if (ids == null) {
+            ids = new IntIntMap();
+            libraryNameIds[library] = ids;
+        }
+        int id = ids.get(string);
+        if (id == IntIntMap.MISSING) {
+            id = ids.putIfAbsent(string, names.intern(libraries.get(library).getString(string)));
+        }
+        return id;
+    }
+
+    /**
+     * Add the methods of a superclass that the class does not override to its inherited methods.
+     *
+     * @return Whether the class overrides one of them
+     */
+    private static boolean inherit(int[] methods, int from, int to, IntSet own, IntSet inherited) {
+        boolean overrides = false;
+        for (int i = from; i < to; i++) {
+            if (own.contains(methods[i])) {
+                overrides = true;
+            } else {
+                inherited.add(methods[i]);
+            }
+        }
+        return overrides;
+    }
+
+    // ---- Library types ----
+
+    /**
+     * Library type of a superclass outside the project, trying the names it can stand for, or -1.
+     *
+     * @param target Result of {@link #resolveName} for the superclass
+     */
+    private int findLibraryType(int entry, int superclass, int target) {
+        if (target < -1) {
+            return findLibraryType(names.toString(-2 - target));
+        }
+        if (names.depth(superclass) > 1) {
+            return findLibraryType(names.toString(superclass));
+        }
+        String simpleName = names.segment(superclass);
+        int scope = scopes.data[entry];
+        for (int i = scope == 0 ? 0 : onDemandEnds.data[scope - 1]; i < onDemandEnds.data[scope]; i++) {
+            int type = findLibraryType(names.toString(onDemandNames.data[i]) + "." + simpleName);
+            if (type >= 0) {
+                return type;
+            }
+        }
+        return findLibraryType("java.lang." + simpleName);
+    }
+
+    /**
+     * Library type of a canonical name in the first index containing it, or -1.
+     */
+    private int findLibraryType(String name) {
+        for (int i = 0; i < libraries.size(); i++) {
+            int type = libraries.get(i).find(name);
+            if (type >= 0) {
+                return libraryBases[i] + type;
+            }
+        }
+        return -1;
+    }
+
+    private int libraryOf(int libraryType) {
+        int library = 0;
+        while (libraryBases[library + 1] <= libraryType) {
+            library++;
+        }
+        return library;
+    }
+
+    /**
+     * Number of superclasses of a library type up to {@code java.lang.Object}; a superclass missing from
+     * the indexes counts as one level.
+     */
+    private int libraryDepth(int libraryType) {
+        int depth = libraryDepths.get(libraryType);
+        if (depth != IntIntMap.MISSING) {
+            return depth;
+        }
+        depth = 0;
+        for (int type = libraryType; type >= 0 && depth < MAX_LIBRARY_DEPTH; depth++) {
+            int library = libraryOf(type);
+            String superclass = libraries.get(library).getSuperclassName(type - libraryBases[library]);
+            if (superclass == null) {
+                break;
+            }
+            type = findLibraryType(superclass);
+            if (type < 0) {
+                depth++;
+            }
+        }
+        libraryDepths.putIfAbsent(libraryType, depth);
+        return depth;
+    }
+
+    // ---- Name resolution ----
+
+    /**
+     * Resolve a name as written in a class.
+     *
+     * @param entry     Entry of the class
+     * @param name      Name ID as written
+     * @param inherited Whether member types of superclasses are visible (superclasses are resolved)
+     * @return Index of a project type; {@code -2 - id} for a class outside the project with the full name
+     *         {@code id}; or -1 if the name cannot be resolved
+     */
+    private int resolveName(int entry, int name, boolean inherited) {
+        int depth = names.depth(name);
+        if (depth <= 1) {
+            return resolveSimple(entry, name, inherited);
+        }
+        if (path.length < depth) {
+            path = new int[depth * 2];
+        }
+        int[] segments = path;
+        for (int id = name, i = depth - 1; i >= 0; id = names.parentOf(id), i--) {
+            segments[i] = id;
+        }
+        int first = resolveSimple(entry, segments[0], inherited);
+        if (first >= 0) {
+            return member(first, segments, 1, depth);
+        }
+        if (first < -1) {
+            // Member of an imported class outside the project, e.g. Map.Entry
+            return first;
+        }
+        return resolveQualified(segments, depth);
+    }
+
+    /**
+     * Resolve a fully qualified name given as its prefix IDs.
+     */
+    private int resolveQualified(int[] segments, int depth) {
+        for (int k = 0; k < depth; k++) {
+            int type = index.get(segments[k]);
+            if (type >= 0) {
+                return member(type, segments, k + 1, depth);
+            }
+        }
+        for (int k = 0; k < depth; k++) {
+            if (Character.isUpperCase(names.segment(segments[k]).charAt(0))) {
+                return -2 - segments[k];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The innermost project member type named by {@code segments[from..depth)} below a type.
+     */
+    private int member(int type, int[] segments, int from, int depth) {
+        for (int k = from; k < depth; k++) {
+            int id = names.find(nameIds.data[type], names.segment(segments[k]), '$');
+            int member = id < 0 ? -1 : index.get(id);
+            if (member < 0) {
+                break;
+            }
+            type = member;
+        }
+        return type;
+    }
+
+    private int resolveSimple(int entry, int name, boolean inherited) {
+        String simpleName = names.segment(name);
+
+        // The class, its enclosing classes and their member types
+        for (int id = nameIds.data[entry]; ; id = names.parentOf(id)) {
+            int type = index.get(id);
+            if (type < 0) {
+                break;
+            }
+            int member = memberType(type, simpleName, inherited);
+            if (member >= 0) {
+                return member;
+            }
+            if (names.segment(id).equals(simpleName)) {
+                return type;
+            }
+        }
+
+        int scope = scopes.data[entry];
+        for (int i = scope == 0 ? 0 : importEnds.data[scope - 1]; i < importEnds.data[scope]; i++) {
+            int imported = importNames.data[i];
+            if (names.segment(imported).equals(simpleName)) {
+                int type = index.get(imported);
+                if (type >= 0) {
+                    return type;
+                }
+                int depth = names.depth(imported);
+                if (importPath.length < depth) {
+                    importPath = new int[depth * 2];
+                }
+                for (int id = imported, k = depth - 1; k >= 0; id = names.parentOf(id), k--) {
+                    importPath[k] = id;
+                }
+                int resolved = resolveQualified(importPath, depth);
+                return resolved >= 0 ? resolved : -2 - imported;
+            }
+        }
+
+        int samePackage = names.find(scopePackages.data[scope], simpleName, '.');
+        if (samePackage >= 0 && index.get(samePackage) >= 0) {
+            return index.get(samePackage);
+        }
+
+        for (int i = scope == 0 ? 0 : onDemandEnds.data[scope - 1]; i < onDemandEnds.data[scope]; i++) {
+            int imported = onDemandNames.data[i];
+            int id = names.find(imported, simpleName, '.');
+            if (id >= 0 && index.get(id) >= 0) {
+                return index.get(id);
+            }
+            int type = index.get(imported);
+            if (type >= 0) {
+                int member = memberType(type, simpleName, false);
+                if (member >= 0) {
+                    return member;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A member type of a project type, or with {@code inherited} of its superclasses, or -1.
+     */
+    private int memberType(int type, String simpleName, boolean inherited) {
+        for (int t = type, step = 0; t >= 0 && step < MAX_INHERITED_LOOKUP; step++) {
+            int id = names.find(nameIds.data[t], simpleName, '$');
+            if (id >= 0 && index.get(id) >= 0) {
+                return index.get(id);
+            }
+            t = inherited ? superIndex[t] : -1;
+        }
+        return -1;
+    }
+
+    private boolean isJdk(int name) {
+        for (int id = name; id != NameTable.ROOT; id = names.parentOf(id)) {
+            for (int jdkPackage : jdkPackages) {
+                if (id == jdkPackage) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ID of a dotted name if it is in the name table, otherwise -1.
+     */
+    private int find(String dottedName) {
+        int id = NameTable.ROOT;
+        for (String segment : dottedName.split("\\.")) {
+            id = names.find(id, segment, '.');
+            if (id < 0) {
+                return -1;
+            }
+        }
+        return id;
+    }
+
+    // ---- Results ----
+
+    /**
+     * Set the graph metrics of a table row from the type of the row's class name.
+     * Rows of classes not in the graph are left unchanged.
+     */
+    public synchronized void apply(MetricsTable table, int row) {
+        if (index == null) {
+            throw new IllegalStateException("Type graph is not resolved");
+        }
+        int type = index.get(table.getNameId(row));
+        if (type < 0) {
+            return;
+        }
+        table.setInt(Metric.DIT, row, dit[type]);
+        table.setInt(Metric.NOC, row, noc[type]);
+        table.setInt(Metric.CBO, row, cbo[type]);
+        table.setInt(Metric.CA, row, ca[type]);
+        table.setInt(Metric.CE, row, ce[type]);
+        table.setDouble(Metric.MFA, row, mfa[type]);
+        table.setInt(Metric.IC, row, ic[type]);
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static final class IntList {
+        int[] data = new int[64];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void addAll(int[] values) {
+            if (size + values.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + values.length));
+            }
+            System.arraycopy(values, 0, data, size, values.length);
+            size += values.length;
+        }
+    }
+}
@@ -2,26 +2,108 @@ package org.promise.metrics.model;
 
 /**
  * Data model to hold calculated metrics for a Java class.
+ * The class name is kept as an ID of a {@link NameTable}, the shared one unless the analysis has its own.
  */
 public class ClassMetrics {
-    private String fullyQualifiedName;
+
+    /**
+     * Name ID of metrics that have no name yet.
+     */
+    public static final int NO_NAME = -1;
+
+    private NameTable names = NameTable.shared();
+    private int nameId = NO_NAME;
     private int npm;           // Number of Public Methods
     private int loc;           // Lines of Code (excluding blanks and comments)
+    private int exclusiveLoc;  // LOC without the lines of nested classes
+    private int commentLines;  // Comment-only lines
+    private int wmc;           // Weighted Methods per Class (sum of CC)
+    private int maxCc;         // Maximum Cyclomatic Complexity
+    private double avgCc;      // Average Cyclomatic Complexity
+    private double amc;        // Average Method Complexity
+    private int lcom;          // Lack of Cohesion in Methods (Chidamber and Kemerer)
+    private double lcom3;      // Lack of Cohesion in Methods (Henderson-Sellers)
+    private double cam;        // Cohesion Among Methods
+    private int rfc;           // Response For a Class
+    private int cbm;           // Coupling Between Methods
+    private TypeReferences typeReferences;  // Input of the project-wide type graph, null if not collected
 
     public ClassMetrics() {
     }
 
     public ClassMetrics(String fullyQualifiedName) {
-        this.fullyQualifiedName = fullyQualifiedName;
+        setFullyQualifiedName(fullyQualifiedName);
+    }
+
+    /**
+     * @param nameId ID of the fully qualified name in {@link NameTable#shared()}
+     */
+    public ClassMetrics(int nameId) {
+        this.nameId = nameId;
+    }
+
+    /**
+     * @param names  Table of the name and of the type references
+     * @param nameId ID of the fully qualified name in {@code names}
+     */
+    public ClassMetrics(NameTable names, int nameId) {
+        this.names = names;
+        this.nameId = nameId;
+    }
+
+    /**
+     * @param names              Table to intern the name in
+     * @param fullyQualifiedName Name of the class
+     */
+    public ClassMetrics(NameTable names, String fullyQualifiedName) {
+        this.names = names;
+        setFullyQualifiedName(fullyQualifiedName);
+    }
+
+    /**
+     * Copy all metrics of another class.
+     */
+    public ClassMetrics(ClassMetrics other) {
+        this.names = other.names;
+        this.nameId = other.nameId;
+        this.npm = other.npm;
+        this.loc = other.loc;
+        this.exclusiveLoc = other.exclusiveLoc;
+        this.commentLines = other.commentLines;
+        this.wmc = other.wmc;
+        this.maxCc = other.maxCc;
+        this.avgCc = other.avgCc;
+        this.amc = other.amc;
+        this.lcom = other.lcom;
+        this.lcom3 = other.lcom3;
+        this.cam = other.cam;
+        this.rfc = other.rfc;
+        this.cbm = other.cbm;
+        this.typeReferences = other.typeReferences;
     }
 
     // Getters and Setters
     public String getFullyQualifiedName() {
-        return fullyQualifiedName;
+        return nameId == NO_NAME ? null : names.toString(nameId);
     }
 
     public void setFullyQualifiedName(String fullyQualifiedName) {
-        this.fullyQualifiedName = fullyQualifiedName;
+        this.nameId = fullyQualifiedName == null ? NO_NAME : names.intern(fullyQualifiedName);
+    }
+
+    /**
+     * The table of the name ID and of the type reference IDs.
+     */
+    public NameTable getNames() {
+        return names;
+    }
+
+    public int getNameId() {
+        return nameId;
+    }
+
+    public void setNameId(int nameId) {
+        this.nameId = nameId;
     }
 
     public int getNpm() {
@@ -40,10 +122,106 @@ public class ClassMetrics {
         this.loc = loc;
     }
 
+    public int getExclusiveLoc() {
+        return exclusiveLoc;
+    }
+
+    public void setExclusiveLoc(int exclusiveLoc) {
+        this.exclusiveLoc = exclusiveLoc;
+    }
+
+    public int getCommentLines() {
+        return commentLines;
+    }
+
+    public void setCommentLines(int commentLines) {
+        this.commentLines = commentLines;
+    }
+
+    public int getWmc() {
+        return wmc;
+    }
+
+    public void setWmc(int wmc) {
+        this.wmc = wmc;
+    }
+
+    public int getMaxCc() {
+        return maxCc;
+    }
+
+    public void setMaxCc(int maxCc) {
+        this.maxCc = maxCc;
+    }
+
+    public double getAvgCc() {
+        return avgCc;
+    }
+
+    public void setAvgCc(double avgCc) {
+        this.avgCc = avgCc;
+    }
+
+    public double getAmc() {
+        return amc;
+    }
+
+    public void setAmc(double amc) {
+        this.amc = amc;
+    }
+
+    public int getLcom() {
+        return lcom;
+    }
+
+    public void setLcom(int lcom) {
+        this.lcom = lcom;
+    }
+
+    public double getLcom3() {
+        return lcom3;
+    }
+
+    public void setLcom3(double lcom3) {
+        this.lcom3 = lcom3;
+    }
+
+    public double getCam() {
+        return cam;
+    }
+
+    public void setCam(double cam) {
+        this.cam = cam;
+    }
+
+    public int getRfc() {
+        return rfc;
+    }
+
+    public void setRfc(int rfc) {
+        this.rfc = rfc;
+    }
+
+    public int getCbm() {
+        return cbm;
+    }
+
+    public void setCbm(int cbm) {
+        this.cbm = cbm;
+    }
+
+    public TypeReferences getTypeReferences() {
+        return typeReferences;
+    }
+
+    public void setTypeReferences(TypeReferences typeReferences) {
+        this.typeReferences = typeReferences;
+    }
+
 
     @Override
     public String toString() {
-        return String.format("ClassMetrics{name='%s', npm=%d, loc=%d}",
-                fullyQualifiedName, npm, loc);
+        return String.format("ClassMetrics{name='%s', wmc=%d, npm=%d, loc=%d, cloc=%d, max_cc=%d, avg_cc=%s}",
+                getFullyQualifiedName(), wmc, npm, loc, commentLines, maxCc, avgCc);
     }
 }
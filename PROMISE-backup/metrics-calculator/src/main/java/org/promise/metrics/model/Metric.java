@@ -0,0 +1,72 @@
+package org.promise.metrics.model;
+
+/**
+ * Metrics calculated per class, with their CSV column names.
+ * Project-wide metrics (inheritance and coupling) come from the type graph of all classes at export time.
+ */
+public enum Metric {
+    WMC("wmc", false),        // Weighted Methods per Class (sum of CC)
+    NPM("npm", false),        // Number of Public Methods
+    LOC("loc", false),        // Lines of Code (excluding blanks and comments)
+    ELOC("eloc", false),      // LOC without the lines of nested classes
+    CLOC("cloc", false),      // Comment-only lines
+    AMC("amc", true),         // Average Method Complexity
+    MAX_CC("max_cc", false),  // Maximum Cyclomatic Complexity
+    AVG_CC("avg_cc", true),   // Average Cyclomatic Complexity
+    LCOM("lcom", false),      // Lack of Cohesion in Methods (Chidamber and Kemerer)
+    LCOM3("lcom3", true),     // Lack of Cohesion in Methods (Henderson-Sellers)
+    CAM("cam", true),         // Cohesion Among Methods
+    RFC("rfc", false),        // Response For a Class
+    CBM("cbm", false),        // Coupling Between Methods
+    DIT("dit", false, true),  // Depth of Inheritance Tree
+    NOC("noc", false, true),  // Number of Children
+    CBO("cbo", false, true),  // Coupling Between Objects (afferent and efferent)
+    CA("ca", false, true),    // Afferent Couplings
+    CE("ce", false, true),    // Efferent Couplings
+    MFA("mfa", true, true),   // Measure of Functional Abstraction
+    IC("ic", false, true);    // Inheritance Coupling
+
+    private final String columnName;
+    private final boolean decimal;
+    private final boolean projectWide;
+
+    Metric(String columnName, boolean decimal) {
+        this(columnName, decimal, false);
+    }
+
+    Metric(String columnName, boolean decimal, boolean projectWide) {
+        this.columnName = columnName;
+        this.decimal = decimal;
+        this.projectWide = projectWide;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    /**
+     * Whether the metric is stored as a double rather than an int.
+     */
+    public boolean isDecimal() {
+        return decimal;
+    }
+
+    /**
+     * Whether the metric needs the type graph of the whole project rather than a single file.
+     */
+    public boolean isProjectWide() {
+        return projectWide;
+    }
+
+    /**
+     * The metric with the given CSV column name, or null if there is none.
+     */
+    public static Metric forColumn(String columnName) {
+        for (Metric metric : values()) {
+            if (metric.columnName.equals(columnName)) {
+                return metric;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,277 @@
+package org.promise.metrics.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented store of class metrics: one growable primitive array per {@link Metric}, a column of
+ * {@link NameTable} name IDs and the position of each class in the input (file ordinal and index within
+ * the file).
+ *
+ * Rows are identified by their index. Sorting produces a permutation of row indices instead of moving
+ * the rows, and values are read without boxing, so large tables cost a few arrays rather than one object
+ * per class. Tables are not thread-safe.
+ */
+public class MetricsTable {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final Metric[] METRICS = Metric.values();
+
+    private final NameTable names;
+    private int size;
+    private int[] nameIds;
+    private int[] files;
+    private int[] positions;
+    private final int[][] intColumns = new int[METRICS.length][];
+    private final double[][] decimalColumns = new double[METRICS.length][];
+
+    public MetricsTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity Number of rows to allocate up front
+     */
+    public MetricsTable(int initialCapacity) {
+        this(NameTable.shared(), initialCapacity);
+    }
+
+    /**
+     * @param names           Table of the class name IDs
+     * @param initialCapacity Number of rows to allocate up front
+     */
+    public MetricsTable(NameTable names, int initialCapacity) {
+        this.names = names;
+        int capacity = Math.max(1, initialCapacity);
+        this.nameIds = new int[capacity];
+        this.files = new int[capacity];
+        this.positions = new int[capacity];
+        for (Metric metric : METRICS) {
+            if (metric.isDecimal()) {
+                decimalColumns[metric.ordinal()] = new double[capacity];
+            } else {
+                intColumns[metric.ordinal()] = new int[capacity];
+            }
+        }
+    }
+
+    /**
+     * Table of the given classes, in list order (all with file ordinal 0). The classes share one name table.
+     */
+    public static MetricsTable of(List<ClassMetrics> metricsList) {
+        MetricsTable table = new MetricsTable(
+                metricsList.isEmpty() ? NameTable.shared() : metricsList.get(0).getNames(), metricsList.size());
+        for (int i = 0; i < metricsList.size(); i++) {
+            table.add(metricsList.get(i), 0, i);
+        }
+        return table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append a row with all metrics 0.
+     *
+     * @param nameId   ID of the fully qualified class name in the table's {@link NameTable}
+     * @param file     Ordinal of the file the class was found in
+     * @param position Index of the class within its file
+     * @return Index of the new row
+     */
+    public int addRow(int nameId, int file, int position) {
+        if (size == nameIds.length) {
+            grow();
+        }
+        int row = size++;
+        nameIds[row] = nameId;
+        files[row] = file;
+        positions[row] = position;
+        for (Metric metric : METRICS) {
+            if (metric.isDecimal()) {
+                decimalColumns[metric.ordinal()][row] = 0;
+            } else {
+                intColumns[metric.ordinal()][row] = 0;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Append the metrics of one class.
+     *
+     * @return Index of the new row
+     */
+    public int add(ClassMetrics metrics, int file, int position) {
+        int row = addRow(metrics.getNameId(), file, position);
+        intColumns[Metric.WMC.ordinal()][row] = metrics.getWmc();
+        intColumns[Metric.NPM.ordinal()][row] = metrics.getNpm();
+        intColumns[Metric.LOC.ordinal()][row] = metrics.getLoc();
+        intColumns[Metric.ELOC.ordinal()][row] = metrics.getExclusiveLoc();
+        intColumns[Metric.CLOC.ordinal()][row] = metrics.getCommentLines();
+        decimalColumns[Metric.AMC.ordinal()][row] = metrics.getAmc();
+        intColumns[Metric.MAX_CC.ordinal()][row] = metrics.getMaxCc();
+        decimalColumns[Metric.AVG_CC.ordinal()][row] = metrics.getAvgCc();
+        intColumns[Metric.LCOM.ordinal()][row] = metrics.getLcom();
+        decimalColumns[Metric.LCOM3.ordinal()][row] = metrics.getLcom3();
+        decimalColumns[Metric.CAM.ordinal()][row] = metrics.getCam();
+        intColumns[Metric.RFC.ordinal()][row] = metrics.getRfc();
+        intColumns[Metric.CBM.ordinal()][row] = metrics.getCbm();
+        return row;
+    }
+
+    private void grow() {
+        int capacity = nameIds.length * 2;
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        files = Arrays.copyOf(files, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        for (int i = 0; i < METRICS.length; i++) {
+            if (intColumns[i] != null) {
+                intColumns[i] = Arrays.copyOf(intColumns[i], capacity);
+            } else {
+                decimalColumns[i] = Arrays.copyOf(decimalColumns[i], capacity);
+            }
+        }
+    }
+
+    /**
+     * Remove all rows, keeping the allocated columns for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int getNameId(int row) {
+        return nameIds[row];
+    }
+
+    /**
+     * The fully qualified class name of a row, materialized from the name table.
+     */
+    public String getName(int row) {
+        return names.toString(nameIds[row]);
+    }
+
+    public int getFile(int row) {
+        return files[row];
+    }
+
+    public int getPosition(int row) {
+        return positions[row];
+    }
+
+    public int getInt(Metric metric, int row) {
+        return intColumn(metric)[row];
+    }
+
+    public void setInt(Metric metric, int row, int value) {
+        intColumn(metric)[row] = value;
+    }
+
+    public double getDouble(Metric metric, int row) {
+        return decimalColumn(metric)[row];
+    }
+
+    public void setDouble(Metric metric, int row, double value) {
+        decimalColumn(metric)[row] = value;
+    }
+
+    private int[] intColumn(Metric metric) {
+        int[] column = intColumns[metric.ordinal()];
+        if (column == null) {
+            throw new IllegalArgumentException("Metric " + metric + " is not an int column");
+        }
+        return column;
+    }
+
+    private double[] decimalColumn(Metric metric) {
+        double[] column = decimalColumns[metric.ordinal()];
+        if (column == null) {
+            throw new IllegalArgumentException("Metric " + metric + " is not a decimal column");
+        }
+        return column;
+    }
+
+    /**
+     * Compare two rows, possibly of different tables, by class name, then file ordinal, then position.
+     */
+    public static int compareRows(MetricsTable a, int rowA, MetricsTable b, int rowB) {
+        int result = a.names.compare(a.nameIds[rowA], b.nameIds[rowB]);
+        if (result == 0) {
+            result = Integer.compare(a.files[rowA], b.files[rowB]);
+        }
+        if (result == 0) {
+            result = Integer.compare(a.positions[rowA], b.positions[rowB]);
+        }
+        return result;
+    }
+
+    /**
+     * Row indices in the order of {@link #compareRows}. The table itself is not modified.
+     *
+     * The distinct names are sorted once through the name table; the rows are then sorted by name rank,
+     * file and position, which are plain int comparisons.
+     */
+    public int[] sortedRows() {
+        // Distinct name IDs, in ID order for lookup and in name order for ranking
+        int[] byId = Arrays.copyOf(nameIds, size);
+        Arrays.sort(byId);
+        int distinct = 0;
+        for (int i = 0; i < byId.length; i++) {
+            if (i == 0 || byId[i] != byId[i - 1]) {
+                byId[distinct++] = byId[i];
+            }
+        }
+        byId = Arrays.copyOf(byId, distinct);
+        int[] byName = byId.clone();
+        names.sort(byName);
+        int[] rankOfId = new int[distinct];
+        for (int rank = 0; rank < distinct; rank++) {
+            rankOfId[Arrays.binarySearch(byId, byName[rank])] = rank;
+        }
+
+        int[] ranks = new int[size];
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            ranks[i] = rankOfId[Arrays.binarySearch(byId, nameIds[i])];
+            rows[i] = i;
+        }
+        mergeSort(rows, new int[size], ranks, 0, size);
+        return rows;
+    }
+
+    private int compareRanked(int[] ranks, int a, int b) {
+        int result = Integer.compare(ranks[a], ranks[b]);
+        if (result == 0) {
+            result = Integer.compare(files[a], files[b]);
+        }
+        if (result == 0) {
+            result = Integer.compare(positions[a], positions[b]);
+        }
+        return result;
+    }
+
+    private void mergeSort(int[] rows, int[] scratch, int[] ranks, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(rows, scratch, ranks, from, middle);
+        mergeSort(rows, scratch, ranks, middle, to);
+        if (compareRanked(ranks, rows[middle - 1], rows[middle]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(rows, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compareRanked(ranks, scratch[left], scratch[right]) <= 0)) {
+                rows[i] = scratch[left++];
+            } else {
+                rows[i] = scratch[right++];
+            }
+        }
+    }
+}
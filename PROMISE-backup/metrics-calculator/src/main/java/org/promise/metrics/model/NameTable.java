@@ -0,0 +1,326 @@
+package org.promise.metrics.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trie of fully qualified class names over their package and type segments, with an integer ID per name.
+ *
+ * A name such as {@code org.apache.tools.ant.Project$AntRefTable} is a path of segments joined by
+ * {@code .} or {@code $}; every prefix path is a node, so a package is stored once however many classes it
+ * contains, and segment strings are shared between nodes. Names are built segment by segment without
+ * concatenation; the full string is only materialized by {@link #toString(int)}.
+ *
+ * {@link #compare(int, int)} orders IDs exactly as {@link String#compareTo} orders the full names, by
+ * walking up to the first differing segments instead of comparing the common prefix character by character.
+ *
+ * Creating nodes is synchronized; reading is lock-free. IDs must be handed between threads through a
+ * synchronized hand-off (as the result sinks do), like any other non-final data.
+ */
+public class NameTable {
+
+    /**
+     * ID of the empty name, the root of all names.
+     */
+    public static final int ROOT = 0;
+
+    private static final char NONE = 0;
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private static final NameTable SHARED = new NameTable();
+
+    /**
+     * One segment of a name; the path from the root spells the full name.
+     */
+    private static final class Node {
+        final int id;
+        final Node parent;
+        final String segment;
+        final char separator;    // before the segment, NONE for segments directly below the root
+        final int depth;
+        final int length;        // length of the full name
+
+        Node(int id, Node parent, String segment, char separator) {
+            this.id = id;
+            this.parent = parent;
+            this.segment = segment;
+            this.separator = separator;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.length = parent == null ? 0 : parent.length + (separator != NONE ? 1 : 0) + segment.length();
+        }
+    }
+
+    /**
+     * Lookup key of a child node.
+     */
+    private static final class ChildKey {
+        int parent;
+        char separator;
+        String segment;
+
+        ChildKey(int parent, char separator, String segment) {
+            this.parent = parent;
+            this.separator = separator;
+            this.segment = segment;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ChildKey)) {
+                return false;
+            }
+            ChildKey other = (ChildKey) o;
+            return parent == other.parent && separator == other.separator && segment.equals(other.segment);
+        }
+
+        @Override
+        public int hashCode() {
+            return (parent * 31 + separator) * 31 + segment.hashCode();
+        }
+    }
+
+    // Fixed directory of fixed-size chunks, so nodes never move and can be read without locking
+    private final Node[][] chunks = new Node[MAX_CHUNKS][];
+    private final Map<ChildKey, Integer> children = new HashMap<>();
+    private final Map<String, String> segments = new HashMap<>();
+    private final ChildKey probe = new ChildKey(ROOT, NONE, "");
+    private int size;
+
+    public NameTable() {
+        add(new Node(ROOT, null, "", NONE));
+    }
+
+    /**
+     * The table of a process that runs one analysis, used by the parsers, the cache and the exporters unless
+     * they are handed a table of their own. Runs that analyze several projects in one process (the batch
+     * driver) give every project a new table, so its names are released when the project is done.
+     */
+    public static NameTable shared() {
+        return SHARED;
+    }
+
+    /**
+     * Number of nodes (distinct names and name prefixes), including the root.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * ID of {@code parent} extended by a segment, e.g. a package by a type name ({@code .}) or a class by
+     * a member class name ({@code $}). The separator is ignored directly below the root. Segments containing
+     * {@code .} or {@code $} are split, so every name has exactly one ID.
+     */
+    public int child(int parent, String segment, char separator) {
+        int id = parent;
+        char nextSeparator = separator;
+        int start = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '.' || c == '$') {
+                id = node(id, segment.substring(start, i), nextSeparator);
+                nextSeparator = c;
+                start = i + 1;
+            }
+        }
+        return node(id, start == 0 ? segment : segment.substring(start), nextSeparator);
+    }
+
+    /**
+     * ID of a full name such as {@code org.example.Outer$Inner}.
+     */
+    public int intern(String name) {
+        return name.isEmpty() ? ROOT : child(ROOT, name, NONE);
+    }
+
+    private synchronized int node(int parent, String segment, char separator) {
+        char effectiveSeparator = parent == ROOT ? NONE : separator;
+        probe.parent = parent;
+        probe.separator = effectiveSeparator;
+        probe.segment = segment;
+        Integer id = children.get(probe);
+        if (id != null) {
+            return id;
+        }
+
+        String pooled = segments.putIfAbsent(segment, segment);
+        Node node = new Node(size, node(parent), pooled != null ? pooled : segment, effectiveSeparator);
+        add(node);
+        children.put(new ChildKey(parent, effectiveSeparator, node.segment), node.id);
+        return node.id;
+    }
+
+    /**
+     * ID of {@code parent} extended by a single segment if that name exists, otherwise -1.
+     * Unlike {@link #child}, the table is never extended.
+     */
+    public synchronized int find(int parent, String segment, char separator) {
+        probe.parent = parent;
+        probe.separator = parent == ROOT ? NONE : separator;
+        probe.segment = segment;
+        Integer id = children.get(probe);
+        return id != null ? id : -1;
+    }
+
+    private void add(Node node) {
+        int chunk = size >>> CHUNK_BITS;
+        if (chunk >= MAX_CHUNKS) {
+            throw new IllegalStateException("Name table is full");
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new Node[CHUNK_SIZE];
+        }
+        chunks[chunk][size & (CHUNK_SIZE - 1)] = node;
+        size++;
+    }
+
+    private Node node(int id) {
+        return chunks[id >>> CHUNK_BITS][id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * ID of the name this name extends (the root for the root itself).
+     */
+    public int parentOf(int id) {
+        Node node = node(id);
+        return node.parent == null ? ROOT : node.parent.id;
+    }
+
+    /**
+     * Last segment of a name, e.g. {@code Inner} for {@code org.example.Outer$Inner}.
+     */
+    public String segment(int id) {
+        return node(id).segment;
+    }
+
+    /**
+     * Length of the full name.
+     */
+    public int length(int id) {
+        return node(id).length;
+    }
+
+    /**
+     * Number of segments of the name (0 for the root).
+     */
+    public int depth(int id) {
+        return node(id).depth;
+    }
+
+    /**
+     * The full name.
+     */
+    public String toString(int id) {
+        Node node = node(id);
+        char[] chars = new char[node.length];
+        int end = chars.length;
+        for (Node n = node; n.parent != null; n = n.parent) {
+            end -= n.segment.length();
+            n.segment.getChars(0, n.segment.length(), chars, end);
+            if (n.separator != NONE) {
+                chars[--end] = n.separator;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Compare two names as {@link String#compareTo} compares their full strings.
+     */
+    public int compare(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        Node x = node(a);
+        Node y = node(b);
+        Node belowX = null;
+        Node belowY = null;
+        while (x.depth > y.depth) {
+            belowX = x;
+            x = x.parent;
+        }
+        while (y.depth > x.depth) {
+            belowY = y;
+            y = y.parent;
+        }
+        if (x == y) {
+            // One name extends the other, so the shorter one is a prefix of the longer
+            return belowX != null ? 1 : -1;
+        }
+        while (x.parent != y.parent) {
+            belowX = x;
+            x = x.parent;
+            belowY = y;
+            y = y.parent;
+        }
+        return compareSiblings(x, belowX, y, belowY);
+    }
+
+    /**
+     * Compare two names whose paths first differ at the sibling nodes {@code x} and {@code y}, given the
+     * next node of each path (null where the name ends).
+     */
+    private static int compareSiblings(Node x, Node nextX, Node y, Node nextY) {
+        int lengthX = keyLength(x);
+        int lengthY = keyLength(y);
+        int common = Math.min(lengthX, lengthY);
+        for (int i = 0; i < common; i++) {
+            char cx = keyChar(x, i);
+            char cy = keyChar(y, i);
+            if (cx != cy) {
+                return cx - cy;
+            }
+        }
+
+        // One segment is a prefix of the other. The next character of the shorter name is the separator
+        // of its next segment (or its end), the other's is a segment character, which is never a separator.
+        if (lengthX < lengthY) {
+            return nextX == null ? -1 : nextX.separator - keyChar(y, lengthX);
+        }
+        return nextY == null ? 1 : keyChar(x, lengthY) - nextY.separator;
+    }
+
+    private static int keyLength(Node node) {
+        return node.segment.length() + (node.separator != NONE ? 1 : 0);
+    }
+
+    private static char keyChar(Node node, int index) {
+        if (node.separator == NONE) {
+            return node.segment.charAt(index);
+        }
+        return index == 0 ? node.separator : node.segment.charAt(index - 1);
+    }
+
+    /**
+     * Sort IDs in place in the order of {@link #compare}.
+     */
+    public void sort(int[] ids) {
+        mergeSort(ids, new int[ids.length], 0, ids.length);
+    }
+
+    private void mergeSort(int[] ids, int[] scratch, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(ids, scratch, from, middle);
+        mergeSort(ids, scratch, middle, to);
+        if (compare(ids[middle - 1], ids[middle]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(ids, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(scratch[left], scratch[right]) <= 0)) {
+                ids[i] = scratch[left++];
+            } else {
+                ids[i] = scratch[right++];
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.promise.metrics.model;
+
+/**
+ * Type names a class mentions in its source, as written, together with the package and imports needed to
+ * resolve them, and the keys of the methods it declares. All names are IDs of the {@link NameTable} of the
+ * class's {@link ClassMetrics}:
+ * a simple name {@code Foo} is a name of one segment, a qualified name {@code a.b.Foo} or {@code Map.Entry}
+ * one with {@code .} separators, and a method key such as {@code execute/0} a name of one segment.
+ *
+ * This is the per-class input of the project-wide type graph; names are resolved only once all classes of
+ * the project are known. The import arrays are shared by all classes of a compilation unit.
+ */
+public class TypeReferences {
+
+    /**
+     * Superclass ID of a class that does not name one.
+     */
+    public static final int NO_SUPERCLASS = -1;
+
+    private static final int[] NONE = new int[0];
+
+    private final int packageId;
+    private final int[] imports;           // single-type imports
+    private final int[] onDemandImports;   // packages and types imported with .*
+    private final boolean isInterface;
+    private final int superclassId;
+    private final int[] interfaceIds;
+    private final int[] referenceIds;      // distinct names of all other type references
+    private final int[] methodIds;         // distinct keys (name/parameterCount) of non-private methods
+    private final int methodCount;         // declared methods, constructors excluded
+
+    /**
+     * @param packageId       ID of the package (the root for the default package)
+     * @param imports         Single-type imports of the compilation unit
+     * @param onDemandImports Packages and types imported on demand
+     * @param isInterface     Whether the type is an interface or annotation type
+     * @param superclassId    Superclass as written, or {@link #NO_SUPERCLASS}
+     * @param interfaceIds    Implemented (or, for interfaces, extended) interfaces as written
+     * @param referenceIds    Other referenced type names as written
+     * @param methodIds       Keys of the non-private methods, as {@code name/parameterCount} names
+     * @param methodCount     Number of declared methods, private ones included and constructors excluded
+     */
+    public TypeReferences(int packageId, int[] imports, int[] onDemandImports, boolean isInterface,
+                          int superclassId, int[] interfaceIds, int[] referenceIds,
+                          int[] methodIds, int methodCount) {
+        this.packageId = packageId;
+        this.imports = imports != null ? imports : NONE;
+        this.onDemandImports = onDemandImports != null ? onDemandImports : NONE;
+        this.isInterface = isInterface;
+        this.superclassId = superclassId;
+        this.interfaceIds = interfaceIds != null ? interfaceIds : NONE;
+        this.referenceIds = referenceIds != null ? referenceIds : NONE;
+        this.methodIds = methodIds != null ? methodIds : NONE;
+        this.methodCount = methodCount;
+    }
+
+    public int getPackageId() {
+        return packageId;
+    }
+
+    public int[] getImports() {
+        return imports;
+    }
+
+    public int[] getOnDemandImports() {
+        return onDemandImports;
+    }
+
+    public boolean isInterface() {
+        return isInterface;
+    }
+
+    public int getSuperclassId() {
+        return superclassId;
+    }
+
+    public int[] getInterfaceIds() {
+        return interfaceIds;
+    }
+
+    public int[] getReferenceIds() {
+        return referenceIds;
+    }
+
+    public int[] getMethodIds() {
+        return methodIds;
+    }
+
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    /**
+     * Key of a method, shared with the library type index: the name and number of parameters.
+     */
+    public static String methodKey(String name, int parameterCount) {
+        return name + "/" + parameterCount;
+    }
+}
@@ -1,38 +1,99 @@
 package org.promise.metrics.parser;
 
-import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.*;
+import org.promise.metrics.calculator.CallGraphCalculator;
+import org.promise.metrics.calculator.CohesionCalculator;
+import org.promise.metrics.calculator.ComplexityCalculator;
+import org.promise.metrics.calculator.FusedMetricsVisitor;
 import org.promise.metrics.calculator.LOCCalculator;
+import org.promise.metrics.calculator.LineIndex;
 import org.promise.metrics.calculator.NPMCalculator;
+import org.promise.metrics.calculator.TypeDependencyCalculator;
+import org.promise.metrics.diagnostics.Diagnostics;
+import org.promise.metrics.diagnostics.ParseProblem;
 import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.Metric;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceLoader;
+import org.promise.metrics.source.SourceText;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Parser for Java source files using Eclipse JDT.
  */
 public class JavaSourceParser {
 
+    private static final Set<Metric> ALL_METRICS = Collections.unmodifiableSet(EnumSet.allOf(Metric.class));
+    private static final Set<Metric> COHESION_METRICS = EnumSet.of(Metric.LCOM, Metric.LCOM3, Metric.CAM);
+    private static final Set<Metric> CALL_METRICS = EnumSet.of(Metric.RFC, Metric.CBM);
+
+    /**
+     * Parse a group of source files and calculate metrics for all classes.
+     * Every source is read once into the calling thread's pooled buffer, which is handed to the thread's
+     * parser session and to the line index. Sources that cannot be read or analyzed are reported and
+     * yield an empty list.
+     *
+     * @param sources Source files
+     * @param charset Charset of the sources that do not start with a byte order mark
+     * @return One list of ClassMetrics per source, in the order of {@code sources}
+     */
+    public static List<List<ClassMetrics>> parseSources(List<SourceFile> sources, Charset charset) {
+        return parseSources(sources, charset, ALL_METRICS);
+    }
+
     /**
-     * Parse a Java source file and calculate metrics for all classes.
+     * Parse a group of source files and calculate the given metrics for all classes
+     * (see {@link #calculators}); the other metrics of the results may be 0.
      *
-     * @param filePath Path to the .java file
-     * @return List of ClassMetrics (one per class/interface/enum in the file)
-     * @throws IOException If a file cannot be read
+     * @param sources Source files
+     * @param charset Charset of the sources that do not start with a byte order mark
+     * @param metrics Metrics the results are needed for
+     * @return One list of ClassMetrics per source, in the order of {@code sources}
      */
-    public static List<ClassMetrics> parseFile(Path filePath) throws IOException {
-        String sourceCode = new String(Files.readAllBytes(filePath));
-//        System.out.println(
-//                "Parsing file:" + filePath.toString() +
-//                        "\nSource code: " + sourceCode
-//        );
-        return parseSource(sourceCode, filePath.toString());
+    public static List<List<ClassMetrics>> parseSources(List<SourceFile> sources, Charset charset,
+                                                        Set<Metric> metrics) {
+        return parseSources(sources, charset, metrics, NameTable.shared());
+    }
+
+    /**
+     * Parse a group of source files and calculate the given metrics for all classes, naming them in
+     * the given table.
+     *
+     * @param sources Source files
+     * @param charset Charset of the sources that do not start with a byte order mark
+     * @param metrics Metrics the results are needed for
+     * @param names   Table receiving the class names
+     * @return One list of ClassMetrics per source, in the order of {@code sources}
+     */
+    public static List<List<ClassMetrics>> parseSources(List<SourceFile> sources, Charset charset,
+                                                        Set<Metric> metrics, NameTable names) {
+        SourceLoader loader = SourceLoader.forCurrentThread();
+        List<List<ClassMetrics>> results = new ArrayList<>(sources.size());
+        for (SourceFile source : sources) {
+            try {
+                long start = Profiler.now();
+                SourceText text = source.load(loader, charset);
+                Profiler.lap(Phase.READ, start);
+                List<ClassMetrics> fileMetrics = parseSource(text, source.getName(), metrics, names);
+                results.add(fileMetrics);
+                Profiler.file(source.getName(), source.getSize(), fileMetrics.size(), start);
+            } catch (Exception e) {
+                Diagnostics.error("Error processing " + source.getName() + ": " + e.getMessage());
+                results.add(Collections.emptyList());
+            }
+        }
+        return results;
     }
 
     /**
@@ -43,149 +104,115 @@ public class JavaSourceParser {
      * @return List of ClassMetrics
      */
     public static List<ClassMetrics> parseSource(String sourceCode, String fileName) {
-        List<ClassMetrics> metricsList = new ArrayList<>();
-
-        // Create AST parser
-        ASTParser parser = ASTParser.newParser(AST.JLS8);
-        parser.setSource(sourceCode.toCharArray());
-        parser.setKind(ASTParser.K_COMPILATION_UNIT);
-        parser.setResolveBindings(false);
-        parser.setBindingsRecovery(false);
-
-        // Set compiler options for Java 1.4 (compatible with old Ant source)
-        Map<String, String> options = JavaCore.getOptions();
-        options.put(JavaCore.COMPILER_COMPLIANCE, JavaCore.VERSION_1_4);
-        options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_1_4);
-        options.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_1_4);
-        parser.setCompilerOptions(options);
-
         // Parse the source
-        CompilationUnit compilationUnit = (CompilationUnit) parser.createAST(null);
-
-        // Check for parse errors
-        if (compilationUnit.getProblems().length > 0) {
-            System.err.println("Warning: Parse problems in " + fileName);
-            for (IProblem problem : compilationUnit.getProblems()) {
-                if (problem.isError()) {
-                    System.err.println("  " + problem.getMessage());
-                }
-            }
-        }
-
-        // Get all type declarations (classes, interfaces, enums)
-        @SuppressWarnings("unchecked")
-        List<AbstractTypeDeclaration> types = compilationUnit.types();
+        char[] source = sourceCode.toCharArray();
+        long start = Profiler.now();
+        CompilationUnit compilationUnit = ParserSession.forCurrentThread().parse(source);
+        start = Profiler.lap(Phase.PARSE, start);
+        LineIndex lineIndex = new LineIndex(source, source.length);
+        Profiler.lap(Phase.LOC, start);
+        return collectMetrics(compilationUnit, lineIndex, fileName, ALL_METRICS, NameTable.shared());
+    }
 
-        for (AbstractTypeDeclaration typeDeclaration : types) {
-            ClassMetrics metrics = calculateMetricsForType(compilationUnit, typeDeclaration, sourceCode);
-            if (metrics != null) {
-                metricsList.add(metrics);
-            }
+    /**
+     * Parse source code loaded by a {@link SourceLoader} and calculate metrics.
+     * The pooled buffer is handed to JDT directly; its space padding does not affect the AST.
+     *
+     * @param source   The loaded source
+     * @param fileName The file name (for error reporting)
+     * @return List of ClassMetrics
+     */
+    public static List<ClassMetrics> parseSource(SourceText source, String fileName) {
+        return parseSource(source, fileName, NameTable.shared());
+    }
 
-            // Handle nested classes
-            List<ClassMetrics> nestedMetrics = extractNestedClasses(compilationUnit, typeDeclaration, sourceCode);
-            metricsList.addAll(nestedMetrics);
-        }
+    /**
+     * Parse source code loaded by a {@link SourceLoader} and calculate metrics, naming the classes in
+     * the given table.
+     *
+     * @param source   The loaded source
+     * @param fileName The file name (for error reporting)
+     * @param names    Table receiving the class names
+     * @return List of ClassMetrics
+     */
+    public static List<ClassMetrics> parseSource(SourceText source, String fileName, NameTable names) {
+        return parseSource(source, fileName, ALL_METRICS, names);
+    }
 
-        return metricsList;
+    private static List<ClassMetrics> parseSource(SourceText source, String fileName, Set<Metric> metrics,
+                                                  NameTable names) {
+        long start = Profiler.now();
+        CompilationUnit compilationUnit = ParserSession.forCurrentThread().parse(source.getChars());
+        start = Profiler.lap(Phase.PARSE, start);
+        LineIndex lineIndex = new LineIndex(source.getChars(), source.getLength());
+        Profiler.lap(Phase.LOC, start);
+        return collectMetrics(compilationUnit, lineIndex, fileName, metrics, names);
     }
 
     /**
-     * Calculate metrics for a single type (class/interface/enum).
+     * Optional calculators that run for the given metrics, as a comma-separated list of
+     * {@code cohesion}, {@code calls} and {@code types}. NPM, complexity and LOC are always calculated;
+     * they also feed the console summary.
      */
-    private static ClassMetrics calculateMetricsForType(CompilationUnit compilationUnit,
-                                                        AbstractTypeDeclaration typeDeclaration,
-                                                        String sourceCode) {
-        // Get a fully qualified name
-        String packageName = "";
-        if (compilationUnit.getPackage() != null) {
-            packageName = compilationUnit.getPackage().getName().getFullyQualifiedName();
+    public static String calculators(Set<Metric> metrics) {
+        List<String> calculators = new ArrayList<>();
+        if (!Collections.disjoint(metrics, COHESION_METRICS)) {
+            calculators.add("cohesion");
         }
-
-        String className = typeDeclaration.getName().getIdentifier();
-        String fullyQualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
-
-        // Create a metrics object
-        ClassMetrics metrics = new ClassMetrics(fullyQualifiedName);
-
-        try {
-            // Calculate NPM
-            int npm = NPMCalculator.calculateNPMForType(typeDeclaration);
-            metrics.setNpm(npm);
-
-            // Calculate LOC
-            int loc = LOCCalculator.calculateLOCForType(compilationUnit, typeDeclaration, sourceCode);
-            metrics.setLoc(loc);
-
-        } catch (Exception e) {
-            System.err.println("Error calculating metrics for " + fullyQualifiedName + ": " + e.getMessage());
-            return null;
+        if (!Collections.disjoint(metrics, CALL_METRICS)) {
+            calculators.add("calls");
         }
-
-        return metrics;
+        if (needsTypeReferences(metrics)) {
+            calculators.add("types");
+        }
+        return String.join(",", calculators);
     }
 
-    /**
-     * Extract nested classes and calculate their metrics separately.
-     */
-    private static List<ClassMetrics> extractNestedClasses(CompilationUnit compilationUnit,
-                                                           AbstractTypeDeclaration typeDeclaration,
-                                                           String sourceCode) {
-        List<ClassMetrics> nestedMetrics = new ArrayList<>();
-
-        if (typeDeclaration instanceof TypeDeclaration) {
-            TypeDeclaration classDecl = (TypeDeclaration) typeDeclaration;
-
-            // Get nested types
-            TypeDeclaration[] nestedTypes = classDecl.getTypes();
-            for (TypeDeclaration nestedType : nestedTypes) {
-                ClassMetrics metrics = calculateNestedTypeMetrics(compilationUnit, nestedType,
-                        typeDeclaration.getName().getIdentifier(), sourceCode);
-                if (metrics != null) {
-                    nestedMetrics.add(metrics);
-                }
-
-                // Recursively handle deeply nested classes
-                List<ClassMetrics> deeplyNested = extractNestedClasses(compilationUnit, nestedType, sourceCode);
-                nestedMetrics.addAll(deeplyNested);
+    private static boolean needsTypeReferences(Set<Metric> metrics) {
+        for (Metric metric : metrics) {
+            if (metric.isProjectWide()) {
+                return true;
             }
         }
-
-        return nestedMetrics;
+        return false;
     }
 
     /**
-     * Calculate metrics for a nested type with proper naming (OuterClass$InnerClass).
+     * Calculate metrics for all types of a parsed compilation unit.
      */
-    private static ClassMetrics calculateNestedTypeMetrics(CompilationUnit compilationUnit,
-                                                           TypeDeclaration nestedType,
-                                                           String outerClassName,
-                                                           String sourceCode) {
-        String packageName = "";
-        if (compilationUnit.getPackage() != null) {
-            packageName = compilationUnit.getPackage().getName().getFullyQualifiedName();
+    private static List<ClassMetrics> collectMetrics(CompilationUnit compilationUnit, LineIndex lineIndex,
+                                                     String fileName, Set<Metric> metrics, NameTable names) {
+        // Report parse problems; they are written by the diagnostics thread
+        IProblem[] problems = compilationUnit.getProblems();
+        if (problems.length > 0) {
+            List<ParseProblem> parseProblems = new ArrayList<>(problems.length);
+            for (IProblem problem : problems) {
+                // getColumnNumber is 0-based and -1 for positions outside the source
+                int column = compilationUnit.getColumnNumber(problem.getSourceStart()) + 1;
+                parseProblems.add(new ParseProblem(Math.max(0, problem.getSourceLineNumber()), column,
+                        problem.isError(), problem.getID(), problem.getMessage()));
+            }
+            Diagnostics.parseProblems(fileName, parseProblems);
         }
 
-        String nestedClassName = nestedType.getName().getIdentifier();
-        String fullyQualifiedName = packageName.isEmpty()
-                ? outerClassName + "$" + nestedClassName
-                : packageName + "." + outerClassName + "$" + nestedClassName;
-
-        ClassMetrics metrics = new ClassMetrics(fullyQualifiedName);
-
-        try {
-            // Calculate NPM for nested type
-            int npm = NPMCalculator.calculateNPMForType(nestedType);
-            metrics.setNpm(npm);
-
-            int loc = LOCCalculator.calculateLOCForType(compilationUnit, nestedType, sourceCode);
-            metrics.setLoc(loc);
-
-        } catch (Exception e) {
-            System.err.println("Error calculating metrics for nested class " + fullyQualifiedName);
-            return null;
+        // Calculate all metrics in a single traversal
+        long start = Profiler.now();
+        FusedMetricsVisitor visitor = new FusedMetricsVisitor(compilationUnit, names)
+                .register(new NPMCalculator())
+                .register(new ComplexityCalculator())
+                .register(new LOCCalculator(lineIndex));
+        if (!Collections.disjoint(metrics, COHESION_METRICS)) {
+            visitor.register(new CohesionCalculator(names));
+        }
+        if (!Collections.disjoint(metrics, CALL_METRICS)) {
+            visitor.register(new CallGraphCalculator(names));
+        }
+        if (needsTypeReferences(metrics)) {
+            visitor.register(new TypeDependencyCalculator(compilationUnit, names));
         }
+        compilationUnit.accept(visitor);
+        Profiler.lap(Phase.VISIT, start);
 
-        return metrics;
+        return visitor.getMetrics();
     }
 }
@@ -0,0 +1,299 @@
+package org.promise.metrics.parser;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+import org.promise.metrics.calculator.LineIndex;
+import org.promise.metrics.model.ClassMetrics;
+import org.promise.metrics.model.NameTable;
+import org.promise.metrics.profile.Phase;
+import org.promise.metrics.profile.Profiler;
+import org.promise.metrics.source.SourceFile;
+import org.promise.metrics.source.SourceLoader;
+import org.promise.metrics.source.SourceText;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Token-level analysis of Java source files, used when only lexical metrics (LOC, comment lines) are requested.
+ * Type boundaries are found with the JDT scanner instead of building a DOM, while line counting uses the same
+ * rules as {@link JavaSourceParser}, so both produce the same classes and values for well-formed sources.
+ * Files the scanner cannot tokenize are handed to {@link JavaSourceParser} instead.
+ */
+public class LexicalSourceParser {
+
+    /**
+     * Parse a Java source file and calculate lexical metrics for all classes.
+     *
+     * @param filePath Path to the .java file
+     * @return List of ClassMetrics (one per class/interface in the file, nested classes included)
+     * @throws IOException If a file cannot be read
+     */
+    public static List<ClassMetrics> parseFile(Path filePath) throws IOException {
+        return parseFile(filePath, SourceLoader.DEFAULT_CHARSET);
+    }
+
+    /**
+     * Parse a Java source file and calculate lexical metrics for all classes.
+     *
+     * @param filePath Path to the .java file
+     * @param charset  Charset of the file, unless it starts with a byte order mark
+     * @return List of ClassMetrics (one per class/interface in the file, nested classes included)
+     * @throws IOException If a file cannot be read
+     */
+    public static List<ClassMetrics> parseFile(Path filePath, Charset charset) throws IOException {
+        SourceText source = SourceLoader.forCurrentThread().load(filePath, charset);
+        try {
+            return scan(source.getChars(), source.getLength(), NameTable.shared());
+        } catch (InvalidInputException e) {
+            return JavaSourceParser.parseSource(source, filePath.toString());
+        }
+    }
+
+    /**
+     * Scan a source file (on disk or in memory) and calculate lexical metrics for all classes.
+     *
+     * @param sourceFile The source file
+     * @param charset    Charset of the source, unless it starts with a byte order mark
+     * @return List of ClassMetrics (one per class/interface in the file, nested classes included)
+     * @throws IOException If the source cannot be read
+     */
+    public static List<ClassMetrics> parseFile(SourceFile sourceFile, Charset charset) throws IOException {
+        return parseFile(sourceFile, charset, NameTable.shared());
+    }
+
+    /**
+     * Scan a source file (on disk or in memory) and calculate lexical metrics for all classes, naming
+     * them in the given table.
+     *
+     * @param sourceFile The source file
+     * @param charset    Charset of the source, unless it starts with a byte order mark
+     * @param names      Table receiving the class names
+     * @return List of ClassMetrics (one per class/interface in the file, nested classes included)
+     * @throws IOException If the source cannot be read
+     */
+    public static List<ClassMetrics> parseFile(SourceFile sourceFile, Charset charset, NameTable names)
+            throws IOException {
+        long start = Profiler.now();
+        SourceText source = sourceFile.load(SourceLoader.forCurrentThread(), charset);
+        long time = Profiler.lap(Phase.READ, start);
+        List<ClassMetrics> metrics;
+        try {
+            metrics = scan(source.getChars(), source.getLength(), names);
+            Profiler.lap(Phase.LOC, time);
+        } catch (InvalidInputException e) {
+            metrics = JavaSourceParser.parseSource(source, sourceFile.getName(), names);
+        }
+        Profiler.file(sourceFile.getName(), sourceFile.getSize(), metrics.size(), start);
+        return metrics;
+    }
+
+    /**
+     * Scan Java source code and calculate lexical metrics.
+     *
+     * @param sourceCode The Java source code
+     * @param fileName   The file name (for error reporting)
+     * @return List of ClassMetrics, in the same order as {@link JavaSourceParser#parseSource}
+     */
+    public static List<ClassMetrics> parseSource(String sourceCode, String fileName) {
+        try {
+            char[] source = sourceCode.toCharArray();
+            return scan(source, source.length, NameTable.shared());
+        } catch (InvalidInputException e) {
+            return JavaSourceParser.parseSource(sourceCode, fileName);
+        }
+    }
+
+    /**
+     * An open brace: either the body of a type or any other block.
+     */
+    private static class Frame {
+        final ClassMetrics metrics;      // null for blocks that are not type bodies
+        final String simpleName;
+        final boolean reportsMemberTypes;
+        final int startLine;
+        int nestedLoc;                   // LOC of reported member types
+
+        Frame(ClassMetrics metrics, String simpleName, boolean reportsMemberTypes, int startLine) {
+            this.metrics = metrics;
+            this.simpleName = simpleName;
+            this.reportsMemberTypes = reportsMemberTypes;
+            this.startLine = startLine;
+        }
+
+        boolean isTypeBody() {
+            return simpleName != null;
+        }
+    }
+
+    /**
+     * Scan a source buffer; characters after {@code length} must be whitespace.
+     */
+    private static List<ClassMetrics> scan(char[] source, int length, NameTable names)
+            throws InvalidInputException {
+        List<ClassMetrics> metricsList = new ArrayList<>();
+
+        LineIndex lineIndex = new LineIndex(source, length);
+        IScanner scanner = ToolFactory.createScanner(true, false, false, JavaCore.VERSION_1_4);
+        scanner.setSource(source);
+
+        Deque<Frame> frames = new ArrayDeque<>();
+        int packageId = NameTable.ROOT;
+        boolean inPackage = false;
+
+        int declarationStart = -1;   // first token of the current member declaration
+        int javadocStart = -1;       // Javadoc preceding that declaration
+        int previousToken = ITerminalSymbols.TokenNameSEMICOLON;
+
+        // Pending type header, waiting for its opening brace
+        ClassMetrics pendingMetrics = null;
+        String pendingName = null;
+        boolean pendingReportsMembers = false;
+        int pendingStartLine = 0;
+        boolean expectTypeName = false;
+        boolean pendingIsAnnotation = false;
+
+        int token;
+        while ((token = scanner.getNextToken()) != ITerminalSymbols.TokenNameEOF) {
+            int start = scanner.getCurrentTokenStartPosition();
+
+            if (token == ITerminalSymbols.TokenNameCOMMENT_JAVADOC) {
+                if (declarationStart < 0) {
+                    javadocStart = start;
+                }
+                continue;
+            }
+            if (token == ITerminalSymbols.TokenNameCOMMENT_LINE || token == ITerminalSymbols.TokenNameCOMMENT_BLOCK) {
+                continue;
+            }
+
+            boolean memberLevel = frames.isEmpty() || frames.peek().isTypeBody();
+
+            if (inPackage) {
+                if (token == ITerminalSymbols.TokenNameSEMICOLON) {
+                    inPackage = false;
+                } else if (isIdentifier(token)) {
+                    packageId = names.child(packageId, new String(scanner.getCurrentTokenSource()), '.');
+                }
+            } else if (token == ITerminalSymbols.TokenNamepackage && frames.isEmpty()) {
+                inPackage = true;
+            }
+
+            if (memberLevel && declarationStart < 0) {
+                declarationStart = javadocStart >= 0 ? javadocStart : start;
+            }
+
+            if (expectTypeName) {
+                expectTypeName = false;
+                if (isIdentifier(token)) {
+                    pendingName = new String(scanner.getCurrentTokenSource());
+                    pendingMetrics = createMetrics(frames, names, packageId, pendingName, pendingIsAnnotation);
+                    if (pendingMetrics != null) {
+                        metricsList.add(pendingMetrics);
+                    }
+                    pendingReportsMembers = !pendingIsAnnotation && (frames.isEmpty() || reportsMembers(frames));
+                }
+            }
+
+            switch (token) {
+                case ITerminalSymbols.TokenNameclass:
+                case ITerminalSymbols.TokenNameinterface:
+                    if (memberLevel && previousToken != ITerminalSymbols.TokenNameDOT && pendingName == null) {
+                        pendingIsAnnotation = token == ITerminalSymbols.TokenNameinterface
+                                && previousToken == ITerminalSymbols.TokenNameAT;
+                        pendingStartLine = lineIndex.lineOf(declarationStart);
+                        expectTypeName = true;
+                    }
+                    break;
+
+                case ITerminalSymbols.TokenNameLBRACE:
+                    if (pendingName != null) {
+                        frames.push(new Frame(pendingMetrics, pendingName, pendingReportsMembers, pendingStartLine));
+                        pendingName = null;
+                        pendingMetrics = null;
+                    } else {
+                        frames.push(new Frame(null, null, false, 0));
+                    }
+                    declarationStart = -1;
+                    javadocStart = -1;
+                    break;
+
+                case ITerminalSymbols.TokenNameRBRACE:
+                    if (!frames.isEmpty()) {
+                        Frame frame = frames.pop();
+                        if (frame.metrics != null) {
+                            int endLine = lineIndex.lineOf(scanner.getCurrentTokenEndPosition());
+                            int loc = lineIndex.codeLines(frame.startLine, endLine);
+                            frame.metrics.setLoc(loc);
+                            frame.metrics.setExclusiveLoc(loc - frame.nestedLoc);
+                            frame.metrics.setCommentLines(lineIndex.commentLines(frame.startLine, endLine));
+                            if (!frames.isEmpty()) {
+                                frames.peek().nestedLoc += loc;
+                            }
+                        }
+                    }
+                    declarationStart = -1;
+                    javadocStart = -1;
+                    break;
+
+                case ITerminalSymbols.TokenNameSEMICOLON:
+                    if (memberLevel) {
+                        declarationStart = -1;
+                        javadocStart = -1;
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+
+            previousToken = token;
+        }
+
+        // Types left open by unbalanced braces are not reported, as their extent is unknown
+        for (Frame frame : frames) {
+            if (frame.metrics != null) {
+                metricsList.remove(frame.metrics);
+            }
+        }
+
+        return metricsList;
+    }
+
+    /**
+     * Whether a scanner token is an identifier. JDT deprecates the constant, but the scanner of
+     * {@link ToolFactory#createScanner} still reports identifiers with it and the public API has no other.
+     */
+    @SuppressWarnings("deprecation")
+    private static boolean isIdentifier(int token) {
+        return token == ITerminalSymbols.TokenNameIdentifier;
+    }
+
+    /**
+     * Mirror the naming and selection rules of {@link JavaSourceParser}: every top-level type is reported,
+     * member classes and interfaces of classes/interfaces are reported as {@code OuterClass$InnerClass}.
+     */
+    private static ClassMetrics createMetrics(Deque<Frame> frames, NameTable names, int packageId, String name,
+                                              boolean annotationType) {
+        if (frames.isEmpty()) {
+            return new ClassMetrics(names, names.child(packageId, name, '.'));
+        }
+        if (annotationType || !reportsMembers(frames)) {
+            return null;
+        }
+        int outerClassId = names.child(packageId, frames.peek().simpleName, '.');
+        return new ClassMetrics(names, names.child(outerClassId, name, '$'));
+    }
+
+    private static boolean reportsMembers(Deque<Frame> frames) {
+        return frames.peek().reportsMemberTypes;
+    }
+}
@@ -0,0 +1,68 @@
+package org.promise.metrics.parser;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Reusable JDT parser setup.
+ * The Java 1.4 compiler options are computed once for the whole process, and each session owns a
+ * single {@link ASTParser}. A session is not thread-safe; {@link #forCurrentThread()} gives each thread its own.
+ *
+ * Sources are parsed one at a time from memory rather than in {@code ASTParser.createASTs} batches:
+ * createASTs reads every file from disk itself, so it cannot parse archive entries or the buffer the
+ * caller already loaded for the line index.
+ */
+public class ParserSession {
+
+    /**
+     * Compiler options for Java 1.4 (compatible with old Ant source), shared by all sessions.
+     */
+    private static final Map<String, String> COMPILER_OPTIONS = createCompilerOptions();
+
+    private static final ThreadLocal<ParserSession> SESSIONS = ThreadLocal.withInitial(ParserSession::new);
+
+    private final ASTParser parser = ASTParser.newParser(AST.JLS8);
+
+    /**
+     * The session of the calling thread, so that worker threads reuse their JDT setup.
+     */
+    public static ParserSession forCurrentThread() {
+        return SESSIONS.get();
+    }
+
+    /**
+     * Parse a single compilation unit from memory.
+     *
+     * @param source The Java source code
+     * @return The parsed compilation unit
+     */
+    public CompilationUnit parse(char[] source) {
+        configure();
+        parser.setSource(source);
+        return (CompilationUnit) parser.createAST(null);
+    }
+
+    /**
+     * JDT resets the parser after every createAST call, so the settings are applied again
+     * before each use. Only the precomputed option map is passed, avoiding a fresh options table per file.
+     */
+    private void configure() {
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setResolveBindings(false);
+        parser.setBindingsRecovery(false);
+        parser.setCompilerOptions(COMPILER_OPTIONS);
+    }
+
+    private static Map<String, String> createCompilerOptions() {
+        Map<String, String> options = JavaCore.getOptions();
+        options.put(JavaCore.COMPILER_COMPLIANCE, JavaCore.VERSION_1_4);
+        options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_1_4);
+        options.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_1_4);
+        return Collections.unmodifiableMap(options);
+    }
+}
@@ -0,0 +1,35 @@
+package org.promise.metrics.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one analyzed source file.
+ */
+@Name("org.promise.metrics.FileAnalyzed")
+@Label("File Analyzed")
+@Category({"PROMISE Metrics"})
+@Description("Analysis of one source file, from reading to metrics")
+@StackTrace(false)
+class FileAnalyzedEvent extends Event {
+
+    @Label("File")
+    String file;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Classes")
+    int classes;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+}
@@ -0,0 +1,31 @@
+package org.promise.metrics.profile;
+
+/**
+ * Commits the flight recorder events. Only loaded when {@code jdk.jfr} is present, so that the profiler
+ * still works on Java 8 runtimes without flight recorder support.
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    static void file(String name, long bytes, int classes, long nanos) {
+        FileAnalyzedEvent event = new FileAnalyzedEvent();
+        if (event.isEnabled()) {
+            event.file = name;
+            event.size = bytes;
+            event.classes = classes;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    static void phase(Phase phase, long nanos) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.getLabel();
+            event.time = nanos;
+            event.commit();
+        }
+    }
+}
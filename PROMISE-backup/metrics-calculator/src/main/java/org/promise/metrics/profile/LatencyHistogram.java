@@ -0,0 +1,70 @@
+package org.promise.metrics.profile;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with power-of-two microsecond buckets.
+ * Bucket {@code i} counts latencies below {@code 2^i} microseconds (and at least {@code 2^(i-1)}),
+ * so percentiles are exact to within a factor of two, which is enough to tell slow files from pathological ones.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Count one latency.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos / 1000));
+    }
+
+    private static int bucketOf(long micros) {
+        return micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public int getBucketCount() {
+        return BUCKETS;
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * Exclusive upper bound of a bucket in microseconds.
+     */
+    public static long upperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Upper bound in microseconds of the bucket containing the given percentile, or 0 if nothing was recorded.
+     *
+     * @param percentile Percentile between 0 and 100
+     */
+    public long percentileMicros(double percentile) {
+        long total = getTotal();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBoundMicros(i);
+            }
+        }
+        return upperBoundMicros(BUCKETS - 1);
+    }
+}
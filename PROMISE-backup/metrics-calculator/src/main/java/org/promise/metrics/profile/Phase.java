@@ -0,0 +1,24 @@
+package org.promise.metrics.profile;
+
+/**
+ * Stages of an analysis run whose time is accumulated by the {@link Profiler}.
+ */
+public enum Phase {
+    LIST("list"),       // Finding the source files of a directory or archive
+    CACHE("cache"),     // Fingerprinting and metrics cache lookups
+    READ("read"),       // Loading and decoding sources
+    PARSE("parse"),     // Building JDT ASTs
+    VISIT("visit"),     // Metric calculation in the fused AST traversal
+    LOC("loc"),         // Line classification and the scanner-only lexical path
+    EXPORT("export");   // Buffering, sorting and writing CSV rows
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
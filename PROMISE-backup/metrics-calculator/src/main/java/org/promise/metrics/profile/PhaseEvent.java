@@ -0,0 +1,27 @@
+package org.promise.metrics.profile;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one timed section of a {@link Phase}.
+ */
+@Name("org.promise.metrics.Phase")
+@Label("Analysis Phase")
+@Category({"PROMISE Metrics"})
+@Description("One timed section of an analysis phase, such as the JDT parse of a file")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+}
@@ -0,0 +1,288 @@
+package org.promise.metrics.profile;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run-wide instrumentation: cumulative time per {@link Phase}, a histogram of per-file latencies and the
+ * slowest files. Each timed section and each file is also emitted as a flight recorder event, which is
+ * recorded when the JVM runs with a flight recording (e.g. {@code -XX:StartFlightRecording}).
+ *
+ * Instrumentation is off unless a profiler was {@link #start started}. The static methods are called from
+ * the worker threads; while profiling is off they return immediately without reading the clock.
+ * Phase times are summed over all threads, so with several threads they add up to more than the wall-clock time.
+ */
+public final class Profiler {
+
+    /**
+     * Default number of slowest files listed in the report.
+     */
+    public static final int DEFAULT_SLOW_FILES = 20;
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private static volatile Profiler active;
+
+    /**
+     * One entry of the slow-file list.
+     */
+    private static final class SlowFile {
+        final String name;
+        final long bytes;
+        final int classes;
+        final long nanos;
+
+        SlowFile(String name, long bytes, int classes, long nanos) {
+            this.name = name;
+            this.bytes = bytes;
+            this.classes = classes;
+            this.nanos = nanos;
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private long wallNanos = -1;
+
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder[] phaseCalls = new LongAdder[Phase.values().length];
+    private final LatencyHistogram fileLatency = new LatencyHistogram();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder fileBytes = new LongAdder();
+    private final LongAdder classes = new LongAdder();
+
+    private final int slowFileLimit;
+    private final PriorityQueue<SlowFile> slowFiles = new PriorityQueue<>(Comparator.comparingLong((SlowFile f) -> f.nanos));
+    private volatile long slowFileThreshold = -1;   // latency a file must exceed once the list is full
+
+    private Profiler(int slowFileLimit) {
+        this.slowFileLimit = Math.max(0, slowFileLimit);
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+            phaseCalls[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Turn instrumentation on for the rest of the run.
+     *
+     * @param slowFileLimit Number of slowest files to keep for the report
+     * @return The new profiler
+     */
+    public static Profiler start(int slowFileLimit) {
+        Profiler profiler = new Profiler(slowFileLimit);
+        active = profiler;
+        return profiler;
+    }
+
+    /**
+     * Turn instrumentation off and fix the wall-clock time of the run.
+     *
+     * @return The stopped profiler, or null if none was running
+     */
+    public static Profiler stop() {
+        Profiler profiler = active;
+        active = null;
+        if (profiler != null) {
+            profiler.wallNanos = System.nanoTime() - profiler.startNanos;
+        }
+        return profiler;
+    }
+
+    public static boolean isEnabled() {
+        return active != null;
+    }
+
+    /**
+     * Start of a timed section: the current time while profiling, otherwise 0.
+     */
+    public static long now() {
+        return active != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * End a timed section of a phase that started at {@code start} (from {@link #now} or a previous lap).
+     *
+     * @return The current time, to be used as start of the next section
+     */
+    public static long lap(Phase phase, long start) {
+        Profiler profiler = active;
+        if (profiler == null || start == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long nanos = now - start;
+        profiler.phaseNanos[phase.ordinal()].add(nanos);
+        profiler.phaseCalls[phase.ordinal()].increment();
+        if (JFR_AVAILABLE) {
+            JfrEvents.phase(phase, nanos);
+        }
+        return now;
+    }
+
+    /**
+     * Record a file whose analysis started at {@code start} and has just finished.
+     *
+     * @param name    File name for the report
+     * @param bytes   Size of the encoded source
+     * @param classes Number of classes found
+     * @param start   Start of the file's analysis (from {@link #now} or a lap)
+     */
+    public static void file(String name, long bytes, int classes, long start) {
+        Profiler profiler = active;
+        if (profiler == null || start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        profiler.recordFile(name, bytes, classes, nanos);
+        if (JFR_AVAILABLE) {
+            JfrEvents.file(name, bytes, classes, nanos);
+        }
+    }
+
+    private void recordFile(String name, long bytes, int classCount, long nanos) {
+        files.increment();
+        fileBytes.add(bytes);
+        classes.add(classCount);
+        fileLatency.record(nanos);
+
+        if (slowFileLimit == 0 || nanos <= slowFileThreshold) {
+            return;
+        }
+        synchronized (slowFiles) {
+            slowFiles.add(new SlowFile(name, bytes, classCount, nanos));
+            if (slowFiles.size() > slowFileLimit) {
+                slowFiles.poll();
+            }
+            if (slowFiles.size() == slowFileLimit) {
+                slowFileThreshold = slowFiles.peek().nanos;
+            }
+        }
+    }
+
+    /**
+     * Cumulative time of a phase over all threads.
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * Print the report: phase table, file latency percentiles and histogram, and the slowest files.
+     */
+    public void print(PrintWriter out) {
+        long wall = wallNanos >= 0 ? wallNanos : System.nanoTime() - startNanos;
+        long fileCount = files.sum();
+
+        out.println("=== Analysis Profile ===");
+        out.printf(Locale.ROOT, "Wall-clock time: %d ms%n", wall / 1_000_000);
+        out.printf(Locale.ROOT, "Files: %d (%.1f MB), classes: %d%n", fileCount,
+                fileBytes.sum() / (1024.0 * 1024.0), classes.sum());
+
+        long total = 0;
+        for (Phase phase : Phase.values()) {
+            total += getPhaseNanos(phase);
+        }
+        out.println();
+        out.printf(Locale.ROOT, "%-8s %10s %7s %9s %10s%n", "phase", "total ms", "share", "calls", "avg us");
+        for (Phase phase : Phase.values()) {
+            long nanos = getPhaseNanos(phase);
+            long calls = phaseCalls[phase.ordinal()].sum();
+            out.printf(Locale.ROOT, "%-8s %10d %6.1f%% %9d %10.1f%n", phase.getLabel(), nanos / 1_000_000,
+                    total == 0 ? 0.0 : 100.0 * nanos / total, calls, calls == 0 ? 0.0 : nanos / 1000.0 / calls);
+        }
+        out.println("(phase times are summed over all worker threads)");
+
+        if (fileCount > 0) {
+            out.println();
+            out.printf(Locale.ROOT, "File latency: p50 < %s, p90 < %s, p99 < %s, max < %s%n",
+                    formatMicros(fileLatency.percentileMicros(50)), formatMicros(fileLatency.percentileMicros(90)),
+                    formatMicros(fileLatency.percentileMicros(99)), formatMicros(fileLatency.percentileMicros(100)));
+            printHistogram(out);
+        }
+
+        List<SlowFile> slowest = getSlowFiles();
+        if (!slowest.isEmpty()) {
+            out.println();
+            out.println("Slowest " + slowest.size() + " files:");
+            out.printf(Locale.ROOT, "%10s %9s %8s  %s%n", "ms", "KB", "classes", "file");
+            for (SlowFile file : slowest) {
+                out.printf(Locale.ROOT, "%10.1f %9.1f %8d  %s%n", file.nanos / 1e6, file.bytes / 1024.0,
+                        file.classes, file.name);
+            }
+        }
+        out.flush();
+    }
+
+    private void printHistogram(PrintWriter out) {
+        int first = -1;
+        int last = -1;
+        long max = 0;
+        for (int i = 0; i < fileLatency.getBucketCount(); i++) {
+            long count = fileLatency.getCount(i);
+            if (count > 0) {
+                first = first < 0 ? i : first;
+                last = i;
+                max = Math.max(max, count);
+            }
+        }
+        for (int i = first; i <= last; i++) {
+            long count = fileLatency.getCount(i);
+            StringBuilder bar = new StringBuilder();
+            for (long j = 0, width = (count * 40 + max - 1) / max; j < width; j++) {
+                bar.append('#');
+            }
+            out.printf(Locale.ROOT, "  < %-8s %8d  %s%n", formatMicros(LatencyHistogram.upperBoundMicros(i)), count, bar);
+        }
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros >= 1_000_000) {
+            return String.format(Locale.ROOT, "%.1f s", micros / 1e6);
+        }
+        if (micros >= 1000) {
+            return String.format(Locale.ROOT, "%.1f ms", micros / 1e3);
+        }
+        return micros + " us";
+    }
+
+    private List<SlowFile> getSlowFiles() {
+        List<SlowFile> slowest;
+        synchronized (slowFiles) {
+            slowest = new ArrayList<>(slowFiles);
+        }
+        slowest.sort(Comparator.comparingLong((SlowFile f) -> f.nanos).reversed());
+        return slowest;
+    }
+
+    /**
+     * Write the report to a UTF-8 text file.
+     */
+    public void write(Path report) throws IOException {
+        if (report.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(report.toAbsolutePath().getParent());
+        }
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(Files.newOutputStream(report),
+                StandardCharsets.UTF_8))) {
+            print(out);
+        }
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Profiler.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.promise.metrics.source;
+
+import java.nio.file.Path;
+
+/**
+ * A source file inside an archive. The entry is read from the archive when it is loaded.
+ */
+public abstract class ArchiveEntrySource implements SourceFile {
+
+    private final String name;
+    private final long size;
+
+    /**
+     * @param name Report name of the entry (archive name, {@code !/}, entry path)
+     * @param size Encoded size of the entry
+     */
+    protected ArchiveEntrySource(String name, long size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public Path getPath() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
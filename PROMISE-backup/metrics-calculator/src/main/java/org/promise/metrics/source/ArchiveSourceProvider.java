@@ -0,0 +1,145 @@
+package org.promise.metrics.source;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Java files inside a {@code .zip}, {@code .jar}, {@code .tar}, {@code .tar.gz}/{@code .tgz} or
+ * {@code .tar.bz2}/{@code .tbz2} archive, in entry order.
+ *
+ * Nothing is extracted to disk. Zip entries are read from the open archive by the worker that loads them.
+ * Tar archives can only be read sequentially: listing decompresses them once and keeps the first selected
+ * entries, and a {@link TarEntryFeed} reads the rest again in a single pass when they are loaded, keeping only
+ * a bounded number of entries in memory.
+ */
+public class ArchiveSourceProvider implements SourceProvider {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path archive;
+    private final SourceFilter filter;
+
+    public ArchiveSourceProvider(Path archive, SourceFilter filter) {
+        this.archive = archive;
+        this.filter = filter;
+    }
+
+    /**
+     * Whether the file name has a supported archive extension.
+     */
+    public static boolean isArchive(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return isZip(name) || isTar(name) || isGzipTar(name) || isBzip2Tar(name);
+    }
+
+    private static boolean isZip(String name) {
+        return name.endsWith(".zip") || name.endsWith(".jar");
+    }
+
+    private static boolean isTar(String name) {
+        return name.endsWith(".tar");
+    }
+
+    private static boolean isGzipTar(String name) {
+        return name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    private static boolean isBzip2Tar(String name) {
+        return name.endsWith(".tar.bz2") || name.endsWith(".tbz2");
+    }
+
+    @Override
+    public List<SourceFile> listSources() throws IOException {
+        String name = archive.getFileName().toString().toLowerCase(Locale.ROOT);
+        return isZip(name) ? listZipEntries() : listTarEntries();
+    }
+
+    private List<SourceFile> listZipEntries() throws IOException {
+        ZipFile zip = new ZipFile(archive.toFile());
+        List<ZipEntry> selected = new ArrayList<>();
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && filter.accepts(entry.getName())) {
+                    selected.add(entry);
+                }
+            }
+        } catch (RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+        if (selected.isEmpty()) {
+            zip.close();
+        }
+
+        ZipEntrySource.Archive open = new ZipEntrySource.Archive(archive, selected.isEmpty() ? null : zip,
+                selected.size());
+        List<SourceFile> sources = new ArrayList<>(selected.size());
+        for (ZipEntry entry : selected) {
+            sources.add(new ZipEntrySource(entryName(entry.getName()), open, entry));
+        }
+        return sources;
+    }
+
+    /**
+     * List the selected tar entries, handing the contents of the first ones to the {@link TarEntryFeed} while
+     * its read-ahead buffer has room; the feed reads the others again when they are loaded.
+     */
+    private List<SourceFile> listTarEntries() throws IOException {
+        TarEntryFeed feed = new TarEntryFeed(archive, filter);
+        List<SourceFile> sources = new ArrayList<>();
+        try (TarArchiveInputStream tar = openTar(archive)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                if (!entry.isFile() || !filter.accepts(entry.getName())) {
+                    continue;
+                }
+                if (feed.canPreload()) {
+                    feed.preload(sources.size(), IOUtils.toByteArray(tar, entry.getSize()));
+                }
+                sources.add(new TarEntrySource(entryName(entry.getName()), entry.getSize(), feed, sources.size()));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Open a tar archive, decompressing it according to its extension.
+     */
+    static TarArchiveInputStream openTar(Path archive) throws IOException {
+        String name = archive.getFileName().toString().toLowerCase(Locale.ROOT);
+        InputStream file = new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE);
+        try {
+            if (isGzipTar(name)) {
+                return new TarArchiveInputStream(new GzipCompressorInputStream(file, true));
+            }
+            if (isBzip2Tar(name)) {
+                return new TarArchiveInputStream(new BZip2CompressorInputStream(file, true));
+            }
+            return new TarArchiveInputStream(file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private String entryName(String entryPath) {
+        return archive + "!/" + entryPath;
+    }
+}
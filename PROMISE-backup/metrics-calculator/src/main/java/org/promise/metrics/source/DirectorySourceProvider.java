@@ -0,0 +1,42 @@
+package org.promise.metrics.source;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java files of a directory tree, in walk order.
+ */
+public class DirectorySourceProvider implements SourceProvider {
+
+    private final Path root;
+    private final SourceFilter filter;
+
+    public DirectorySourceProvider(Path root, SourceFilter filter) {
+        this.root = root;
+        this.filter = filter;
+    }
+
+    @Override
+    public List<SourceFile> listSources() throws IOException {
+        List<SourceFile> sources = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    String relativePath = root.relativize(file).toString().replace('\\', '/');
+                    if (filter.accepts(relativePath)) {
+                        sources.add(new FileSource(file, attributes.size()));
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return sources;
+    }
+}
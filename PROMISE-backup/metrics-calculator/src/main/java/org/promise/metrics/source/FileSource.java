@@ -0,0 +1,49 @@
+package org.promise.metrics.source;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * A source file on disk.
+ */
+public class FileSource implements SourceFile {
+
+    private final Path path;
+    private final long size;
+
+    public FileSource(Path path, long size) {
+        this.path = path;
+        this.size = size;
+    }
+
+    @Override
+    public String getName() {
+        return path.toString();
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public SourceText load(SourceLoader loader, Charset charset) throws IOException {
+        return loader.load(path, charset);
+    }
+
+    @Override
+    public byte[] fingerprint(SourceLoader loader) throws IOException {
+        return loader.fingerprint(path);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,59 @@
+package org.promise.metrics.source;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * A Java source file to analyze: either a file on disk or an entry of an archive.
+ */
+public interface SourceFile {
+
+    /**
+     * Name used in reports, e.g. {@code src/Foo.java} or {@code sources.zip!/src/Foo.java}.
+     */
+    String getName();
+
+    /**
+     * Size of the encoded source in bytes.
+     */
+    long getSize();
+
+    /**
+     * The file on disk, or null if the source only exists in memory.
+     */
+    Path getPath();
+
+    /**
+     * Load and decode the source.
+     *
+     * @param loader  Loader of the calling thread
+     * @param charset Charset used when the source has no byte order mark
+     * @return The decoded source, valid until the loader's next call
+     * @throws IOException If the source cannot be read
+     */
+    SourceText load(SourceLoader loader, Charset charset) throws IOException;
+
+    /**
+     * SHA-256 of the encoded source, identifying its content independent of its name or location.
+     *
+     * @param loader Loader of the calling thread
+     * @throws IOException If the source cannot be read
+     */
+    byte[] fingerprint(SourceLoader loader) throws IOException;
+
+    /**
+     * Whether the source is read in one sequential pass with the other sources of its list (an entry of a
+     * tar archive), so the sources are best loaded in list order.
+     */
+    default boolean isSequential() {
+        return false;
+    }
+
+    /**
+     * Tell the source that it will not be loaded, e.g. because its results came from the cache, so that
+     * data read ahead for it can be dropped. Loading it later is still possible.
+     */
+    default void release() {
+    }
+}
@@ -0,0 +1,92 @@
+package org.promise.metrics.source;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the {@code .java} files to analyze by include and exclude globs on their relative path.
+ * Paths use {@code /} as separator, also inside archives and on Windows.
+ *
+ * Glob syntax: {@code *} matches within one path segment, {@code **} matches across segments
+ * ({@code **}{@code /} also matches no directory at all) and {@code ?} matches one character.
+ * A file is selected if it matches any include (or no includes are given) and no exclude.
+ */
+public class SourceFilter {
+
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+
+    public void addInclude(String glob) {
+        includes.add(toPattern(glob));
+    }
+
+    public void addExclude(String glob) {
+        excludes.add(toPattern(glob));
+    }
+
+    /**
+     * Whether a file is selected.
+     *
+     * @param relativePath Path relative to the source root, separated by {@code /}
+     */
+    public boolean accepts(String relativePath) {
+        return relativePath.endsWith(".java") && matches(relativePath);
+    }
+
+    /**
+     * Whether a file of any type matches the globs, e.g. a class file of the bytecode backend.
+     *
+     * @param relativePath Path relative to the root, separated by {@code /}
+     */
+    public boolean matches(String relativePath) {
+        boolean included = includes.isEmpty();
+        for (Pattern include : includes) {
+            if (include.matcher(relativePath).matches()) {
+                included = true;
+                break;
+            }
+        }
+        if (!included) {
+            return false;
+        }
+        for (Pattern exclude : excludes) {
+            if (exclude.matcher(relativePath).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Translate a glob into a regular expression.
+     */
+    static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                        regex.append("(?:.*/)?");
+                        i += 3;
+                    } else {
+                        regex.append(".*");
+                        i += 2;
+                    }
+                    continue;
+                }
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '\\') {
+                regex.append('/');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,239 @@
+package org.promise.metrics.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads source files straight into reusable character buffers.
+ * Files are read into a pooled direct byte buffer (large files are memory-mapped) and decoded into a
+ * pooled {@code char[]} of the next power-of-two size, so loading a file allocates neither a byte array
+ * nor a String. The charset comes from the byte order mark if there is one, otherwise from the configured
+ * default; it never depends on the platform charset.
+ *
+ * A loader is not thread-safe; {@link #forCurrentThread()} gives each thread its own.
+ */
+public class SourceLoader {
+
+    /**
+     * Default charset for files without a byte order mark. Latin-1 maps every byte to one character,
+     * so old sources decode the same way on every platform.
+     */
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
+
+    /**
+     * Files at least this large are memory-mapped instead of read.
+     */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private static final int MIN_BUFFER_BITS = 12;
+
+    private static final ThreadLocal<SourceLoader> LOADERS = ThreadLocal.withInitial(SourceLoader::new);
+
+    private ByteBuffer byteBuffer = ByteBuffer.allocateDirect(1 << 16);
+    private byte[] streamBuffer = new byte[1 << 16];    // for sources read from a stream
+
+    // Pooled char buffers by size class (2^bits), and how far each one holds non-space characters
+    private final char[][] charBuffers = new char[32][];
+    private final int[] dirty = new int[32];
+
+    private final Map<Charset, CharsetDecoder> decoders = new HashMap<>();
+
+    private final MessageDigest digest = newDigest();
+
+    /**
+     * The loader of the calling thread.
+     */
+    public static SourceLoader forCurrentThread() {
+        return LOADERS.get();
+    }
+
+    /**
+     * Load and decode a source file.
+     *
+     * @param file           The file to load
+     * @param defaultCharset Charset used when the file has no byte order mark
+     * @return The decoded source, valid until this loader's next call
+     * @throws IOException If the file cannot be read
+     */
+    public SourceText load(Path file, Charset defaultCharset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), defaultCharset);
+            }
+
+            ByteBuffer bytes = byteBuffer((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            bytes.flip();
+            return decode(bytes, defaultCharset);
+        }
+    }
+
+    /**
+     * Read and decode a source from a stream, e.g. an archive entry, through a pooled byte array.
+     *
+     * @param in             The encoded source, read to its end
+     * @param defaultCharset Charset used when the source has no byte order mark
+     * @return The decoded source, valid until this loader's next call
+     * @throws IOException If the stream cannot be read
+     */
+    public SourceText read(InputStream in, Charset defaultCharset) throws IOException {
+        int length = 0;
+        int n;
+        while ((n = in.read(streamBuffer, length, streamBuffer.length - length)) >= 0) {
+            length += n;
+            if (length == streamBuffer.length) {
+                streamBuffer = Arrays.copyOf(streamBuffer, length * 2);
+            }
+        }
+        return decode(ByteBuffer.wrap(streamBuffer, 0, length), defaultCharset);
+    }
+
+    /**
+     * Decode source bytes that are already in memory (e.g. an archive entry).
+     *
+     * @param bytes          The encoded source; its position is advanced to the limit
+     * @param defaultCharset Charset used when the bytes start without a byte order mark
+     * @return The decoded source, valid until this loader's next call
+     */
+    public SourceText decode(ByteBuffer bytes, Charset defaultCharset) {
+        Charset charset = skipByteOrderMark(bytes, defaultCharset);
+        CharsetDecoder decoder = decoders.computeIfAbsent(charset, c -> c.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+        int start = bytes.position();
+        int capacity = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+        while (true) {
+            int sizeClass = sizeClass(capacity);
+            char[] chars = charBuffer(sizeClass);
+            CharBuffer out = CharBuffer.wrap(chars);
+
+            decoder.reset();
+            CoderResult result = decoder.decode(bytes, out, true);
+            if (!result.isOverflow()) {
+                result = decoder.flush(out);
+            }
+            if (result.isOverflow()) {
+                // Only possible for charsets that under-report maxCharsPerByte; the abandoned buffer
+                // was filled up and must be padded again on its next use
+                dirty[sizeClass] = chars.length;
+                bytes.position(start);
+                capacity = chars.length * 2;
+                continue;
+            }
+
+            int length = out.position();
+            if (dirty[sizeClass] > length) {
+                Arrays.fill(chars, length, dirty[sizeClass], ' ');
+            }
+            dirty[sizeClass] = length;
+            return new SourceText(chars, length);
+        }
+    }
+
+    /**
+     * SHA-256 of a file's bytes, streamed through the pooled byte buffer.
+     */
+    public byte[] fingerprint(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = byteBuffer(byteBuffer.capacity());
+            digest.reset();
+            while (channel.read(bytes) >= 0) {
+                bytes.flip();
+                digest.update(bytes);
+                bytes.clear();
+            }
+            return digest.digest();
+        }
+    }
+
+    /**
+     * SHA-256 of a stream's bytes, read to its end through the pooled byte array.
+     */
+    public byte[] fingerprint(InputStream in) throws IOException {
+        digest.reset();
+        int n;
+        while ((n = in.read(streamBuffer)) >= 0) {
+            digest.update(streamBuffer, 0, n);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Detect a UTF-8 or UTF-16 byte order mark and move past it.
+     */
+    private static Charset skipByteOrderMark(ByteBuffer bytes, Charset defaultCharset) {
+        int position = bytes.position();
+        int remaining = bytes.remaining();
+        int b0 = remaining > 0 ? bytes.get(position) & 0xFF : -1;
+        int b1 = remaining > 1 ? bytes.get(position + 1) & 0xFF : -1;
+        int b2 = remaining > 2 ? bytes.get(position + 2) & 0xFF : -1;
+
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            bytes.position(position + 3);
+            return StandardCharsets.UTF_8;
+        }
+        if (b0 == 0xFE && b1 == 0xFF) {
+            bytes.position(position + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (b0 == 0xFF && b1 == 0xFE) {
+            bytes.position(position + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+        return defaultCharset;
+    }
+
+    private ByteBuffer byteBuffer(int size) {
+        if (byteBuffer.capacity() < size) {
+            byteBuffer = ByteBuffer.allocateDirect(1 << sizeClass(size));
+        }
+        byteBuffer.clear();
+        byteBuffer.limit(size);
+        return byteBuffer;
+    }
+
+    private char[] charBuffer(int sizeClass) {
+        char[] chars = charBuffers[sizeClass];
+        if (chars == null) {
+            chars = new char[1 << sizeClass];
+            Arrays.fill(chars, ' ');
+            charBuffers[sizeClass] = chars;
+        }
+        return chars;
+    }
+
+    /**
+     * Smallest power-of-two exponent whose buffer holds {@code size} elements.
+     */
+    private static int sizeClass(int size) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(size - 1, 1));
+        return Math.max(bits, MIN_BUFFER_BITS);
+    }
+}
@@ -0,0 +1,39 @@
+package org.promise.metrics.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Lists the Java source files of a source tree.
+ */
+public interface SourceProvider {
+
+    /**
+     * The selected source files, in a stable order (directory walk order or archive entry order).
+     *
+     * @throws IOException If the source tree cannot be read
+     */
+    List<SourceFile> listSources() throws IOException;
+
+    /**
+     * Provider for a source directory or a supported archive.
+     *
+     * @param path   Source directory or archive file
+     * @param filter Selection of files within the directory or archive
+     * @throws IOException If the path does not exist or is neither a directory nor a supported archive
+     */
+    static SourceProvider forPath(Path path, SourceFilter filter) throws IOException {
+        if (!Files.exists(path)) {
+            throw new IOException("Source path does not exist: " + path);
+        }
+        if (Files.isDirectory(path)) {
+            return new DirectorySourceProvider(path, filter);
+        }
+        if (ArchiveSourceProvider.isArchive(path)) {
+            return new ArchiveSourceProvider(path, filter);
+        }
+        throw new IOException("Source path is neither a directory nor a supported archive: " + path);
+    }
+}
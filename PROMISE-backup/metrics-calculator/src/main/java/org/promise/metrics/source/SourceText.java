@@ -0,0 +1,37 @@
+package org.promise.metrics.source;
+
+/**
+ * Decoded source code held in a pooled character buffer.
+ * Only the first {@link #getLength()} characters are source; the rest of the buffer is padded with spaces,
+ * so the whole array can be handed to JDT as is. The buffer belongs to the {@link SourceLoader} that
+ * produced it and is overwritten by the loader's next call.
+ */
+public class SourceText {
+
+    private final char[] chars;
+    private final int length;
+
+    SourceText(char[] chars, int length) {
+        this.chars = chars;
+        this.length = length;
+    }
+
+    /**
+     * The character buffer: source followed by space padding.
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * Number of source characters in the buffer.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
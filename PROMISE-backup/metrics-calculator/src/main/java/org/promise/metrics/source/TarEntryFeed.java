@@ -0,0 +1,260 @@
+package org.promise.metrics.source;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Hands the selected entries of a tar archive to the workers that load them.
+ *
+ * A single reader thread decompresses the archive sequentially and keeps entries in a bounded read-ahead
+ * buffer until they are taken; the reader waits while the buffer is full. The workers take entries in
+ * archive order (see {@link SourceFile#isSequential()}), so the buffer holds the entries they will take next.
+ * Entries that will not be loaded are released, so they do not hold the buffer. An entry taken a second time
+ * is read in a new pass over the archive; the reader starts on demand and stops at the end of the archive.
+ *
+ * The entries read while the archive is listed are kept up to the same bound, so an archive whose selected
+ * entries fit in the buffer is decompressed only once. Fingerprints are taken on demand, in a pass of their
+ * own unless the entry is still buffered.
+ */
+final class TarEntryFeed {
+
+    /**
+     * Bytes of entries read ahead of the workers.
+     */
+    private static final long READ_AHEAD_BYTES = 16 * 1024 * 1024;
+
+    private final Path archive;
+    private final SourceFilter filter;
+    private final Map<Integer, byte[]> ready = new HashMap<>();
+    private final BitSet taken = new BitSet();      // entries handed out at least once
+    private final BitSet waiting = new BitSet();    // entries workers are waiting for
+    private long readyBytes;
+    private boolean reading;
+    private int position;                           // selected entries the current pass has read
+    private IOException failure;
+
+    private final Object fingerprintLock = new Object();
+    private List<byte[]> fingerprints;              // of all selected entries, once a fingerprint pass ran
+
+    TarEntryFeed(Path archive, SourceFilter filter) {
+        this.archive = archive;
+        this.filter = filter;
+    }
+
+    /**
+     * Whether the listing may keep another entry, i.e. the read-ahead buffer is not full.
+     */
+    synchronized boolean canPreload() {
+        return readyBytes < READ_AHEAD_BYTES;
+    }
+
+    /**
+     * Keep an entry read while the archive is listed, so that no pass has to read it again.
+     */
+    synchronized void preload(int index, byte[] content) {
+        ready.put(index, content);
+        readyBytes += content.length;
+    }
+
+    /**
+     * Content of a selected entry, waiting for the reader if necessary. A fork-join worker waits as a
+     * managed blocker, so the pool can keep its other work going.
+     *
+     * @param index Position of the entry among the selected entries of the archive
+     * @throws IOException If the pass that should deliver the entry fails
+     */
+    byte[] take(int index) throws IOException {
+        Take take = new Take(index);
+        try {
+            ForkJoinPool.managedBlock(take);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + archive);
+        } finally {
+            synchronized (this) {
+                waiting.clear(index);
+            }
+        }
+        if (take.content == null) {
+            throw new IOException(take.failure.getMessage(), take.failure);
+        }
+        return take.content;
+    }
+
+    /**
+     * Waits for one entry, or for the failure of the pass that should have delivered it.
+     */
+    private final class Take implements ForkJoinPool.ManagedBlocker {
+        private final int index;
+        private byte[] content;
+        private IOException failure;
+
+        Take(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            synchronized (TarEntryFeed.this) {
+                return tryTake();
+            }
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            synchronized (TarEntryFeed.this) {
+                while (!tryTake()) {
+                    waiting.set(index);
+                    if (!reading) {
+                        startPass();
+                    }
+                    TarEntryFeed.this.wait();
+                }
+            }
+            return true;
+        }
+
+        private boolean tryTake() {
+            content = ready.remove(index);
+            if (content != null) {
+                readyBytes -= content.length;
+                taken.set(index);
+                TarEntryFeed.this.notifyAll();
+                return true;
+            }
+            if (TarEntryFeed.this.failure != null && waiting.get(index)) {
+                failure = TarEntryFeed.this.failure;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * SHA-256 of a selected entry. A buffered entry is hashed in memory; otherwise the first call reads the
+     * archive once to take the fingerprints of all selected entries.
+     *
+     * @throws IOException If the archive cannot be read
+     */
+    byte[] fingerprint(int index, SourceLoader loader) throws IOException {
+        byte[] content;
+        synchronized (this) {
+            content = ready.get(index);
+        }
+        if (content != null) {
+            return loader.fingerprint(new ByteArrayInputStream(content));
+        }
+
+        synchronized (fingerprintLock) {
+            if (fingerprints == null) {
+                List<byte[]> all = new ArrayList<>();
+                try (TarArchiveInputStream tar = ArchiveSourceProvider.openTar(archive)) {
+                    TarArchiveEntry entry;
+                    while ((entry = tar.getNextEntry()) != null) {
+                        if (entry.isFile() && filter.accepts(entry.getName())) {
+                            all.add(loader.fingerprint(tar));
+                        }
+                    }
+                }
+                fingerprints = all;
+            }
+            if (index >= fingerprints.size()) {
+                throw new IOException("Archive changed while reading: " + archive);
+            }
+            return fingerprints.get(index);
+        }
+    }
+
+    /**
+     * Drop a selected entry that will not be taken, e.g. because its results came from the cache.
+     */
+    synchronized void release(int index) {
+        byte[] content = ready.remove(index);
+        if (content != null) {
+            readyBytes -= content.length;
+        }
+        taken.set(index);
+        notifyAll();
+    }
+
+    private void startPass() {
+        reading = true;
+        position = 0;
+        failure = null;
+        Thread reader = new Thread(this::read, "tar-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void read() {
+        IOException error = null;
+        try (TarArchiveInputStream tar = ArchiveSourceProvider.openTar(archive)) {
+            TarArchiveEntry entry;
+            int index = 0;
+            while ((entry = tar.getNextEntry()) != null) {
+                if (!entry.isFile() || !filter.accepts(entry.getName())) {
+                    continue;
+                }
+                if (needed(index)) {
+                    byte[] content = IOUtils.toByteArray(tar, entry.getSize());
+                    offer(index, content);
+                }
+                index++;
+                synchronized (this) {
+                    position = index;
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            error = new IOException("Interrupted while reading " + archive);
+        }
+        finishPass(error);
+    }
+
+    /**
+     * Whether a pass should read an entry: if it was never taken or released, or a worker waits for it again.
+     */
+    private synchronized boolean needed(int index) {
+        return !ready.containsKey(index) && (!taken.get(index) || waiting.get(index));
+    }
+
+    private synchronized void offer(int index, byte[] content) throws InterruptedException {
+        while (readyBytes >= READ_AHEAD_BYTES) {
+            wait();
+        }
+        if (taken.get(index) && !waiting.get(index)) {
+            return;    // released while it was read
+        }
+        ready.put(index, content);
+        readyBytes += content.length;
+        notifyAll();
+    }
+
+    private synchronized void finishPass(IOException error) {
+        reading = false;
+        if (error == null && waiting.nextSetBit(position) >= 0) {
+            error = new IOException("Archive changed while reading: " + archive);
+        }
+        failure = error;
+        for (int index = waiting.nextSetBit(0); error == null && index >= 0; index = waiting.nextSetBit(index + 1)) {
+            if (!ready.containsKey(index)) {
+                // Asked for again after the pass had read it
+                startPass();
+                break;
+            }
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,41 @@
+package org.promise.metrics.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * An entry of a tar archive, delivered by the archive's {@link TarEntryFeed} when it is loaded or
+ * fingerprinted.
+ */
+final class TarEntrySource extends ArchiveEntrySource {
+
+    private final TarEntryFeed feed;
+    private final int index;
+
+    TarEntrySource(String name, long size, TarEntryFeed feed, int index) {
+        super(name, size);
+        this.feed = feed;
+        this.index = index;
+    }
+
+    @Override
+    public SourceText load(SourceLoader loader, Charset charset) throws IOException {
+        return loader.decode(ByteBuffer.wrap(feed.take(index)), charset);
+    }
+
+    @Override
+    public byte[] fingerprint(SourceLoader loader) throws IOException {
+        return feed.fingerprint(index, loader);
+    }
+
+    @Override
+    public boolean isSequential() {
+        return true;
+    }
+
+    @Override
+    public void release() {
+        feed.release(index);
+    }
+}
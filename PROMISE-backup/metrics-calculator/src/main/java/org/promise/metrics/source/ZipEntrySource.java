@@ -0,0 +1,73 @@
+package org.promise.metrics.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An entry of a zip or jar archive, read through the archive's open {@link ZipFile} when it is loaded.
+ */
+final class ZipEntrySource extends ArchiveEntrySource {
+
+    private final Archive archive;
+    private final ZipEntry entry;
+
+    ZipEntrySource(String name, Archive archive, ZipEntry entry) {
+        super(name, Math.max(entry.getSize(), 0));
+        this.archive = archive;
+        this.entry = entry;
+    }
+
+    @Override
+    public SourceText load(SourceLoader loader, Charset charset) throws IOException {
+        try (InputStream in = archive.open().getInputStream(entry)) {
+            return loader.read(in, charset);
+        } finally {
+            archive.loaded();
+        }
+    }
+
+    @Override
+    public byte[] fingerprint(SourceLoader loader) throws IOException {
+        try (InputStream in = archive.open().getInputStream(entry)) {
+            return loader.fingerprint(in);
+        }
+    }
+
+    /**
+     * The zip file shared by the entries of one archive. It stays open until every entry has been loaded
+     * and is opened again if an entry is loaded once more. {@link ZipFile} is safe for concurrent reads.
+     */
+    static final class Archive {
+        private final Path path;
+        private final int entries;
+        private ZipFile zip;
+        private int remaining;    // entries not loaded since the zip file was opened
+
+        Archive(Path path, ZipFile zip, int entries) {
+            this.path = path;
+            this.zip = zip;
+            this.entries = entries;
+            this.remaining = entries;
+        }
+
+        synchronized ZipFile open() throws IOException {
+            if (zip == null) {
+                zip = new ZipFile(path.toFile());
+                remaining = entries;
+            }
+            return zip;
+        }
+
+        synchronized void loaded() throws IOException {
+            if (zip != null && --remaining <= 0) {
+                ZipFile closing = zip;
+                zip = null;
+                closing.close();
+            }
+        }
+    }
+}
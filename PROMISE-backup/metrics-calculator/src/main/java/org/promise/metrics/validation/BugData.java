@@ -0,0 +1,182 @@
+package org.promise.metrics.validation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One version of the PROMISE defect data ({@code bug-data/<project>/<project>-<version>.csv}), held as
+ * primitive columns indexed by class name.
+ *
+ * The class name is the last column headed {@code name}, so both the original layout
+ * ({@code name,version,name,wmc,...,bug}, where the first two columns are project and version) and the
+ * 22-column layout of this tool are read. Every column after it is kept as numbers (NaN where a value
+ * is not a number), {@code bug} as the defect count. A class listed twice keeps its first row.
+ */
+public final class BugData {
+
+    private static final String NAME_COLUMN = "name";
+    private static final String BUG_COLUMN = "bug";
+
+    private final Path path;
+    private final NameIndex names;
+    private final String[] columns;
+    private final double[][] values;     // [column][row]
+    private final int[] bugs;            // null without a bug column
+    private final int duplicates;
+
+    private BugData(Path path, NameIndex names, String[] columns, double[][] values, int[] bugs, int duplicates) {
+        this.path = path;
+        this.names = names;
+        this.columns = columns;
+        this.values = values;
+        this.bugs = bugs;
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * Read a defect data file.
+     *
+     * @throws IOException if the file cannot be read, is a Git LFS pointer or has no name column
+     */
+    public static BugData load(Path path) throws IOException {
+        CsvScanner scanner = CsvScanner.open(path);
+        if (!scanner.next()) {
+            throw new IOException("Empty defect data file: " + path);
+        }
+        int nameField = -1;
+        for (int field = 0; field < scanner.getFieldCount(); field++) {
+            if (scanner.getString(field).trim().equalsIgnoreCase(NAME_COLUMN)) {
+                nameField = field;
+            }
+        }
+        if (nameField < 0) {
+            throw new IOException("Defect data file " + path + " has no '" + NAME_COLUMN + "' column");
+        }
+        int bugField = -1;
+        List<String> columnNames = new ArrayList<>();
+        int[] columnFields = new int[scanner.getFieldCount()];
+        for (int field = nameField + 1; field < scanner.getFieldCount(); field++) {
+            String column = scanner.getString(field).trim().toLowerCase(Locale.ROOT);
+            if (column.equals(BUG_COLUMN)) {
+                bugField = field;
+            } else {
+                columnFields[columnNames.size()] = field;
+                columnNames.add(column);
+            }
+        }
+
+        // Rows of the PROMISE files are longer than 64 bytes, so the columns rarely grow
+        int capacity = Math.max(16, scanner.getData().length / 64);
+        NameIndex names = new NameIndex(capacity);
+        double[][] values = new double[columnNames.size()][capacity];
+        int[] bugs = bugField >= 0 ? new int[capacity] : null;
+        int duplicates = 0;
+        while (scanner.next()) {
+            if (scanner.getFieldCount() <= nameField) {
+                throw new IOException("Missing class name in " + path + " line " + scanner.getLine());
+            }
+            int row = names.add(scanner.getData(), scanner.getStart(nameField), scanner.getEnd(nameField));
+            if (row < 0) {
+                duplicates++;
+                continue;
+            }
+            if (row == capacity) {
+                capacity *= 2;
+                for (int column = 0; column < values.length; column++) {
+                    values[column] = Arrays.copyOf(values[column], capacity);
+                }
+                if (bugs != null) {
+                    bugs = Arrays.copyOf(bugs, capacity);
+                }
+            }
+            for (int column = 0; column < values.length; column++) {
+                int field = columnFields[column];
+                values[column][row] = field < scanner.getFieldCount() ? scanner.parseDouble(field) : Double.NaN;
+            }
+            if (bugs != null) {
+                double bug = bugField < scanner.getFieldCount() ? scanner.parseDouble(bugField) : Double.NaN;
+                if (Double.isNaN(bug)) {
+                    throw new IOException("Bad bug count in " + path + " line " + scanner.getLine());
+                }
+                bugs[row] = (int) bug;
+            }
+        }
+        return new BugData(path, names, columnNames.toArray(new String[0]), values, bugs, duplicates);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Number of classes.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Number of rows skipped because their class was listed before.
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    public String getName(int row) {
+        return names.getName(row);
+    }
+
+    /**
+     * Row of the class named by a field of a scanner's current record, or -1.
+     */
+    public int find(CsvScanner scanner, int field) {
+        return names.find(scanner.getData(), scanner.getStart(field), scanner.getEnd(field));
+    }
+
+    public boolean hasBugs() {
+        return bugs != null;
+    }
+
+    /**
+     * Defect count of a class.
+     *
+     * @throws IllegalStateException if the file has no bug column
+     */
+    public int getBug(int row) {
+        if (bugs == null) {
+            throw new IllegalStateException("No '" + BUG_COLUMN + "' column in " + path);
+        }
+        return bugs[row];
+    }
+
+    /**
+     * Lower-case names of the value columns, in file order, without name and bug.
+     */
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    /**
+     * Index of a value column, or -1.
+     */
+    public int getColumnIndex(String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Value of a column for a class, NaN where the file holds no number.
+     */
+    public double getValue(int column, int row) {
+        return values[column][row];
+    }
+}
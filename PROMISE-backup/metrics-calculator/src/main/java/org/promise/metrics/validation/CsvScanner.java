@@ -0,0 +1,322 @@
+package org.promise.metrics.validation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Record-at-a-time reader of a CSV file held in one byte array.
+ *
+ * Fields are not copied: a record is split into start and end offsets of its fields in reused arrays,
+ * numbers are parsed from the bytes, and a {@code String} is only created when asked for. Quoted fields
+ * (RFC 4180, with {@code ""} as escaped quote) are supported; their offsets exclude the quotes. Lines may
+ * end with {@code \n} or {@code \r\n}, blank lines are skipped, and the data is read as UTF-8.
+ */
+public final class CsvScanner {
+
+    private static final byte[] LFS_POINTER = "version https://git-lfs.github.com/spec/".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Powers of ten that are exact doubles, for parsing short decimals without rounding error.
+     */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Path path;
+    private final byte[] data;
+    private final int length;
+    private int position;
+    private int line;
+    private int recordStart;
+    private int recordEnd;             // end of the record before the line terminator
+    private int fieldCount;
+    private int[] rawStarts = new int[32];      // including an opening quote
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private boolean[] escaped = new boolean[32];    // quoted field containing ""
+
+    CsvScanner(Path path, byte[] data, int length) {
+        this.path = path;
+        this.data = data;
+        this.length = length;
+        // Skip a UTF-8 byte order mark
+        if (length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) {
+            position = 3;
+        }
+    }
+
+    /**
+     * Read a CSV file, gunzipping it if its name ends with {@code .gz}.
+     *
+     * @throws IOException if the file cannot be read or is a Git LFS pointer instead of the data
+     */
+    public static CsvScanner open(Path path) throws IOException {
+        byte[] data;
+        int length;
+        if (path.getFileName().toString().endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(path), 64 * 1024)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Files.size(path) * 8, 1 << 26));
+                byte[] chunk = new byte[64 * 1024];
+                for (int n; (n = in.read(chunk)) > 0; ) {
+                    bytes.write(chunk, 0, n);
+                }
+                data = bytes.toByteArray();
+            }
+        } else {
+            data = Files.readAllBytes(path);
+        }
+        length = data.length;
+        if (isLfsPointer(data, length)) {
+            throw new IOException(path + " is a Git LFS pointer, not the data; fetch it with 'git lfs pull'");
+        }
+        return new CsvScanner(path, data, length);
+    }
+
+    /**
+     * Whether the bytes are a Git LFS pointer file, which a clone without LFS leaves in place of the content.
+     */
+    public static boolean isLfsPointer(byte[] data, int length) {
+        if (length < LFS_POINTER.length) {
+            return false;
+        }
+        for (int i = 0; i < LFS_POINTER.length; i++) {
+            if (data[i] != LFS_POINTER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Advance to the next non-blank record.
+     *
+     * @return false at the end of the data
+     * @throws IOException if a quoted field is not closed
+     */
+    public boolean next() throws IOException {
+        while (position < length) {
+            line++;
+            recordStart = position;
+            fieldCount = 0;
+            int p = position;
+            while (true) {
+                int rawStart = p;
+                int start;
+                int end;
+                boolean quotes = false;
+                if (p < length && data[p] == '"') {
+                    start = ++p;
+                    while (true) {
+                        if (p >= length) {
+                            throw new IOException("Unclosed quote in " + path + " line " + line);
+                        }
+                        if (data[p] == '"') {
+                            if (p + 1 < length && data[p + 1] == '"') {
+                                quotes = true;
+                                p += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        if (data[p] == '\n') {
+                            line++;
+                        }
+                        p++;
+                    }
+                    end = p++;
+                    // Anything between the closing quote and the separator is ignored
+                    while (p < length && data[p] != ',' && data[p] != '\n') {
+                        p++;
+                    }
+                } else {
+                    start = p;
+                    while (p < length && data[p] != ',' && data[p] != '\n') {
+                        p++;
+                    }
+                    end = p;
+                }
+                addField(rawStart, start, end, quotes);
+                if (p < length && data[p] == ',') {
+                    p++;
+                    continue;
+                }
+                break;
+            }
+            recordEnd = p;
+            position = p < length ? p + 1 : p;
+            if (recordEnd > recordStart && data[recordEnd - 1] == '\r') {
+                recordEnd--;
+                if (ends[fieldCount - 1] > recordEnd) {
+                    ends[fieldCount - 1] = recordEnd;
+                }
+            }
+            if (recordEnd > recordStart) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addField(int rawStart, int start, int end, boolean quotes) {
+        if (fieldCount == starts.length) {
+            rawStarts = Arrays.copyOf(rawStarts, fieldCount * 2);
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            escaped = Arrays.copyOf(escaped, fieldCount * 2);
+        }
+        rawStarts[fieldCount] = rawStart;
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = quotes;
+        fieldCount++;
+    }
+
+    /**
+     * Line number of the current record, starting at 1.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * The bytes of the whole file; offsets returned by this scanner index into it.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * End of the current record, excluding the line terminator.
+     */
+    public int getRecordEnd() {
+        return recordEnd;
+    }
+
+    /**
+     * Start of a field's content, after an opening quote.
+     */
+    public int getStart(int field) {
+        return starts[field];
+    }
+
+    /**
+     * End of a field's content, before a closing quote.
+     */
+    public int getEnd(int field) {
+        return ends[field];
+    }
+
+    /**
+     * Start of a field including an opening quote, for copying it unchanged.
+     */
+    public int getRawStart(int field) {
+        return rawStarts[field];
+    }
+
+    /**
+     * End of a field including a closing quote.
+     */
+    public int getRawEnd(int field) {
+        return field + 1 < fieldCount ? rawStarts[field + 1] - 1 : recordEnd;
+    }
+
+    public String getString(int field) {
+        String value = new String(data, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+        return escaped[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * Whether a field holds exactly the given ASCII text.
+     */
+    public boolean fieldEquals(int field, String text) {
+        int start = starts[field];
+        if (ends[field] - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (data[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a field as a number: an integer or a decimal with optional exponent, surrounded by optional spaces.
+     *
+     * @return The value, or NaN if the field is empty or not a number
+     */
+    public double parseDouble(int field) {
+        int p = starts[field];
+        int end = ends[field];
+        while (p < end && data[p] == ' ') {
+            p++;
+        }
+        while (end > p && data[end - 1] == ' ') {
+            end--;
+        }
+        if (p == end) {
+            return Double.NaN;
+        }
+        int numberStart = p;
+        boolean negative = data[p] == '-';
+        if (negative || data[p] == '+') {
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        boolean anyDigit = false;
+        int scale = 0;
+        boolean point = false;
+        for (; p < end; p++) {
+            int c = data[p];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                anyDigit = true;
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (point) {
+                    scale++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (p == end && anyDigit && digits <= 15 && scale < POWERS_OF_TEN.length) {
+            // Both operands are exact doubles, so the quotient is the correctly rounded value
+            double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(data, numberStart, end - numberStart, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.promise.metrics.validation;
+
+import org.promise.metrics.analysis.BatchDriver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Labels computed metrics with the PROMISE defect counts: for every version of a batch manifest, the
+ * computed CSV is joined on the class name with {@code <bug-data>/<project>/<project>-<version>.csv}
+ * and written with its {@code bug} column filled in (appended if the layout has none).
+ *
+ * The defect data of a version is loaded into a {@link BugData}, then the computed rows are streamed
+ * through a {@link CsvScanner} and copied byte for byte, so a version costs two file reads and one hash
+ * lookup per class. Only classes present on both sides are written; the others are reported as
+ * unmatched. Versions are joined in parallel and a failing version does not stop the others.
+ */
+public class LabelJoin {
+
+    private static final byte[] LINE_SEPARATOR = {'\r', '\n'};    // as written by CSVFormat.DEFAULT
+
+    /**
+     * Outcome of one version.
+     */
+    public static class Result {
+        private final BatchDriver.Job job;
+        private Path reference;
+        private Path labeled;
+        private int computedRows;
+        private int referenceRows;
+        private int matched;
+        private final List<String> unmatchedComputed = new ArrayList<>();
+        private final List<String> unmatchedReference = new ArrayList<>();
+        private long millis;
+        private String error;
+
+        Result(BatchDriver.Job job) {
+            this.job = job;
+        }
+
+        public String getProject() {
+            return job.getProject();
+        }
+
+        public String getVersion() {
+            return job.getVersion();
+        }
+
+        public Path getReference() {
+            return reference;
+        }
+
+        /**
+         * The labeled CSV, or null if the version failed.
+         */
+        public Path getLabeled() {
+            return labeled;
+        }
+
+        public int getComputedRows() {
+            return computedRows;
+        }
+
+        public int getReferenceRows() {
+            return referenceRows;
+        }
+
+        public int getMatched() {
+            return matched;
+        }
+
+        /**
+         * Computed classes without defect data.
+         */
+        public List<String> getUnmatchedComputed() {
+            return unmatchedComputed;
+        }
+
+        /**
+         * Classes of the defect data that were not computed.
+         */
+        public List<String> getUnmatchedReference() {
+            return unmatchedReference;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Error message if the version failed, otherwise null.
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final Path bugDataDir;
+    private final Path outputDir;
+    private final int threads;
+
+    /**
+     * @param bugDataDir Directory holding one subdirectory of defect data per project
+     * @param outputDir  Directory receiving {@code <project>/<computed file name>} per version
+     * @param threads    Versions joined at the same time (below 1 means all available processors)
+     */
+    public LabelJoin(Path bugDataDir, Path outputDir, int threads) {
+        this.bugDataDir = bugDataDir;
+        this.outputDir = outputDir;
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Defect data file of a project version: {@code <project>/<project>-<version>.csv}, or else the only
+     * file of the project whose version starts with the given one (xerces 1.4 is {@code xerces-1.4.4.csv}).
+     *
+     * @return The file, or null if there is none
+     */
+    public static Path findBugData(Path bugDataDir, String project, String version) throws IOException {
+        Path projectDir = bugDataDir.resolve(project);
+        Path exact = projectDir.resolve(project + "-" + version + ".csv");
+        if (Files.isRegularFile(exact) || !Files.isDirectory(projectDir)) {
+            return Files.isRegularFile(exact) ? exact : null;
+        }
+        Path found = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(projectDir, project + "-" + version + ".*.csv")) {
+            for (Path file : files) {
+                if (found != null) {
+                    return null;
+                }
+                found = file;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Computed CSV of a job: its output path, or the same path with {@code .gz} as written by {@code --gzip}.
+     */
+    public static Path computedPath(BatchDriver.Job job) {
+        Path output = job.getOutput();
+        Path gzip = output.resolveSibling(output.getFileName() + ".gz");
+        return !Files.exists(output) && Files.exists(gzip) ? gzip : output;
+    }
+
+    /**
+     * Join all versions.
+     *
+     * @return One result per job, in job order
+     */
+    public List<Result> run(List<BatchDriver.Job> jobs) {
+        List<Result> results = new ArrayList<>();
+        for (BatchDriver.Job job : jobs) {
+            results.add(new Result(job));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Result result : results) {
+                tasks.add(pool.submit(() -> join(result)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    private void join(Result result) {
+        long start = System.nanoTime();
+        try {
+            Path computed = computedPath(result.job);
+            if (!Files.isRegularFile(computed)) {
+                throw new IOException("No computed metrics at " + computed);
+            }
+            result.reference = findBugData(bugDataDir, result.getProject(), result.getVersion());
+            if (result.reference == null) {
+                throw new IOException("No defect data for " + result.getProject() + " " + result.getVersion()
+                        + " in " + bugDataDir.resolve(result.getProject()));
+            }
+            BugData bugData = BugData.load(result.reference);
+            if (!bugData.hasBugs()) {
+                throw new IOException("No 'bug' column in " + result.reference);
+            }
+            result.referenceRows = bugData.size();
+
+            Path labeled = outputDir.resolve(result.getProject()).resolve(computed.getFileName());
+            Files.createDirectories(labeled.toAbsolutePath().getParent());
+            boolean[] seen = new boolean[bugData.size()];
+            try {
+                write(CsvScanner.open(computed), bugData, seen, labeled, result);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(labeled);
+                throw e;
+            }
+            result.labeled = labeled;
+
+            for (int row = 0; row < seen.length; row++) {
+                if (!seen[row]) {
+                    result.unmatchedReference.add(bugData.getName(row));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Copy the matched rows of a computed CSV with their defect counts.
+     */
+    private static void write(CsvScanner computed, BugData bugData, boolean[] seen, Path labeled,
+                              Result result) throws IOException {
+        if (!computed.next()) {
+            throw new IOException("Empty metrics file: " + computed.getPath());
+        }
+        int nameField = -1;
+        int bugField = -1;
+        for (int field = computed.getFieldCount() - 1; field >= 0; field--) {
+            if (computed.fieldEquals(field, "name")) {
+                nameField = field;
+            } else if (computed.fieldEquals(field, "bug")) {
+                bugField = field;
+            }
+        }
+        if (nameField < 0) {
+            throw new IOException("Metrics file " + computed.getPath() + " has no 'name' column");
+        }
+
+        byte[] data = computed.getData();
+        byte[] digits = new byte[11];
+        try (OutputStream out = newOutputStream(labeled)) {
+            out.write(data, computed.getRecordStart(), computed.getRecordEnd() - computed.getRecordStart());
+            if (bugField < 0) {
+                out.write(",bug".getBytes(StandardCharsets.US_ASCII));
+            }
+            out.write(LINE_SEPARATOR);
+
+            while (computed.next()) {
+                if (computed.getFieldCount() <= nameField) {
+                    throw new IOException("Missing class name in " + computed.getPath() + " line " + computed.getLine());
+                }
+                result.computedRows++;
+                int row = bugData.find(computed, nameField);
+                if (row < 0) {
+                    result.unmatchedComputed.add(computed.getString(nameField));
+                    continue;
+                }
+                if (!seen[row]) {
+                    seen[row] = true;
+                    result.matched++;
+                }
+                int bug = bugData.getBug(row);
+                if (bugField < 0 || bugField >= computed.getFieldCount()) {
+                    out.write(data, computed.getRecordStart(), computed.getRecordEnd() - computed.getRecordStart());
+                    out.write(',');
+                    writeInt(out, digits, bug);
+                } else {
+                    int fieldStart = computed.getRawStart(bugField);
+                    int fieldEnd = computed.getRawEnd(bugField);
+                    out.write(data, computed.getRecordStart(), fieldStart - computed.getRecordStart());
+                    writeInt(out, digits, bug);
+                    out.write(data, fieldEnd, computed.getRecordEnd() - fieldEnd);
+                }
+                out.write(LINE_SEPARATOR);
+            }
+        }
+    }
+
+    private static OutputStream newOutputStream(Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
+        if (path.getFileName().toString().endsWith(".gz")) {
+            return new GZIPOutputStream(out, 64 * 1024);
+        }
+        return new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    private static void writeInt(OutputStream out, byte[] digits, int value) throws IOException {
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int n = digits.length;
+        do {
+            digits[--n] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        out.write(digits, n, digits.length - n);
+    }
+
+    /**
+     * Print the per-version join table.
+     *
+     * @param results    Results of {@link #run}
+     * @param wallMillis Wall-clock time of the whole join
+     */
+    public static void printTable(List<Result> results, long wallMillis) {
+        String rowFormat = "%-10s %-8s %9s %9s %8s %11s %12s %6s%n";
+        System.out.println("\n=== Defect Label Join ===");
+        System.out.printf(Locale.ROOT, rowFormat,
+                "project", "version", "computed", "reference", "matched", "only calc.", "only PROMISE", "ms");
+
+        int computed = 0;
+        int reference = 0;
+        int matched = 0;
+        int onlyComputed = 0;
+        int onlyReference = 0;
+        int failed = 0;
+        for (Result result : results) {
+            if (result.error != null) {
+                failed++;
+                System.out.printf(Locale.ROOT, "%-10s %-8s FAILED: %s%n", result.getProject(), result.getVersion(),
+                        result.error);
+                continue;
+            }
+            System.out.printf(Locale.ROOT, rowFormat, result.getProject(), result.getVersion(), result.computedRows,
+                    result.referenceRows, result.matched, result.unmatchedComputed.size(),
+                    result.unmatchedReference.size(), result.millis);
+            computed += result.computedRows;
+            reference += result.referenceRows;
+            matched += result.matched;
+            onlyComputed += result.unmatchedComputed.size();
+            onlyReference += result.unmatchedReference.size();
+        }
+        System.out.printf(Locale.ROOT, rowFormat, "all", results.size() - failed, computed, reference, matched,
+                onlyComputed, onlyReference, wallMillis);
+        if (failed > 0) {
+            System.out.println("Failed versions: " + failed);
+        }
+    }
+
+    /**
+     * Write the unmatched classes of all versions as CSV: {@code project,version,side,name}, where side is
+     * {@code computed} for classes without defect data and {@code reference} for classes not computed.
+     */
+    public static void writeUnmatched(List<Result> results, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("project,version,side,name\r\n");
+            for (Result result : results) {
+                for (String name : result.unmatchedComputed) {
+                    out.write(result.getProject() + "," + result.getVersion() + ",computed," + name + "\r\n");
+                }
+                for (String name : result.unmatchedReference) {
+                    out.write(result.getProject() + "," + result.getVersion() + ",reference," + name + "\r\n");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.promise.metrics.validation;
+
+import java.util.Arrays;
+
+/**
+ * Error distribution of one metric column against the PROMISE reference values: mean absolute and
+ * signed error, exact and within-tolerance matches, and the classes with the largest errors.
+ */
+public final class MetricStats {
+
+    /**
+     * Differences up to this count as exact; decimal metrics are written with four decimals.
+     */
+    public static final double EXACT = 0.5e-4;
+
+    /**
+     * Relative tolerance of the README's validation guideline (±5%).
+     */
+    public static final double TOLERANCE = 0.05;
+
+    /**
+     * A class with a large error.
+     */
+    public static final class Offender {
+        private final String project;
+        private final String version;
+        private final String name;
+        private final double computed;
+        private final double reference;
+
+        Offender(String project, String version, String name, double computed, double reference) {
+            this.project = project;
+            this.version = version;
+            this.name = name;
+            this.computed = computed;
+            this.reference = reference;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getComputed() {
+            return computed;
+        }
+
+        public double getReference() {
+            return reference;
+        }
+
+        public double getError() {
+            return Math.abs(computed - reference);
+        }
+    }
+
+    private final String metric;
+    private int count;
+    private double absoluteErrorSum;
+    private double errorSum;
+    private int exact;
+    private int withinTolerance;
+    private double maxError;
+    private final Offender[] worst;      // largest errors, unordered; null slots are free
+    private int smallestWorst = -1;      // slot of the smallest error in a full worst array
+
+    /**
+     * @param metric     Column name
+     * @param worstCount Number of classes with the largest errors to keep
+     */
+    public MetricStats(String metric, int worstCount) {
+        this.metric = metric;
+        this.worst = new Offender[worstCount];
+    }
+
+    /**
+     * Add the values of one class. The offender's name is only created if it is among the worst so far.
+     *
+     * @param bugData Reference data holding the class
+     * @param row     Row of the class in the reference data
+     */
+    void add(double computed, double reference, String project, String version, BugData bugData, int row) {
+        double error = computed - reference;
+        double absolute = Math.abs(error);
+        count++;
+        absoluteErrorSum += absolute;
+        errorSum += error;
+        maxError = Math.max(maxError, absolute);
+        if (absolute <= EXACT) {
+            exact++;
+            withinTolerance++;
+            return;
+        }
+        if (absolute <= TOLERANCE * Math.abs(reference)) {
+            withinTolerance++;
+        }
+        if (worst.length > 0 && (smallestWorst < 0 || absolute > worst[smallestWorst].getError())) {
+            offer(new Offender(project, version, bugData.getName(row), computed, reference));
+        }
+    }
+
+    private void offer(Offender offender) {
+        if (smallestWorst < 0) {
+            for (int i = 0; i < worst.length; i++) {
+                if (worst[i] == null) {
+                    worst[i] = offender;
+                    if (i == worst.length - 1) {
+                        updateSmallest();
+                    }
+                    return;
+                }
+            }
+        }
+        worst[smallestWorst] = offender;
+        updateSmallest();
+    }
+
+    private void updateSmallest() {
+        smallestWorst = 0;
+        for (int i = 1; i < worst.length; i++) {
+            if (worst[i].getError() < worst[smallestWorst].getError()) {
+                smallestWorst = i;
+            }
+        }
+    }
+
+    /**
+     * Add the classes of another distribution of the same metric.
+     */
+    void merge(MetricStats other) {
+        count += other.count;
+        absoluteErrorSum += other.absoluteErrorSum;
+        errorSum += other.errorSum;
+        exact += other.exact;
+        withinTolerance += other.withinTolerance;
+        maxError = Math.max(maxError, other.maxError);
+        for (Offender offender : other.worst) {
+            if (offender != null && worst.length > 0
+                    && (smallestWorst < 0 || offender.getError() > worst[smallestWorst].getError())) {
+                offer(offender);
+            }
+        }
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    /**
+     * Number of classes compared.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getMeanAbsoluteError() {
+        return count == 0 ? 0 : absoluteErrorSum / count;
+    }
+
+    /**
+     * Mean of computed minus reference values; positive if the calculator overestimates.
+     */
+    public double getMeanError() {
+        return count == 0 ? 0 : errorSum / count;
+    }
+
+    /**
+     * Share of exact matches in percent.
+     */
+    public double getExactPercent() {
+        return count == 0 ? 0 : 100.0 * exact / count;
+    }
+
+    /**
+     * Share of values within {@link #TOLERANCE} of the reference, in percent.
+     */
+    public double getWithinTolerancePercent() {
+        return count == 0 ? 0 : 100.0 * withinTolerance / count;
+    }
+
+    /**
+     * Largest absolute error, 0 if all values match.
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * The classes with the largest errors, largest first.
+     */
+    public Offender[] getWorst() {
+        int n = 0;
+        for (Offender offender : worst) {
+            if (offender != null) {
+                n++;
+            }
+        }
+        Offender[] sorted = new Offender[n];
+        n = 0;
+        for (Offender offender : worst) {
+            if (offender != null) {
+                sorted[n++] = offender;
+            }
+        }
+        Arrays.sort(sorted, (a, b) -> Double.compare(b.getError(), a.getError()));
+        return sorted;
+    }
+}
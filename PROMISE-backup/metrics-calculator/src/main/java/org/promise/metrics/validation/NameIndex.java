@@ -0,0 +1,127 @@
+package org.promise.metrics.validation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of names, keyed by their UTF-8 bytes so that CSV fields can be looked up
+ * without creating strings. Names are numbered in insertion order and stored back to back in one byte
+ * array. Linear probing over a power-of-two table kept at most half full. Not thread-safe.
+ */
+final class NameIndex {
+
+    /**
+     * Value returned by {@link #find} for absent names.
+     */
+    static final int MISSING = -1;
+
+    private byte[] bytes = new byte[4096];
+    private int byteCount;
+    private int[] offsets;       // start of each name, plus the end of the last one
+    private int[] hashes;        // hash of each name
+    private int[] slots;         // name number + 1, 0 for free slots
+    private int size;
+
+    NameIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        slots = new int[capacity];
+        offsets = new int[Math.max(16, expectedSize) + 1];
+        hashes = new int[Math.max(16, expectedSize)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Number of the name held in {@code data[start, end)}, or {@link #MISSING}.
+     */
+    int find(byte[] data, int start, int end) {
+        int hash = hash(data, start, end);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (entry < 0) {
+                return MISSING;
+            }
+            if (hashes[entry] == hash && equals(entry, data, start, end)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Add the name held in {@code data[start, end)} unless present.
+     *
+     * @return The number of the new name, or {@code -2 - number} of the name already present
+     */
+    int add(byte[] data, int start, int end) {
+        int hash = hash(data, start, end);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (hashes[entry] == hash && equals(entry, data, start, end)) {
+                return -2 - entry;
+            }
+        }
+
+        int length = end - start;
+        if (byteCount + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, byteCount + length));
+        }
+        System.arraycopy(data, start, bytes, byteCount, length);
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        offsets[size] = byteCount;
+        byteCount += length;
+        offsets[size + 1] = byteCount;
+        hashes[size] = hash;
+        slots[slot] = size + 1;
+        if (++size * 2 > slots.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    String getName(int entry) {
+        return new String(bytes, offsets[entry], offsets[entry + 1] - offsets[entry], StandardCharsets.UTF_8);
+    }
+
+    private boolean equals(int entry, byte[] data, int start, int end) {
+        int offset = offsets[entry];
+        if (offsets[entry + 1] - offset != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++, offset++) {
+            if (bytes[offset] != data[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hashes[entry] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    private static int hash(byte[] data, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + data[i];
+        }
+        // Class names share long prefixes, so spread the low bits before masking
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
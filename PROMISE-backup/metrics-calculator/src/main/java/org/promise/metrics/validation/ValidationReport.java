@@ -0,0 +1,296 @@
+package org.promise.metrics.validation;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-metric comparison of computed metrics with the PROMISE reference values, for every version of a
+ * manifest and for the whole corpus. Written as a text report and as CSV
+ * ({@code project,version,metric,classes,mae,mean_error,exact,within_tolerance,max_error}, with
+ * {@code all,all} rows for the corpus), which can serve as the baseline of a later run.
+ */
+public class ValidationReport {
+
+    /**
+     * Project and version of the corpus rows of the CSV.
+     */
+    public static final String ALL = "all";
+
+    /**
+     * Comparison of one version.
+     */
+    public static class Version {
+        private final String project;
+        private final String version;
+        private final Map<String, MetricStats> metrics = new LinkedHashMap<>();
+        private int classes;
+        private long millis;
+        private String error;
+
+        Version(String project, String version) {
+            this.project = project;
+            this.version = version;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Error distributions by column name, in the column order of the computed CSV.
+         */
+        public Map<String, MetricStats> getMetrics() {
+            return Collections.unmodifiableMap(metrics);
+        }
+
+        void addMetric(MetricStats stats) {
+            metrics.put(stats.getMetric(), stats);
+        }
+
+        /**
+         * Number of computed classes found in the reference data.
+         */
+        public int getClasses() {
+            return classes;
+        }
+
+        void addClass() {
+            classes++;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        void setMillis(long millis) {
+            this.millis = millis;
+        }
+
+        /**
+         * Error message if the version could not be compared, otherwise null.
+         */
+        public String getError() {
+            return error;
+        }
+
+        void setError(String error) {
+            this.error = error;
+        }
+    }
+
+    private final List<Version> versions;
+    private final List<String> columns;
+    private final Map<String, MetricStats> corpus = new LinkedHashMap<>();
+    private final long wallMillis;
+
+    /**
+     * @param versions   Compared versions, in report order
+     * @param columns    Metric columns in report order
+     * @param worstCount Number of worst offenders kept per metric for the corpus
+     * @param wallMillis Wall-clock time of the comparison
+     */
+    ValidationReport(List<Version> versions, List<String> columns, int worstCount, long wallMillis) {
+        this.versions = versions;
+        this.columns = columns;
+        this.wallMillis = wallMillis;
+        for (String column : columns) {
+            MetricStats total = new MetricStats(column, worstCount);
+            for (Version version : versions) {
+                MetricStats stats = version.metrics.get(column);
+                if (stats != null) {
+                    total.merge(stats);
+                }
+            }
+            corpus.put(column, total);
+        }
+    }
+
+    public List<Version> getVersions() {
+        return Collections.unmodifiableList(versions);
+    }
+
+    /**
+     * Error distributions over all versions, by column name.
+     */
+    public Map<String, MetricStats> getCorpus() {
+        return Collections.unmodifiableMap(corpus);
+    }
+
+    public int getFailedCount() {
+        int failed = 0;
+        for (Version version : versions) {
+            if (version.error != null) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    public void print(PrintWriter out) {
+        int classes = 0;
+        for (Version version : versions) {
+            classes += version.classes;
+        }
+        out.println("=== Validation Report ===");
+        out.printf(Locale.ROOT, "Versions: %d compared, %d failed; %d classes matched; %d ms%n",
+                versions.size() - getFailedCount(), getFailedCount(), classes, wallMillis);
+        out.printf(Locale.ROOT, "Exact: |computed - reference| <= %s; tolerance: %.0f%% of the reference value%n",
+                MetricStats.EXACT, MetricStats.TOLERANCE * 100);
+
+        out.println();
+        out.printf(Locale.ROOT, "%-8s %8s %10s %10s %8s %8s %10s%n",
+                "metric", "classes", "mae", "mean err", "exact", "within", "max err");
+        for (MetricStats stats : corpus.values()) {
+            out.printf(Locale.ROOT, "%-8s %8d %10.4f %+10.4f %7.1f%% %7.1f%% %10.4f%n", stats.getMetric(),
+                    stats.getCount(), stats.getMeanAbsoluteError(), stats.getMeanError(), stats.getExactPercent(),
+                    stats.getWithinTolerancePercent(), stats.getMaxError());
+        }
+
+        out.println();
+        out.println("Exact matches per version (%):");
+        StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-10s %-8s %7s", "project", "version", "classes"));
+        for (String column : columns) {
+            header.append(String.format(Locale.ROOT, " %6s", column));
+        }
+        out.println(header);
+        for (Version version : versions) {
+            if (version.error != null) {
+                out.printf(Locale.ROOT, "%-10s %-8s FAILED: %s%n", version.project, version.version, version.error);
+                continue;
+            }
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%-10s %-8s %7d",
+                    version.project, version.version, version.classes));
+            for (String column : columns) {
+                MetricStats stats = version.metrics.get(column);
+                row.append(stats == null || stats.getCount() == 0 ? String.format(Locale.ROOT, " %6s", "-")
+                        : String.format(Locale.ROOT, " %6.1f", stats.getExactPercent()));
+            }
+            out.println(row);
+        }
+
+        out.println();
+        out.println("Worst offenders:");
+        for (MetricStats stats : corpus.values()) {
+            MetricStats.Offender[] worst = stats.getWorst();
+            if (worst.length == 0) {
+                continue;
+            }
+            out.println(stats.getMetric() + ":");
+            for (MetricStats.Offender offender : worst) {
+                out.printf(Locale.ROOT, "  %-10s %-8s %s: computed %s, reference %s%n", offender.getProject(),
+                        offender.getVersion(), offender.getName(), format(offender.getComputed()),
+                        format(offender.getReference()));
+            }
+        }
+        out.flush();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    /**
+     * Write the text report.
+     */
+    public void write(Path report) throws IOException {
+        createParent(report);
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(Files.newOutputStream(report),
+                StandardCharsets.UTF_8))) {
+            print(out);
+        }
+    }
+
+    /**
+     * Write the per-version and corpus figures as CSV.
+     */
+    public void writeCsv(Path file) throws IOException {
+        createParent(file);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             CSVPrinter csv = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            csv.printRecord("project", "version", "metric", "classes", "mae", "mean_error", "exact",
+                    "within_tolerance", "max_error");
+            for (Version version : versions) {
+                for (String column : columns) {
+                    MetricStats stats = version.metrics.get(column);
+                    if (stats != null) {
+                        printCsv(csv, version.project, version.version, stats);
+                    }
+                }
+            }
+            for (MetricStats stats : corpus.values()) {
+                printCsv(csv, ALL, ALL, stats);
+            }
+        }
+    }
+
+    private static void printCsv(CSVPrinter csv, String project, String version, MetricStats stats)
+            throws IOException {
+        csv.printRecord(project, version, stats.getMetric(), stats.getCount(),
+                String.format(Locale.ROOT, "%.4f", stats.getMeanAbsoluteError()),
+                String.format(Locale.ROOT, "%.4f", stats.getMeanError()),
+                String.format(Locale.ROOT, "%.2f", stats.getExactPercent()),
+                String.format(Locale.ROOT, "%.2f", stats.getWithinTolerancePercent()),
+                String.format(Locale.ROOT, "%.4f", stats.getMaxError()));
+    }
+
+    private static void createParent(Path file) throws IOException {
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Compare the corpus exact-match rates with those of an earlier report's CSV.
+     *
+     * @param baseline  CSV written by {@link #writeCsv}
+     * @param maxPoints Largest accepted drop of a metric's exact-match rate, in percentage points
+     * @return One message per metric whose rate dropped by more
+     * @throws IOException If the baseline cannot be read
+     */
+    public List<String> regressions(Path baseline, double maxPoints) throws IOException {
+        Map<String, Double> exact = new LinkedHashMap<>();
+        CSVFormat format = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build();
+        try (Reader reader = Files.newBufferedReader(baseline, StandardCharsets.UTF_8);
+             CSVParser parser = new CSVParser(reader, format)) {
+            for (CSVRecord record : parser) {
+                if (ALL.equals(record.get("project")) && ALL.equals(record.get("version"))) {
+                    exact.put(record.get("metric"), Double.parseDouble(record.get("exact")));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not a validation CSV: " + baseline + " (" + e.getMessage() + ")");
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (MetricStats stats : corpus.values()) {
+            Double before = exact.get(stats.getMetric());
+            if (before != null && before - stats.getExactPercent() > maxPoints) {
+                regressions.add(String.format(Locale.ROOT, "%s: exact matches dropped from %.2f%% to %.2f%%",
+                        stats.getMetric(), before, stats.getExactPercent()));
+            }
+        }
+        return regressions;
+    }
+}
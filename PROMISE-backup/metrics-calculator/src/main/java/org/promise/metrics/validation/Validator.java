@@ -0,0 +1,167 @@
+package org.promise.metrics.validation;
+
+import org.promise.metrics.analysis.BatchDriver;
+import org.promise.metrics.model.Metric;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Compares the computed metrics of every version of a batch manifest with the PROMISE reference values
+ * in {@code bug-data/}, metric by metric, and collects the error distributions in a {@link ValidationReport}.
+ *
+ * A column is compared if the computed CSV and the defect data both have it and it is a calculated
+ * {@link Metric}; the placeholder columns of the full format (dam, moa, bug) are not. Classes are matched
+ * by name as in {@link LabelJoin}. Versions run in parallel, each on its own statistics, which are merged
+ * in manifest order, so the report does not depend on the thread count.
+ */
+public class Validator {
+
+    /**
+     * Default number of worst offenders listed per metric.
+     */
+    public static final int DEFAULT_WORST = 5;
+
+    private final Path bugDataDir;
+    private final int threads;
+    private final int worstCount;
+
+    /**
+     * @param bugDataDir Directory holding one subdirectory of defect data per project
+     * @param threads    Versions compared at the same time (below 1 means all available processors)
+     * @param worstCount Number of worst offenders kept per metric
+     */
+    public Validator(Path bugDataDir, int threads, int worstCount) {
+        this.bugDataDir = bugDataDir;
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.worstCount = worstCount;
+    }
+
+    /**
+     * Compare all versions.
+     */
+    public ValidationReport run(List<BatchDriver.Job> jobs) {
+        long start = System.nanoTime();
+        List<ValidationReport.Version> versions = new ArrayList<>();
+        for (BatchDriver.Job job : jobs) {
+            versions.add(new ValidationReport.Version(job.getProject(), job.getVersion()));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < jobs.size(); i++) {
+                BatchDriver.Job job = jobs.get(i);
+                ValidationReport.Version version = versions.get(i);
+                tasks.add(pool.submit(() -> validate(job, version)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Columns in the order of the metric enum
+        Set<String> compared = new LinkedHashSet<>();
+        for (ValidationReport.Version version : versions) {
+            compared.addAll(version.getMetrics().keySet());
+        }
+        List<String> columns = new ArrayList<>();
+        for (Metric metric : Metric.values()) {
+            if (compared.contains(metric.getColumnName())) {
+                columns.add(metric.getColumnName());
+            }
+        }
+        return new ValidationReport(versions, columns, worstCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void validate(BatchDriver.Job job, ValidationReport.Version version) {
+        long start = System.nanoTime();
+        try {
+            Path computed = LabelJoin.computedPath(job);
+            if (!Files.isRegularFile(computed)) {
+                throw new IOException("No computed metrics at " + computed);
+            }
+            Path reference = LabelJoin.findBugData(bugDataDir, job.getProject(), job.getVersion());
+            if (reference == null) {
+                throw new IOException("No defect data for " + job.getProject() + " " + job.getVersion()
+                        + " in " + bugDataDir.resolve(job.getProject()));
+            }
+            compare(CsvScanner.open(computed), BugData.load(reference), version);
+        } catch (IOException | RuntimeException e) {
+            version.setError(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        version.setMillis((System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void compare(CsvScanner computed, BugData bugData, ValidationReport.Version version) throws IOException {
+        if (!computed.next()) {
+            throw new IOException("Empty metrics file: " + computed.getPath());
+        }
+        int nameField = -1;
+        List<Integer> fields = new ArrayList<>();
+        List<Integer> referenceColumns = new ArrayList<>();
+        List<MetricStats> stats = new ArrayList<>();
+        for (int field = 0; field < computed.getFieldCount(); field++) {
+            String column = computed.getString(field).trim().toLowerCase(Locale.ROOT);
+            if (column.equals("name")) {
+                nameField = field;
+                continue;
+            }
+            int referenceColumn = bugData.getColumnIndex(column);
+            if (Metric.forColumn(column) != null && referenceColumn >= 0) {
+                fields.add(field);
+                referenceColumns.add(referenceColumn);
+                stats.add(new MetricStats(column, worstCount));
+            }
+        }
+        if (nameField < 0) {
+            throw new IOException("Metrics file " + computed.getPath() + " has no 'name' column");
+        }
+        if (stats.isEmpty()) {
+            throw new IOException("No metric column of " + computed.getPath() + " is in " + bugData.getPath());
+        }
+        int[] fieldArray = toArray(fields);
+        int[] referenceArray = toArray(referenceColumns);
+
+        while (computed.next()) {
+            if (computed.getFieldCount() <= nameField) {
+                throw new IOException("Missing class name in " + computed.getPath() + " line " + computed.getLine());
+            }
+            int row = bugData.find(computed, nameField);
+            if (row < 0) {
+                continue;
+            }
+            version.addClass();
+            for (int i = 0; i < fieldArray.length; i++) {
+                if (fieldArray[i] >= computed.getFieldCount()) {
+                    continue;
+                }
+                double value = computed.parseDouble(fieldArray[i]);
+                double reference = bugData.getValue(referenceArray[i], row);
+                if (!Double.isNaN(value) && !Double.isNaN(reference)) {
+                    stats.get(i).add(value, reference, version.getProject(), version.getVersion(), bugData, row);
+                }
+            }
+        }
+        for (MetricStats metric : stats) {
+            version.addMetric(metric);
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}